@@ -0,0 +1,124 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import core.*;
+
+/**
+ * Builds the virtual disks measured by the JMH benchmarks: a tree of a given shape and a fill level.
+ * <ul>
+ * <li>"flat": one directory of 2048 files</li>
+ * <li>"balanced": 3 levels of 8 directories, 4 files in each directory (2340 files)</li>
+ * <li>"deep": a chain of 128 directories, 16 files in each directory (2048 files)</li>
+ * </ul>
+ * The fill level is reached with files of one block created in "/fill" after the tree, so that the free blocks
+ * are the last ones of the virtual disk.
+ *
+ * @author ayoub
+ */
+class BenchmarkDisk {
+
+	/** dimension of the virtual disks, near {@link VirtualFileSystem#MaxSizeAllowed} */
+	static final long Space = 16*1024*1024;
+	/** size of the files of the trees: one block */
+	static final long FileSize = VirtualFileSystem.DataSizeInBlock;
+
+	/**
+	 * creates a tree of files and directories
+	 * @param vd the virtual disk
+	 * @param pathName path name of the root directory of the tree, it must not exist
+	 * @param shape "flat", "balanced" or "deep"
+	 * @param fileSize size of each file
+	 * @param files list where the path names of the files created are added, or null
+	 * @return the root directory of the tree
+	 * @throws IllegalArgumentException if the shape is unknown
+	 */
+	static Directory createTree(VirtualFileSystem vd, String pathName, String shape, long fileSize, List<String> files){
+		Directory root = vd.createDirectory(pathName);
+		if(shape.equals("flat"))
+			createLevel(vd, root, 0, 0, 2048, fileSize, files);
+		else if(shape.equals("balanced"))
+			createLevel(vd, root, 3, 8, 4, fileSize, files);
+		else if(shape.equals("deep"))
+			createLevel(vd, root, 128, 1, 16, fileSize, files);
+		else
+			throw new IllegalArgumentException("unknown tree shape \""+shape+"\"");
+		return root;
+	}
+
+	/**
+	 * creates the files of a directory and its sub-directories
+	 * @param vd the virtual disk
+	 * @param directory the directory
+	 * @param depth number of levels of sub-directories
+	 * @param fanout number of sub-directories of each directory
+	 * @param fileCount number of files of each directory
+	 * @param fileSize size of each file
+	 * @param files list where the path names of the files created are added, or null
+	 */
+	private static void createLevel(VirtualFileSystem vd, Directory directory, int depth, int fanout, int fileCount,
+			long fileSize, List<String> files){
+		// the absolute path name of a directory ends with a separator
+		String path = directory.getAbsolutePathName().substring(vd.name.length()+1);
+		for(int i=0;i<fileCount;i++){
+			vd.createFile(path+"f"+i, fileSize);
+			if(files!=null)
+				files.add(path+"f"+i);
+		}
+		if(depth==0) return;
+		for(int i=0;i<fanout;i++)
+			createLevel(vd, vd.createDirectory(path+"d"+i), depth-1, fanout, fileCount, fileSize, files);
+	}
+
+	/**
+	 * fills a virtual disk with files of one block in the directory "/fill"
+	 * @param vd the virtual disk
+	 * @param percent fill level to reach, in percent of the space of the virtual disk
+	 */
+	static void fill(VirtualFileSystem vd, int percent){
+		long total = vd.getFreeSpace()+vd.getOccupiedSpace();
+		String path = vd.createDirectory("/fill").getName()+VirtualFileSystem.separator;
+		for(int i=0;vd.getOccupiedSpace()*100<total*percent;i++)
+			vd.createFile(path+i, FileSize);
+	}
+
+	/**
+	 * returns the path names of a list shuffled with a fixed seed, so that every run resolves them in the same order
+	 * @param pathNames the path names
+	 * @return an array of the path names
+	 */
+	static String[] shuffle(List<String> pathNames){
+		List<String> shuffled = new ArrayList<String>(pathNames);
+		java.util.Collections.shuffle(shuffled, new java.util.Random(42));
+		return shuffled.toArray(new String[shuffled.size()]);
+	}
+
+	/**
+	 * creates a directory of files on the host file system
+	 * @param fileCount number of files
+	 * @param fileSize size of each file
+	 * @return the directory, in the temporary directory of the host
+	 * @throws java.io.IOException if the files cannot be written
+	 */
+	static java.io.File createHostDirectory(int fileCount, int fileSize) throws java.io.IOException {
+		java.io.File directory = java.nio.file.Files.createTempDirectory("vfsbench").toFile();
+		byte[] data = new byte[fileSize];
+		new java.util.Random(42).nextBytes(data);
+		for(int i=0;i<fileCount;i++)
+			java.nio.file.Files.write(new java.io.File(directory, "f"+i).toPath(), data);
+		return directory;
+	}
+
+	/**
+	 * deletes a file or a directory and all its content from the host file system
+	 * @param file the file or directory
+	 */
+	static void deleteHostFile(java.io.File file){
+		java.io.File[] content = file.listFiles();
+		if(content!=null){
+			for(java.io.File child : content)
+				deleteHostFile(child);
+		}
+		file.delete();
+	}
+
+}
@@ -0,0 +1,68 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.*;
+
+import core.*;
+
+/**
+ * Measures file operations run concurrently on one virtual disk: each thread creates, reads and removes files in
+ * its own directory, so the threads only share the root directory, the data blocks allocator and the indexes.
+ * The throughput of a number of threads is compared with the one of a single thread, on a machine with as many cores.
+ *
+ * usage: ant bench, then java -jar bench.jar ConcurrentFileBenchmark -t 1, then with -t 2, -t 4...
+ *
+ * @author ayoub
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class ConcurrentFileBenchmark {
+
+	/** size of the files created */
+	private static final long FileSize = 4*VirtualFileSystem.DataSizeInBlock;
+
+	/** the virtual disk shared by the threads */
+	private VirtualFileSystem vd;
+	/** number of directories created for the threads */
+	private final AtomicInteger directories = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void createDisk(){
+		vd = new VirtualFileSystem(BenchmarkDisk.Space);
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteDisk(){
+		vd.delete();
+	}
+
+	/**
+	 * The directory of a thread
+	 */
+	@State(Scope.Thread)
+	public static class ThreadDirectory {
+
+		/** path name of the directory, ending with a separator */
+		String path;
+
+		@Setup(Level.Trial)
+		public void createDirectory(ConcurrentFileBenchmark benchmark){
+			path = "/thread"+benchmark.directories.getAndIncrement()+VirtualFileSystem.separator;
+			benchmark.vd.createDirectory(path);
+		}
+	}
+
+	@Benchmark
+	public long createReadRemove(ThreadDirectory directory){
+		String pathName = directory.path+"file";
+		vd.createFile(pathName, FileSize);
+		VNode file = vd.get(pathName);
+		file.remove();
+		return file.getSize();
+	}
+
+}
@@ -0,0 +1,89 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import core.*;
+
+/**
+ * Measures the resolution of path names by {@link VirtualFileSystem#get(String)} and the search of names by
+ * {@link Directory#find(String)}, for each tree shape and fill level of {@link BenchmarkDisk}, with and without the path cache.
+ * The virtual disk is not changed by the benchmarks, it is built once for each run.
+ *
+ * usage: ant bench, then java -jar bench.jar PathBenchmark
+ *
+ * @author ayoub
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class PathBenchmark {
+
+	@Param({"flat", "balanced", "deep"})
+	public String shape;
+
+	@Param({"0", "90"})
+	public int fill;
+
+	/** capacity of the path cache, 0 disables it */
+	@Param({"0", "1024"})
+	public int pathCache;
+
+	/** the virtual disk measured */
+	private VirtualFileSystem vd;
+	/** root directory of the tree */
+	private Directory tree;
+	/** path names of all the files of the tree, in a fixed random order */
+	private String[] paths;
+	/** path name of the last file created, the deepest one */
+	private String deepest;
+	/** next path name to resolve */
+	private int next;
+
+	@Setup(Level.Trial)
+	public void createDisk(){
+		vd = new VirtualFileSystem(BenchmarkDisk.Space);
+		vd.setPathCacheCapacity(pathCache);
+		List<String> files = new ArrayList<String>();
+		tree = BenchmarkDisk.createTree(vd, "/tree", shape, BenchmarkDisk.FileSize, files);
+		BenchmarkDisk.fill(vd, fill);
+		paths = BenchmarkDisk.shuffle(files);
+		deepest = files.get(files.size()-1);
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteDisk(){
+		vd.delete();
+	}
+
+	@Benchmark
+	public VNode getRandomPath(){
+		String path = paths[next];
+		next = (next+1)%paths.length;
+		return vd.get(path);
+	}
+
+	@Benchmark
+	public VNode getDeepestPath(){
+		return vd.get(deepest);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void findExistingName(Blackhole blackhole){
+		// "f0" is the first file of every directory of the tree
+		blackhole.consume(tree.find("f0"));
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void findMissingName(Blackhole blackhole){
+		blackhole.consume(tree.find("missing"));
+	}
+
+}
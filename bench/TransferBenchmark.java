@@ -0,0 +1,96 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import core.*;
+
+/**
+ * Measures the transfers between a virtual disk and the host file system: the import and the export of a directory
+ * of {@link #Files} files, the saving of a virtual disk and its loading, for each tree shape and fill level of
+ * {@link BenchmarkDisk}. The virtual disk files are written in the working directory.
+ *
+ * usage: ant bench, then java -jar bench.jar TransferBenchmark
+ *
+ * @author ayoub
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class TransferBenchmark {
+
+	/** number of files imported and exported */
+	private static final int Files = 32;
+
+	@Param({"flat", "balanced", "deep"})
+	public String shape;
+
+	@Param({"0", "50"})
+	public int fill;
+
+	/** size in bytes of the files imported and exported */
+	@Param({"1024", "65536"})
+	public int fileSize;
+
+	/** the virtual disk measured */
+	private VirtualFileSystem vd;
+	/** directory of the host file system imported */
+	private java.io.File hostDirectory;
+	/** directory of the host file system where the files are exported */
+	private java.io.File exportDirectory;
+
+	@Setup(Level.Trial)
+	public void createDisk() throws java.io.IOException {
+		vd = new VirtualFileSystem(BenchmarkDisk.Space);
+		BenchmarkDisk.createTree(vd, "/tree", shape, BenchmarkDisk.FileSize, null);
+		BenchmarkDisk.fill(vd, fill);
+		hostDirectory = BenchmarkDisk.createHostDirectory(Files, fileSize);
+		vd.importFromHostFileSystem(hostDirectory.getAbsolutePath(), VirtualFileSystem.rootPath);
+		vd.createDirectory("/imported");
+		vd.save();
+		exportDirectory = java.nio.file.Files.createTempDirectory("vfsbench").toFile();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteDisk(){
+		vd.delete();
+		BenchmarkDisk.deleteHostFile(hostDirectory);
+		BenchmarkDisk.deleteHostFile(exportDirectory);
+	}
+
+	@TearDown(Level.Invocation)
+	public void cleanUp(){
+		// the directory imported by the benchmark, and the one exported
+		Directory imported = vd.rootDirectory.getDirectory("imported");
+		if(imported.contains(hostDirectory.getName()))
+			imported.get(hostDirectory.getName()).remove();
+		java.io.File[] exported = exportDirectory.listFiles();
+		if(exported!=null){
+			for(java.io.File file : exported)
+				BenchmarkDisk.deleteHostFile(file);
+		}
+	}
+
+	@Benchmark
+	public VNode importDirectory(){
+		return vd.importFromHostFileSystem(hostDirectory.getAbsolutePath(), "/imported");
+	}
+
+	@Benchmark
+	public void exportDirectory(){
+		vd.rootDirectory.getDirectory(hostDirectory.getName()).exportToHostFileSystem(exportDirectory.getAbsolutePath());
+	}
+
+	@Benchmark
+	public void save(){
+		vd.save();
+	}
+
+	@Benchmark
+	public VirtualFileSystem load(){
+		return new VirtualFileSystem(vd.name);
+	}
+
+}
@@ -0,0 +1,87 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import core.*;
+
+/**
+ * Measures the creation of files and directories and the removal of a whole tree, for each tree shape and fill level
+ * of {@link BenchmarkDisk}. A virtual disk does not stay in the same state when VNodes are created, so the creations
+ * are measured in batches of {@link #Batch} operations on a virtual disk built again for each iteration.
+ *
+ * usage: ant bench, then java -jar bench.jar VNodeBenchmark
+ *
+ * @author ayoub
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class VNodeBenchmark {
+
+	/** number of VNodes created by a measured batch */
+	private static final int Batch = 1000;
+
+	@Param({"flat", "balanced", "deep"})
+	public String shape;
+
+	@Param({"0", "50", "90"})
+	public int fill;
+
+	/** the virtual disk measured */
+	private VirtualFileSystem vd;
+	/** path of the directory where the VNodes are created, ending with a separator */
+	private String path;
+	/** number of VNodes created in the iteration */
+	private int created;
+
+	@Setup(Level.Iteration)
+	public void createDisk(){
+		vd = new VirtualFileSystem(BenchmarkDisk.Space);
+		BenchmarkDisk.createTree(vd, "/tree", shape, BenchmarkDisk.FileSize, null);
+		BenchmarkDisk.fill(vd, fill);
+		// the VNodes are created in the last directory of the tree
+		Directory directory = vd.rootDirectory.getDirectory("tree");
+		while(directory.contains("d0"))
+			directory = directory.getDirectory("d0");
+		path = directory.getAbsolutePathName().substring(vd.name.length()+1);
+		created = 0;
+	}
+
+	@Setup(Level.Invocation)
+	public void createTreeIfRemoved(){
+		if(!vd.rootDirectory.contains("tree"))
+			BenchmarkDisk.createTree(vd, "/tree", shape, BenchmarkDisk.FileSize, null);
+	}
+
+	@TearDown(Level.Iteration)
+	public void deleteDisk(){
+		vd.delete();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, batchSize = Batch)
+	@Measurement(iterations = 10, batchSize = Batch)
+	public File createFile(){
+		return vd.createFile(path+"new"+(created++), BenchmarkDisk.FileSize);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, batchSize = Batch)
+	@Measurement(iterations = 10, batchSize = Batch)
+	public Directory createDirectory(){
+		return vd.createDirectory(path+"new"+(created++));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void removeTree(){
+		vd.rootDirectory.getDirectory("tree").remove();
+	}
+
+}
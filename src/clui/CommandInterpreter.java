@@ -0,0 +1,930 @@
+package clui;
+
+import java.io.IOException;
+
+import core.*;
+import exceptions.*;
+
+/**
+ * Interpreter of the command line language.
+ * It reads commands from an input and writes their results to an output, so that it can serve 
+ * the standard input as well as a client connected to a {@link VFSServer}.
+ * <p>
+ * In batch mode the prompt is not rendered and nothing is asked to the user: a command that would ask 
+ * to overwrite a file fails. Consecutive commands that change the virtual file systems are grouped 
+ * so that the statistics of the directories are updated once per group, see {@link VFSApp#batch(Runnable)}, 
+ * and the virtual file systems are saved every {@link #CheckpointInterval} changes.
+ * @author ayoub
+ *
+ */
+public class CommandInterpreter {
+	
+	/** maximum number of commands in a group */
+	public static final int BatchSize = 1000;
+	/** number of commands changing the virtual file systems between two saves in batch mode */
+	public static final int CheckpointInterval = 100000;
+	/** commands that can be grouped in batch mode */
+	private static final java.util.Set<String> BatchableCommands = new java.util.HashSet<String>(
+			java.util.Arrays.asList("md", "mf", "mv", "cp", "rm", "cd", "impvfs"));
+	
+	/** current cuser command */
+	String command;
+	/** input reader */
+	final java.io.BufferedReader input;
+	/** output of the commands */
+	final java.io.PrintStream out;
+	/** {@link VFSApp} instance */
+	final VFSApp vfsApp;
+	/** prompt string */
+	String prompt = "";
+	/** show prompt boolean */
+	boolean showPrompt = false;
+	/** string tokenizer to split input string */
+	java.util.StringTokenizer st = null;
+	/** true if the commands come from a script: no prompt, no question */
+	private final boolean batchMode;
+	/** number of commands that failed */
+	private int failures = 0;
+	
+	/**
+	 * creates an interactive interpreter
+	 * @param in input where the commands are read
+	 * @param out output where the results are written
+	 * @param vfsApp the VFSApp running the commands
+	 */
+	public CommandInterpreter(java.io.InputStream in, java.io.PrintStream out, VFSApp vfsApp){
+		this(in, out, vfsApp, false);
+	}
+	
+	/**
+	 * creates an interpreter
+	 * @param in input where the commands are read
+	 * @param out output where the results are written
+	 * @param vfsApp the VFSApp running the commands
+	 * @param batchMode true to run a script, see {@link CommandInterpreter}
+	 */
+	public CommandInterpreter(java.io.InputStream in, java.io.PrintStream out, VFSApp vfsApp, boolean batchMode){
+		this.input = new java.io.BufferedReader(new java.io.InputStreamReader(in));
+		this.out = out;
+		this.vfsApp = vfsApp;
+		this.batchMode = batchMode;
+		if(vfsApp.getCurrentWorkingVFS()!=null)
+			showPrompt = true;
+	}
+	
+	/**
+	 * returns the number of commands that failed
+	 * @return failures count
+	 */
+	public int getFailures(){
+		return failures;
+	}
+	
+	/**
+	 * reads and runs commands until the "exit" command or the end of the input
+	 */
+	public void run(){
+		if(batchMode){
+			runBatches();
+			return;
+		}
+		while(true){
+			if(showPrompt){
+				prompt = vfsApp.getPrompt();
+				out.print(prompt);
+				out.flush();
+			}
+			String lineIn = readLine();
+			if(lineIn==null || !execute(lineIn)) break;
+		}
+		out.flush();
+	}
+	
+	/**
+	 * reads and runs the commands of a script. the commands are read by groups: a group ends before 
+	 * a command that cannot be grouped, which runs alone.
+	 */
+	private void runBatches(){
+		final java.util.List<String> group = new java.util.ArrayList<String>(BatchSize);
+		final boolean[] exit = new boolean[1];
+		int changes = 0;
+		String next = readLine();
+		while(next!=null && !exit[0]){
+			// reading the next group
+			group.clear();
+			while(next!=null && group.size()<BatchSize && isBatchable(next)){
+				group.add(next);
+				next = readLine();
+			}
+			if(group.isEmpty()){
+				exit[0] = !execute(next);
+				next = readLine();
+				continue;
+			}
+			vfsApp.batch(new Runnable(){
+				@Override
+				public void run(){
+					for(String lineIn : group){
+						if(!execute(lineIn)){
+							exit[0] = true;
+							return;
+						}
+					}
+				}
+			});
+			changes += group.size();
+			if(changes>=CheckpointInterval){
+				vfsApp.saveAllVFS();
+				changes = 0;
+			}
+		}
+		out.flush();
+	}
+	
+	/**
+	 * checks if a command can be grouped with the previous ones in batch mode.
+	 * the commands that only change the content of directories can be grouped.
+	 * @param lineIn a command line
+	 * @return true if the command can be grouped
+	 */
+	private boolean isBatchable(String lineIn){
+		java.util.StringTokenizer tokens = new java.util.StringTokenizer(lineIn);
+		if(!tokens.hasMoreTokens()) return true;
+		String name = tokens.nextToken();
+		// a single word is a change of directory
+		return BatchableCommands.contains(name.toLowerCase()) || (!tokens.hasMoreTokens() && !name.equals("exit") && !isCommand(name));
+	}
+	
+	/**
+	 * checks if a word is the name of a command
+	 * @param name a word
+	 * @return true if it is a command
+	 */
+	private static boolean isCommand(String name){
+		String n = name.toLowerCase();
+		return BatchableCommands.contains(n) || n.equals("ls") || n.equals("crvfs") || n.equals("rmvfs") || n.equals("format") 
+				|| n.equals("expvfs") || n.equals("free") || n.equals("tree") || n.equals("find") || n.equals("snapshot") 
+				|| n.equals("du") || n.equals("mount") || n.equals("umount") || n.equals("help") || n.equals("prompt");
+	}
+	
+	/**
+	 * reads the next command line
+	 * @return the line, or null at the end of the input
+	 */
+	private String readLine(){
+		try {
+			return input.readLine();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * runs a command line. errors are written to the output and counted.
+	 * @param lineIn the command line
+	 * @return false if the command is "exit"
+	 */
+	public boolean execute(String lineIn){
+		try{
+			st = new java.util.StringTokenizer(lineIn);
+			
+			if(!st.hasMoreTokens()) return true;
+			
+			command = st.nextToken();
+			
+			if(command.equalsIgnoreCase("ls")) ls();
+	
+			else if(command.equalsIgnoreCase("cd")) cd();
+			
+			else if(command.equalsIgnoreCase("md")) md();
+			
+			else if(command.equalsIgnoreCase("mf")) mf();
+			
+			else if(command.equalsIgnoreCase("mv")) mv();
+
+			else if(command.equalsIgnoreCase("cp")) cp();
+			
+			else if(command.equalsIgnoreCase("rm")) rm();
+			
+			else if(command.equalsIgnoreCase("crvfs")) crvfs();
+			
+			else if(command.equalsIgnoreCase("rmvfs")) rmvfs();
+			
+			else if(command.equalsIgnoreCase("format")) format();
+			
+			else if(command.equalsIgnoreCase("impvfs")) impvfs();
+			
+			else if(command.equalsIgnoreCase("expvfs")) expvfs();
+			
+			else if(command.equalsIgnoreCase("free")) free();
+			
+			else if(command.equalsIgnoreCase("tree")) tree();
+				
+			else if(command.equalsIgnoreCase("find")) find();
+			
+			else if(command.equalsIgnoreCase("snapshot")) snapshot();
+			
+			else if(command.equalsIgnoreCase("du")) du();
+			
+			else if(command.equalsIgnoreCase("mount")) mount();
+			
+			else if(command.equalsIgnoreCase("umount")) umount();
+			
+			else if(command.equalsIgnoreCase("help")) help();
+			
+			else if(command.equals("prompt")) prompt();
+			
+			else if(command.equals("exit")) return false;
+			
+			else{
+				if(st.hasMoreTokens())
+					throw new InvalidCommandException("\""+command + "\" is not a valid command");
+				if(showPrompt)
+					vfsApp.changeDir("", command);
+			}
+
+		} catch (InvalidCommandException e){
+			failures++;
+			out.println("Syntax error.\n"+e.getMessage());
+		} catch (VFSOperationFailException e){
+			failures++;
+			out.println("Operation failed.\n"+e.getMessage());
+		} catch (NameAlreadyExistsException e){
+			failures++;
+			out.println("Name already exists.\n"+e.getMessage());
+		} catch (NoFreeSpaceLeftException e){
+			failures++;
+			out.println("No free space left.\n"+e.getMessage());
+		} catch (NoSuchDirectoryException e){
+			failures++;
+			out.println("No such directory.\n"+e.getMessage());
+		} catch (NoSuchFileException e){
+			failures++;
+			out.println("No such file.\n"+e.getMessage());
+		} catch (NoSuchFileOrDirectoryException e){
+			failures++;
+			out.println("No such file or directory.\n"+e.getMessage());
+		} catch (NoSuchVirtualFileSystemException e){
+			failures++;
+			out.println("No such virtual file system.\n"+e.getMessage());
+		} catch (NoSuchSnapshotException e){
+			failures++;
+			out.println("No such snapshot.\n"+e.getMessage());
+		} catch (SizeNotAllowedException e){
+			failures++;
+			out.println("Dimension not allowed.");
+		} catch (NumberFormatException e){
+			failures++;
+			out.println("Syntax error.\n"+e.getMessage());
+		}
+		return true;
+	}
+	
+
+	/**
+	 * list
+	 */
+	void ls(){
+		java.util.ArrayList<String> args = new java.util.ArrayList<String>();
+		String options = "";
+		while(st.hasMoreTokens()){
+			String nextArg = st.nextToken();
+			if(nextArg.startsWith("-") && nextArg.length()>1)
+				options += nextArg.substring(1);
+			else args.add(nextArg);
+		}
+		if(!options.equals(""))
+			options = "-"+options;
+		if(args.size()>2)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(showPrompt){
+			if(args.size()==0)
+				vfsApp.list("", options, "", 0, 0, out);
+			else if(args.size()==1)
+				vfsApp.list("", options, args.get(0), 0, 0, out);
+			else
+				vfsApp.list(args.get(0), options, args.get(1), 0, 0, out);
+		}
+		else{
+			if(args.size()==0)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			else if(args.size()==1)
+				vfsApp.list(args.get(0), options, "", 0, 0, out);
+			else
+				vfsApp.list(args.get(0), options, args.get(1), 0, 0, out);
+		}
+	}
+	
+	
+	/**
+	 * change dir
+	 */
+	void cd(){
+		if(st.countTokens()>2)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(showPrompt){
+			if(st.countTokens()<1)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			if(st.countTokens()==2)
+				vfsApp.changeDir(st.nextToken(), st.nextToken());
+			else vfsApp.changeDir("", st.nextToken());
+		}
+		else{
+			if(st.countTokens()<2)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			vfsApp.changeDir(st.nextToken(), st.nextToken());
+		}
+	}
+	
+	
+	/**
+	 * make dir
+	 */
+	void md(){
+		if(st.countTokens()>2)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(showPrompt){
+			if(st.countTokens()<1)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			if(st.countTokens()==2)
+				vfsApp.makeDir(st.nextToken(), st.nextToken());
+			else vfsApp.makeDir("", st.nextToken());
+		}
+		else{
+			if(st.countTokens()<2)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			vfsApp.makeDir(st.nextToken(), st.nextToken());
+		}
+	}
+	
+	
+	/**
+	 * make file
+	 */
+	void mf(){
+		if(st.countTokens()>3)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(showPrompt){
+			if(st.countTokens()<2)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			if(st.countTokens()==3)
+				vfsApp.makeFile(st.nextToken(), st.nextToken(), st.nextToken());
+			else vfsApp.makeFile("", st.nextToken(),st.nextToken());
+		}
+		else{
+			if(st.countTokens()<3)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			vfsApp.makeFile(st.nextToken(), st.nextToken(),st.nextToken());
+		}
+	}
+	
+	
+	/**
+	 * move
+	 */
+	void mv(){
+		String vfsName,oldPath,newPath;
+		if(st.countTokens()>3)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(showPrompt){
+			if(st.countTokens()<2)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			if(st.countTokens()==3){
+				vfsName = st.nextToken();
+				oldPath = st.nextToken();
+				newPath = st.nextToken();
+			}
+			else{
+				vfsName = "";
+				oldPath = st.nextToken();
+				newPath = st.nextToken();
+			}
+		}
+		else{
+			if(st.countTokens()<3)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			vfsName = st.nextToken();
+			oldPath = st.nextToken();
+			newPath = st.nextToken();
+		}
+		try{
+			vfsApp.move(vfsName, oldPath, newPath);
+		} catch (NameAlreadyExistsException e){
+			if(askToOverwrite(e.getMessage()))
+				vfsApp.moveAndOverwrite(vfsName, oldPath, newPath);
+		}
+	}
+	
+	
+	/**
+	 * asks the user to overwrite an existing file/directory. In batch mode the command fails.
+	 * @param message message of the error
+	 * @return true if the file/directory must be overwritten
+	 * @throws NameAlreadyExistsException in batch mode
+	 */
+	private boolean askToOverwrite(String message){
+		if(batchMode)
+			throw new NameAlreadyExistsException(message);
+		out.println(message);
+		String lineIn;
+		do{
+			out.print("do you want to overwrite it? [y|n] ");
+			out.flush();
+			lineIn = readLine();
+			if(lineIn==null) return false;
+		}while(!lineIn.trim().equalsIgnoreCase("y") && !lineIn.trim().equalsIgnoreCase("n"));
+		return lineIn.trim().equalsIgnoreCase("y");
+	}
+	
+	
+	/**
+	 * copy
+	 */
+	void cp(){
+		String vfsName,oldPath,newPath;
+		if(st.countTokens()>3)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(showPrompt){
+			if(st.countTokens()<2)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			if(st.countTokens()==3){
+				vfsName = st.nextToken();
+				oldPath = st.nextToken();
+				newPath = st.nextToken();
+			}
+			else{
+				vfsName = "";
+				oldPath = st.nextToken();
+				newPath = st.nextToken();
+			}
+		}
+		else{
+			if(st.countTokens()<3)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			vfsName = st.nextToken();
+			oldPath = st.nextToken();
+			newPath = st.nextToken();
+		}
+		try{
+			vfsApp.copy(vfsName, oldPath, newPath);
+		} catch (NameAlreadyExistsException e){
+			if(askToOverwrite(e.getMessage()))
+				vfsApp.copyAndOverwrite(vfsName, oldPath, newPath);
+		}
+	}
+	
+	
+	/**
+	 * remove
+	 */
+	void rm(){
+		if(st.countTokens()>2)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(showPrompt){
+			if(st.countTokens()<1)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			if(st.countTokens()==2)
+				vfsApp.remove(st.nextToken(), st.nextToken());
+			else vfsApp.remove("", st.nextToken());
+		}
+		else{
+			if(st.countTokens()<2)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			vfsApp.remove(st.nextToken(), st.nextToken());
+		}
+	
+	}
+	
+	
+	/**
+	 * create new virtual file system
+	 */
+	void crvfs(){
+		if(st.countTokens()<2)
+			throw new InvalidCommandException("\""+command+"\" needs more arguments");
+		vfsApp.createVFS(st.nextToken(), Long.parseLong(st.nextToken()));
+	}
+	
+	
+	/**
+	 * remove virtual file system
+	 */
+	void rmvfs(){
+		if(st.countTokens()>1)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(st.countTokens()==0 && showPrompt){
+			showPrompt = false;
+			prompt = "";
+			vfsApp.removeVFS("");
+			return;
+		}
+		else if(st.countTokens()==0 && !showPrompt)
+			throw new InvalidCommandException("\""+command+"\" needs more arguments");
+		String vfsName = st.nextToken();
+		if(vfsName.equals(vfsApp.getCurrentWorkingVFS().name)){
+			showPrompt = false;
+			prompt = "";
+		}
+		vfsApp.removeVFS(vfsName);
+	}
+	
+	
+	
+	/**
+	 * format virtual file system
+	 */
+	void format(){
+		if(st.countTokens()>1)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		String vfsName;
+		if(st.countTokens()==0 && showPrompt){
+			vfsName = "";
+		}
+		else if(st.countTokens()==0 && !showPrompt)
+			throw new InvalidCommandException("\""+command+"\" needs more arguments");
+		else vfsName = st.nextToken();
+		if(vfsName.equals(vfsApp.getCurrentWorkingVFS().name)){
+			showPrompt = false;
+			prompt = "";
+		}
+		vfsApp.formatVFS(vfsName);
+	}
+	
+
+	
+	/**
+	 * import to virtual file system
+	 */
+	void impvfs(){
+		if(st.countTokens()>3)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(showPrompt) {
+			if(st.countTokens()<1)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			if(st.countTokens()>2)
+				throw new InvalidCommandException("\""+command+"\" cannot take more than 2 arguments while prompt is shown.");
+			if(st.countTokens()==1)
+				vfsApp.importToVFS(st.nextToken(),"", ".");
+			else
+				vfsApp.importToVFS(st.nextToken(),"", st.nextToken());
+		}
+		else {
+			if(st.countTokens()<3)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			vfsApp.importToVFS(st.nextToken(), st.nextToken(),st.nextToken());
+		}
+	}
+	
+	
+	/**
+	 * export virtual file system
+	 */
+	void expvfs(){
+		if(st.countTokens()>2)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(showPrompt){
+			if(st.countTokens()>1)
+				throw new InvalidCommandException("\""+command+"\" takes less arguments");
+			if(st.countTokens()==0)
+				vfsApp.exportVFS("", System.getProperty("user.dir"));
+			else
+				vfsApp.exportVFS("", st.nextToken());
+		}
+		else{
+			if(st.countTokens()<1)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			if(st.countTokens()==1)
+				vfsApp.exportVFS(st.nextToken(), System.getProperty("user.dir"));
+			else
+				vfsApp.exportVFS(st.nextToken(),st.nextToken());
+		}
+	}
+	
+	
+	/**
+	 * free/occupied space
+	 */
+	void free(){
+		if(st.countTokens()>1)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(showPrompt){
+			if(st.hasMoreTokens())
+				out.println(vfsApp.free(st.nextToken()));
+			else out.println(vfsApp.free(""));
+		}
+		else{
+			if(st.countTokens()<1)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			out.println(vfsApp.free(st.nextToken()));
+		}
+	}
+	
+	
+	/**
+	 * tree 
+	 */
+	void tree(){
+		java.util.ArrayList<String> args = new java.util.ArrayList<String>();
+		while(st.hasMoreTokens())
+			args.add(st.nextToken());
+		int maxDepth = WalkOptions.Unlimited;
+		int maxEntries = 0;
+		// options come before the virtual file system name
+		while(!args.isEmpty() && args.get(0).startsWith("-")){
+			String nextArg = args.remove(0);
+			if(args.isEmpty())
+				throw new InvalidCommandException("\""+nextArg+"\" needs a value");
+			int value;
+			try{
+				value = Integer.parseInt(args.remove(0));
+			} catch (NumberFormatException e){
+				throw new InvalidCommandException("the value of \""+nextArg+"\" must be a number");
+			}
+			if(value<0)
+				throw new InvalidCommandException("the value of \""+nextArg+"\" must be positive");
+			if(nextArg.equals("-d")) maxDepth = value;
+			else if(nextArg.equals("-n")) maxEntries = value;
+			else throw new InvalidCommandException("\""+nextArg+"\" is not a valid option");
+		}
+		if(args.size()>1)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(showPrompt){
+			if(!args.isEmpty()) vfsApp.tree(args.get(0), maxDepth, maxEntries, out);
+			else vfsApp.tree("", maxDepth, maxEntries, out);
+		}
+		else{
+			if(args.size()<1)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			vfsApp.tree(args.get(0), maxDepth, maxEntries, out);
+		}
+	}
+	
+	
+	/**
+	 * find
+	 */
+	void find(){
+		java.util.ArrayList<String> args = new java.util.ArrayList<String>();
+		while(st.hasMoreTokens())
+			args.add(st.nextToken());
+		String option = "";
+		int limit = 0;
+		// options come before the pattern
+		while(args.size()>1 && args.get(0).startsWith("-")){
+			String nextArg = args.remove(0);
+			if(nextArg.equals("-s") || nextArg.equals("-g") || nextArg.equals("-r"))
+				option = nextArg;
+			else if(nextArg.equals("-n")){
+				try{
+					limit = Integer.parseInt(args.remove(0));
+				} catch (NumberFormatException e){
+					throw new InvalidCommandException("the limit must be a number");
+				}
+				if(limit<0)
+					throw new InvalidCommandException("the limit must be positive");
+			}
+			else throw new InvalidCommandException("\""+nextArg+"\" is not a valid option");
+		}
+		if(args.size()>2)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(showPrompt){
+			if(args.size()<1)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			if(args.size()==2)
+				vfsApp.find(args.get(0), option, args.get(1), limit, out);
+			else vfsApp.find("", option, args.get(0), limit, out);
+		}
+		else{
+			if(args.size()<2)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			vfsApp.find(args.get(0), option, args.get(1), limit, out);
+		}
+	}
+	
+	
+	/**
+	 * disk usage
+	 */
+	void du(){
+		java.util.ArrayList<String> args = new java.util.ArrayList<String>();
+		while(st.hasMoreTokens())
+			args.add(st.nextToken());
+		int top = 0;
+		if(!args.isEmpty() && args.get(0).equals("-n")){
+			args.remove(0);
+			if(args.isEmpty())
+				throw new InvalidCommandException("\"-n\" needs a value");
+			try{
+				top = Integer.parseInt(args.remove(0));
+			} catch (NumberFormatException e){
+				throw new InvalidCommandException("the value of \"-n\" must be a number");
+			}
+			if(top<0)
+				throw new InvalidCommandException("the value of \"-n\" must be positive");
+		}
+		if(args.size()>2)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(showPrompt){
+			if(args.size()==0)
+				vfsApp.du("", "", top, out);
+			else if(args.size()==1)
+				vfsApp.du("", args.get(0), top, out);
+			else
+				vfsApp.du(args.get(0), args.get(1), top, out);
+		}
+		else{
+			if(args.size()==0)
+				throw new InvalidCommandException("\""+command+"\" needs more arguments");
+			else if(args.size()==1)
+				vfsApp.du(args.get(0), "", top, out);
+			else
+				vfsApp.du(args.get(0), args.get(1), top, out);
+		}
+	}
+	
+	
+	/**
+	 * snapshots
+	 */
+	void snapshot(){
+		if(st.countTokens()>3)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(st.countTokens()<1)
+			throw new InvalidCommandException("\""+command+"\" needs more arguments");
+		String action = st.nextToken();
+		if(action.equalsIgnoreCase("list")){
+			if(st.countTokens()>1)
+				throw new InvalidCommandException("\""+command+" "+action+"\" takes less arguments");
+			if(st.hasMoreTokens())
+				out.print(vfsApp.listSnapshots(st.nextToken()));
+			else if(showPrompt)
+				out.print(vfsApp.listSnapshots(""));
+			else
+				throw new InvalidCommandException("\""+command+" "+action+"\" needs more arguments");
+			return;
+		}
+		String vfsName,snapshotName;
+		if(st.countTokens()==2){
+			vfsName = st.nextToken();
+			snapshotName = st.nextToken();
+		}
+		else if(st.countTokens()==1 && showPrompt){
+			vfsName = "";
+			snapshotName = st.nextToken();
+		}
+		else
+			throw new InvalidCommandException("\""+command+" "+action+"\" needs more arguments");
+		
+		if(action.equalsIgnoreCase("create")) vfsApp.createSnapshot(vfsName, snapshotName);
+		else if(action.equalsIgnoreCase("restore")) vfsApp.restoreSnapshot(vfsName, snapshotName);
+		else if(action.equalsIgnoreCase("delete")) vfsApp.deleteSnapshot(vfsName, snapshotName);
+		else throw new InvalidCommandException("\""+action+"\" is not a valid snapshot action");
+	}
+	
+	
+	/**
+	 * mount a virtual disk
+	 */
+	void mount(){
+		if(st.countTokens()>3)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(st.countTokens()==0){
+			out.print(vfsApp.listMounts());
+			return;
+		}
+		if(st.countTokens()==3)
+			vfsApp.mount(st.nextToken(), st.nextToken(), st.nextToken());
+		else if(st.countTokens()==2 && showPrompt)
+			vfsApp.mount("", st.nextToken(), st.nextToken());
+		else
+			throw new InvalidCommandException("\""+command+"\" needs more arguments");
+	}
+	
+	
+	/**
+	 * unmount a virtual disk
+	 */
+	void umount(){
+		if(st.countTokens()>2)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(st.countTokens()==2)
+			vfsApp.unmount(st.nextToken(), st.nextToken());
+		else if(st.countTokens()==1 && showPrompt)
+			vfsApp.unmount("", st.nextToken());
+		else
+			throw new InvalidCommandException("\""+command+"\" needs more arguments");
+	}
+	
+	
+	/**
+	 * activate/deactivate prompt
+	 */
+	void prompt(){
+		if(st.countTokens()==0){
+			prompt = "";
+			showPrompt = false;
+			return;
+		}
+		if(st.countTokens()>1)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		String nextArg = st.nextToken();
+		if(nextArg.equals("-off")){
+			prompt = "";
+			showPrompt = false;
+		}
+		else{
+			prompt = vfsApp.getPrompt(nextArg);
+			showPrompt = true;
+		}	
+	}
+	
+	
+	/**
+	 * help
+	 */
+	void help(){
+		if(st.countTokens()>1)
+			throw new InvalidCommandException("\""+command+"\" takes less arguments");
+		if(st.countTokens()==1){
+			String commandHelp = st.nextToken();
+			int lineOfCommand = 1;
+			int startLine = 1;
+			if(commandHelp.equalsIgnoreCase("prompt")) lineOfCommand = 1+startLine;
+			else if(commandHelp.equalsIgnoreCase("ls")) lineOfCommand = 2+startLine;
+			else if(commandHelp.equalsIgnoreCase("cd")) lineOfCommand = 3+startLine;
+			else if(commandHelp.equalsIgnoreCase("mv")) lineOfCommand = 4+startLine;
+			else if(commandHelp.equalsIgnoreCase("cp")) lineOfCommand = 5+startLine;
+			else if(commandHelp.equalsIgnoreCase("rm")) lineOfCommand = 6+startLine;
+			else if(commandHelp.equalsIgnoreCase("crvfs")) lineOfCommand = 7+startLine;
+			else if(commandHelp.equalsIgnoreCase("rmvfs")) lineOfCommand = 8+startLine;
+			else if(commandHelp.equalsIgnoreCase("impvfs")) lineOfCommand = 9+startLine;
+			else if(commandHelp.equalsIgnoreCase("expvfs")) lineOfCommand = 10+startLine;
+			else if(commandHelp.equalsIgnoreCase("free")) lineOfCommand = 11+startLine;
+			else if(commandHelp.equalsIgnoreCase("tree")) lineOfCommand = 12+startLine;
+			else if(commandHelp.equalsIgnoreCase("find")) lineOfCommand = 13+startLine;
+			else if(commandHelp.equalsIgnoreCase("help")) lineOfCommand = 14+startLine;
+			else if(commandHelp.equalsIgnoreCase("md")) lineOfCommand = 15+startLine;
+			else if(commandHelp.equalsIgnoreCase("mf")) lineOfCommand = 16+startLine;
+			else if(commandHelp.equalsIgnoreCase("format")) lineOfCommand = 17+startLine;
+			else if(commandHelp.equalsIgnoreCase("snapshot")) lineOfCommand = 18+startLine;
+			else if(commandHelp.equalsIgnoreCase("du")) lineOfCommand = 19+startLine;
+			else if(commandHelp.equalsIgnoreCase("mount")) lineOfCommand = 20+startLine;
+			else if(commandHelp.equalsIgnoreCase("umount")) lineOfCommand = 21+startLine;
+			else throw new InvalidCommandException("\""+commandHelp+"\" is not an available command");
+			int countLines = 1;
+			java.io.BufferedReader br = null;
+			try {
+				br = new java.io.BufferedReader(new java.io.FileReader("help.txt"));
+				while(true){
+					String line = br.readLine();
+					if(countLines==lineOfCommand){
+						out.println(line.substring(1));
+						try {
+							br.close();
+						} catch (IOException e) {
+							throw new VFSOperationFailException(e.getMessage());
+						}
+						return;
+					}
+					if(line==null) break;
+					countLines++;
+				}
+			} catch (java.io.IOException e) {
+				throw new VFSOperationFailException("cannot read help file");
+			} finally {
+				if(br!=null)
+					try {
+						br.close();
+					} catch (IOException e) {
+						throw new VFSOperationFailException(e.getMessage());
+					}
+			}
+		}
+		else out.print(getHelp());
+	}
+	
+	static String getHelp(){
+		String helpText = "";
+		java.io.BufferedReader br = null;
+		try {
+			br = new java.io.BufferedReader(new java.io.FileReader("help.txt"));
+			while(true){
+				String line = br.readLine();
+				if(line==null) break;
+				helpText += line + "\n";
+			}
+		} catch (java.io.IOException e) {
+			throw new VFSOperationFailException("cannot read help file");
+		} finally {
+			if(br!=null)
+				try {
+					br.close();
+				} catch (IOException e) {
+					throw new VFSOperationFailException(e.getMessage());
+				}
+		}
+		
+		return helpText;
+	}
+
+}
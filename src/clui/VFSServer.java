@@ -0,0 +1,121 @@
+package clui;
+
+import core.*;
+import exceptions.*;
+
+/**
+ * Serves the command line language to local clients over TCP.
+ * The virtual file systems are loaded once and shared by all clients. Each connection gets its own session
+ * (working virtual file system and working directories, see {@link VFSApp#openSession()}) and its own thread:
+ * a virtual thread when the Java runtime has them, a platform thread otherwise.
+ * The server only listens on the loopback address.
+ * @author ayoub
+ *
+ */
+public class VFSServer {
+
+	/** default port of the server */
+	public static final int DefaultPort = 4777;
+
+	/** the VFSApp that loaded the virtual file systems */
+	private final VFSApp vfsApp;
+	/** socket accepting the connections */
+	private final java.net.ServerSocket serverSocket;
+	/** number of sessions opened */
+	private final java.util.concurrent.atomic.AtomicInteger sessions = new java.util.concurrent.atomic.AtomicInteger();
+
+	/**
+	 * creates a server listening on the loopback address
+	 * @param vfsApp the VFSApp whose virtual file systems are served
+	 * @param port port of the server, 0 for any free port
+	 * @throws VFSOperationFailException if the port cannot be used
+	 */
+	public VFSServer(VFSApp vfsApp, int port){
+		this.vfsApp = vfsApp;
+		try {
+			serverSocket = new java.net.ServerSocket(port, 50, java.net.InetAddress.getLoopbackAddress());
+		} catch (java.io.IOException e) {
+			throw new VFSOperationFailException("cannot listen on port "+port+" : "+e.getMessage());
+		}
+	}
+
+	/**
+	 * returns the port the server listens on
+	 * @return the port number
+	 */
+	public int getPort(){
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * accepts connections until the server is closed. each connection is served by a new thread.
+	 */
+	public void serve(){
+		while(!serverSocket.isClosed()){
+			final java.net.Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (java.io.IOException e) {
+				if(serverSocket.isClosed()) return;
+				continue;
+			}
+			Thread session = newThread(new Runnable(){
+				@Override
+				public void run(){
+					serve(socket);
+				}
+			});
+			session.setName("vfs-session-"+sessions.incrementAndGet());
+			session.start();
+		}
+	}
+
+	/**
+	 * runs a session for a client until it exits or disconnects
+	 * @param socket the client connection
+	 */
+	private void serve(java.net.Socket socket){
+		try {
+			java.io.PrintStream out = new java.io.PrintStream(socket.getOutputStream(), true);
+			new CommandInterpreter(socket.getInputStream(), out, vfsApp.openSession()).run();
+		} catch (java.io.IOException e) {
+			// the client is gone
+		} finally {
+			try {
+				socket.close();
+			} catch (java.io.IOException e) {
+				// nothing left to release
+			}
+		}
+	}
+
+	/**
+	 * stops accepting connections. the sessions running are not interrupted.
+	 */
+	public void close(){
+		try {
+			serverSocket.close();
+		} catch (java.io.IOException e) {
+			throw new VFSOperationFailException(e.getMessage());
+		}
+	}
+
+	/**
+	 * creates a thread that is not started, virtual if the Java runtime supports it
+	 * @param task the task of the thread
+	 * @return the new thread
+	 */
+	static Thread newThread(Runnable task){
+		try {
+			// Thread.ofVirtual().unstarted(task), looked up so that the server also runs on older runtimes
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			java.lang.reflect.Method unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+			return (Thread) unstarted.invoke(builder, task);
+		} catch (ReflectiveOperationException e) {
+			Thread thread = new Thread(task);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -1,8 +1,10 @@
 package core;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import tree.SimpleTreeNode;
 import exceptions.*;
@@ -19,6 +21,22 @@ public class Directory extends VNode{
 	
 	private static final long serialVersionUID = 9104109343882935613L;
 	
+	/** index of the content list by name. It is rebuilt from the content list when the directory is loaded */
+	private transient volatile ConcurrentHashMap<String,VNode> contentIndex;
+	/** read only view of the content list */
+	private transient List<VNode> contentView;
+	/** the virtual disk mounted on the directory, null if there is none. see {@link VirtualFileSystem#mount(String, VirtualFileSystem)} */
+	transient volatile VirtualFileSystem mountedDisk;
+	
+	/** number of files in the directory and its sub-directories */
+	long fileCount;
+	/** number of sub-directories at any depth */
+	long directoryCount;
+	/** number of data blocks allocated to the files of the directory and its sub-directories */
+	long blockCount;
+	/** depth of the deepest VNode of the directory's sub-tree, 0 if the directory is empty. it is read by the parent without lock */
+	volatile int maxDepth;
+	
 	/* ----------------------------constructors---------------------------- */
 	
 	/**
@@ -40,37 +58,154 @@ public class Directory extends VNode{
 	 * @throws NoFreeSpaceLeftException if the directory's virtual disk doesn't have enough free space to add this new VNode
 	 */
 	public void addVNode(VNode child){
-		if(getVirtualDisk()!=null && getVirtualDisk().getFreeSpace()<child.size) throw new NoFreeSpaceLeftException();
-		for(VNode c : getContentList()){
-			if(c.name.equals(child.name))
+		addVNode(child, child.size);
+	}
+	
+	/**
+	 * adds a VNode to the directory content list, see {@link #addVNode(VNode)}
+	 * @param child VNode to add as child in the tree structure
+	 * @param neededSpace free space needed by the VNode, 0 if its data blocks are already allocated
+	 * @throws NameAlreadyExistsException if the directory already contains a VNode with the same name in its content list
+	 * @throws NoFreeSpaceLeftException if the directory's virtual disk doesn't have the needed free space
+	 */
+	void addVNode(VNode child, long neededSpace){
+		VirtualFileSystem vd = virtualDisk;
+		if(vd!=null)
+			vd.lockDirectory(this);
+		try{
+			if(vd!=null && vd.getFreeSpace()<neededSpace) throw new NoFreeSpaceLeftException();
+			if(contains(child.name))
 				throw new NameAlreadyExistsException("\""+child.name + "\" already exists in \""+getAbsolutePathName()+"\"");
+			addChild(child);
+			childAdded(child);
+			if(vd!=null && !vd.isRegistered(child)){
+				// the child is new or comes from another virtual disk
+				if(child.virtualDisk!=null && child.virtualDisk!=vd)
+					child.virtualDisk.unregister(child);
+				child.setVirtualDisk(vd);
+				vd.register(child);
+			}
+		} finally {
+			if(vd!=null)
+				vd.unlockDirectory(this);
 		}
-		addSize(child.size);
-		child.absolutePath = getAbsolutePathName();
-		child.virtualDisk = this.virtualDisk;
-		if(child.isDirectory()) child.refreshAbsolutePathToAllChildren();
-		addChild(child);
 	}
 	
 	
 	void addChild(VNode child){
+		if(virtualDisk!=null)
+			virtualDisk.changing(this);
 		super.addChild(child);
+		getContentIndex().put(child.name, child);
+		if(virtualDisk!=null)
+			virtualDisk.attached(this, child);
+	}
+	
+	/**
+	 * puts back a VNode at a given position of the content list, without updating the statistics.
+	 * It is used to roll back a transaction, see {@link VirtualFileSystem#transaction(Runnable)}.
+	 * @param child VNode to put back
+	 * @param index its previous position in the content list
+	 */
+	void insertChild(VNode child, int index){
+		super.addChild(child);
+		if(index<children.size()-1){
+			children.remove(children.size()-1);
+			children.add(index, child);
+		}
+		getContentIndex().put(child.name, child);
+	}
+	
+	/**
+	 * removes a VNode from the index of the content list. 
+	 * It must be called before the VNode is removed from the content list.
+	 * @param child VNode to remove from the index
+	 */
+	void removeFromContentIndex(VNode child){
+		getContentIndex().remove(child.name, child);
+	}
+	
+	/**
+	 * changes the name of a VNode in the index of the content list. 
+	 * @param child VNode to rename
+	 * @param newName the new name of the VNode
+	 * @throws NameAlreadyExistsException if the directory already contains a VNode with the new name
+	 */
+	void renameInContentIndex(VNode child, String newName){
+		if(contains(newName))
+			throw new NameAlreadyExistsException("\""+newName + "\" already exists in \""+getAbsolutePathName()+"\"");
+		removeFromContentIndex(child);
+		getContentIndex().put(newName, child);
+	}
+	
+	/**
+	 * returns the index of the content list by name. It is built the first time it is needed.
+	 * @return the map of the content list by name
+	 */
+	private ConcurrentHashMap<String,VNode> getContentIndex(){
+		ConcurrentHashMap<String,VNode> index = contentIndex;
+		if(index==null){
+			synchronized(this){
+				index = contentIndex;
+				if(index==null){
+					index = new ConcurrentHashMap<String,VNode>();
+					for(VNode c : getContentList()){
+						index.put(c.name, c);
+					}
+					contentIndex = index;
+				}
+			}
+		}
+		return index;
 	}
 	
 	/* ----------------------------getters---------------------------- */
 	
 	/**
-	 * returns the list of content in the directory (files/directories)
+	 * returns a copy of the list of content in the directory (files/directories).
+	 * The copy can be used to modify the directory while iterating. Use {@link #getContent()} otherwise.
 	 * @return list of VNodes included in the directory
 	 */
 	public List<VNode> getContentList(){
 		List<VNode> childrenList = new Vector<VNode>();
-		for(SimpleTreeNode c : super.getChildrenList()){
-			childrenList.add((VNode)c);
+		List<SimpleTreeNode> children = super.getChildrenList();
+		synchronized(children){
+			for(SimpleTreeNode c : children){
+				childrenList.add((VNode)c);
+			}
 		}
 		return childrenList;
 	}
 	
+	/**
+	 * returns a read only view of the list of content in the directory (files/directories).
+	 * no copy is made, so the directory must not be modified while iterating.
+	 * @return list of VNodes included in the directory
+	 */
+	@SuppressWarnings("unchecked")
+	public List<VNode> getContent(){
+		if(contentView==null)
+			contentView = Collections.unmodifiableList((List<VNode>)(List<?>) super.getChildrenList());
+		return contentView;
+	}
+	
+	/**
+	 * checks if the directory contains a file/directory with the given name
+	 * @param name name of the file/directory
+	 * @return true if a VNode with the given name is included in the directory
+	 */
+	public boolean contains(String name){
+		return getContentIndex().containsKey(name);
+	}
+	
+	/**
+	 * returns the virtual disk mounted on the directory. the path names going through the directory lead to its root directory.
+	 * @return the mounted virtual disk, or null if the directory is not a mount point
+	 */
+	public VirtualFileSystem getMountedDisk(){
+		return mountedDisk;
+	}
+	
 	/**
 	 * returns the number of files/directories included in the directory
 	 * @return the size of the content list
@@ -86,10 +221,9 @@ public class Directory extends VNode{
 	 * @return the reference to the directory found if its found
 	 */
 	public Directory getDirectory(String name){
-		for(VNode n : getContentList()){
-			if(n.name.equals(name) && n.type.equals("directory"))
-				return (Directory) n;
-		}
+		VNode n = getContentIndex().get(name);
+		if(n!=null && n.isDirectory())
+			return (Directory) n;
 		throw new NoSuchDirectoryException();
 	}
 	
@@ -100,15 +234,15 @@ public class Directory extends VNode{
 	 * @return the reference to the file found if its found
 	 */
 	public File getFile(String name){
-		for(VNode n : getContentList()){
-			if(n.name.equals(name) && n.type.equals("file"))
-				return (File) n;
-		}
+		VNode n = getContentIndex().get(name);
+		if(n!=null && n.isFile())
+			return (File) n;
 		throw new NoSuchFileException();
 	}
 	
 	/**
 	 * returns the VNode at the relative path given as argument starting from the receiver.
+	 * the path crosses the mount points: a directory where a virtual disk is mounted leads to its root directory.
 	 * @param relatifPathName the string path name of the VNode. It must be relative to the receiver directory.
 	 * @throws NoSuchFileOrDirectoryException if no VNode found.
 	 * @return a reference to the found VNode.
@@ -124,27 +258,21 @@ public class Directory extends VNode{
 		
 		String[] names = relatifPathName.split(VirtualFileSystem.separator);
 		for(int i=0;i<names.length;i++){
-			boolean found = false;
 			if(names[i].equals(".")){
-				found = true;
 				continue;
 			}
 			if(names[i].equals("..")){
-				if(currentNode.getParent()!=null)
-					currentNode = currentNode.getParent();
-				
-				found = true;
+				if(currentNode.up()!=null)
+					currentNode = currentNode.up();
 				continue;
 			}
 			if(currentNode.isFile()) return null;
-			List<VNode> children = ((Directory)currentNode).getContentList();
-			for(VNode child: children){
-				if(child.name.equals(names[i])){
-					currentNode=child;
-					found = true;
-				}
+			VNode child = ((Directory)currentNode).getContentIndex().get(names[i]);
+			if(child!=null){
+				VirtualFileSystem mounted = (child.isDirectory())?((Directory)child).mountedDisk:null;
+				currentNode = (mounted!=null)?mounted.rootDirectory:child;
 			}
-			if(!found) throw new NoSuchFileOrDirectoryException("\""+currentNode.getAbsolutePathName()+names[i] + "\" does not exist");
+			else throw new NoSuchFileOrDirectoryException("\""+currentNode.getAbsolutePathName()+names[i] + "\" does not exist");
 		}
 		if(lookingForDirectory && !currentNode.isDirectory())
 			throw new NoSuchFileOrDirectoryException("\""+currentNode.getAbsolutePathName()+ "\" is not a directory");
@@ -153,66 +281,398 @@ public class Directory extends VNode{
 	}
 
 	
-	/** search for files/directories linked to the receiver's node in the virtual file system
+	/** search for files/directories linked to the receiver's node in the virtual file system.
+	 * the search uses the name index of the virtual disk, see {@link NameIndex}.
 	 * @param name of the file/directory to search for 
-	 * @return a list of found files/directories
+	 * @return a list of found files/directories sorted by absolute path name
 	 */
 	public List<VNode> find(String name){
+		if(getVirtualDisk()!=null && getVirtualDisk().isRegistered(this))
+			return getVirtualDisk().find(this, name);
+		
+		// the directory does not belong to the tree of its virtual disk (snapshot copy)
 		List<VNode> results = new ArrayList<VNode>();
-		for(VNode child : getContentList()){
-			if(child.name.equals(name))
-				results.add(child);
-			if(child.isDirectory())
-				results.addAll(((Directory)child).find(name));
+		java.util.Iterator<VNode> it = VirtualFileSystem.walk(this, new WalkOptions().includeRoot(false)).iterator();
+		while(it.hasNext()){
+			VNode node = it.next();
+			if(node.name.equals(name))
+				results.add(node);
 		}
 			
 		return results;
 	}
 	
+	/**
+	 * checks if a VNode is included in the directory or in one of its sub-directories
+	 * @param node VNode to check
+	 * @return true if the directory is one of the parents of the VNode
+	 */
+	public boolean isAncestorOf(VNode node){
+		for(VNode p = node.getParent(); p!=null; p = p.getParent()){
+			if(p==this)
+				return true;
+		}
+		return false;
+	}
+	
+	/* ----------------------------statistics---------------------------- */
+	
+	/**
+	 * returns the number of files in the directory and all its sub-directories. It is maintained when the tree changes.
+	 * @return number of files
+	 */
+	public long getFileCount(){
+		return fileCount;
+	}
+	
+	/**
+	 * returns the number of sub-directories of the directory at any depth.
+	 * @return number of directories, the receiver excluded
+	 */
+	public long getDirectoryCount(){
+		return directoryCount;
+	}
+	
+	/**
+	 * returns the number of data blocks allocated to the files of the directory and all its sub-directories.
+	 * @return number of blocks
+	 */
+	public long getBlockCount(){
+		return blockCount;
+	}
+	
+	/**
+	 * returns the depth of the deepest file/directory of the directory's sub-tree. The children are at depth 1.
+	 * @return the maximum depth, 0 if the directory is empty
+	 */
+	public int getMaxDepth(){
+		return maxDepth;
+	}
+	
+	/**
+	 * updates the statistics of the directory and its parents when a VNode is added to its content
+	 * @param child the VNode added
+	 */
+	void childAdded(VNode child){
+		StatsDelta delta = statsOf(child, 1);
+		delta.addedDepth = depthIn(child);
+		addStats(delta);
+	}
+	
+	/**
+	 * updates the statistics of the directory and its parents when a VNode is removed from its content.
+	 * It must be called after the VNode is removed from the content list.
+	 * @param child the VNode removed
+	 */
+	void childRemoved(VNode child){
+		StatsDelta delta = statsOf(child, -1);
+		delta.removed = depthIn(child)>=maxDepth;
+		addStats(delta);
+	}
+	
+	/**
+	 * applies a change of statistics to the directory and all its parents.
+	 * during a batch, the change is applied when the batch ends (see {@link VirtualFileSystem#batch(Runnable)}).
+	 * the statistics of a directory that is not linked to its virtual disk's tree are not maintained.
+	 * @param delta change to apply
+	 */
+	void addStats(StatsDelta delta){
+		if(isRoot() && (virtualDisk==null || virtualDisk.rootDirectory!=this)) return;
+		if(virtualDisk!=null && virtualDisk.isBatching()){
+			virtualDisk.deferStats(this, delta);
+			return;
+		}
+		VFSEvents.StatsPropagation event = VFSEvents.beginStats();
+		propagateStats(delta);
+		VFSEvents.commit(event, virtualDisk, 1);
+	}
+	
+	/**
+	 * applies a change of statistics to the directory and all its parents, one directory after the other.
+	 * Only the directory being changed is locked, so changes of different directories only wait for each other on
+	 * their common parents. The sizes and counts are added, and a parent whose child is less deep computes its maximum
+	 * depth again from its children: the last change applied to a parent sees the changes of all its children.
+	 * @param delta change to apply
+	 */
+	private void propagateStats(StatsDelta delta){
+		for(Directory d = this; d!=null; d = d.getParent())
+			delta = d.applyStats(delta);
+	}
+	
+	/**
+	 * applies a change of statistics to the directory only
+	 * @param delta change to apply
+	 * @return the change of the parent: the same sizes and counts, and the change of depth of the directory
+	 */
+	synchronized StatsDelta applyStats(StatsDelta delta){
+		size += delta.size;
+		fileCount += delta.files;
+		directoryCount += delta.directories;
+		blockCount += delta.blocks;
+		int oldDepth = maxDepth;
+		if(delta.removed)
+			maxDepth = computeMaxDepth(Math.max(maxDepth, delta.addedDepth));
+		else if(delta.addedDepth>maxDepth)
+			maxDepth = delta.addedDepth;
+		
+		StatsDelta parentDelta = new StatsDelta();
+		parentDelta.size = delta.size;
+		parentDelta.files = delta.files;
+		parentDelta.directories = delta.directories;
+		parentDelta.blocks = delta.blocks;
+		if(maxDepth>oldDepth)
+			parentDelta.addedDepth = maxDepth+1;
+		else if(maxDepth<oldDepth)
+			parentDelta.removed = true;
+		return parentDelta;
+	}
+	
+	/**
+	 * computes the statistics of the directory and all its sub-directories from the tree structure.
+	 * It is used for virtual disks saved before the statistics were maintained and after a snapshot is restored.
+	 */
+	void computeStats(){
+		size = 0;
+		fileCount = 0;
+		directoryCount = 0;
+		blockCount = 0;
+		for(VNode child : getContent()){
+			if(child.isDirectory())
+				((Directory)child).computeStats();
+			StatsDelta delta = statsOf(child, 1);
+			size += delta.size;
+			fileCount += delta.files;
+			directoryCount += delta.directories;
+			blockCount += delta.blocks;
+		}
+		maxDepth = computeMaxDepth(Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * computes the maximum depth of the directory from its children.
+	 * the computation stops as soon as a child reaches the given bound, so that removing one of many files is cheap.
+	 * @param bound a value that the maximum depth cannot exceed
+	 * @return the maximum depth
+	 */
+	private int computeMaxDepth(int bound){
+		int depth = 0;
+		List<SimpleTreeNode> children = super.getChildrenList();
+		synchronized(children){
+			for(SimpleTreeNode child : children){
+				depth = Math.max(depth, depthIn((VNode) child));
+				if(depth>=bound) break;
+			}
+		}
+		return depth;
+	}
+	
+	/**
+	 * returns the depth of the deepest VNode of a child's sub-tree relatively to its parent
+	 * @param child a child VNode
+	 * @return the depth
+	 */
+	private static int depthIn(VNode child){
+		return (child.isDirectory())?((Directory)child).maxDepth+1:1;
+	}
+	
+	/**
+	 * returns the statistics of a VNode's sub-tree as a change
+	 * @param node a VNode
+	 * @param sign 1 if the VNode is added, -1 if it is removed
+	 * @return the change of statistics
+	 */
+	private static StatsDelta statsOf(VNode node, int sign){
+		StatsDelta delta = new StatsDelta();
+		delta.size = sign*node.size;
+		if(node.isDirectory()){
+			Directory d = (Directory) node;
+			delta.files = sign*d.fileCount;
+			delta.directories = sign*(d.directoryCount+1);
+			delta.blocks = sign*d.blockCount;
+		}
+		else{
+			delta.files = sign;
+			delta.blocks = sign*((File)node).getBlockCount();
+		}
+		return delta;
+	}
+	
 	/* ----------------------------VFS operations---------------------------- */
 	
+	/**
+	 * exports the directory and all its content. the host directories are created first in one traversal, 
+	 * then the files are exported in parallel as each one only reads its own blocks.
+	 */
 	@Override
-	public void exportToHostFileSystem(String exportPath) {
+	void exportToHostFileSystem(String exportPath, final Progress progress) {
+		exportToHostFileSystem(exportPath, name, progress);
+	}
+	
+	/**
+	 * exports the directory and all its content under another name on the host file system, see {@link #exportToHostFileSystem(String, Progress)}.
+	 * The root directory, whose name is empty, is exported under the name of its virtual disk without being renamed.
+	 * @param exportPath the path to where the directory will be exported on the host file system
+	 * @param hostName name of the directory on the host file system
+	 * @param progress progress of the export, or null
+	 * @throws VFSOperationFailException if operation fails
+	 * @throws OperationCanceledException if the export is canceled
+	 */
+	void exportToHostFileSystem(String exportPath, String hostName, final Progress progress) {
+		VirtualFileSystem vd = getVirtualDisk();
+		long start = Metrics.begin();
+		VFSEvents.Operation event = VFSEvents.begin(Metrics.Export, this, null);
+		try{
+			exportTree(exportPath, hostName, progress);
+		} finally {
+			vd.getMetrics().end(Metrics.Export, start);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * creates the host directories of the sub-tree, then exports the files in parallel, see {@link #exportToHostFileSystem(String, Progress)}
+	 * @param exportPath the path to where the directory will be exported on the host file system
+	 * @param hostName name of the directory on the host file system
+	 * @param progress progress of the export, or null
+	 */
+	private void exportTree(String exportPath, final String hostName, final Progress progress) {
 		if(!exportPath.endsWith(VirtualFileSystem.HFSSeparator))
 			exportPath = exportPath + VirtualFileSystem.HFSSeparator;
-		java.io.File exportDirectory = new java.io.File(exportPath +name);
-		if(exportDirectory.mkdirs()){
-			for(VNode child : getContentList()){
-				child.exportToHostFileSystem(exportDirectory.getAbsolutePath());
+		final String basePath = exportPath;
+		
+		java.util.Iterator<VNode> it = VirtualFileSystem.walk(this).iterator();
+		while(it.hasNext()){
+			VNode node = it.next();
+			if(!node.isDirectory()) continue;
+			if(progress!=null)
+				progress.check();
+			java.io.File exportDirectory = new java.io.File(basePath + getHostRelativePath(node, hostName));
+			if(!exportDirectory.mkdirs())
+				throw new VFSOperationFailException("Cannot export \""+node.getAbsolutePathName()+"\" to host file system \""
+						+exportDirectory.getAbsolutePath()+"\"");
+		}
+		
+		VirtualFileSystem.walk(this).parallel().filter(new java.util.function.Predicate<VNode>(){
+			@Override
+			public boolean test(VNode node){
+				return node.isFile();
 			}
+		}).forEach(new java.util.function.Consumer<VNode>(){
+			@Override
+			public void accept(VNode file){
+				// the files are exported by other threads, they are part of the export of the directory
+				((File) file).exportData(basePath + getHostRelativePath(file.getParent(), hostName), progress);
+			}
+		});
+	}
+	
+	/**
+	 * returns the path of a VNode of the directory's sub-tree relative to the parent of the directory, using the host separator.
+	 * @param node a VNode of the sub-tree
+	 * @param hostName name of the directory on the host file system
+	 * @return relative path of the VNode, starting with the host name of the directory
+	 */
+	private String getHostRelativePath(VNode node, String hostName){
+		StringBuilder path = new StringBuilder((node==this)?hostName:node.name);
+		for(VNode p = node; p!=this; ){
+			p = p.getParent();
+			path.insert(0, VirtualFileSystem.HFSSeparator).insert(0, (p==this)?hostName:p.name);
 		}
-		else throw new VFSOperationFailException("Cannot export \""+this.getAbsolutePathName()+"\" to host file system \""
-						+exportDirectory.getAbsolutePath()+"\"");
-			
+		return path.toString();
 	}
 	
 	@Override
 	public void copy(Directory newDirectory) {
-		Directory cp = new Directory(name);
-		newDirectory.addVNode(cp);
-		for(VNode child : getContentList()){
-			child.copy(cp);
+		VirtualFileSystem vd = getVirtualDisk();
+		VirtualFileSystem vdOut = newDirectory.getVirtualDisk();
+		long start = Metrics.begin();
+		VFSEvents.Operation event = VFSEvents.begin(Metrics.Copy, this, null);
+		// the copies to another virtual disk lock it too, in the same order whatever the direction of the copy
+		VirtualFileSystem.lockTrees(vd, vdOut);
+		try{
+			Directory cp = new Directory(name);
+			newDirectory.addVNode(cp);
+			for(VNode child : getContentList()){
+				child.copy(cp);
+			}
+		} finally {
+			VirtualFileSystem.unlockTrees(vd, vdOut);
+			vd.getMetrics().end(Metrics.Copy, start);
+			event.commit();
 		}
 	}
 	
+	/**
+	 * moves the directory to another directory. On another virtual disk the data blocks cannot follow the VNodes:
+	 * the directory is copied there, then removed, and the receiver is not used anymore.
+	 */
 	@Override
 	public void move(Directory newDirectory){
-		long tmp = size;
-		addSize(-size);
-		size = tmp;
-		this.cutLinkToTree();
-		newDirectory.addVNode(this);
-		if(this.equals(getVirtualDisk().getWorkingDirectory()))
-			getVirtualDisk().navigate(((getParent()==null)?getParent().getAbsolutePathName():VirtualFileSystem.separator));
+		VirtualFileSystem vd = getVirtualDisk();
+		long start = Metrics.begin();
+		VFSEvents.Operation event = VFSEvents.begin(Metrics.Move, this, null);
+		try{
+			moveTree(newDirectory);
+		} finally {
+			vd.getMetrics().end(Metrics.Move, start);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * moves the directory to another directory, see {@link #move(Directory)}
+	 * @param newDirectory directory where the directory is moved
+	 */
+	private void moveTree(Directory newDirectory){
+		VirtualFileSystem vd = getVirtualDisk();
+		if(newDirectory.getVirtualDisk()!=vd){
+			vd.checkNoTransaction("move \""+getAbsolutePathName()+"\" to another virtual disk");
+			vd.checkNoMountPointIn(this);
+			copy(newDirectory);
+			remove();
+			return;
+		}
+		vd.lockTree();
+		try{
+			vd.flushStats();			// the statistics of the directory must be up to date
+			Directory oldParent = getParent();
+			this.cutLinkToTree();
+			if(oldParent!=null)
+				oldParent.childRemoved(this);
+			vd.getPathCache().invalidate();
+			newDirectory.addVNode(this);
+			if(this.equals(getVirtualDisk().getWorkingDirectory()))
+				getVirtualDisk().navigate(((getParent()==null)?getParent().getAbsolutePathName():VirtualFileSystem.separator));
+		} finally {
+			vd.unlockTree();
+		}
 	}
 
 	@Override
 	public void remove(){
-		if(this.equals(getVirtualDisk().getWorkingDirectory()))
-			getVirtualDisk().navigate("..");
-		for(VNode child : getContentList()){
-			child.remove();
+		VirtualFileSystem vd = getVirtualDisk();
+		vd.checkNoMountPointIn(this);
+		long start = Metrics.begin();
+		VFSEvents.Operation event = VFSEvents.begin(Metrics.Remove, this, null);
+		vd.lockTree();
+		try{
+			if(this.equals(vd.getWorkingDirectory()))
+				vd.navigate("..");
+			vd.flushStats();
+			// the statistics of the parents are updated once, then the directory is detached so that 
+			// removing its content does not walk up to the root for each file
+			Directory oldParent = getParent();
+			this.cutLinkToTree();
+			if(oldParent!=null)
+				oldParent.childRemoved(this);
+			for(VNode child : getContentList()){
+				child.remove();
+			}
+			vd.unregister(this);
+		} finally {
+			vd.unlockTree();
+			vd.getMetrics().end(Metrics.Remove, start);
+			event.commit();
 		}
-		this.cutLinkToTree();
 	}
 }
@@ -0,0 +1,155 @@
+package core;
+
+import exceptions.*;
+
+/**
+ * A virtual disk known by a {@link VFSApp}.
+ * A virtual disk found on the host file system is registered from the header of its file only: its virtual file system
+ * is loaded (mounted) the first time it is used. A mounted virtual disk that is not used for a while can be unmounted
+ * to release its memory, it is saved first and mounted again the next time it is used.
+ *
+ * @author ayoub
+ */
+class DiskEntry {
+
+	/* ----------------------------attributes---------------------------- */
+
+	/** name of the virtual file system */
+	final String name;
+	/** the registry of the virtual disk, told when it is mounted or unmounted */
+	private final DiskRegistry registry;
+	/** the virtual file system, null if it is not mounted */
+	private volatile VirtualFileSystem vfs;
+	/** time of the last use of the virtual file system in nanoseconds, see {@link System#nanoTime()} */
+	private volatile long lastUse;
+	/** absolute path name of the working directory when the virtual file system was unmounted, null if it was not */
+	private String workingDirectory;
+
+	/* ----------------------------constructors---------------------------- */
+
+	/**
+	 * creates the entry of a virtual file system already in memory
+	 * @param vfs the virtual file system
+	 * @param registry the registry of the virtual disk
+	 */
+	DiskEntry(VirtualFileSystem vfs, DiskRegistry registry){
+		this.name = vfs.name;
+		this.registry = registry;
+		this.vfs = vfs;
+		this.lastUse = System.nanoTime();
+	}
+
+	/**
+	 * creates the entry of a virtual disk file that is not mounted
+	 * @param name name of the virtual file system
+	 * @param registry the registry of the virtual disk
+	 */
+	private DiskEntry(String name, DiskRegistry registry){
+		this.name = name;
+		this.registry = registry;
+	}
+
+	/**
+	 * registers a virtual disk file from its header, without reading the virtual file system.
+	 * the header must refer to serialized data that is included in the file.
+	 * @param file a virtual disk file on the host file system
+	 * @param registry the registry of the virtual disk
+	 * @return the entry of the virtual disk, or null if the file is not a virtual disk file
+	 */
+	static DiskEntry fromHeader(java.io.File file, DiskRegistry registry){
+		String fileName = file.getName();
+		if(!file.isFile() || !fileName.endsWith(VirtualFileSystem.VDFileExtension))
+			return null;
+		java.io.DataInputStream header = null;
+		try{
+			header = new java.io.DataInputStream(new java.io.FileInputStream(file));
+			int objectDataLength = header.readInt();
+			long objectDataPosition = header.readLong();
+			if(objectDataLength<=0 || objectDataPosition<VirtualFileSystem.firstBlockPosition
+					|| (objectDataPosition-VirtualFileSystem.firstBlockPosition)%VirtualFileSystem.BlockSize!=0
+					|| objectDataPosition+objectDataLength>file.length())
+				return null;
+		} catch (java.io.IOException e){
+			return null;
+		} finally {
+			try{
+				if(header!=null) header.close();
+			} catch (java.io.IOException e){
+				// nothing was written
+			}
+		}
+		return new DiskEntry(fileName.substring(0, fileName.length()-VirtualFileSystem.VDFileExtension.length()), registry);
+	}
+
+	/* ----------------------------mounting---------------------------- */
+
+	/**
+	 * returns the virtual file system, it is mounted if it is not.
+	 * @return the virtual file system
+	 * @throws VFSOperationFailException if the virtual disk file cannot be read
+	 */
+	VirtualFileSystem get(){
+		lastUse = System.nanoTime();
+		VirtualFileSystem mounted = vfs;
+		if(mounted==null){
+			boolean loaded = false;
+			synchronized(this){
+				mounted = vfs;
+				if(mounted==null){
+					mounted = new VirtualFileSystem(name);
+					if(workingDirectory!=null){
+						try{
+							mounted.navigate(workingDirectory);
+						} catch (RuntimeException e){
+							// the working directory stays at the root
+						}
+					}
+					vfs = mounted;
+					loaded = true;
+				}
+			}
+			if(loaded)
+				registry.mounted(mounted);
+		}
+		return mounted;
+	}
+
+	/**
+	 * checks if the virtual file system is in memory
+	 * @return true if the virtual file system is mounted
+	 */
+	boolean isMounted(){
+		return vfs!=null;
+	}
+
+	/**
+	 * returns the virtual file system if it is mounted, without mounting it
+	 * @return the virtual file system or null
+	 */
+	VirtualFileSystem getIfMounted(){
+		return vfs;
+	}
+
+	/**
+	 * saves and unmounts the virtual file system if it has not been used for a given time and no operation is running on it.
+	 * a virtual file system mounted on another one, or with other ones mounted on it, stays in memory.
+	 * @param idleTime time in nanoseconds
+	 * @return true if the virtual file system was unmounted
+	 * @throws VFSOperationFailException if the virtual file system cannot be saved, it stays mounted then
+	 */
+	synchronized boolean unmountIfIdle(long idleTime){
+		VirtualFileSystem mounted = vfs;
+		if(mounted==null || System.nanoTime()-lastUse<idleTime || mounted.isBusy() || mounted.hasMounts())
+			return false;
+		mounted.save();
+		// the virtual file system may have been taken while it was saved
+		if(System.nanoTime()-lastUse<idleTime)
+			return false;
+		workingDirectory = mounted.getWorkingDirectory().getAbsolutePathName();
+		vfs = null;
+		mounted.getMetrics().addTo(registry.getUnmountedMetrics());
+		registry.unmounted(name);
+		return true;
+	}
+
+}
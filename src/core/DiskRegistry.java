@@ -0,0 +1,251 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import exceptions.*;
+
+/**
+ * The virtual disks known by a {@link VFSApp} and its sessions, by name.
+ * Lookups do not lock: finding a virtual disk costs the same whatever the number of virtual disks.
+ * The registry tells its listeners when a virtual disk is mounted or unmounted and unmounts the virtual disks that are not used,
+ * see {@link DiskEntry}. It keeps the metrics of the virtual disks unmounted and registers the MXBeans of the metrics.
+ *
+ * @author ayoub
+ */
+class DiskRegistry {
+
+	/* ----------------------------attributes---------------------------- */
+
+	/** the next registry id */
+	private static final java.util.concurrent.atomic.AtomicInteger RegistryIDs = new java.util.concurrent.atomic.AtomicInteger();
+
+	/** name of the registry in the object names of the MXBeans */
+	final String name = "vfsapp"+RegistryIDs.getAndIncrement();
+	/** the virtual disks by name */
+	private final ConcurrentHashMap<String,DiskEntry> disks = new ConcurrentHashMap<String,DiskEntry>();
+	/** listeners of the virtual disks mounted and unmounted */
+	private final CopyOnWriteArrayList<MountListener> listeners = new CopyOnWriteArrayList<MountListener>();
+	/** thread unmounting the virtual disks that are not used, null if they stay mounted */
+	private java.util.concurrent.ScheduledExecutorService unmounter = null;
+	/** counters of the operations of the virtual disks unmounted or removed */
+	private final Metrics unmountedMetrics = new Metrics();
+	/** name of the MXBean of the metrics of all the virtual disks, null if the MXBeans are not registered */
+	private javax.management.ObjectName mbeanName = null;
+	/** listener registering the MXBeans of the virtual disks mounted, null if the MXBeans are not registered */
+	private MountListener mbeanListener = null;
+
+	/* ----------------------------virtual disks---------------------------- */
+
+	/**
+	 * returns a virtual disk
+	 * @param name name of the virtual file system
+	 * @return the entry of the virtual disk, or null if there is none with this name
+	 */
+	DiskEntry get(String name){
+		return disks.get(name);
+	}
+
+	/**
+	 * adds a virtual disk to the registry
+	 * @param disk the entry of the virtual disk
+	 * @return false if there is already a virtual disk with the same name, the registry is not changed then
+	 */
+	boolean add(DiskEntry disk){
+		return disks.putIfAbsent(disk.name, disk)==null;
+	}
+
+	/**
+	 * removes a virtual disk from the registry
+	 * @param name name of the virtual file system
+	 * @return the entry removed, or null if there was none
+	 */
+	DiskEntry remove(String name){
+		DiskEntry disk = disks.remove(name);
+		VirtualFileSystem vfs = (disk!=null)?disk.getIfMounted():null;
+		if(vfs!=null){
+			vfs.getMetrics().addTo(unmountedMetrics);
+			unmounted(name);
+		}
+		return disk;
+	}
+
+	/**
+	 * returns the virtual disks sorted by name
+	 * @return a list of entries
+	 */
+	List<DiskEntry> getDisks(){
+		List<DiskEntry> sorted = new ArrayList<DiskEntry>(disks.values());
+		Collections.sort(sorted, new java.util.Comparator<DiskEntry>(){
+			@Override
+			public int compare(DiskEntry a, DiskEntry b){
+				return a.name.compareTo(b.name);
+			}
+		});
+		return sorted;
+	}
+
+	/**
+	 * checks if the registry is empty
+	 * @return true if no virtual disk is known
+	 */
+	boolean isEmpty(){
+		return disks.isEmpty();
+	}
+
+	/**
+	 * returns the VNode at an absolute path name: the virtual disk is found by the name at the start of the path name
+	 * @param absolutePathName path name of the form "vfsName:/path"
+	 * @return the VNode
+	 * @throws NoSuchVirtualFileSystemException if no virtual disk has the name of the path
+	 * @throws NoSuchFileOrDirectoryException if no VNode is found
+	 */
+	VNode resolve(String absolutePathName){
+		String name = Path.getVfsName(absolutePathName);
+		DiskEntry disk = disks.get(name);
+		if(disk==null) throw new NoSuchVirtualFileSystemException("\""+name+"\" does not exist");
+		return disk.get().get(absolutePathName);
+	}
+
+	/* ----------------------------mount events---------------------------- */
+
+	/**
+	 * adds a listener of the virtual disks mounted and unmounted
+	 * @param listener the listener
+	 */
+	void addListener(MountListener listener){
+		listeners.add(listener);
+	}
+
+	/**
+	 * removes a listener added with {@link #addListener(MountListener)}
+	 * @param listener the listener
+	 */
+	void removeListener(MountListener listener){
+		listeners.remove(listener);
+	}
+
+	/**
+	 * tells the listeners that a virtual file system is mounted
+	 * @param vfs the virtual file system
+	 */
+	void mounted(VirtualFileSystem vfs){
+		for(MountListener listener : listeners)
+			listener.mounted(vfs);
+	}
+
+	/**
+	 * tells the listeners that a virtual file system is unmounted
+	 * @param name name of the virtual file system
+	 */
+	void unmounted(String name){
+		for(MountListener listener : listeners)
+			listener.unmounted(name);
+	}
+
+	/* ----------------------------metrics---------------------------- */
+
+	/**
+	 * returns the counters of the operations of the virtual disks that were unmounted or removed
+	 * @return the metrics
+	 */
+	Metrics getUnmountedMetrics(){
+		return unmountedMetrics;
+	}
+
+	/**
+	 * registers the MXBean of the metrics of all the virtual disks, "core:type=VFSApp,name=&lt;name&gt;", and those of the virtual disks 
+	 * while they are mounted, "core:type=VirtualFileSystem,app=&lt;name&gt;,name=&lt;vfs name&gt;", see {@link VFSApp#registerMBeans()}
+	 * @return the object name of the MXBean of all the virtual disks
+	 */
+	synchronized javax.management.ObjectName registerMBeans(){
+		if(mbeanName!=null) return mbeanName;
+		javax.management.ObjectName objectName = MetricsBean.getObjectName("type=VFSApp,name="+name);
+		MetricsBean.register(new MetricsBean.App(name, this), objectName);
+		mbeanListener = new MountListener(){
+			@Override
+			public void mounted(VirtualFileSystem vfs){
+				try{
+					MetricsBean.register(new MetricsBean.Disk(vfs), getDiskObjectName(vfs.name));
+				} catch (VFSOperationFailException e){
+					// already registered by another mount
+				}
+			}
+			@Override
+			public void unmounted(String vfsName){
+				MetricsBean.unregister(getDiskObjectName(vfsName));
+			}
+		};
+		addListener(mbeanListener);
+		for(DiskEntry disk : getDisks()){
+			VirtualFileSystem vfs = disk.getIfMounted();
+			if(vfs!=null)
+				mbeanListener.mounted(vfs);
+		}
+		mbeanName = objectName;
+		return objectName;
+	}
+
+	/**
+	 * unregisters the MXBeans registered by {@link #registerMBeans()}, nothing is done if they are not registered
+	 */
+	synchronized void unregisterMBeans(){
+		if(mbeanName==null) return;
+		removeListener(mbeanListener);
+		for(DiskEntry disk : getDisks())
+			MetricsBean.unregister(getDiskObjectName(disk.name));
+		MetricsBean.unregister(mbeanName);
+		mbeanListener = null;
+		mbeanName = null;
+	}
+
+	/**
+	 * returns the object name of the MXBean of a virtual disk
+	 * @param vfsName name of the virtual file system
+	 * @return the object name
+	 */
+	private javax.management.ObjectName getDiskObjectName(String vfsName){
+		return MetricsBean.getObjectName("type=VirtualFileSystem,app="+name+",name="+javax.management.ObjectName.quote(vfsName));
+	}
+
+	/* ----------------------------unmounting---------------------------- */
+
+	/**
+	 * unmounts the virtual disks that are not used for a given time, see {@link VFSApp#setIdleTimeout(long)}
+	 * @param milliseconds time after which a virtual disk that is not used is unmounted, 0 to keep the virtual disks mounted
+	 */
+	synchronized void setIdleTimeout(long milliseconds){
+		if(unmounter!=null){
+			unmounter.shutdown();
+			unmounter = null;
+		}
+		if(milliseconds<=0) return;
+
+		final long idleTime = java.util.concurrent.TimeUnit.MILLISECONDS.toNanos(milliseconds);
+		unmounter = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(new java.util.concurrent.ThreadFactory(){
+			@Override
+			public Thread newThread(Runnable task){
+				Thread thread = new Thread(task, "vfs-unmounter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		long period = Math.max(1L, milliseconds/2);
+		unmounter.scheduleWithFixedDelay(new Runnable(){
+			@Override
+			public void run(){
+				for(DiskEntry disk : disks.values()){
+					try{
+						disk.unmountIfIdle(idleTime);
+					} catch (RuntimeException e){
+						// the virtual disk stays mounted, it is saved again next time
+					}
+				}
+			}
+		}, period, period, java.util.concurrent.TimeUnit.MILLISECONDS);
+	}
+
+}
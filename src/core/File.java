@@ -5,9 +5,9 @@ import exceptions.*;
 
 /**
  * A representation of a file in the virtual file system.
- * This class doesn't contain any attributes where to store binary data. 
- * However, it contains a long value containing the position of the first block of data on the virtual disk file.
- * see {@link VirtualFileSystem}.
+ * The data of a file is stored in a chain of data blocks on the virtual disk file and the file contains the position
+ * of the first block, see {@link VirtualFileSystem}. The data of a tiny file is stored inline in the file itself,
+ * with no data block, see {@link VirtualFileSystem#getInlineThreshold()}.
  * 
  * @author ayoub
  */
@@ -22,6 +22,12 @@ public class File extends VNode{
 	 */
 	private long firstBlockPosition;
 	
+	/**
+	 * the data of the file if it is stored inline, null if it is stored in data blocks.
+	 * the array is never changed, it is replaced: it can be shared with the states of the file kept by the snapshots.
+	 */
+	private byte[] inlineData;
+	
 	/* each block has the following form:  (a total size of BlockSize)
 	 * +--------------------------------------------------------------------------------------------------+
 	 * |                       1016 bytes of data                        | position of next block of data |
@@ -76,6 +82,31 @@ public class File extends VNode{
 		return firstBlockPosition;
 	}
 	
+	/**
+	 * returns the number of data blocks needed to store the file's content
+	 * @return number of blocks
+	 */
+	public long getBlockCount(){
+		if(inlineData!=null) return 0;
+		return (size+VirtualFileSystem.DataSizeInBlock-1)/VirtualFileSystem.DataSizeInBlock;
+	}
+	
+	/**
+	 * checks if the data of the file is stored inline instead of data blocks
+	 * @return true if the file has no data block because it is tiny
+	 */
+	public boolean isInline(){
+		return inlineData!=null;
+	}
+	
+	/**
+	 * returns the data of the file stored inline
+	 * @return the bytes of the file, they must not be changed, or null if the file is stored in data blocks
+	 */
+	byte[] getInlineData(){
+		return inlineData;
+	}
+	
 	/**
 	 * returns the file's extension
 	 * @return file extension string included in its name
@@ -98,12 +129,45 @@ public class File extends VNode{
 	void setFirstBlockPosition(long firstBlockPosition) {
 		this.firstBlockPosition = firstBlockPosition;
 	}
+	
+	/**
+	 * stores the data of the file inline. this method is package private to prevent external use and data loss.
+	 * @param inlineData the bytes of the file, they must not be changed afterwards, or null if the file is stored in data blocks
+	 */
+	void setInlineData(byte[] inlineData) {
+		this.inlineData = inlineData;
+	}
+	
+	/**
+	 * sets the size of the file. this method is package private to prevent external use and data loss.
+	 * @param size size in bytes
+	 */
+	void setSize(long size) {
+		this.size = size;
+	}
 
 	
 	/* ----------------------------VFS operations---------------------------- */
 	
 	@Override
-	public void exportToHostFileSystem(String exportPath){
+	void exportToHostFileSystem(String exportPath, Progress progress){
+		VirtualFileSystem vd = getVirtualDisk();
+		long start = Metrics.begin();
+		VFSEvents.Operation event = VFSEvents.begin(Metrics.Export, this, null);
+		try{
+			exportData(exportPath, progress);
+		} finally {
+			vd.getMetrics().end(Metrics.Export, start);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * writes the data of the file to the host file system, see {@link #exportToHostFileSystem(String, Progress)}
+	 * @param exportPath the path to where the file will be exported on the host file system
+	 * @param progress progress of the export, or null
+	 */
+	void exportData(String exportPath, Progress progress){
 		java.io.BufferedOutputStream fileOut = null;
 		java.io.RandomAccessFile vdFile = null;
 		
@@ -113,6 +177,13 @@ public class File extends VNode{
 				exportPath = exportPath + VirtualFileSystem.HFSSeparator;
 			
 			fileOut = new java.io.BufferedOutputStream(new java.io.FileOutputStream(exportPath+name));
+			if(inlineData!=null){
+				// the virtual disk file is not read
+				fileOut.write(inlineData);
+				if(progress!=null)
+					progress.advance(inlineData.length);
+				return;
+			}
 			vdFile = new java.io.RandomAccessFile(getVirtualDisk().VDFileName, "rw");
 			
 			long currentBlockPosition = firstBlockPosition; 	//first block position that contains file's data
@@ -128,8 +199,13 @@ public class File extends VNode{
 				else
 					bytesToWrite = new byte[(int) (bytesLeft)];
 				
+				VFSEvents.BlockIO read = VFSEvents.beginBlock();
 				vdFile.read(bytesToWrite);					// reading block
+				VFSEvents.commit(read, getVirtualDisk(), currentBlockPosition, bytesToWrite.length, false);
 				fileOut.write(bytesToWrite);				// writing block
+				getVirtualDisk().getMetrics().read(bytesToWrite.length, 1);
+				if(progress!=null)
+					progress.advance(bytesToWrite.length);
 				
 				bytesLeft -= bytesToWrite.length;
 				
@@ -150,39 +226,68 @@ public class File extends VNode{
 
 	@Override
 	public void copy(Directory newDirectory){
+		Directory parent = getParent();
+		VirtualFileSystem vd = getVirtualDisk();
+		long start = Metrics.begin();
+		VFSEvents.Operation event = VFSEvents.begin(Metrics.Copy, this, null);
+		VirtualFileSystem.lockDirectories(parent, newDirectory);
+		try{
+			copyData(newDirectory);
+		} finally {
+			VirtualFileSystem.unlockDirectories(parent, newDirectory);
+			vd.getMetrics().end(Metrics.Copy, start);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * copies the file to another directory, the directories must be locked
+	 * @param newDirectory directory where the file is copied
+	 */
+	private void copyData(Directory newDirectory){
 		java.io.RandomAccessFile vdOutFile = null;
 		java.io.RandomAccessFile vdInFile = null;
-		if(size>getVirtualDisk().getFreeSpace()) throw new NoFreeSpaceLeftException();
+		VirtualFileSystem vdIn = getVirtualDisk();
+		VirtualFileSystem vdOut = newDirectory.getVirtualDisk();
 		try{
-			// -----1. creating new File 
+			// -----1. creating new File on the virtual disk of the directory, its data blocks are allocated
 			
-			File cp = getVirtualDisk().createFile(newDirectory.getAbsolutePathName()+
-					((!newDirectory.equals(newDirectory.getVirtualDisk().rootDirectory))?VirtualFileSystem.separator:"")+name, size);
+			File cp = vdOut.createFile(newDirectory, name, size);
+			if(isInline() || cp.isInline()){
+				// the file fits in one data block
+				cp.writeContent(readContent());
+				return;
+			}
 			
 			// -----2. copying file's content block by block
 			
-			vdInFile = new java.io.RandomAccessFile(getVirtualDisk().VDFileName,"rw");
-			if(!newDirectory.getVirtualDisk().VDFileName.equals(newDirectory.getVirtualDisk().VDFileName))	// checks if the virtual file systems aren't the same
-				vdOutFile = new java.io.RandomAccessFile(newDirectory.getVirtualDisk().VDFileName,"rw");
+			vdInFile = new java.io.RandomAccessFile(vdIn.VDFileName,"rw");
+			if(vdOut!=vdIn)	// checks if the virtual file systems aren't the same
+				vdOutFile = new java.io.RandomAccessFile(vdOut.VDFileName,"rw");
 			else
 				vdOutFile = vdInFile;
 			
 			long currentBlockPositionIn = this.firstBlockPosition;
 			long currentBlockPositionOut = cp.firstBlockPosition;
 			
-			while(currentBlockPositionIn!=-1L){
+			for(long n=getBlockCount(); n>0; n--){
 				// ---copying a block of data
 				vdInFile.seek(currentBlockPositionIn);			// changing infile's cursor
 				
 				byte[] bytesToWrite = new byte[(int) (VirtualFileSystem.DataSizeInBlock)];
+				VFSEvents.BlockIO read = VFSEvents.beginBlock();
 				vdInFile.read(bytesToWrite);					// reading block
+				VFSEvents.commit(read, vdIn, currentBlockPositionIn, bytesToWrite.length, false);
 				currentBlockPositionIn = vdInFile.readLong();	// reading next position
-				
+				vdIn.getMetrics().read(bytesToWrite.length, 1);
 				
 				vdOutFile.seek(currentBlockPositionOut);   		// changing outfile's cursor 
 				
+				VFSEvents.BlockIO write = VFSEvents.beginBlock();
 				vdOutFile.write(bytesToWrite);					// writing block
+				VFSEvents.commit(write, vdOut, currentBlockPositionOut, bytesToWrite.length, true);
 				currentBlockPositionOut = vdOutFile.readLong();	// reading next position
+				vdOut.getMetrics().written(bytesToWrite.length, 1);
 			}
 			
 		} catch (java.io.IOException e){
@@ -191,69 +296,102 @@ public class File extends VNode{
 		} finally {
 			try{
 				if(vdInFile!=null) vdInFile.close();
-				if(vdOutFile!=null) vdOutFile.close();
+				if(vdOutFile!=null && vdOutFile!=vdInFile) vdOutFile.close();
 			} catch (java.io.IOException io){
 				throw new VFSOperationFailException(io.getMessage());
 			}
 		}
 	}
 	
+	/**
+	 * moves the file to another directory. On another virtual disk its data blocks are moved to a new file
+	 * and the receiver is not used anymore.
+	 */
 	@Override
 	public void move(Directory newDirectory){
+		Directory oldParent = getParent();
+		VirtualFileSystem vd = getVirtualDisk();
+		long start = Metrics.begin();
+		VFSEvents.Operation event = VFSEvents.begin(Metrics.Move, this, null);
+		VirtualFileSystem.lockDirectories(oldParent, newDirectory);
+		try{
+			moveData(newDirectory);
+		} finally {
+			VirtualFileSystem.unlockDirectories(oldParent, newDirectory);
+			vd.getMetrics().end(Metrics.Move, start);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * moves the file to another directory, the directories must be locked
+	 * @param newDirectory directory where the file is moved
+	 */
+	private void moveData(Directory newDirectory){
 		java.io.RandomAccessFile vdOutFile = null;
 		java.io.RandomAccessFile vdInFile = null;
 		try {
 			if(!(this.getVirtualDisk().equals(newDirectory.getVirtualDisk()))){ // checks if the virtual file systems aren't the same
-				// -----1. creating new file 
+				getVirtualDisk().checkNoTransaction("move \""+getAbsolutePathName()+"\" to another virtual disk");
+				VirtualFileSystem vdOut = newDirectory.getVirtualDisk();
+				VirtualFileSystem vdIn = this.getVirtualDisk();
 				
-				File cp = getVirtualDisk().createFile(newDirectory.getAbsolutePathName()+
-						((!newDirectory.equals(newDirectory.getVirtualDisk().rootDirectory))?VirtualFileSystem.separator:"")+name, size);
+				// -----1. creating new file, its data blocks are allocated
 				
-				// -----2. moving file's content block by block
+				File cp = vdOut.createFile(newDirectory, name, size);
 				
-				VirtualFileSystem vdOut = newDirectory.getVirtualDisk();
-				VirtualFileSystem vdIn = this.getVirtualDisk();
+				// -----2. moving file's content block by block
 				
-				vdOutFile = new java.io.RandomAccessFile(vdOut.VDFileName,"rw");
-				vdInFile = new java.io.RandomAccessFile(vdIn.VDFileName,"rw");
+				if(isInline() || cp.isInline()){
+					// the file fits in one data block
+					cp.writeContent(readContent());
+					releaseBlocks();
+				}
+				else{
+					vdOutFile = new java.io.RandomAccessFile(vdOut.VDFileName,"rw");
+					vdInFile = new java.io.RandomAccessFile(vdIn.VDFileName,"rw");
 				
-				long currentBlockPositionIn = this.firstBlockPosition;
-				long currentBlockPositionOut = cp.firstBlockPosition;
+					long currentBlockPositionIn = this.firstBlockPosition;
+					long currentBlockPositionOut = cp.firstBlockPosition;
 				
-				while(currentBlockPositionIn!=-1L){
-					vdInFile.seek(currentBlockPositionIn);					// changing infile's cursor
+					for(long n=getBlockCount(); n>0; n--){
+						vdInFile.seek(currentBlockPositionIn);					// changing infile's cursor
 		
-					byte[] bytesToWrite = new byte[(int) (VirtualFileSystem.DataSizeInBlock)];
+						byte[] bytesToWrite = new byte[(int) (VirtualFileSystem.DataSizeInBlock)];
 					
-					vdInFile.read(bytesToWrite);							// reading block
-					vdIn.setFreeBlock(currentBlockPositionIn);				// free block
-					currentBlockPositionIn = vdInFile.readLong();			// reading next position
+						VFSEvents.BlockIO read = VFSEvents.beginBlock();
+						vdInFile.read(bytesToWrite);							// reading block
+						VFSEvents.commit(read, vdIn, currentBlockPositionIn, bytesToWrite.length, false);
+						long nextPositionIn = vdInFile.readLong();				// reading next position
+						vdIn.setFreeBlock(currentBlockPositionIn);				// free block
+						currentBlockPositionIn = nextPositionIn;
+						vdIn.getMetrics().read(bytesToWrite.length, 1);
 					
-					vdOutFile.seek(currentBlockPositionOut);   				// changing outfile's cursor 
+						vdOutFile.seek(currentBlockPositionOut);   				// changing outfile's cursor 
 					
-					vdOutFile.write(bytesToWrite);							// writing block
-					vdOut.setOccupiedBlock(currentBlockPositionOut);		// setting block to occupied
-					currentBlockPositionOut = vdOutFile.readLong();			// reading next position
+						VFSEvents.BlockIO write = VFSEvents.beginBlock();
+						vdOutFile.write(bytesToWrite);							// writing block
+						VFSEvents.commit(write, vdOut, currentBlockPositionOut, bytesToWrite.length, true);
+						currentBlockPositionOut = vdOutFile.readLong();			// reading next position
+						vdOut.getMetrics().written(bytesToWrite.length, 1);
+					}
 				}
 				
 				// -----3. deleting VNode from tree structure
 				
-				this.addSize(-size);
-				this.cutLinkToTree();				
+				Directory oldParent = getParent();
+				this.cutLinkToTree();
+				oldParent.childRemoved(this);
+				vdIn.unregister(this);
 			}
 			else{
-				for(VNode c : newDirectory.getContentList()){
-					if(c.name.equals(name)){
-						throw new NameAlreadyExistsException("\""+name + "\" already exists in \""+newDirectory.getAbsolutePathName()+"\"");
-					}
-				}
-				long tmp = size;					// copying size
-				this.addSize(-size);				// removing size from all parents
-				this.size = tmp;
+				if(newDirectory.contains(name))
+					throw new NameAlreadyExistsException("\""+name + "\" already exists in \""+newDirectory.getAbsolutePathName()+"\"");
+				Directory oldParent = getParent();
 				this.cutLinkToTree();
-				newDirectory.addSize(size);
-				absolutePath = newDirectory.getAbsolutePathName();
-				newDirectory.addChild(this);		
+				oldParent.childRemoved(this);		// updating the statistics of all parents
+				newDirectory.addChild(this);
+				newDirectory.childAdded(this);
 			}
 			
 		} catch (java.io.IOException e){
@@ -270,30 +408,278 @@ public class File extends VNode{
 	
 	@Override
 	public void remove() {
-		java.io.RandomAccessFile vdFile = null;
+		Directory parent = getParent();
+		VirtualFileSystem vd = getVirtualDisk();
+		long start = Metrics.begin();
+		VFSEvents.Operation event = VFSEvents.begin(Metrics.Remove, this, null);
+		if(parent!=null)
+			vd.lockDirectory(parent);
+		try{
+			removeData();
+		} finally {
+			if(parent!=null)
+				vd.unlockDirectory(parent);
+			vd.getMetrics().end(Metrics.Remove, start);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * releases the data blocks of the file and removes it from the tree structure, its directory must be locked
+	 */
+	private void removeData() {
+		VirtualFileSystem vd = this.getVirtualDisk();
+		try{
+			releaseBlocks();
+		} catch (java.io.IOException e) {
+			throw new VFSOperationFailException("cannot remove \""+getAbsolutePathName()+"\" from the virtual file system \""+vd.name+"\"");
+		}
 		
+		Directory oldParent = getParent();
+		this.cutLinkToTree(); 
+		if(oldParent!=null)
+			oldParent.childRemoved(this);
+		vd.unregister(this);
+	}
+	
+	/**
+	 * appends data at the end of the file. A file stored inline stays inline while its size does not exceed the
+	 * inline threshold of its virtual disk, then it is promoted: its data is moved to data blocks with the bytes appended.
+	 * @param data the bytes to append
+	 * @throws NoFreeSpaceLeftException if the virtual disk does not have enough free blocks, the file is not changed then
+	 * @throws VFSOperationFailException if the operation fails
+	 */
+	public void append(byte[] data){
+		Directory parent = getParent();
+		VirtualFileSystem vd = getVirtualDisk();
+		if(parent!=null)
+			vd.lockDirectory(parent);
 		try{
-			vdFile = new java.io.RandomAccessFile(this.getVirtualDisk().VDFileName,"rw");
-			VirtualFileSystem vd = this.getVirtualDisk();
-			long currentBlockPosition = firstBlockPosition;
+			appendData(data);
+		} finally {
+			if(parent!=null)
+				vd.unlockDirectory(parent);
+		}
+	}
+	
+	/**
+	 * appends data at the end of the file, its directory must be locked
+	 * @param data the bytes to append
+	 */
+	private void appendData(byte[] data){
+		if(data.length==0) return;
+		VirtualFileSystem vd = getVirtualDisk();
+		long oldBlockCount = getBlockCount();
+		long newSize = size+data.length;
+		
+		if(firstBlockPosition==-1L && newSize<=vd.getInlineThreshold()){
+			// the file stays inline
+			byte[] content = new byte[(int) newSize];
+			if(inlineData!=null)
+				System.arraycopy(inlineData, 0, content, 0, inlineData.length);
+			System.arraycopy(data, 0, content, (int) size, data.length);
+			vd.resizing(this);
+			inlineData = content;
+		}
+		else{
+			try{
+				if(inlineData!=null){
+					// the inline data is written to the new data blocks before the bytes appended
+					byte[] content = new byte[(int) newSize];
+					System.arraycopy(inlineData, 0, content, 0, inlineData.length);
+					System.arraycopy(data, 0, content, inlineData.length, data.length);
+					appendBlocks(0, content);
+				}
+				else appendBlocks(size, data);
+			} catch (java.io.IOException e){
+				throw new VFSOperationFailException("cannot append to \""+getAbsolutePathName()+"\"");
+			}
+			inlineData = null;
+		}
+		size = newSize;
+		
+		Directory parent = getParent();
+		if(parent!=null){
+			StatsDelta delta = new StatsDelta();
+			delta.size = data.length;
+			delta.blocks = getBlockCount()-oldBlockCount;
+			parent.addStats(delta);
+		}
+	}
+	
+	/* ----------------------------data blocks---------------------------- */
+	
+	/**
+	 * writes bytes after the data already stored in the data blocks of the file. the end of the last block is filled first,
+	 * then new blocks are allocated and chained after it. the size of the file is not changed.
+	 * The last block and the pointer to the next block are changed in place, unless the last block is refered by a snapshot:
+	 * the file then gets a copy of its whole chain, as every block allocated before the last one is refered by the snapshot too
+	 * and changing a pointer would change the chain of the snapshot. The first append after a snapshot costs a copy of the file.
+	 * @param storedSize number of bytes already stored in the data blocks
+	 * @param bytes the bytes to write
+	 * @throws NoFreeSpaceLeftException if the virtual disk does not have enough free blocks, nothing is written then
+	 * @throws java.io.IOException if the virtual disk file cannot be written
+	 */
+	private void appendBlocks(long storedSize, byte[] bytes) throws java.io.IOException {
+		VirtualFileSystem vd = getVirtualDisk();
+		int dataSize = VirtualFileSystem.DataSizeInBlock;
+		int storedBlocks = (int) ((storedSize+dataSize-1)/dataSize);
+		int usedInLastBlock = (int) (storedSize%dataSize);
+		int inLastBlock = (usedInLastBlock==0)?0:Math.min(dataSize-usedInLastBlock, bytes.length);
+		int newBlocks = (bytes.length-inLastBlock+dataSize-1)/dataSize;
+		
+		java.io.RandomAccessFile vdFile = new java.io.RandomAccessFile(vd.VDFileName, "rw");
+		try{
+			// the chain is walked by block count: the blocks after the last one can be left by a snapshot restored
+			long[] chain = new long[storedBlocks];
+			long position = firstBlockPosition;
+			for(int i=0;i<storedBlocks;i++){
+				chain[i] = position;
+				if(i+1<storedBlocks){
+					vdFile.seek(position + dataSize);
+					position = vdFile.readLong();
+				}
+			}
+			boolean copy = storedBlocks>0 && vd.isSnapshotBlock(chain[storedBlocks-1]);
+			long[] allocated = vd.allocateBlocks(((copy)?storedBlocks:0)+newBlocks);
+			long[] blocks = java.util.Arrays.copyOfRange(allocated, (copy)?storedBlocks:0, allocated.length);
+			vd.resizing(this);
 			
-			while(currentBlockPosition!=-1L){
-				vd.setFreeBlock(currentBlockPosition);
+			if(copy){
+				// copy-on-write: the blocks kept for the snapshot are released, they stay reserved until it is deleted
+				byte[] block = new byte[dataSize];
+				for(int i=0;i<storedBlocks;i++){
+					VFSEvents.BlockIO read = VFSEvents.beginBlock();
+					vdFile.seek(chain[i]);
+					vdFile.readFully(block);
+					VFSEvents.commit(read, vd, chain[i], dataSize, false);
+					VFSEvents.BlockIO write = VFSEvents.beginBlock();
+					vdFile.seek(allocated[i]);
+					vdFile.write(block);
+					vdFile.writeLong((i+1<storedBlocks)? allocated[i+1] : -1L);
+					VFSEvents.commit(write, vd, allocated[i], dataSize, true);
+					vd.setFreeBlock(chain[i]);
+					chain[i] = allocated[i];
+				}
+				firstBlockPosition = chain[0];
+				vd.getMetrics().read(((long) storedBlocks)*dataSize, storedBlocks);
+				vd.getMetrics().written(((long) storedBlocks)*dataSize, storedBlocks);
+			}
+			
+			long lastBlockPosition = (storedBlocks==0)?-1L:chain[storedBlocks-1];
+			if(inLastBlock>0){
+				VFSEvents.BlockIO write = VFSEvents.beginBlock();
+				vdFile.seek(lastBlockPosition + usedInLastBlock);
+				vdFile.write(bytes, 0, inLastBlock);
+				VFSEvents.commit(write, vd, lastBlockPosition, inLastBlock, true);
+			}
+			if(blocks.length>0){
+				if(storedSize==0)
+					firstBlockPosition = blocks[0];
+				else{
+					vdFile.seek(lastBlockPosition + dataSize);
+					vdFile.writeLong(blocks[0]);
+				}
+			}
+			
+			int offset = inLastBlock;
+			for(int i=0;i<blocks.length;i++){
+				int length = Math.min(dataSize, bytes.length-offset);
+				VFSEvents.BlockIO write = VFSEvents.beginBlock();
+				vdFile.seek(blocks[i]);
+				vdFile.write(bytes, offset, length);
+				vdFile.seek(blocks[i] + dataSize);
+				vdFile.writeLong((i+1<blocks.length)? blocks[i+1] : -1L);
+				VFSEvents.commit(write, vd, blocks[i], length, true);
+				offset += length;
+			}
+			vd.getMetrics().written(bytes.length, blocks.length+((inLastBlock>0)?1:0));
+		} finally {
+			vdFile.close();
+		}
+	}
+	
+	/**
+	 * reads the whole data of the file. it is used for the files that fit in one data block.
+	 * @return the bytes of the file, they must not be changed
+	 * @throws java.io.IOException if the virtual disk file cannot be read
+	 */
+	private byte[] readContent() throws java.io.IOException {
+		if(inlineData!=null) return inlineData;
+		VirtualFileSystem vd = getVirtualDisk();
+		byte[] content = new byte[(int) size];
+		if(content.length==0) return content;
+		java.io.RandomAccessFile vdFile = new java.io.RandomAccessFile(vd.VDFileName, "r");
+		try{
+			long currentBlockPosition = firstBlockPosition;
+			for(int offset=0; offset<content.length; ){
+				int length = Math.min(VirtualFileSystem.DataSizeInBlock, content.length-offset);
+				VFSEvents.BlockIO read = VFSEvents.beginBlock();
+				vdFile.seek(currentBlockPosition);
+				vdFile.readFully(content, offset, length);
+				VFSEvents.commit(read, vd, currentBlockPosition, length, false);
 				vdFile.seek(currentBlockPosition + VirtualFileSystem.DataSizeInBlock);
-				
 				currentBlockPosition = vdFile.readLong();
+				offset += length;
 			}
-
-			this.addSize(-size);
-			this.cutLinkToTree(); 
-		} catch (java.io.IOException e) {
-			throw new VFSOperationFailException("cannot remove \""+getAbsolutePathName()+"\" from the virtual file system \""+getVirtualDisk().name+"\"");
 		} finally {
-			try{
-				if(vdFile!=null) vdFile.close();
-			} catch (java.io.IOException io){
-				throw new VFSOperationFailException(io.getMessage());
+			vdFile.close();
+		}
+		vd.getMetrics().read(content.length, getBlockCount());
+		return content;
+	}
+	
+	/**
+	 * writes the whole data of the file, inline or in the data blocks already allocated. it is used for the files that fit in one data block.
+	 * @param content the bytes of the file, as many as its size. they must not be changed afterwards
+	 * @throws java.io.IOException if the virtual disk file cannot be written
+	 */
+	private void writeContent(byte[] content) throws java.io.IOException {
+		if(inlineData!=null){
+			inlineData = content;
+			return;
+		}
+		if(content.length==0) return;
+		VirtualFileSystem vd = getVirtualDisk();
+		java.io.RandomAccessFile vdFile = new java.io.RandomAccessFile(vd.VDFileName, "rw");
+		try{
+			long currentBlockPosition = firstBlockPosition;
+			for(int offset=0; offset<content.length; ){
+				int length = Math.min(VirtualFileSystem.DataSizeInBlock, content.length-offset);
+				VFSEvents.BlockIO write = VFSEvents.beginBlock();
+				vdFile.seek(currentBlockPosition);
+				vdFile.write(content, offset, length);
+				VFSEvents.commit(write, vd, currentBlockPosition, length, true);
+				vdFile.seek(currentBlockPosition + VirtualFileSystem.DataSizeInBlock);
+				currentBlockPosition = vdFile.readLong();
+				offset += length;
+			}
+		} finally {
+			vdFile.close();
+		}
+		vd.getMetrics().written(content.length, getBlockCount());
+	}
+	
+	/**
+	 * releases the data blocks of the file, nothing is done for a file stored inline
+	 * @throws java.io.IOException if the virtual disk file cannot be read
+	 */
+	private void releaseBlocks() throws java.io.IOException {
+		if(firstBlockPosition==-1L) return;
+		VirtualFileSystem vd = getVirtualDisk();
+		java.io.RandomAccessFile vdFile = new java.io.RandomAccessFile(vd.VDFileName,"rw");
+		try{
+			long currentBlockPosition = firstBlockPosition;
+			for(long n=getBlockCount(); n>0; n--){
+				vdFile.seek(currentBlockPosition + VirtualFileSystem.DataSizeInBlock);
+				
+				// the next position is read before the block is released, it could be reused right after
+				long nextPosition = vdFile.readLong();
+				vd.setFreeBlock(currentBlockPosition);
+				currentBlockPosition = nextPosition;
 			}
+		} finally {
+			vdFile.close();
 		}
 	}
 	
@@ -0,0 +1,101 @@
+package core;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The inode table of a virtual file system.
+ * Each VNode is given a stable numeric id (its inode number) when it is added to a virtual disk. The id is kept when the VNode
+ * is renamed or moved inside the same virtual disk and it is saved with the virtual disk, so that VNodes can be compared and 
+ * refered to by their ids instead of their absolute path names.
+ * Only the next id to assign is serialized: the table itself is rebuilt from the tree structure when a virtual disk is loaded.
+ * Lookups do not lock, registrations are synchronized.
+ * 
+ * @author ayoub
+ */
+public class InodeTable implements java.io.Serializable{
+	
+	/* ----------------------------attributes---------------------------- */
+	
+	private static final long serialVersionUID = -4190371285693582473L;
+	
+	/** inode number of the root directory of a virtual disk */
+	public static final long RootInode = 0L;
+	/** inode number of a VNode that does not belong to any virtual disk */
+	public static final long NoInode = -1L;
+	
+	/** the next inode number to assign */
+	private long nextInode;
+	/** VNodes of the virtual disk by inode number */
+	private transient volatile ConcurrentHashMap<Long,VNode> nodes;
+	
+	/* ----------------------------constructors---------------------------- */
+	
+	/**
+	 * creates an empty inode table.
+	 */
+	InodeTable(){
+		nextInode = RootInode;
+		nodes = new ConcurrentHashMap<Long,VNode>();
+	}
+	
+	/* ----------------------------getters---------------------------- */
+	
+	/**
+	 * returns the VNode with the given inode number
+	 * @param inode inode number of the VNode
+	 * @return the VNode or null if no VNode has this inode number
+	 */
+	public VNode get(long inode){
+		return nodes.get(inode);
+	}
+	
+	/**
+	 * checks if the given VNode is registered in the table
+	 * @param node VNode to check
+	 * @return true if the inode number of the VNode refers to it in the table
+	 */
+	public boolean contains(VNode node){
+		return node.inode!=NoInode && nodes.get(node.inode)==node;
+	}
+	
+	/**
+	 * returns the number of VNodes registered in the table
+	 * @return the size of the table
+	 */
+	public int size(){
+		return nodes.size();
+	}
+	
+	/* ----------------------------setters---------------------------- */
+	
+	/**
+	 * assigns a new inode number to a VNode and registers it.
+	 * @param node VNode to register
+	 */
+	synchronized void register(VNode node){
+		node.inode = nextInode++;
+		nodes.put(node.inode, node);
+	}
+	
+	/**
+	 * removes a VNode from the table. Its inode number is not reused.
+	 * @param node VNode to remove
+	 */
+	synchronized void unregister(VNode node){
+		nodes.remove(node.inode, node);
+		node.inode = NoInode;
+	}
+	
+	/**
+	 * rebuilds the table from the tree structure keeping the inode numbers already assigned to the VNodes.
+	 * @param root root directory of the virtual disk
+	 */
+	synchronized void rebuild(Directory root){
+		nodes = new ConcurrentHashMap<Long,VNode>();
+		java.util.Iterator<VNode> it = VirtualFileSystem.walk(root).iterator();
+		while(it.hasNext()){
+			VNode node = it.next();
+			nodes.put(node.inode, node);
+		}
+	}
+}
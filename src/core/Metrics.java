@@ -0,0 +1,314 @@
+package core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters of the operations run on a virtual disk: number and latency histogram of each operation, bytes and
+ * data blocks read and written, lookups of the path cache and duration of the last save.
+ * The counters are updated by the threads running the operations without locking. An operation run by another one
+ * (the files removed with their directory, a directory moved to another virtual disk by copying it...) is part of it
+ * and is not counted again.
+ * The metrics of a virtual disk are exposed through JMX by {@link VirtualFileSystem#registerMBean()}, see {@link VFSMetricsMXBean}.
+ *
+ * @author ayoub
+ */
+public class Metrics {
+
+	/* ----------------------------constants---------------------------- */
+
+	/** creation of a file or a directory */
+	public static final String Create = "create";
+	/** removal of a file or a directory */
+	public static final String Remove = "remove";
+	/** move of a file or a directory */
+	public static final String Move = "move";
+	/** copy of a file or a directory */
+	public static final String Copy = "copy";
+	/** import from the host file system */
+	public static final String Import = "import";
+	/** export to the host file system */
+	public static final String Export = "export";
+	/** search of names */
+	public static final String Find = "find";
+	/** saving of the virtual disk */
+	public static final String Save = "save";
+	/** the operations counted, in the order of their counters */
+	public static final List<String> Operations = Collections.unmodifiableList(Arrays.asList(
+			Create, Remove, Move, Copy, Import, Export, Find, Save));
+
+	/** number of latency buckets: the first one counts the operations under 1 microseconds, bucket i those from 2^(i-1) microseconds to 2^i microseconds, the last one the others */
+	public static final int LatencyBuckets = 22;
+
+	/** start time given to the operations run by another one, they are not counted */
+	private static final long Nested = Long.MIN_VALUE;
+	/** number of operations running in each thread, an operation is counted only if it is the outermost one */
+	private static final ThreadLocal<int[]> Depths = new ThreadLocal<int[]>(){
+		@Override
+		protected int[] initialValue(){
+			return new int[1];
+		}
+	};
+
+	/* ----------------------------attributes---------------------------- */
+
+	/** number of operations by operation index */
+	private final LongAdder[] counts = newAdders(Operations.size());
+	/** total time in nanoseconds of the operations by operation index */
+	private final LongAdder[] times = newAdders(Operations.size());
+	/** latency buckets by operation index, {@link #LatencyBuckets} per operation */
+	private final LongAdder[] latencies = newAdders(Operations.size()*LatencyBuckets);
+	/** bytes of data read from the virtual disk file */
+	private final LongAdder bytesRead = new LongAdder();
+	/** bytes written to the virtual disk file, data and saved tree structure */
+	private final LongAdder bytesWritten = new LongAdder();
+	/** data blocks read */
+	private final LongAdder blocksRead = new LongAdder();
+	/** data blocks written */
+	private final LongAdder blocksWritten = new LongAdder();
+	/** lookups of the path cache that found the path */
+	private final LongAdder pathCacheHits = new LongAdder();
+	/** lookups of the path cache that did not find the path */
+	private final LongAdder pathCacheMisses = new LongAdder();
+	/** duration in nanoseconds of the last save, -1 if the virtual disk was not saved */
+	private volatile long lastSaveDuration = -1L;
+
+	/* ----------------------------recording---------------------------- */
+
+	/**
+	 * starts an operation in the current thread
+	 * @return the start time to give to {@link #end(String, long)}
+	 */
+	static long begin(){
+		int[] depth = Depths.get();
+		return (depth[0]++==0)?System.nanoTime():Nested;
+	}
+
+	/**
+	 * ends an operation started with {@link #begin()} and counts it if it is not run by another operation.
+	 * it must be called even if the operation fails.
+	 * @param operation one of the {@link #Operations}, or null for an operation that is not counted, like the operations it runs
+	 * @param start the time returned by {@link #begin()}
+	 */
+	void end(String operation, long start){
+		Depths.get()[0]--;
+		if(start==Nested || operation==null) return;
+		long duration = System.nanoTime()-start;
+		int index = Operations.indexOf(operation);
+		counts[index].increment();
+		times[index].add(duration);
+		latencies[index*LatencyBuckets+getLatencyBucket(duration)].increment();
+		if(operation.equals(Save))
+			lastSaveDuration = duration;
+	}
+
+	/**
+	 * counts data read from the virtual disk file
+	 * @param bytes number of bytes
+	 * @param blocks number of data blocks
+	 */
+	void read(long bytes, long blocks){
+		bytesRead.add(bytes);
+		blocksRead.add(blocks);
+	}
+
+	/**
+	 * counts data written to the virtual disk file
+	 * @param bytes number of bytes
+	 * @param blocks number of data blocks
+	 */
+	void written(long bytes, long blocks){
+		bytesWritten.add(bytes);
+		blocksWritten.add(blocks);
+	}
+
+	/**
+	 * counts a lookup of the path cache
+	 * @param hit true if the path was found
+	 */
+	void pathCacheLookup(boolean hit){
+		if(hit)
+			pathCacheHits.increment();
+		else
+			pathCacheMisses.increment();
+	}
+
+	/**
+	 * adds the counters to other metrics, the duration of the last save is kept if there was one
+	 * @param total metrics receiving the counters
+	 */
+	void addTo(Metrics total){
+		for(int i=0;i<counts.length;i++){
+			total.counts[i].add(counts[i].sum());
+			total.times[i].add(times[i].sum());
+		}
+		for(int i=0;i<latencies.length;i++)
+			total.latencies[i].add(latencies[i].sum());
+		total.bytesRead.add(bytesRead.sum());
+		total.bytesWritten.add(bytesWritten.sum());
+		total.blocksRead.add(blocksRead.sum());
+		total.blocksWritten.add(blocksWritten.sum());
+		total.pathCacheHits.add(pathCacheHits.sum());
+		total.pathCacheMisses.add(pathCacheMisses.sum());
+		if(lastSaveDuration>=0)
+			total.lastSaveDuration = lastSaveDuration;
+	}
+
+	/**
+	 * sets all the counters to 0
+	 */
+	public void reset(){
+		for(LongAdder adder : counts) adder.reset();
+		for(LongAdder adder : times) adder.reset();
+		for(LongAdder adder : latencies) adder.reset();
+		bytesRead.reset();
+		bytesWritten.reset();
+		blocksRead.reset();
+		blocksWritten.reset();
+		pathCacheHits.reset();
+		pathCacheMisses.reset();
+		lastSaveDuration = -1L;
+	}
+
+	/* ----------------------------getters---------------------------- */
+
+	/**
+	 * returns the number of times an operation was run
+	 * @param operation one of the {@link #Operations}
+	 * @return the number of operations
+	 * @throws IllegalArgumentException if the operation is unknown
+	 */
+	public long getCount(String operation){
+		return counts[indexOf(operation)].sum();
+	}
+
+	/**
+	 * returns the total time spent in an operation
+	 * @param operation one of the {@link #Operations}
+	 * @return the time in nanoseconds
+	 * @throws IllegalArgumentException if the operation is unknown
+	 */
+	public long getTotalTime(String operation){
+		return times[indexOf(operation)].sum();
+	}
+
+	/**
+	 * returns the latency histogram of an operation, see {@link #LatencyBuckets}
+	 * @param operation one of the {@link #Operations}
+	 * @return the number of operations in each bucket
+	 * @throws IllegalArgumentException if the operation is unknown
+	 */
+	public long[] getLatencyHistogram(String operation){
+		int index = indexOf(operation);
+		long[] histogram = new long[LatencyBuckets];
+		for(int i=0;i<LatencyBuckets;i++)
+			histogram[i] = latencies[index*LatencyBuckets+i].sum();
+		return histogram;
+	}
+
+	/**
+	 * returns the number of bytes read from the virtual disk file
+	 * @return the value of bytesRead
+	 */
+	public long getBytesRead(){
+		return bytesRead.sum();
+	}
+
+	/**
+	 * returns the number of bytes written to the virtual disk file, data and saved tree structure
+	 * @return the value of bytesWritten
+	 */
+	public long getBytesWritten(){
+		return bytesWritten.sum();
+	}
+
+	/**
+	 * returns the number of data blocks read
+	 * @return the value of blocksRead
+	 */
+	public long getBlocksRead(){
+		return blocksRead.sum();
+	}
+
+	/**
+	 * returns the number of data blocks written
+	 * @return the value of blocksWritten
+	 */
+	public long getBlocksWritten(){
+		return blocksWritten.sum();
+	}
+
+	/**
+	 * returns the number of lookups of the path cache that found the path
+	 * @return the value of pathCacheHits
+	 */
+	public long getPathCacheHits(){
+		return pathCacheHits.sum();
+	}
+
+	/**
+	 * returns the number of lookups of the path cache that did not find the path
+	 * @return the value of pathCacheMisses
+	 */
+	public long getPathCacheMisses(){
+		return pathCacheMisses.sum();
+	}
+
+	/**
+	 * returns the duration of the last save
+	 * @return the time in nanoseconds, -1 if the virtual disk was not saved
+	 */
+	public long getLastSaveDuration(){
+		return lastSaveDuration;
+	}
+
+	/**
+	 * returns the upper bounds of the latency buckets but the last one, which has none
+	 * @return the bounds in microseconds
+	 */
+	public static long[] getLatencyBucketBounds(){
+		long[] bounds = new long[LatencyBuckets-1];
+		for(int i=0;i<bounds.length;i++)
+			bounds[i] = 1L<<i;
+		return bounds;
+	}
+
+	/* ----------------------------useful methods---------------------------- */
+
+	/**
+	 * returns the latency bucket of a duration
+	 * @param nanoseconds the duration
+	 * @return the index of the bucket
+	 */
+	static int getLatencyBucket(long nanoseconds){
+		long microseconds = Math.max(0L, nanoseconds/1000);
+		return Math.min(LatencyBuckets-1, 64-Long.numberOfLeadingZeros(microseconds));
+	}
+
+	/**
+	 * returns the index of the counters of an operation
+	 * @param operation one of the {@link #Operations}
+	 * @return the index
+	 * @throws IllegalArgumentException if the operation is unknown
+	 */
+	private static int indexOf(String operation){
+		int index = Operations.indexOf(operation);
+		if(index<0) throw new IllegalArgumentException("unknown operation \""+operation+"\"");
+		return index;
+	}
+
+	/**
+	 * creates counters
+	 * @param count number of counters
+	 * @return an array of counters at 0
+	 */
+	private static LongAdder[] newAdders(int count){
+		LongAdder[] adders = new LongAdder[count];
+		for(int i=0;i<count;i++)
+			adders[i] = new LongAdder();
+		return adders;
+	}
+
+}
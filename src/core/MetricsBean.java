@@ -0,0 +1,339 @@
+package core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import exceptions.*;
+
+/**
+ * The MXBeans registered in the platform MBean server for the metrics of the virtual disks: {@link Disk} for one
+ * virtual disk, {@link App} for all the virtual disks of a {@link VFSApp}. The attributes are computed when they are read.
+ *
+ * @author ayoub
+ */
+abstract class MetricsBean implements VFSMetricsMXBean {
+
+	/** domain of the object names of the MXBeans */
+	static final String Domain = "core";
+
+	/* ----------------------------metrics---------------------------- */
+
+	/**
+	 * returns the counters of the operations
+	 * @return the metrics, they must not be changed
+	 */
+	abstract Metrics getMetrics();
+
+	/**
+	 * returns the free data blocks, see {@link VirtualFileSystem#getFreeExtents()}
+	 * @return the number of free blocks, the number of runs of contiguous free blocks and the length of the longest run
+	 */
+	abstract long[] getFreeExtents();
+
+	@Override
+	public long getFreeBlockCount(){
+		return getFreeExtents()[0];
+	}
+
+	@Override
+	public long getFreeExtentCount(){
+		return getFreeExtents()[1];
+	}
+
+	@Override
+	public long getLargestFreeExtent(){
+		return getFreeExtents()[2];
+	}
+
+	@Override
+	public double getFragmentation(){
+		long[] extents = getFreeExtents();
+		return (extents[0]==0)?0:1-((double) extents[2])/extents[0];
+	}
+
+	@Override
+	public Map<String,Long> getOperationCounts(){
+		Metrics metrics = getMetrics();
+		Map<String,Long> counts = new LinkedHashMap<String,Long>();
+		for(String operation : Metrics.Operations)
+			counts.put(operation, metrics.getCount(operation));
+		return counts;
+	}
+
+	@Override
+	public Map<String,Double> getMeanLatencies(){
+		Metrics metrics = getMetrics();
+		Map<String,Double> latencies = new LinkedHashMap<String,Double>();
+		for(String operation : Metrics.Operations){
+			long count = metrics.getCount(operation);
+			latencies.put(operation, (count==0)?0:metrics.getTotalTime(operation)/1e3/count);
+		}
+		return latencies;
+	}
+
+	@Override
+	public Map<String,long[]> getLatencyHistograms(){
+		Metrics metrics = getMetrics();
+		Map<String,long[]> histograms = new LinkedHashMap<String,long[]>();
+		for(String operation : Metrics.Operations)
+			histograms.put(operation, metrics.getLatencyHistogram(operation));
+		return histograms;
+	}
+
+	@Override
+	public long[] getLatencyBucketBounds(){
+		return Metrics.getLatencyBucketBounds();
+	}
+
+	@Override
+	public long getBytesRead(){
+		return getMetrics().getBytesRead();
+	}
+
+	@Override
+	public long getBytesWritten(){
+		return getMetrics().getBytesWritten();
+	}
+
+	@Override
+	public long getBlocksRead(){
+		return getMetrics().getBlocksRead();
+	}
+
+	@Override
+	public long getBlocksWritten(){
+		return getMetrics().getBlocksWritten();
+	}
+
+	@Override
+	public double getPathCacheHitRate(){
+		Metrics metrics = getMetrics();
+		long lookups = metrics.getPathCacheHits()+metrics.getPathCacheMisses();
+		return (lookups==0)?0:((double) metrics.getPathCacheHits())/lookups;
+	}
+
+	@Override
+	public double getLastSaveDuration(){
+		long duration = getMetrics().getLastSaveDuration();
+		return (duration<0)?-1:duration/1e6;
+	}
+
+	/* ----------------------------registration---------------------------- */
+
+	/**
+	 * returns an object name of the domain {@link #Domain}
+	 * @param properties the key properties, of the form "key=value,key=value"
+	 * @return the object name
+	 * @throws VFSOperationFailException if the object name is not valid
+	 */
+	static javax.management.ObjectName getObjectName(String properties){
+		try{
+			return new javax.management.ObjectName(Domain+":"+properties);
+		} catch (javax.management.MalformedObjectNameException e){
+			throw new VFSOperationFailException("invalid MBean name \""+properties+"\": "+e.getMessage());
+		}
+	}
+
+	/**
+	 * registers an MXBean in the platform MBean server
+	 * @param bean the MXBean
+	 * @param objectName the name of the MXBean
+	 * @throws VFSOperationFailException if an MBean is already registered with the same name
+	 */
+	static void register(MetricsBean bean, javax.management.ObjectName objectName){
+		try{
+			java.lang.management.ManagementFactory.getPlatformMBeanServer().registerMBean(bean, objectName);
+		} catch (javax.management.InstanceAlreadyExistsException e){
+			throw new VFSOperationFailException("\""+objectName+"\" is already registered");
+		} catch (javax.management.JMException e){
+			throw new VFSOperationFailException("cannot register \""+objectName+"\": "+e.getMessage());
+		}
+	}
+
+	/**
+	 * unregisters an MXBean from the platform MBean server, nothing is done if it is not registered
+	 * @param objectName the name of the MXBean
+	 */
+	static void unregister(javax.management.ObjectName objectName){
+		try{
+			java.lang.management.ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (javax.management.InstanceNotFoundException e){
+			// already unregistered
+		} catch (javax.management.MBeanRegistrationException e){
+			throw new VFSOperationFailException("cannot unregister \""+objectName+"\": "+e.getMessage());
+		}
+	}
+
+	/* ----------------------------MXBeans---------------------------- */
+
+	/**
+	 * The metrics of one virtual disk
+	 */
+	static class Disk extends MetricsBean {
+
+		/** the virtual disk */
+		private final VirtualFileSystem vfs;
+
+		/**
+		 * creates the MXBean of a virtual disk
+		 * @param vfs the virtual disk
+		 */
+		Disk(VirtualFileSystem vfs){
+			this.vfs = vfs;
+		}
+
+		@Override
+		Metrics getMetrics(){
+			return vfs.getMetrics();
+		}
+
+		@Override
+		long[] getFreeExtents(){
+			return vfs.getFreeExtents();
+		}
+
+		@Override
+		public String getName(){
+			return vfs.name;
+		}
+
+		@Override
+		public long getTotalSpace(){
+			return vfs.totalSpace;
+		}
+
+		@Override
+		public long getFreeSpace(){
+			return vfs.getFreeSpace();
+		}
+
+		@Override
+		public long getOccupiedSpace(){
+			return vfs.getOccupiedSpace();
+		}
+
+		@Override
+		public void resetMetrics(){
+			vfs.getMetrics().reset();
+		}
+
+	}
+
+	/**
+	 * The metrics of all the virtual disks of a registry: the sums of the metrics of the virtual disks mounted and
+	 * the metrics kept when virtual disks were unmounted
+	 */
+	static class App extends MetricsBean implements VFSAppMetricsMXBean {
+
+		/** name of the application */
+		private final String name;
+		/** the virtual disks */
+		private final DiskRegistry registry;
+
+		/**
+		 * creates the MXBean of the virtual disks of a registry
+		 * @param name name of the application
+		 * @param registry the virtual disks
+		 */
+		App(String name, DiskRegistry registry){
+			this.name = name;
+			this.registry = registry;
+		}
+
+		/**
+		 * returns the virtual disks that are mounted
+		 * @return a list of virtual file systems
+		 */
+		private java.util.List<VirtualFileSystem> getMounted(){
+			java.util.List<VirtualFileSystem> mounted = new java.util.ArrayList<VirtualFileSystem>();
+			for(DiskEntry disk : registry.getDisks()){
+				VirtualFileSystem vfs = disk.getIfMounted();
+				if(vfs!=null)
+					mounted.add(vfs);
+			}
+			return mounted;
+		}
+
+		@Override
+		Metrics getMetrics(){
+			Metrics total = new Metrics();
+			registry.getUnmountedMetrics().addTo(total);
+			for(VirtualFileSystem vfs : getMounted())
+				vfs.getMetrics().addTo(total);
+			return total;
+		}
+
+		@Override
+		long[] getFreeExtents(){
+			long[] total = new long[3];
+			for(VirtualFileSystem vfs : getMounted()){
+				long[] extents = vfs.getFreeExtents();
+				total[0] += extents[0];
+				total[1] += extents[1];
+				total[2] = Math.max(total[2], extents[2]);
+			}
+			return total;
+		}
+
+		@Override
+		public double getFragmentation(){
+			// mean of the fragmentations weighted by the free blocks
+			long free = 0;
+			long largest = 0;
+			for(VirtualFileSystem vfs : getMounted()){
+				long[] extents = vfs.getFreeExtents();
+				free += extents[0];
+				largest += extents[2];
+			}
+			return (free==0)?0:1-((double) largest)/free;
+		}
+
+		@Override
+		public String getName(){
+			return name;
+		}
+
+		@Override
+		public long getTotalSpace(){
+			long space = 0;
+			for(VirtualFileSystem vfs : getMounted())
+				space += vfs.totalSpace;
+			return space;
+		}
+
+		@Override
+		public long getFreeSpace(){
+			long space = 0;
+			for(VirtualFileSystem vfs : getMounted())
+				space += vfs.getFreeSpace();
+			return space;
+		}
+
+		@Override
+		public long getOccupiedSpace(){
+			long space = 0;
+			for(VirtualFileSystem vfs : getMounted())
+				space += vfs.getOccupiedSpace();
+			return space;
+		}
+
+		@Override
+		public int getDiskCount(){
+			return registry.getDisks().size();
+		}
+
+		@Override
+		public int getMountedDiskCount(){
+			return getMounted().size();
+		}
+
+		@Override
+		public void resetMetrics(){
+			registry.getUnmountedMetrics().reset();
+			for(VirtualFileSystem vfs : getMounted())
+				vfs.getMetrics().reset();
+		}
+
+	}
+
+}
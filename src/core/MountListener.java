@@ -0,0 +1,23 @@
+package core;
+
+/**
+ * A listener of the virtual disks mounted and unmounted by a {@link VFSApp}, see {@link VFSApp#addMountListener(MountListener)}.
+ * The listeners are called by the thread that mounts or unmounts the virtual disk, they must return quickly and must not throw exceptions.
+ * @author ayoub
+ *
+ */
+public interface MountListener {
+
+	/**
+	 * called when a virtual file system is loaded in memory or created
+	 * @param vfs the virtual file system mounted
+	 */
+	void mounted(VirtualFileSystem vfs);
+
+	/**
+	 * called when a virtual file system is released from memory, after it was saved, or removed
+	 * @param vfsName name of the virtual file system unmounted
+	 */
+	void unmounted(String vfsName);
+
+}
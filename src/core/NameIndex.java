@@ -0,0 +1,142 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The index of the names of a virtual file system.
+ * It maps each name used in the virtual disk to the inode numbers of the VNodes that have this name (see {@link InodeTable}).
+ * The index is updated each time a VNode is added, removed or renamed and it is saved with the virtual disk,
+ * so that searching for a name does not need to visit the tree structure.
+ * The index is synchronized: the sets it returns are copies that are not changed by later updates.
+ * 
+ * @author ayoub
+ */
+public class NameIndex implements java.io.Serializable{
+	
+	/* ----------------------------attributes---------------------------- */
+	
+	private static final long serialVersionUID = 6043567921883371012L;
+	
+	/** inode numbers by name */
+	private HashMap<String,Set<Long>> inodesByName;
+	/** trigram index of the names, built when first needed */
+	private transient TrigramIndex trigrams;
+	
+	/* ----------------------------constructors---------------------------- */
+	
+	/**
+	 * creates an empty name index.
+	 */
+	NameIndex(){
+		inodesByName = new HashMap<String,Set<Long>>();
+	}
+	
+	/* ----------------------------getters---------------------------- */
+	
+	/**
+	 * returns the inode numbers of the VNodes that have the given name
+	 * @param name name to look for
+	 * @return a read only set of inode numbers, empty if no VNode has this name
+	 */
+	public synchronized Set<Long> get(String name){
+		Set<Long> inodes = inodesByName.get(name);
+		if(inodes==null)
+			return Collections.emptySet();
+		return Collections.unmodifiableSet(new LinkedHashSet<Long>(inodes));
+	}
+	
+	/**
+	 * returns the names used in the virtual disk
+	 * @return a read only set of names
+	 */
+	public synchronized Set<String> getNames(){
+		return Collections.unmodifiableSet(new HashSet<String>(inodesByName.keySet()));
+	}
+	
+	/**
+	 * returns the names that match a pattern. the names to check are pruned with the trigram index when the pattern has literal parts.
+	 * @param pattern the name pattern
+	 * @return the matching names
+	 */
+	public synchronized List<String> getMatchingNames(NamePattern pattern){
+		List<String> matching = new ArrayList<String>();
+		if(pattern.isExact()){
+			if(inodesByName.containsKey(pattern.pattern))
+				matching.add(pattern.pattern);
+			return matching;
+		}
+		Collection<String> candidates = getTrigramIndex().getCandidates(pattern.getLiterals());
+		if(candidates==null)
+			candidates = inodesByName.keySet();
+		for(String name : candidates){
+			if(pattern.matches(name))
+				matching.add(name);
+		}
+		return matching;
+	}
+	
+	/**
+	 * returns the trigram index of the names. It is built the first time and then updated with the name index.
+	 * @return the trigram index
+	 */
+	public synchronized TrigramIndex getTrigramIndex(){
+		if(trigrams==null)
+			trigrams = new TrigramIndex(inodesByName.keySet());
+		return trigrams;
+	}
+	
+	/* ----------------------------setters---------------------------- */
+	
+	/**
+	 * adds a VNode to the index
+	 * @param name name of the VNode
+	 * @param inode inode number of the VNode
+	 */
+	synchronized void add(String name, long inode){
+		Set<Long> inodes = inodesByName.get(name);
+		if(inodes==null){
+			inodes = new LinkedHashSet<Long>();
+			inodesByName.put(name, inodes);
+			if(trigrams!=null)
+				trigrams.add(name);
+		}
+		inodes.add(inode);
+	}
+	
+	/**
+	 * removes a VNode from the index
+	 * @param name name of the VNode
+	 * @param inode inode number of the VNode
+	 */
+	synchronized void remove(String name, long inode){
+		Set<Long> inodes = inodesByName.get(name);
+		if(inodes==null) return;
+		inodes.remove(inode);
+		if(inodes.isEmpty()){
+			inodesByName.remove(name);
+			if(trigrams!=null)
+				trigrams.remove(name);
+		}
+	}
+	
+	/**
+	 * rebuilds the index from the tree structure
+	 * @param root root directory of the virtual disk
+	 */
+	synchronized void rebuild(Directory root){
+		inodesByName = new HashMap<String,Set<Long>>();
+		trigrams = null;
+		java.util.Iterator<VNode> it = VirtualFileSystem.walk(root).iterator();
+		while(it.hasNext()){
+			VNode node = it.next();
+			add(node.name, node.inode);
+		}
+	}
+}
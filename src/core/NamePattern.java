@@ -0,0 +1,240 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import exceptions.InvalidCommandException;
+
+/**
+ * A pattern used to search files/directories by name. It can be:
+ * 	- an exact name
+ * 	- a substring of the name
+ * 	- a glob pattern where "*" matches any sequence of characters, "?" any character and "[...]" a set of characters
+ * 	- a regular expression that must match the whole name
+ * The pattern also gives the literal parts that a matching name must contain, so that the {@link TrigramIndex} can prune the names to check.
+ * 
+ * @author ayoub
+ */
+public class NamePattern {
+	
+	/* ----------------------------attributes---------------------------- */
+	
+	/** type of an exact name pattern */
+	public static final String Exact = "exact";
+	/** type of a substring pattern */
+	public static final String Substring = "substring";
+	/** type of a glob pattern */
+	public static final String Glob = "glob";
+	/** type of a regular expression pattern */
+	public static final String Regex = "regex";
+	
+	/** the pattern string */
+	public final String pattern;
+	/** the type of the pattern */
+	public final String type;
+	/** compiled regular expression of glob and regex patterns */
+	private final Pattern regex;
+	/** substrings that a matching name must contain */
+	private final List<String> literals;
+	
+	/* ----------------------------constructors---------------------------- */
+	
+	/**
+	 * creates a name pattern
+	 * @param pattern the pattern string
+	 * @param type the type of pattern: {@link #Exact}, {@link #Substring}, {@link #Glob} or {@link #Regex}
+	 * @throws InvalidCommandException if the type is unknown or the pattern is not valid
+	 */
+	public NamePattern(String pattern, String type){
+		this.pattern = pattern;
+		this.type = type;
+		try{
+			if(type.equals(Exact) || type.equals(Substring)){
+				regex = null;
+				literals = Collections.singletonList(pattern);
+			}
+			else if(type.equals(Glob)){
+				regex = Pattern.compile(globToRegex(pattern));
+				literals = globLiterals(pattern);
+			}
+			else if(type.equals(Regex)){
+				regex = Pattern.compile(pattern);
+				literals = regexLiterals(pattern);
+			}
+			else throw new InvalidCommandException("\""+type+"\" is not a valid pattern type");
+		} catch (PatternSyntaxException e){
+			throw new InvalidCommandException("\""+pattern+"\" is not a valid "+type+" pattern");
+		}
+	}
+	
+	/**
+	 * creates a name pattern from a command line option: "-s" for substring, "-g" for glob, "-r" for regex, "" for an exact name.
+	 * @param option the command line option
+	 * @param pattern the pattern string
+	 * @return a NamePattern object
+	 * @throws InvalidCommandException if the option is unknown or the pattern is not valid
+	 */
+	public static NamePattern fromOption(String option, String pattern){
+		if(option.equals("")) return new NamePattern(pattern, Exact);
+		if(option.equals("-s")) return new NamePattern(pattern, Substring);
+		if(option.equals("-g")) return new NamePattern(pattern, Glob);
+		if(option.equals("-r")) return new NamePattern(pattern, Regex);
+		throw new InvalidCommandException("\""+option+"\" is not a valid option");
+	}
+	
+	/* ----------------------------getters---------------------------- */
+	
+	/**
+	 * checks if a name matches the pattern
+	 * @param name the name to check
+	 * @return true if the name matches
+	 */
+	public boolean matches(String name){
+		if(type.equals(Exact)) return name.equals(pattern);
+		if(type.equals(Substring)) return name.contains(pattern);
+		return regex.matcher(name).matches();
+	}
+	
+	/**
+	 * checks if the pattern is an exact name
+	 * @return true if the type is {@link #Exact}
+	 */
+	public boolean isExact(){
+		return type.equals(Exact);
+	}
+	
+	/**
+	 * returns the substrings that a name must contain to match the pattern
+	 * @return a read only list of literals, empty if nothing is known
+	 */
+	public List<String> getLiterals(){
+		return Collections.unmodifiableList(literals);
+	}
+	
+	@Override
+	public String toString(){
+		return type+" \""+pattern+"\"";
+	}
+	
+	/* ----------------------------useful methods---------------------------- */
+	
+	/**
+	 * converts a glob pattern to a regular expression
+	 * @param glob glob pattern
+	 * @return the equivalent regular expression
+	 */
+	static String globToRegex(String glob){
+		StringBuilder r = new StringBuilder();
+		for(int i=0;i<glob.length();i++){
+			char c = glob.charAt(i);
+			if(c=='*') r.append(".*");
+			else if(c=='?') r.append('.');
+			else if(c=='[' && glob.indexOf(']', i+1)>i+1){
+				int end = glob.indexOf(']', i+1);
+				String set = glob.substring(i+1, end);
+				r.append('[');
+				if(set.startsWith("!")) set = "^"+set.substring(1);
+				r.append(set.replace("\\", "\\\\").replace("[", "\\["));
+				r.append(']');
+				i = end;
+			}
+			else r.append(Pattern.quote(String.valueOf(c)));
+		}
+		return r.toString();
+	}
+	
+	/**
+	 * returns the literal parts of a glob pattern
+	 * @param glob glob pattern
+	 * @return the runs of characters between wildcards
+	 */
+	static List<String> globLiterals(String glob){
+		List<String> literals = new ArrayList<String>();
+		StringBuilder current = new StringBuilder();
+		for(int i=0;i<glob.length();i++){
+			char c = glob.charAt(i);
+			if(c=='*' || c=='?' || c=='['){
+				flush(current, literals);
+				if(c=='[' && glob.indexOf(']', i+1)>i+1)
+					i = glob.indexOf(']', i+1);
+			}
+			else current.append(c);
+		}
+		flush(current, literals);
+		return literals;
+	}
+	
+	/**
+	 * returns substrings that any name matching a regular expression contains.
+	 * the analysis is conservative: literals inside groups, optional characters and classes are ignored, and
+	 * expressions with alternatives, flags or quoted sequences give no literal.
+	 * @param regex regular expression
+	 * @return the required literals
+	 */
+	static List<String> regexLiterals(String regex){
+		List<String> literals = new ArrayList<String>();
+		if(regex.indexOf('|')>=0 || regex.contains("(?") || regex.contains("\\Q"))
+			return literals;
+		
+		StringBuilder current = new StringBuilder();
+		int depth = 0;			// depth of groups
+		for(int i=0;i<regex.length();i++){
+			char c = regex.charAt(i);
+			if(c=='\\' && i+1<regex.length()){
+				char next = regex.charAt(++i);
+				if(!Character.isLetterOrDigit(next) && depth==0)
+					current.append(next);		// escaped character
+				else
+					flush(current, literals);	// character class like \d or back reference
+			}
+			else if(c=='*' || c=='?' || c=='{'){
+				// the previous character is optional
+				if(current.length()>0)
+					current.setLength(current.length()-1);
+				flush(current, literals);
+				if(c=='{' && regex.indexOf('}', i)>i)
+					i = regex.indexOf('}', i);
+			}
+			else if(c=='['){
+				flush(current, literals);
+				int j = i+1;
+				if(j<regex.length() && regex.charAt(j)=='^') j++;
+				if(j<regex.length() && regex.charAt(j)==']') j++;
+				while(j<regex.length() && regex.charAt(j)!=']'){
+					if(regex.charAt(j)=='\\') j++;
+					j++;
+				}
+				i = j;
+			}
+			else if(c=='('){
+				flush(current, literals);
+				depth++;
+			}
+			else if(c==')'){
+				flush(current, literals);
+				depth--;
+			}
+			else if(c=='+' || c=='.' || c=='^' || c=='$'){
+				flush(current, literals);
+			}
+			else if(depth==0)
+				current.append(c);
+		}
+		flush(current, literals);
+		return literals;
+	}
+	
+	/**
+	 * adds the current literal to the list if it is not empty and clears it
+	 * @param current current literal
+	 * @param literals list of literals
+	 */
+	private static void flush(StringBuilder current, List<String> literals){
+		if(current.length()>0)
+			literals.add(current.toString());
+		current.setLength(0);
+	}
+}
@@ -0,0 +1,427 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import exceptions.*;
+
+/**
+ * A union view of two virtual file systems: a lower one that is only read and an upper one that receives all the changes.
+ * Creating an overlay costs O(1): nothing is copied until it is changed.
+ * <p>
+ * A path name is looked up in the upper virtual file system, then in the lower one. The content of a directory is the
+ * content of both, the upper VNodes hiding the lower VNodes with the same names.
+ * <ul>
+ * <li>a VNode of the lower virtual file system is changed by copying it first to the upper one (copy-up), with its parent
+ * directories. A directory is copied up without its content, which stays visible from the lower virtual file system.</li>
+ * <li>a VNode of the lower virtual file system is removed by creating an empty file named {@link #WhiteoutPrefix}+name in
+ * the upper directory (whiteout). A directory created again over a removed one is marked with an empty file named
+ * {@link #OpaqueMarker}: the lower content of the removed directory is not visible anymore.</li>
+ * </ul>
+ * The whiteouts are ordinary files of the upper virtual file system, so the view is kept when it is saved and loaded again.
+ * The names starting with {@link #WhiteoutPrefix} are reserved. The path names of the overlay start at its root,
+ * the virtual file system names and the working directories are not used. The operations are synchronized on the overlay.
+ *
+ * @author ayoub
+ */
+public class OverlayFileSystem {
+
+	/* ----------------------------attributes---------------------------- */
+
+	/** prefix of the names of the whiteout files */
+	public static final String WhiteoutPrefix = ".wh.";
+	/** name of the file marking an upper directory that hides the lower directory with the same path */
+	public static final String OpaqueMarker = WhiteoutPrefix+WhiteoutPrefix+".opq";
+
+	/** the virtual file system that is only read */
+	public final VirtualFileSystem lower;
+	/** the virtual file system where the changes are written */
+	public final VirtualFileSystem upper;
+
+	/* ----------------------------constructors---------------------------- */
+
+	/**
+	 * creates an overlay of two virtual file systems. Nothing is read or copied.
+	 * @param lower the virtual file system that is only read
+	 * @param upper the virtual file system where the changes are written, it can be empty or come from a previous overlay
+	 * @throws VFSOperationFailException if the two virtual file systems are the same
+	 */
+	public OverlayFileSystem(VirtualFileSystem lower, VirtualFileSystem upper){
+		if(lower==upper || lower.name.equals(upper.name))
+			throw new VFSOperationFailException("the lower and upper virtual file systems of an overlay must be different");
+		this.lower = lower;
+		this.upper = upper;
+	}
+
+	/* ----------------------------getters---------------------------- */
+
+	/**
+	 * returns the VNode at a path name: the upper one if there is one, the lower one otherwise
+	 * @param pathName path name from the root of the overlay
+	 * @return the VNode, of the upper or of the lower virtual file system
+	 * @throws NoSuchFileOrDirectoryException if no VNode is visible at the path name
+	 */
+	public synchronized VNode get(String pathName){
+		VNode[] layers = lookup(pathName);
+		return (layers[0]!=null)?layers[0]:layers[1];
+	}
+
+	/**
+	 * checks if a VNode is visible at a path name
+	 * @param pathName path name from the root of the overlay
+	 * @return true if a VNode of one of the virtual file systems is visible
+	 */
+	public synchronized boolean exists(String pathName){
+		try{
+			lookup(pathName);
+			return true;
+		} catch (NoSuchFileOrDirectoryException e){
+			return false;
+		}
+	}
+
+	/**
+	 * checks if the VNode at a path name is only in the lower virtual file system
+	 * @param pathName path name from the root of the overlay
+	 * @return true if the VNode has not been copied up
+	 * @throws NoSuchFileOrDirectoryException if no VNode is visible at the path name
+	 */
+	public synchronized boolean isLower(String pathName){
+		return lookup(pathName)[0]==null;
+	}
+
+	/**
+	 * returns the content of a directory of the overlay, sorted by name
+	 * @param pathName path name of the directory from the root of the overlay
+	 * @return the VNodes visible in the directory, of the upper or of the lower virtual file system
+	 * @throws NoSuchFileOrDirectoryException if no VNode is visible at the path name
+	 * @throws NoSuchDirectoryException if the VNode is not a directory
+	 */
+	public synchronized List<VNode> list(String pathName){
+		VNode[] layers = lookup(pathName);
+		VNode node = (layers[0]!=null)?layers[0]:layers[1];
+		if(!node.isDirectory())
+			throw new NoSuchDirectoryException("\""+pathName+"\" is not a directory");
+
+		java.util.TreeMap<String,VNode> content = new java.util.TreeMap<String,VNode>();
+		Directory upperDirectory = (Directory) layers[0];
+		if(layers[1]!=null && layers[1].isDirectory() && (upperDirectory==null || !hides(upperDirectory))){
+			for(VNode child : ((Directory) layers[1]).getContentList()){
+				if(upperDirectory==null || !upperDirectory.contains(WhiteoutPrefix+child.name))
+					content.put(child.name, child);
+			}
+		}
+		if(upperDirectory!=null){
+			for(VNode child : upperDirectory.getContentList()){
+				if(!child.name.startsWith(WhiteoutPrefix))
+					content.put(child.name, child);
+			}
+		}
+		return new ArrayList<VNode>(content.values());
+	}
+
+	/* ----------------------------operations---------------------------- */
+
+	/**
+	 * creates a directory in the upper virtual file system, its parent directories are copied up
+	 * @param pathName path name of the new directory from the root of the overlay
+	 * @return the directory created
+	 * @throws NameAlreadyExistsException if a VNode is visible at the path name
+	 * @throws NoSuchFileOrDirectoryException if the parent directory is not visible
+	 */
+	public synchronized Directory createDirectory(String pathName){
+		String[] names = split(pathName);
+		Directory parent = prepare(names);
+		String name = names[names.length-1];
+		boolean replaced = parent.contains(WhiteoutPrefix+name);
+		if(replaced)
+			parent.getFile(WhiteoutPrefix+name).remove();
+		Directory created = upper.createDirectory(parent, name);
+		// the lower directory that was removed must stay hidden
+		if(replaced)
+			upper.createFile(created, OpaqueMarker, 0);
+		return created;
+	}
+
+	/**
+	 * creates a file in the upper virtual file system, its parent directories are copied up
+	 * @param pathName path name of the new file from the root of the overlay
+	 * @param size size in bytes of the file
+	 * @return the file created
+	 * @throws NameAlreadyExistsException if a VNode is visible at the path name
+	 * @throws NoSuchFileOrDirectoryException if the parent directory is not visible
+	 * @throws NoFreeSpaceLeftException if the upper virtual disk does not have enough space
+	 */
+	public synchronized File createFile(String pathName, long size){
+		String[] names = split(pathName);
+		Directory parent = prepare(names);
+		String name = names[names.length-1];
+		if(parent.contains(WhiteoutPrefix+name))
+			parent.getFile(WhiteoutPrefix+name).remove();
+		return upper.createFile(parent, name, size);
+	}
+
+	/**
+	 * imports a file/directory from the host file system to a directory of the overlay, the directory is copied up
+	 * @param importPathName path name of the file/directory on the host file system
+	 * @param pathName path name of the directory where to import from the root of the overlay
+	 * @return the VNode imported in the upper virtual file system
+	 * @throws NameAlreadyExistsException if a VNode with the same name is visible in the directory
+	 * @throws NoSuchFileOrDirectoryException if a path name is not valid
+	 * @throws NoFreeSpaceLeftException if the upper virtual disk does not have enough space
+	 * @throws VFSOperationFailException if the import fails
+	 */
+	public synchronized VNode importFromHostFileSystem(String importPathName, String pathName){
+		String name = new java.io.File(importPathName).getName();
+		String[] names = split(pathName+VirtualFileSystem.separator+name);
+		Directory parent = prepare(names);
+		if(parent.contains(WhiteoutPrefix+name))
+			parent.getFile(WhiteoutPrefix+name).remove();
+		return upper.importFromHostFileSystem(importPathName, parent.getAbsolutePathName());
+	}
+
+	/**
+	 * copies a VNode of the lower virtual file system to the upper one, with its parent directories, so that it can be changed.
+	 * a file is copied with its data, a directory is copied empty. Nothing is done if the VNode is already in the upper virtual file system.
+	 * @param pathName path name from the root of the overlay
+	 * @return the VNode of the upper virtual file system
+	 * @throws NoSuchFileOrDirectoryException if no VNode is visible at the path name
+	 * @throws NoFreeSpaceLeftException if the upper virtual disk does not have enough space
+	 */
+	public synchronized VNode copyUp(String pathName){
+		String[] names = split(pathName);
+		if(names.length==0)
+			return upper.rootDirectory;
+		VNode[] layers = lookup(names);
+		if(layers[0]!=null)
+			return layers[0];
+		Directory parent = copyUpDirectories(names, names.length-1);
+		return copyUp(layers[1], parent);
+	}
+
+	/**
+	 * removes a VNode from the overlay: it is removed from the upper virtual file system, and hidden by a whiteout if
+	 * it is in the lower one
+	 * @param pathName path name from the root of the overlay
+	 * @throws NoSuchFileOrDirectoryException if no VNode is visible at the path name
+	 * @throws VFSOperationFailException if the path name is the root of the overlay
+	 */
+	public synchronized void remove(String pathName){
+		String[] names = split(pathName);
+		if(names.length==0)
+			throw new VFSOperationFailException("cannot remove the root directory of an overlay");
+		VNode[] layers = lookup(names);
+		if(layers[0]!=null)
+			layers[0].remove();
+		if(layers[1]!=null){
+			Directory parent = copyUpDirectories(names, names.length-1);
+			upper.createFile(parent, WhiteoutPrefix+names[names.length-1], 0);
+		}
+	}
+
+	/**
+	 * moves/renames a VNode of the overlay. The VNode and all its content are copied up, then moved in the upper
+	 * virtual file system, and its previous path is hidden by a whiteout if it was in the lower one.
+	 * @param oldPathName path name of the VNode from the root of the overlay
+	 * @param newPathName new path name of the VNode from the root of the overlay, its parent directory must be visible
+	 * @throws NoSuchFileOrDirectoryException if no VNode is visible at the old path name
+	 * @throws NameAlreadyExistsException if a VNode is visible at the new path name
+	 * @throws VFSOperationFailException if a directory would be moved inside itself
+	 */
+	public synchronized void move(String oldPathName, String newPathName){
+		String[] oldNames = split(oldPathName);
+		String[] newNames = split(newPathName);
+		if(oldNames.length==0)
+			throw new VFSOperationFailException("cannot move the root directory of an overlay");
+		if(newNames.length>oldNames.length && java.util.Arrays.equals(oldNames, java.util.Arrays.copyOf(newNames, oldNames.length)))
+			throw new VFSOperationFailException("cannot move \""+oldPathName+"\" inside itself");
+		VNode[] layers = lookup(oldNames);
+		Directory newParent = prepare(newNames);
+		String newName = newNames[newNames.length-1];
+
+		// copying up the whole sub-tree
+		VNode moved = copyUpTree(copyUp(oldPathName), oldNames);
+
+		boolean replaced = newParent.contains(WhiteoutPrefix+newName);
+		if(replaced)
+			newParent.getFile(WhiteoutPrefix+newName).remove();
+		if(moved.getParent()!=newParent)
+			moved.move(newParent);
+		moved.rename(newName);
+		if(replaced && moved.isDirectory() && !((Directory) moved).contains(OpaqueMarker))
+			upper.createFile((Directory) moved, OpaqueMarker, 0);
+
+		if(layers[1]!=null){
+			Directory oldParent = copyUpDirectories(oldNames, oldNames.length-1);
+			upper.createFile(oldParent, WhiteoutPrefix+oldNames[oldNames.length-1], 0);
+		}
+	}
+
+	/**
+	 * saves the upper virtual file system, the lower one has not changed
+	 * @throws VFSOperationFailException if the operation fails
+	 */
+	public synchronized void save(){
+		upper.save();
+	}
+
+	/* ----------------------------useful methods---------------------------- */
+
+	/**
+	 * splits a path name of the overlay into names, "." and ".." are resolved
+	 * @param pathName path name from the root of the overlay
+	 * @return the names, empty for the root
+	 * @throws VFSOperationFailException if a name is reserved for the whiteouts
+	 */
+	private static String[] split(String pathName){
+		List<String> names = new ArrayList<String>();
+		for(String name : pathName.split(VirtualFileSystem.separator)){
+			if(name.isEmpty() || name.equals("."))
+				continue;
+			if(name.equals("..")){
+				if(!names.isEmpty())
+					names.remove(names.size()-1);
+				continue;
+			}
+			if(name.startsWith(WhiteoutPrefix))
+				throw new VFSOperationFailException("\""+name+"\" is a reserved name");
+			names.add(name);
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * looks up a path name in both virtual file systems
+	 * @param pathName path name from the root of the overlay
+	 * @return the upper VNode and the visible lower VNode, one of them can be null
+	 * @throws NoSuchFileOrDirectoryException if no VNode is visible at the path name
+	 */
+	private VNode[] lookup(String pathName){
+		return lookup(split(pathName));
+	}
+
+	/**
+	 * looks up the names of a path in both virtual file systems. the lower VNode is returned if it is not removed by a whiteout
+	 * and if no upper VNode hides one of its parents, even if the upper VNode hides it (see {@link #hides(VNode)}):
+	 * removing the upper VNode must then leave a whiteout.
+	 * @param names names of the path
+	 * @return the upper VNode and the lower VNode, one of them can be null
+	 * @throws NoSuchFileOrDirectoryException if no VNode is visible at the path
+	 */
+	private VNode[] lookup(String[] names){
+		VNode upperNode = upper.rootDirectory;
+		VNode lowerNode = lower.rootDirectory;
+		for(int i=0;i<names.length;i++){
+			if(upperNode!=null && hides(upperNode))
+				lowerNode = null;
+			String name = names[i];
+			Directory upperDirectory = (upperNode!=null && upperNode.isDirectory())?(Directory) upperNode:null;
+			Directory lowerDirectory = (lowerNode!=null && lowerNode.isDirectory())?(Directory) lowerNode:null;
+			if(upperDirectory==null && lowerDirectory==null)
+				throw new NoSuchFileOrDirectoryException("\""+join(names, i+1)+"\" does not exist in the overlay");
+
+			VNode upperChild = (upperDirectory!=null && upperDirectory.contains(name))?upperDirectory.get(name):null;
+			boolean hidden = upperDirectory!=null && upperDirectory.contains(WhiteoutPrefix+name);
+			VNode lowerChild = (!hidden && lowerDirectory!=null && lowerDirectory.contains(name))?lowerDirectory.get(name):null;
+			if(upperChild==null && lowerChild==null)
+				throw new NoSuchFileOrDirectoryException("\""+join(names, i+1)+"\" does not exist in the overlay");
+			upperNode = upperChild;
+			lowerNode = lowerChild;
+		}
+		return new VNode[]{upperNode, lowerNode};
+	}
+
+	/**
+	 * checks if an upper VNode hides the lower VNode with the same path name and its content: a file hides it,
+	 * a directory hides it if it is opaque
+	 * @param upperNode a VNode of the upper virtual file system
+	 * @return true if the lower VNode is hidden
+	 */
+	private static boolean hides(VNode upperNode){
+		return upperNode.isFile() || ((Directory) upperNode).contains(OpaqueMarker);
+	}
+	
+	/**
+	 * checks that a VNode can be created at a path and returns its parent directory in the upper virtual file system
+	 * @param names names of the path of the new VNode
+	 * @return the upper parent directory, copied up if needed
+	 * @throws NameAlreadyExistsException if a VNode is visible at the path
+	 * @throws NoSuchFileOrDirectoryException if the parent directory is not visible
+	 */
+	private Directory prepare(String[] names){
+		if(names.length==0)
+			throw new NameAlreadyExistsException("the root directory of an overlay already exists");
+		try{
+			lookup(names);
+			throw new NameAlreadyExistsException("\""+join(names, names.length)+"\" already exists in the overlay");
+		} catch (NoSuchFileOrDirectoryException e){
+			return copyUpDirectories(names, names.length-1);
+		}
+	}
+
+	/**
+	 * copies up the directories of a path
+	 * @param names names of the path
+	 * @param count number of names to copy up
+	 * @return the last upper directory
+	 * @throws NoSuchFileOrDirectoryException if a directory is not visible
+	 * @throws NoSuchDirectoryException if a VNode of the path is a file
+	 */
+	private Directory copyUpDirectories(String[] names, int count){
+		Directory directory = upper.rootDirectory;
+		for(int i=0;i<count;i++){
+			String[] path = java.util.Arrays.copyOf(names, i+1);
+			VNode[] layers = lookup(path);
+			VNode node = (layers[0]!=null)?layers[0]:copyUp(layers[1], directory);
+			if(!node.isDirectory())
+				throw new NoSuchDirectoryException("\""+join(path, path.length)+"\" is not a directory");
+			directory = (Directory) node;
+		}
+		return directory;
+	}
+
+	/**
+	 * copies a lower VNode to an upper directory: a file with its data, a directory empty
+	 * @param node the lower VNode
+	 * @param parent the upper directory
+	 * @return the upper VNode
+	 */
+	private VNode copyUp(VNode node, Directory parent){
+		if(node.isDirectory())
+			return upper.createDirectory(parent, node.name);
+		node.copy(parent);
+		return parent.get(node.name);
+	}
+
+	/**
+	 * copies up all the content of an upper directory that is still in the lower virtual file system, at any depth
+	 * @param node an upper VNode
+	 * @param names names of its path
+	 * @return the upper VNode
+	 */
+	private VNode copyUpTree(VNode node, String[] names){
+		if(!node.isDirectory())
+			return node;
+		String[] path = java.util.Arrays.copyOf(names, names.length+1);
+		for(VNode child : list(join(names, names.length))){
+			path[names.length] = child.name;
+			VNode upperChild = (child.getVirtualDisk()==upper)?child:copyUp(child, (Directory) node);
+			copyUpTree(upperChild, path);
+		}
+		return node;
+	}
+
+	/**
+	 * joins the first names of a path
+	 * @param names names of the path
+	 * @param count number of names to join
+	 * @return the path name from the root of the overlay
+	 */
+	private static String join(String[] names, int count){
+		StringBuilder path = new StringBuilder();
+		for(int i=0;i<count;i++)
+			path.append(VirtualFileSystem.separator).append(names[i]);
+		return (count==0)?VirtualFileSystem.separator:path.toString();
+	}
+
+}
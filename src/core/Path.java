@@ -26,14 +26,7 @@ public class Path {
 	 * @return true if the given argument is an absolute path string, false if not
 	 */
 	static public boolean isAbsolutePath(String arg){
-		if(arg.endsWith(":"+VirtualFileSystem.separator))
-			return true;
-		for(int i=0;i<arg.length();i++){
-			if(i+1+VirtualFileSystem.separator.length()<arg.length())
-				if(arg.substring(i, i + 1 + VirtualFileSystem.separator.length()).equals(":"+VirtualFileSystem.separator))
-					return true;
-		}
-		return false;
+		return arg.contains(":"+VirtualFileSystem.separator);
 	}
 	
 	/**
@@ -44,7 +37,7 @@ public class Path {
 	static public String getVfsName(String absolutePath){
 		if(!isAbsolutePath(absolutePath))
 			return null;
-		return absolutePath.split(":")[0];
+		return absolutePath.substring(0, absolutePath.indexOf(':'));
 	}
 	
 	/**
@@ -0,0 +1,108 @@
+package core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the absolute path names of the directories of a virtual file system.
+ * Absolute path names are not stored in the VNodes: they are computed from the parent links of the tree structure.
+ * This cache keeps the most recently used directory paths by inode number. Each entry is stamped with the generation 
+ * of the cache when it was computed, and every rename or move increments the generation: all the entries are 
+ * invalidated at once in O(1) whatever the number of VNodes whose path changed.
+ * A cache of capacity 0 is disabled. The cache can be used by parallel traversals of the tree, its methods are synchronized.
+ * 
+ * @author ayoub
+ */
+public class PathCache {
+	
+	/* ----------------------------attributes---------------------------- */
+	
+	/** default number of paths kept in the cache */
+	public static final int DefaultCapacity = 4096;
+	
+	/** maximum number of paths kept in the cache */
+	private final int capacity;
+	/** the current generation of the cache */
+	private long generation;
+	/** cached paths by inode number, in access order */
+	private final LinkedHashMap<Long,Entry> entries;
+	
+	/** a cached path stamped with the generation when it was computed */
+	private static class Entry{
+		final String path;
+		final long generation;
+		Entry(String path, long generation){
+			this.path = path;
+			this.generation = generation;
+		}
+	}
+	
+	/* ----------------------------constructors---------------------------- */
+	
+	/**
+	 * creates an empty path cache
+	 * @param capacity maximum number of paths kept in the cache, 0 to disable it
+	 */
+	public PathCache(final int capacity){
+		this.capacity = capacity;
+		this.generation = 0;
+		this.entries = new LinkedHashMap<Long,Entry>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long,Entry> eldest){
+				return size() > capacity;
+			}
+		};
+	}
+	
+	/* ----------------------------getters---------------------------- */
+	
+	/**
+	 * returns the maximum number of paths kept in the cache
+	 * @return the value of capacity
+	 */
+	public int getCapacity(){
+		return capacity;
+	}
+	
+	/**
+	 * returns the current generation of the cache
+	 * @return the value of generation
+	 */
+	public synchronized long getGeneration(){
+		return generation;
+	}
+	
+	/**
+	 * returns the cached path of a VNode if it is still valid
+	 * @param inode inode number of the VNode
+	 * @return the absolute path name or null if it is not cached
+	 */
+	synchronized String get(long inode){
+		if(capacity==0) return null;
+		Entry e = entries.get(inode);
+		if(e==null || e.generation!=generation)
+			return null;
+		return e.path;
+	}
+	
+	/* ----------------------------setters---------------------------- */
+	
+	/**
+	 * caches the path of a VNode if no rename or move happened since it was computed
+	 * @param inode inode number of the VNode
+	 * @param path absolute path name of the VNode
+	 * @param generationSeen generation of the cache read before the path was computed, see {@link #getGeneration()}
+	 */
+	synchronized void put(long inode, String path, long generationSeen){
+		if(capacity==0 || generationSeen!=generation) return;
+		entries.put(inode, new Entry(path, generation));
+	}
+	
+	/**
+	 * invalidates all cached paths
+	 */
+	synchronized void invalidate(){
+		generation++;
+	}
+}
@@ -0,0 +1,77 @@
+package core;
+
+import exceptions.*;
+
+/**
+ * Progress of a long operation: the bytes transferred and a cancellation flag.
+ * The operation reports each block it transfers and stops with an {@link OperationCanceledException} 
+ * at the next block once it is canceled.
+ * @author ayoub
+ *
+ */
+class Progress {
+	
+	/** number of bytes to transfer */
+	final long total;
+	/** number of bytes transferred */
+	private final java.util.concurrent.atomic.AtomicLong done = new java.util.concurrent.atomic.AtomicLong();
+	/** listener of the progress, or null */
+	private final ProgressListener listener;
+	/** true once the operation is canceled */
+	private volatile boolean canceled = false;
+	
+	/**
+	 * creates the progress of an operation
+	 * @param total number of bytes to transfer
+	 * @param listener listener of the progress, or null
+	 */
+	Progress(long total, ProgressListener listener){
+		this.total = total;
+		this.listener = listener;
+	}
+	
+	/**
+	 * cancels the operation. it stops at the next block.
+	 */
+	void cancel(){
+		canceled = true;
+	}
+	
+	/**
+	 * checks if the operation is canceled
+	 * @return true if canceled
+	 */
+	boolean isCanceled(){
+		return canceled;
+	}
+	
+	/**
+	 * stops the operation if it is canceled
+	 * @throws OperationCanceledException if the operation is canceled
+	 */
+	void check(){
+		if(canceled)
+			throw new OperationCanceledException("the operation has been canceled");
+	}
+	
+	/**
+	 * reports bytes transferred
+	 * @param bytes number of bytes
+	 * @throws OperationCanceledException if the operation is canceled
+	 */
+	void advance(long bytes){
+		check();
+		long d = done.addAndGet(bytes);
+		if(listener!=null)
+			listener.progress(d, total);
+	}
+	
+	/**
+	 * returns the number of bytes transferred
+	 * @return bytes transferred
+	 */
+	long getDone(){
+		return done.get();
+	}
+	
+}
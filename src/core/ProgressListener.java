@@ -0,0 +1,18 @@
+package core;
+
+/**
+ * Receives the progress of a long operation, such as an import or an export.
+ * It is called by the thread that runs the operation, and by several threads when the operation is parallel.
+ * @author ayoub
+ *
+ */
+public interface ProgressListener {
+	
+	/**
+	 * called each time a data block has been transferred
+	 * @param done number of bytes transferred so far
+	 * @param total number of bytes to transfer
+	 */
+	void progress(long done, long total);
+	
+}
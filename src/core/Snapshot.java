@@ -0,0 +1,135 @@
+package core;
+
+/**
+ * A point-in-time image of a virtual file system.
+ * Taking a snapshot takes O(1) time: nothing is copied, the snapshot only gets the next epoch of its virtual disk.
+ * The tree structure is frozen with copy-on-write: the first time a VNode is changed after the snapshot was taken, its state
+ * before the change (name, data, content of a directory) is kept by the snapshot. The snapshot sees the state it kept for a VNode,
+ * or the one kept by the next snapshot, or the live one if the VNode was not changed since.
+ * Data blocks are never duplicated: they are shared between the snapshot and the live tree. A block stays reserved while
+ * a snapshot taken after it was allocated and before it was released exists, and a data block shared with a snapshot
+ * is never rewritten: later writes always go to newly allocated blocks (copy-on-write).
+ * Restoring a snapshot rebuilds its tree and deleting it scans the data blocks, both in O(nodes + blocks) time.
+ * A snapshot is created through {@link VirtualFileSystem#createSnapshot(String)}.
+ *
+ * @author ayoub
+ */
+public class Snapshot implements java.io.Serializable{
+
+	/* ----------------------------attributes---------------------------- */
+
+	private static final long serialVersionUID = -2369419606823185265L;
+
+	/** name of the snapshot */
+	public final String name;
+	/** the date when the snapshot was taken */
+	public final java.util.Date creationDate;
+	/** epoch of the virtual disk when the snapshot was taken, the VNodes and blocks of older epochs are shared with it */
+	final int epoch;
+	/** the VNodes changed after the snapshot was taken (and before the next one), with their state before the first change */
+	final java.util.Map<VNode,State> states;
+	/** occupied space on the virtual disk when the snapshot was taken */
+	final long occupiedSpace;
+
+	/* ----------------------------constructors---------------------------- */
+
+	/**
+	 * creates a snapshot.
+	 * this constructor is package private because a snapshot must be taken through a virtual file system.
+	 * @param name name of the snapshot
+	 * @param epoch epoch of the virtual disk
+	 * @param occupiedSpace occupied space on the virtual disk
+	 */
+	Snapshot(String name, int epoch, long occupiedSpace){
+		this.name = name;
+		this.creationDate = new java.util.Date();
+		this.epoch = epoch;
+		this.states = java.util.Collections.synchronizedMap(new java.util.IdentityHashMap<VNode,State>());
+		this.occupiedSpace = occupiedSpace;
+	}
+
+	/* ----------------------------getters---------------------------- */
+
+	/**
+	 * returns the occupied space on the virtual disk when the snapshot was taken
+	 * @return the value of occupiedSpace
+	 */
+	public long getOccupiedSpace(){
+		return occupiedSpace;
+	}
+
+	/**
+	 * returns the number of VNodes whose state is kept by the snapshot
+	 * @return the number of VNodes changed after the snapshot was taken and before the next one
+	 */
+	public int getKeptStates(){
+		return states.size();
+	}
+
+	@Override
+	public String toString(){
+		java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm");
+		return name+"   "+sdf.format(creationDate)+"   "+VirtualFileSystem.getSimplifiedSize(occupiedSpace);
+	}
+
+	/* ----------------------------states---------------------------- */
+
+	/**
+	 * the state of a VNode kept by a snapshot. The content of a directory refers to the VNodes themselves:
+	 * their own state is looked up in the snapshots when the tree is rebuilt.
+	 */
+	static class State implements java.io.Serializable {
+
+		private static final long serialVersionUID = 4176903580371049846L;
+
+		/** name of the VNode */
+		final String name;
+		/** inode number of the VNode */
+		final long inode;
+		/** size of the file */
+		final long size;
+		/** position of the first data block of the file */
+		final long firstBlockPosition;
+		/** inline data of the file, the array is never changed */
+		final byte[] inlineData;
+		/** content of the directory, null for a file */
+		final VNode[] content;
+
+		/**
+		 * records the current state of a VNode
+		 * @param node the VNode
+		 */
+		State(VNode node){
+			name = node.name;
+			inode = node.inode;
+			size = node.size;
+			if(node.isFile()){
+				firstBlockPosition = ((File) node).getFirstBlockPosition();
+				inlineData = ((File) node).getInlineData();
+				content = null;
+			}
+			else{
+				firstBlockPosition = -1L;
+				inlineData = null;
+				content = ((Directory) node).getContent().toArray(new VNode[0]);
+			}
+		}
+
+		/**
+		 * creates a detached VNode with this state, without content
+		 * @return a new File or an empty Directory
+		 */
+		VNode create(){
+			VNode node;
+			if(content==null){
+				File file = new File(name, size);
+				file.setFirstBlockPosition(firstBlockPosition);
+				file.setInlineData(inlineData);
+				node = file;
+			}
+			else node = new Directory(name);
+			node.inode = inode;
+			return node;
+		}
+	}
+}
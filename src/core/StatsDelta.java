@@ -0,0 +1,36 @@
+package core;
+
+/**
+ * Changes of the statistics of a directory that are not applied yet to the directory and its parents.
+ * It is used during batches, see {@link VirtualFileSystem#batch(Runnable)}.
+ * 
+ * @author ayoub
+ */
+class StatsDelta {
+	
+	/** change of the size in bytes */
+	long size;
+	/** change of the number of files */
+	long files;
+	/** change of the number of directories */
+	long directories;
+	/** change of the number of data blocks */
+	long blocks;
+	/** greatest depth of the VNodes added, relatively to the directory */
+	int addedDepth;
+	/** true if a VNode was removed, the maximum depth must then be computed again from the children */
+	boolean removed;
+	
+	/**
+	 * adds another change to the receiver
+	 * @param delta change to add
+	 */
+	void add(StatsDelta delta){
+		size += delta.size;
+		files += delta.files;
+		directories += delta.directories;
+		blocks += delta.blocks;
+		addedDepth = Math.max(addedDepth, delta.addedDepth);
+		removed |= delta.removed;
+	}
+}
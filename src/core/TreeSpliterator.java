@@ -0,0 +1,126 @@
+package core;
+
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A Spliterator over the VNodes of a sub-tree of a virtual file system, in depth-first pre-order.
+ * The traversal is lazy: the pending sub-trees are kept in a deque and a directory's children are pushed only when
+ * the directory is visited. Each pending entry is a whole sub-tree that comes before the next entries in the traversal order,
+ * so splitting gives away the first half of the deque and the split is still ordered.
+ * The tree structure must not be modified during the traversal.
+ * 
+ * @author ayoub
+ */
+class TreeSpliterator implements Spliterator<VNode> {
+	
+	/**
+	 * a pending sub-tree of the traversal
+	 */
+	private static class Entry {
+		final VNode node;
+		final int depth;
+		/** true if the children of the node are already in the deque */
+		boolean expanded;
+		
+		Entry(VNode node, int depth){
+			this.node = node;
+			this.depth = depth;
+		}
+	}
+	
+	/* ----------------------------attributes---------------------------- */
+	
+	/** pending entries, the next one is first */
+	private final ArrayDeque<Entry> pending;
+	/** maximum depth of the VNodes visited */
+	private final int maxDepth;
+	/** the starting directory if it must not be visited, null otherwise */
+	private final VNode skipped;
+	
+	/* ----------------------------constructors---------------------------- */
+	
+	/**
+	 * creates a Spliterator over a sub-tree
+	 * @param root starting directory
+	 * @param options options of the traversal
+	 */
+	TreeSpliterator(VNode root, WalkOptions options){
+		pending = new ArrayDeque<Entry>();
+		pending.add(new Entry(root, 0));
+		maxDepth = options.getMaxDepth();
+		skipped = (options.isRootIncluded())?null:root;
+	}
+	
+	/**
+	 * creates a Spliterator over pending entries split from another one
+	 * @param pending the entries
+	 * @param maxDepth maximum depth of the VNodes visited
+	 * @param skipped the VNode that must not be visited
+	 */
+	private TreeSpliterator(ArrayDeque<Entry> pending, int maxDepth, VNode skipped){
+		this.pending = pending;
+		this.maxDepth = maxDepth;
+		this.skipped = skipped;
+	}
+	
+	/* ----------------------------Spliterator---------------------------- */
+	
+	@Override
+	public boolean tryAdvance(Consumer<? super VNode> action){
+		while(!pending.isEmpty()){
+			Entry entry = pending.pollFirst();
+			if(!entry.expanded)
+				pushChildren(entry);
+			if(entry.node!=skipped){
+				action.accept(entry.node);
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public Spliterator<VNode> trySplit(){
+		if(pending.size()==1){
+			// a single sub-tree: its children become separate entries
+			Entry entry = pending.pollFirst();
+			if(!entry.expanded)
+				pushChildren(entry);
+			entry.expanded = true;
+			pending.addFirst(entry);
+		}
+		if(pending.size()<2)
+			return null;
+		
+		ArrayDeque<Entry> prefix = new ArrayDeque<Entry>();
+		for(int n = pending.size()/2; n>0; n--)
+			prefix.addLast(pending.pollFirst());
+		return new TreeSpliterator(prefix, maxDepth, skipped);
+	}
+	
+	@Override
+	public long estimateSize(){
+		return (pending.isEmpty())?0:Long.MAX_VALUE;
+	}
+	
+	@Override
+	public int characteristics(){
+		return ORDERED | DISTINCT | NONNULL;
+	}
+	
+	/* ----------------------------useful methods---------------------------- */
+	
+	/**
+	 * pushes the children of an entry at the front of the deque, keeping their order
+	 * @param entry a pending entry
+	 */
+	private void pushChildren(Entry entry){
+		entry.expanded = true;
+		if(!entry.node.isDirectory() || entry.depth>=maxDepth) return;
+		java.util.List<VNode> content = ((Directory)entry.node).getContent();
+		for(int i=content.size()-1;i>=0;i--)
+			pending.addFirst(new Entry(content.get(i), entry.depth+1));
+	}
+}
@@ -0,0 +1,115 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An index of the names of a virtual file system by trigram (substring of 3 characters).
+ * It is used to prune the names to check when searching with a substring, glob or regex pattern: a name can only 
+ * match if it contains all the trigrams of the literal parts of the pattern (see {@link NamePattern}).
+ * It is built from the {@link NameIndex} the first time it is needed and then maintained with it.
+ * 
+ * @author ayoub
+ */
+public class TrigramIndex {
+	
+	/* ----------------------------attributes---------------------------- */
+	
+	/** length of the substrings indexed */
+	public static final int GramLength = 3;
+	
+	/** names by trigram */
+	private final HashMap<String,Set<String>> namesByTrigram;
+	
+	/* ----------------------------constructors---------------------------- */
+	
+	/**
+	 * creates a trigram index of the given names
+	 * @param names names to index
+	 */
+	TrigramIndex(Collection<String> names){
+		namesByTrigram = new HashMap<String,Set<String>>();
+		for(String name : names)
+			add(name);
+	}
+	
+	/* ----------------------------getters---------------------------- */
+	
+	/**
+	 * returns the names that contain all the given literals, using their trigrams. 
+	 * The returned names must still be checked against the pattern.
+	 * @param literals substrings that a name must contain
+	 * @return the candidate names, or null if no literal is long enough to prune the names
+	 */
+	public Set<String> getCandidates(List<String> literals){
+		List<Set<String>> postings = new ArrayList<Set<String>>();
+		for(String literal : literals){
+			for(int i=0;i+GramLength<=literal.length();i++){
+				Set<String> names = namesByTrigram.get(literal.substring(i, i+GramLength));
+				if(names==null)
+					return new HashSet<String>();
+				postings.add(names);
+			}
+		}
+		if(postings.isEmpty())
+			return null;
+		
+		// intersecting from the smallest set
+		Set<String> smallest = postings.get(0);
+		for(Set<String> p : postings){
+			if(p.size()<smallest.size())
+				smallest = p;
+		}
+		Set<String> candidates = new HashSet<String>();
+		for(String name : smallest){
+			boolean inAll = true;
+			for(Set<String> p : postings){
+				if(p!=smallest && !p.contains(name)){
+					inAll = false;
+					break;
+				}
+			}
+			if(inAll)
+				candidates.add(name);
+		}
+		return candidates;
+	}
+	
+	/* ----------------------------setters---------------------------- */
+	
+	/**
+	 * adds a name to the index
+	 * @param name name to add
+	 */
+	void add(String name){
+		for(int i=0;i+GramLength<=name.length();i++){
+			String trigram = name.substring(i, i+GramLength);
+			Set<String> names = namesByTrigram.get(trigram);
+			if(names==null){
+				names = new HashSet<String>();
+				namesByTrigram.put(trigram, names);
+			}
+			names.add(name);
+		}
+	}
+	
+	/**
+	 * removes a name from the index
+	 * @param name name to remove
+	 */
+	void remove(String name){
+		for(int i=0;i+GramLength<=name.length();i++){
+			String trigram = name.substring(i, i+GramLength);
+			Set<String> names = namesByTrigram.get(trigram);
+			if(names!=null){
+				names.remove(name);
+				if(names.isEmpty())
+					namesByTrigram.remove(trigram);
+			}
+		}
+	}
+}
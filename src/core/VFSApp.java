@@ -14,30 +14,76 @@ public class VFSApp {
 	/* ----------------------- attributes ----------------------- */
 	
 	
-	/** the virtual file systems loaded in memory*/
-	private ArrayList<VirtualFileSystem> vfsDataBase = new ArrayList<VirtualFileSystem>();
-	/** current working virtual file system*/
-	private VirtualFileSystem workingVFS = null;
+	/** name of the system property giving the time in milliseconds after which an unused virtual disk is unmounted, see {@link #setIdleTimeout(long)} */
+	public static final String IdleTimeoutProperty = "vfs.idleTimeout";
+	/** name of the system property registering the MXBeans of the metrics when it is "true", see {@link #registerMBeans()} */
+	public static final String JMXProperty = "vfs.jmx";
+	
+	/** the virtual disks known by the application by name, mounted when they are used, shared by the sessions*/
+	private final DiskRegistry vfsDataBase;
+	/** name of the current working virtual file system, null if there is none*/
+	private String workingVFS = null;
+	/** working directories of a session by virtual file system name, null if the working directories of the virtual file systems are used */
+	private final Map<String,Directory> workingDirectories;
+	/** format of the time shown by the prompt */
+	private static final java.time.format.DateTimeFormatter PromptTimeFormat = java.time.format.DateTimeFormatter.ofPattern("HH:mm");
 	
 	
 	/* ----------------------- constructors ----------------------- */
 	
 	
 	/**
-	 * creates a VFSApp loading all existing virtual file systems on the working directory in the host file system.
+	 * creates a VFSApp finding all existing virtual file systems on the working directory in the host file system.
+	 * only the headers of the virtual disk files are read, in parallel: a virtual file system is loaded the first time it is used.
+	 * the virtual file systems are sorted by name.
+	 * the virtual disks are unmounted when they are not used for the time given by the {@link #IdleTimeoutProperty} system property, if it is set.
+	 * the MXBeans of the metrics are registered if the {@link #JMXProperty} system property is "true".
 	 */
 	public VFSApp(){
+		vfsDataBase = new DiskRegistry();
+		workingDirectories = null;
 		// getting host file system working directory
 		java.io.File workingDir = new java.io.File(System.getProperty("user.dir"));
 		// looking for virtual disk files
-		for(java.io.File file: workingDir.listFiles()){
-			if(file.isFile() && file.getName().endsWith(VirtualFileSystem.VDFileExtension)){
-				vfsDataBase.add(new VirtualFileSystem(file.getName().substring(0, file.getName().length()-VirtualFileSystem.VDFileExtension.length())));
+		Arrays.stream(workingDir.listFiles()).parallel().forEach(new java.util.function.Consumer<java.io.File>(){
+			@Override
+			public void accept(java.io.File file){
+				DiskEntry disk = DiskEntry.fromHeader(file, vfsDataBase);
+				if(disk!=null)
+					vfsDataBase.add(disk);
 			}
-		}
+		});
 		// setting current working virtual file system if found
 		if(!vfsDataBase.isEmpty())
-			workingVFS = vfsDataBase.get(0);
+			workingVFS = vfsDataBase.getDisks().get(0).name;
+		long idleTimeout = Long.getLong(IdleTimeoutProperty, 0L);
+		if(idleTimeout>0)
+			setIdleTimeout(idleTimeout);
+		if(Boolean.getBoolean(JMXProperty))
+			registerMBeans();
+	}
+	
+	/**
+	 * creates a session of a VFSApp: it shares the virtual file systems loaded by the VFSApp
+	 * but has its own working virtual file system and working directories.
+	 * @param app the VFSApp that loaded the virtual file systems
+	 */
+	private VFSApp(VFSApp app){
+		vfsDataBase = app.vfsDataBase;
+		workingDirectories = Collections.synchronizedMap(new HashMap<String,Directory>());
+		if(!vfsDataBase.isEmpty())
+			workingVFS = vfsDataBase.getDisks().get(0).name;
+	}
+	
+	/**
+	 * opens a new session on the virtual file systems loaded by this VFSApp.
+	 * the virtual file systems created or removed by a session are seen by all the others,
+	 * but changing the working directory of a session does not change it for the others.
+	 * a session must be used by one thread at a time.
+	 * @return a new VFSApp sharing the virtual file systems
+	 */
+	public VFSApp openSession(){
+		return new VFSApp(this);
 	}
 	
 	
@@ -45,30 +91,79 @@ public class VFSApp {
 	
 	
 	/**
-	 * returns the list of virtual file systems load on the memory
-	 * @return vfsDataBase attribute
+	 * returns the list of all the virtual file systems. the virtual file systems that are not mounted are loaded in parallel,
+	 * the list keeps the order of the virtual file systems whatever the order they are loaded in.
+	 * @return the virtual file systems
+	 * @throws VFSOperationFailException if a virtual disk file cannot be loaded
 	 */
 	public List<VirtualFileSystem> getVFSDataBase(){
-		return vfsDataBase;
+		return vfsDataBase.getDisks().parallelStream().map(new java.util.function.Function<DiskEntry,VirtualFileSystem>(){
+			@Override
+			public VirtualFileSystem apply(DiskEntry disk){
+				return disk.get();
+			}
+		}).collect(java.util.stream.Collectors.<VirtualFileSystem>toList());
+	}
+	
+	/**
+	 * returns the names of all the virtual file systems, without mounting them
+	 * @return the list of names, sorted
+	 */
+	public List<String> getVFSNames(){
+		List<String> names = new ArrayList<String>();
+		for(DiskEntry disk : vfsDataBase.getDisks())
+			names.add(disk.name);
+		return names;
 	}
 	
 	/**
-	 * returns the virtual file system with the given name
-	 * @param vfsName name of the virtual file system to look for
+	 * checks if a virtual file system is loaded in memory
+	 * @param vfsName name of the virtual file system
+	 * @return true if the virtual file system is mounted
+	 * @throws NoSuchVirtualFileSystemException if no virtual disk found
+	 */
+	public boolean isMounted(String vfsName){
+		return getDisk(vfsName).isMounted();
+	}
+	
+	/**
+	 * returns the virtual file system with the given name. it is mounted if it is not.
+	 * @param vfsName name of the virtual file system to look for, "" for the current working virtual file system
 	 * @return a reference to the VirtualFileSystem if found
 	 * @throws NoSuchVirtualFileSystemException if no virtual disk found
+	 * @throws VFSOperationFailException if the virtual disk file cannot be loaded
 	 */
 	public VirtualFileSystem getVFSByName(String vfsName){
-		VirtualFileSystem vfs = null;
-		if(vfsName.equals("")) return workingVFS;
-		for(VirtualFileSystem v : vfsDataBase)
-			if(v.name.equals(vfsName)){
-				vfs = v;
-				break;
-			}
-		
-		if(vfs==null) throw new NoSuchVirtualFileSystemException("\""+vfsName+"\" does not exist");
-		return vfs;
+		if(vfsName.equals("")){
+			if(workingVFS==null) return null;
+			vfsName = workingVFS;
+		}
+		return getDisk(vfsName).get();
+	}
+	
+	/**
+	 * returns the entry of a virtual disk
+	 * @param vfsName name of the virtual file system
+	 * @return the entry
+	 * @throws NoSuchVirtualFileSystemException if no virtual disk found
+	 */
+	private DiskEntry getDisk(String vfsName){
+		DiskEntry disk = vfsDataBase.get(vfsName);
+		if(disk==null) throw new NoSuchVirtualFileSystemException("\""+vfsName+"\" does not exist");
+		return disk;
+	}
+	
+	/**
+	 * returns a VNode by its absolute path name on any virtual disk. the virtual disk is mounted if it is not.
+	 * @param absolutePathName path name of the form "vfsName:/path"
+	 * @return the VNode
+	 * @throws NoSuchVirtualFileSystemException if no virtual disk has the name of the path
+	 * @throws NoSuchFileOrDirectoryException if no VNode is found
+	 */
+	public VNode get(String absolutePathName){
+		if(!Path.isAbsolutePath(absolutePathName))
+			throw new NoSuchFileOrDirectoryException("\""+absolutePathName+"\" is not an absolute path name");
+		return vfsDataBase.resolve(absolutePathName);
 	}
 	
 	/**
@@ -76,7 +171,73 @@ public class VFSApp {
 	 * @return workingVFS reference.
 	 */
 	public VirtualFileSystem getCurrentWorkingVFS(){
-		return workingVFS;
+		return getVFSByName("");
+	}
+	
+	/**
+	 * returns the working directory of a virtual file system. a session has its own working directories,
+	 * it starts at the root directory and goes back to it if its working directory is removed.
+	 * @param vfs a virtual file system
+	 * @return the working directory
+	 */
+	public Directory getWorkingDirectory(VirtualFileSystem vfs){
+		if(workingDirectories==null)
+			return vfs.getWorkingDirectory();
+		Directory directory = workingDirectories.get(vfs.name);
+		VirtualFileSystem disk = (directory!=null)?directory.getVirtualDisk():null;
+		if(disk!=null && disk!=vfs && vfs.getMountedDisk(disk.name)!=disk){
+			// the virtual disk was unmounted and mounted again since the working directory was changed,
+			// or the working directory was on a virtual disk mounted on this one
+			try{
+				VNode node = vfs.get(directory.getAbsolutePathName());
+				directory = (node.isDirectory())?(Directory) node:null;
+			} catch (NoSuchFileOrDirectoryException e){
+				directory = null;
+			}
+			if(directory!=null)
+				workingDirectories.put(vfs.name, directory);
+		}
+		if(directory==null || !directory.getVirtualDisk().isRegistered(directory))
+			return vfs.rootDirectory;
+		return directory;
+	}
+	
+	/**
+	 * returns the path name of a VNode of a virtual file system that does not depend on its working directory
+	 * @param vfs a virtual file system
+	 * @param pathName path name, absolute or relative to the working directory
+	 * @return the path name itself, or an absolute one in a session
+	 */
+	private String resolve(VirtualFileSystem vfs, String pathName){
+		if(workingDirectories==null)
+			return pathName;
+		return getAbsolutePathName(vfs, pathName);
+	}
+	
+	/**
+	 * returns a VNode by its path name. an absolute path name on another virtual disk is resolved on that disk.
+	 * @param vfs the virtual file system of the command
+	 * @param pathName path name, absolute or relative to the working directory
+	 * @return the VNode
+	 * @throws NoSuchVirtualFileSystemException if no virtual disk has the name of the path
+	 * @throws NoSuchFileOrDirectoryException if no VNode is found
+	 */
+	private VNode getNode(VirtualFileSystem vfs, String pathName){
+		if(Path.isAbsolutePath(pathName) && !Path.getVfsName(pathName).equals(vfs.name))
+			return vfsDataBase.resolve(pathName);
+		return vfs.get(resolve(vfs, pathName));
+	}
+	
+	/**
+	 * returns the absolute path name of a VNode of a virtual file system
+	 * @param vfs a virtual file system
+	 * @param pathName path name, absolute or relative to the working directory
+	 * @return the absolute path name
+	 */
+	String getAbsolutePathName(VirtualFileSystem vfs, String pathName){
+		if(Path.isAbsolutePath(pathName) || pathName.startsWith(VirtualFileSystem.separator))
+			return pathName;
+		return getWorkingDirectory(vfs).getAbsolutePathName()+pathName;
 	}
 	
 	
@@ -94,52 +255,110 @@ public class VFSApp {
 	 * @throws NoSuchVirtualFileSystemException if no virtual file system correspond to the given name argument
 	 */
 	public String list(String vfsName,String args, String pathName){
-		String r = "";				// string to return
+		StringBuilder r = new StringBuilder();
+		list(vfsName, args, pathName, 0, 0, r);
+		return r.toString();
+	}
+	
+	/**
+	 * writes a page of the content of a directory on a virtual file system to an output, one line per file/directory.
+	 * the columns widths are computed in one pass over the directory so that all pages are aligned.
+	 * @param vfsName virtual file system name
+	 * @param args arguments of the command: "-l" shows sizes, "-S" sorts by size (greatest first) and "-n" sorts by name. they can be combined ("-lS").
+	 * @param pathName the path name of the directory to list, "" for the current working directory
+	 * @param offset position of the first entry to write, 0 or the value returned for the previous page
+	 * @param pageSize maximum number of entries to write, 0 for all
+	 * @param out output where the listing is written
+	 * @return the offset of the next page, or -1 if the listing is over
+	 * @throws NoSuchDirectoryException if the path name is not valid
+	 * @throws NoSuchVirtualFileSystemException if no virtual file system correspond to the given name argument
+	 * @throws InvalidCommandException if an argument is not valid
+	 * @throws VFSOperationFailException if the output cannot be written
+	 */
+	public int list(String vfsName, String args, String pathName, int offset, int pageSize, Appendable out){
 		boolean lArg = false;		// checks if "-l" argument has been passed
-		List<VNode> list = null;	// list of contents to return in the string
+		String order = null;		// order of the entries
 		
 		// getting virtual file system
 		VirtualFileSystem vfs = getVFSByName(vfsName);
 		
-		// checking if "-l" argument has been passed
-		if(args.equals("-l"))
-			lArg = true;
+		// parsing arguments
+		if(!args.equals("")){
+			if(!args.startsWith("-") || args.length()<2)
+				throw new InvalidCommandException("\""+args+"\" is not a valid argument");
+			for(char c : args.substring(1).toCharArray()){
+				if(c=='l') lArg = true;
+				else if(c=='S') order = VirtualFileSystem.BySize;
+				else if(c=='n') order = VirtualFileSystem.ByName;
+				else throw new InvalidCommandException("\"-"+c+"\" is not a valid argument");
+			}
+		}
 		
-		// if no path name has been passed 
+		// getting target directory
+		Directory directory;
 		if(pathName.equals(""))
-			list = vfs.getWorkingDirectory().getContentList();
-		
+			directory = getWorkingDirectory(vfs);
 		else{
-			// getting target node
-			VNode target = vfs.get(pathName);	
+			VNode target = getNode(vfs, pathName);
 			if(!target.isDirectory())
 				throw new NoSuchDirectoryException("\""+pathName+"\" is not a directory");
-			list = ((Directory) target).getContentList();
-			
+			directory = (Directory) target;
 		}
 		
-		// bulding return string
+		// columns widths
 		int lenMaxNames = 0;
 		int lenMaxSizes = 0;
-		for(VNode node : list){
+		for(VNode node : directory.getContent()){
 			if(lenMaxNames<node.name.length())
 				lenMaxNames = node.name.length();
-			if(lenMaxSizes<Long.toString(node.size).length())
-				lenMaxSizes = Long.toString(node.size).length();
+			int lenSize = digits(node.size);
+			if(lenMaxSizes<lenSize)
+				lenMaxSizes = lenSize;
+		}
+		
+		// writing the page
+		List<VNode> page = VirtualFileSystem.list(directory, order, offset, pageSize);
+		try{
+			for(VNode node : page){
+				out.append(node.name);
+				pad(out, lenMaxNames-node.name.length()+3);
+				if(lArg){
+					out.append(Long.toString(node.size));
+					pad(out, lenMaxSizes-digits(node.size)+3);
+				}
+				out.append((node.isFile())?'f':'d').append('\n');
+			}
+		} catch (java.io.IOException e){
+			throw new VFSOperationFailException("could not write the listing : "+e.getMessage());
 		}
 		
-		for(VNode node : list){
-			String tabAfterNames = "   ";
-			String tabAfterSizes = "   ";
-			for(int i=0;i<lenMaxNames-node.name.length();i++)
-				tabAfterNames += " ";
-			for(int i=0;i<lenMaxSizes-Long.toString(node.size).length();i++)
-				tabAfterSizes += " ";
-			
-			r += node.name + tabAfterNames + ((lArg)?(node.size+tabAfterSizes):"") + ((node.type.equals("file"))?"f":"d") + "\n";
+		int next = offset+page.size();
+		return (pageSize==0 || next>=directory.getContent().size())?-1:next;
+	}
+	
+	/**
+	 * returns the number of digits of a size
+	 * @param size a positive size
+	 * @return the number of digits in base 10
+	 */
+	private static int digits(long size){
+		int d = 1;
+		while(size>=10){
+			size /= 10;
+			d++;
 		}
-
-		return r;
+		return d;
+	}
+	
+	/**
+	 * writes spaces to an output
+	 * @param out the output
+	 * @param n number of spaces
+	 * @throws java.io.IOException if the output cannot be written
+	 */
+	private static void pad(Appendable out, int n) throws java.io.IOException{
+		for(int i=0;i<n;i++)
+			out.append(' ');
 	}
 	
 	/**
@@ -152,9 +371,14 @@ public class VFSApp {
 	 */
 	public void changeDir(String vfsName, String pathName){
 		VirtualFileSystem vfs = getVFSByName(vfsName);
-		vfs.navigate(pathName);
-		if(!vfsName.equals(workingVFS.name))
-			workingVFS = vfs;
+		if(workingDirectories==null)
+			vfs.navigate(pathName);
+		else{
+			if(!pathName.endsWith(VirtualFileSystem.separator))
+				pathName = pathName + VirtualFileSystem.separator;
+			workingDirectories.put(vfs.name, (Directory) vfs.get(resolve(vfs, pathName)));
+		}
+		workingVFS = vfs.name;
 	}
 	
 	/**
@@ -167,7 +391,7 @@ public class VFSApp {
 	 */
 	public void makeDir(String vfsName, String pathName){
 		VirtualFileSystem vfs = getVFSByName(vfsName);
-		vfs.createDirectory(pathName);
+		vfs.createDirectory(resolve(vfs, pathName));
 	}
 	
 	/**
@@ -181,7 +405,7 @@ public class VFSApp {
 	 */
 	public void makeFile(String vfsName, String pathName, String dim){
 		VirtualFileSystem vfs = getVFSByName(vfsName);
-		vfs.createFile(pathName,Long.parseLong(dim));
+		vfs.createFile(resolve(vfs, pathName),Long.parseLong(dim));
 	}
 	
 	/**
@@ -197,35 +421,42 @@ public class VFSApp {
 	 */
 	public void move(String vfsName, String oldPathName, String newPathName){
 		VirtualFileSystem vfs = getVFSByName(vfsName);
-		VNode toMove = vfs.get(oldPathName);
+		VNode toMove = vfs.get(resolve(vfs, oldPathName));
 		VNode whereToMove = null;
 		String newName;
 		
 		try{
-			whereToMove = vfs.get(newPathName);
+			whereToMove = vfs.get(resolve(vfs, newPathName));
 			if(whereToMove.isFile())
 				throw new NoSuchDirectoryException("\""+newPathName+"\" is not a directory");
 			newName = toMove.name;
 		} catch (NoSuchFileOrDirectoryException e){
 			if(!Path.isPath(newPathName)){
-				whereToMove = vfs.getWorkingDirectory();
+				whereToMove = getWorkingDirectory(vfs);
 				newName = newPathName;
 			}
 			else {
-				whereToMove = vfs.get(Path.getPathFromPathName(newPathName));
+				whereToMove = vfs.get(resolve(vfs, Path.getPathFromPathName(newPathName)));
 				newName = Path.getNameFromPathName(newPathName);
 			}
 		}
 		
-		if(!toMove.getParent().equals(whereToMove))
+		if(!toMove.getParent().equals(whereToMove)){
 			toMove.move((Directory) whereToMove);
+			// a VNode moved to another virtual disk is replaced with a copy
+			if(toMove.getParent()==null)
+				toMove = ((Directory) whereToMove).get(toMove.name);
+		}
 		toMove.rename(newName);
 	}
 	
 	
 	/**
 	 * moves/renames a VNode on a virtual file system.
-	 * If the file/directory already exists it overwrites it.
+	 * If the file/directory already exists it overwrites it. On the same virtual disk the removal and the move run as
+	 * a transaction: if the move fails, the overwritten file/directory is put back (see {@link VirtualFileSystem#transaction(Runnable)}).
+	 * To another virtual disk the overwritten file/directory is replaced with a copy as a transaction
+	 * (see {@link #copyAndOverwrite(String, String, String)}), then the VNode is removed: if the removal fails, the copy is kept.
 	 * It is similar to the "mv" command on Unix systems.
 	 * @param vfsName virtual file system name
 	 * @param oldPathName path name of the VNode to move/rename
@@ -233,28 +464,46 @@ public class VFSApp {
 	 * @throws NoSuchDirectoryException if a path name is not valid
 	 * @throws NoSuchVirtualFileSystemException if no virtual file system correspond to the given name argument
 	 * @throws VFSOperationFailException if operation fails
+	 * @throws NoFreeSpaceLeftException if the virtual file system does not have enough space left
 	 */
 	public void moveAndOverwrite(String vfsName, String oldPathName, String newPathName) {
 		VirtualFileSystem vfs = getVFSByName(vfsName);
-		VNode toMove = vfs.get(oldPathName);
+		final VNode toMove = vfs.get(resolve(vfs, oldPathName));
 		VNode whereToMove = null;
 		
 		try{
-			whereToMove = vfs.get(newPathName);
+			whereToMove = vfs.get(resolve(vfs, newPathName));
 			if(whereToMove.isFile())
 				throw new NoSuchDirectoryException("\""+newPathName+"\" is not a directory");
 		} catch (NoSuchFileOrDirectoryException e){
 			if(!Path.isPath(newPathName)){
-				whereToMove = vfs.getWorkingDirectory();
+				whereToMove = getWorkingDirectory(vfs);
 			}
 			else {
-				whereToMove = vfs.get(Path.getPathFromPathName(newPathName));
+				whereToMove = vfs.get(resolve(vfs, Path.getPathFromPathName(newPathName)));
 			}
 		}
 		
-		((Directory) whereToMove).get(toMove.name).remove();
+		final Directory target = (Directory) whereToMove;
+		final VNode overwritten = target.get(toMove.name);
+		VirtualFileSystem targetVFS = target.getVirtualDisk();
+		if(toMove.getVirtualDisk()==targetVFS){
+			// the VNode is only relinked, no data block is allocated
+			targetVFS.transaction(new Runnable(){
+				@Override
+				public void run(){
+					overwritten.remove();
+					toMove.move(target);
+				}
+			}, false);
+			return;
+		}
 		
-		toMove.move((Directory) whereToMove);
+		// a transaction is limited to one virtual disk: the removal from the other one cannot be undone
+		if(toMove.isDirectory())
+			toMove.getVirtualDisk().checkNoMountPointIn((Directory) toMove);
+		replaceWithCopy(overwritten, toMove, target);
+		toMove.remove();
 	}
 	
 
@@ -272,8 +521,8 @@ public class VFSApp {
 	 */
 	public void copy(String vfsName, String oldPathName, String newPathName){
 		VirtualFileSystem vfs = getVFSByName(vfsName);
-		VNode toCopy = vfs.get(oldPathName);
-		VNode whereToCopy = vfs.get(newPathName);
+		VNode toCopy = vfs.get(resolve(vfs, oldPathName));
+		VNode whereToCopy = vfs.get(resolve(vfs, newPathName));
 		if(!whereToCopy.isDirectory())
 			throw new NoSuchDirectoryException("\""+newPathName+"\" is not a directory");
 		toCopy.copy((Directory) whereToCopy);
@@ -282,7 +531,8 @@ public class VFSApp {
 	
 	/**
 	 * copies a VNode on a virtual file system.
-	 * If the VNode already exists it overwrites it.
+	 * If the VNode already exists it overwrites it. The removal and the copy run as a transaction on the virtual disk of the
+	 * directory: if the copy fails, the overwritten VNode is put back. The copy can reuse the space of the overwritten VNode.
 	 * It is similar to the "cp" command on Unix systems.
 	 * @param vfsName virtual file system name
 	 * @param oldPathName path name of the VNode to copy
@@ -294,12 +544,38 @@ public class VFSApp {
 	 */
 	public void copyAndOverwrite(String vfsName, String oldPathName, String newPathName){
 		VirtualFileSystem vfs = getVFSByName(vfsName);
-		VNode toCopy = vfs.get(oldPathName);
-		VNode whereToCopy = vfs.get(newPathName);
+		final VNode toCopy = vfs.get(resolve(vfs, oldPathName));
+		VNode whereToCopy = vfs.get(resolve(vfs, newPathName));
 		if(!whereToCopy.isDirectory())
 			throw new NoSuchDirectoryException("\""+newPathName+"\" is not a directory");
-		((Directory) whereToCopy).get(toCopy.name).remove();
-		toCopy.copy((Directory) whereToCopy);
+		replaceWithCopy(((Directory) whereToCopy).get(toCopy.name), toCopy, (Directory) whereToCopy);
+	}
+	
+	/**
+	 * replaces a VNode of a directory with a copy of another VNode, as a transaction on the virtual disk of the directory.
+	 * When the free blocks are not enough, the copy reuses the data blocks of the overwritten VNode: their content
+	 * is written back if the copy fails (see {@link VirtualFileSystem#transaction(Runnable)}).
+	 * @param overwritten the VNode of the directory to replace
+	 * @param toCopy the VNode to copy
+	 * @param target the directory
+	 * @throws NoFreeSpaceLeftException if the virtual disk of the directory does not have enough space left, nothing is changed then
+	 */
+	private static void replaceWithCopy(final VNode overwritten, final VNode toCopy, final Directory target){
+		VirtualFileSystem in = toCopy.getVirtualDisk();
+		VirtualFileSystem out = target.getVirtualDisk();
+		// the transaction locks the virtual disk of the directory, the one of the copied VNode must be locked before
+		VirtualFileSystem.lockTrees(in, out);
+		try{
+			out.transaction(new Runnable(){
+				@Override
+				public void run(){
+					overwritten.remove();
+					toCopy.copy(target);
+				}
+			}, false);
+		} finally {
+			VirtualFileSystem.unlockTrees(in, out);
+		}
 	}
 	
 
@@ -314,8 +590,9 @@ public class VFSApp {
 	 */
 	public void remove(String vfsName, String pathName){
 		VirtualFileSystem vfs = getVFSByName(vfsName);
-		VNode toRemove = vfs.get(pathName);
-		if(vfs.equals(workingVFS) && toRemove.equals(vfs.getWorkingDirectory()))
+		VNode toRemove = getNode(vfs, pathName);
+		vfs = toRemove.getVirtualDisk();
+		if(vfs.name.equals(workingVFS) && toRemove.equals(getWorkingDirectory(vfs)))
 			changeDir("","..");
 		toRemove.remove();
 	}
@@ -324,25 +601,34 @@ public class VFSApp {
 	 * creates a new virtual file system of the a given dimension
 	 * @param vfsName name of the virtual file system to create
 	 * @param dim a long value representing the dimension (in bytes) of the new virtual file system
+	 * @throws NameAlreadyExistsException if a virtual file system has the same name
 	 * @throws SizeNotAllowedException if space dimension is too big
 	 * @throws VFSOperationFailException if formatting operation fails
 	 * @see VirtualFileSystem
 	 */
 	public void createVFS(String vfsName,long dim){
-		vfsDataBase.add(new VirtualFileSystem(vfsName,dim));
+		if(vfsDataBase.get(vfsName)!=null)
+			throw new NameAlreadyExistsException("\""+vfsName+"\" already exists");
+		VirtualFileSystem vfs = new VirtualFileSystem(vfsName,dim);
+		if(!vfsDataBase.add(new DiskEntry(vfs, vfsDataBase)))
+			throw new NameAlreadyExistsException("\""+vfsName+"\" already exists");
+		vfsDataBase.mounted(vfs);
 	}
 	
 	/**
 	 * deletes a virtual file system
 	 * @param vfsName name of the virtual file system to delete
-	 * @throws VFSOperationFailException if operation fails
+	 * @throws VFSOperationFailException if operation fails or if the virtual file system is part of a mount
 	 * @throws NoSuchVirtualFileSystemException if no virtual file system correspond to the given name argument
 	 * @see VirtualFileSystem
 	 */
 	public void removeVFS(String vfsName){
 		VirtualFileSystem vfs = getVFSByName(vfsName);
+		vfs.checkNotMounted("remove \""+vfs.name+"\"");
 		vfs.delete();
-		vfsDataBase.remove(vfs);
+		vfsDataBase.remove(vfs.name);
+		if(workingDirectories!=null)
+			workingDirectories.remove(vfs.name);
 	}
 	
 	/**
@@ -370,8 +656,21 @@ public class VFSApp {
 	 * @see VirtualFileSystem
 	 */
 	public void importToVFS(String hostPathName, String vfsName, String pathName){
+		importToVFS(hostPathName, vfsName, pathName, null);
+	}
+	
+	/**
+	 * imports a file/directory from the host file system to a virtual file system and reports its progress
+	 * @param hostPathName path name of the file/directory to import from the host file system
+	 * @param vfsName virtual file system where to import
+	 * @param pathName path name of the directory where to import on the virtual file system
+	 * @param progress progress of the import, or null
+	 * @throws OperationCanceledException if the import is canceled
+	 * @see #importToVFS(String, String, String)
+	 */
+	void importToVFS(String hostPathName, String vfsName, String pathName, Progress progress){
 		VirtualFileSystem vfs = getVFSByName(vfsName);
-		vfs.importFromHostFileSystem(hostPathName, pathName);
+		vfs.importFromHostFileSystem(hostPathName, resolve(vfs, pathName), progress);
 	}
 	
 	/**
@@ -383,10 +682,21 @@ public class VFSApp {
 	 * @see VNode
 	 */
 	public void exportVFS(String vfsName, String pathName){
+		exportVFS(vfsName, pathName, null);
+	}
+	
+	/**
+	 * exports a virtual file system to the host file system and reports its progress
+	 * @param vfsName the name of the virtual file system to export
+	 * @param pathName path name on the host file system of the directory where to export
+	 * @param progress progress of the export, or null
+	 * @throws OperationCanceledException if the export is canceled, the files already exported are kept
+	 * @see #exportVFS(String, String)
+	 */
+	void exportVFS(String vfsName, String pathName, Progress progress){
 		VirtualFileSystem vfs = getVFSByName(vfsName);
-		vfs.rootDirectory.rename(vfs.name);
-		vfs.rootDirectory.exportToHostFileSystem(pathName);
-		vfs.rootDirectory.rename("");
+		// the root directory is shared with the other sessions, it is not renamed
+		vfs.rootDirectory.exportToHostFileSystem(pathName, vfs.name, progress);
 	}
 	
 	/**
@@ -401,6 +711,48 @@ public class VFSApp {
 		return vfs.toString();
 	}
 	
+	/**
+	 * writes the disk usage statistics of a file/directory of a virtual file system to an output: size, number of files, 
+	 * directories and data blocks, and maximum depth. They are maintained by the directories, so the sub-tree is not visited.
+	 * The largest children of a directory can be listed too, greatest first.
+	 * It is similar to the "du" command on Unix systems.
+	 * @param vfsName name of the virtual file system
+	 * @param pathName path name of the file/directory, "" for the current working directory
+	 * @param top number of largest children to write, 0 for none
+	 * @param out output where the statistics are written
+	 * @throws NoSuchVirtualFileSystemException if no virtual file system correspond to the given name argument
+	 * @throws NoSuchFileOrDirectoryException if the path name is not valid
+	 * @throws VFSOperationFailException if the output cannot be written
+	 */
+	public void du(String vfsName, String pathName, int top, Appendable out){
+		VirtualFileSystem vfs = getVFSByName(vfsName);
+		VNode node = (pathName.equals(""))?getWorkingDirectory(vfs):getNode(vfs, pathName);
+		node.getVirtualDisk().flushStats();
+		try{
+			out.append(node.getAbsolutePathName()).append('\n');
+			out.append("  size: ").append(Long.toString(node.size)).append(" B (").append(VirtualFileSystem.getSimplifiedSize(node.size)).append(")\n");
+			if(node.isFile()){
+				out.append("  blocks: ").append(Long.toString(((File)node).getBlockCount()));
+				out.append(((File)node).isInline()?" (inline)\n":"\n");
+				return;
+			}
+			Directory directory = (Directory) node;
+			out.append("  files: ").append(Long.toString(directory.getFileCount())).append('\n');
+			out.append("  directories: ").append(Long.toString(directory.getDirectoryCount())).append('\n');
+			out.append("  blocks: ").append(Long.toString(directory.getBlockCount())).append('\n');
+			out.append("  max depth: ").append(Integer.toString(directory.getMaxDepth())).append('\n');
+			if(top>0){
+				List<VNode> largest = VirtualFileSystem.list(directory, VirtualFileSystem.BySize, 0, top);
+				if(!largest.isEmpty())
+					out.append("  largest:\n");
+				for(VNode child : largest)
+					out.append("    ").append(child.toString()).append("   ").append(VirtualFileSystem.getSimplifiedSize(child.size)).append('\n');
+			}
+		} catch (java.io.IOException e){
+			throw new VFSOperationFailException("could not write the statistics : "+e.getMessage());
+		}
+	}
+	
 	/**
 	 * returns a String containing all the content of a virtual file system formatted in a tree structure.
 	 * @param vfsName the name of the virtual file system
@@ -413,6 +765,21 @@ public class VFSApp {
 		return vfs.getTree();
 	}
 	
+	/**
+	 * writes the content of a virtual file system formatted in a tree structure to an output, without building it in memory.
+	 * @param vfsName the name of the virtual file system
+	 * @param maxDepth maximum depth of the files/directories written, {@link WalkOptions#Unlimited} for no limit
+	 * @param maxEntries maximum number of files/directories written, 0 for no limit
+	 * @param out output where the tree is written
+	 * @return the number of files/directories written
+	 * @throws NoSuchVirtualFileSystemException if no virtual file system correspond to the given name argument
+	 * @throws VFSOperationFailException if the output cannot be written
+	 */
+	public int tree(String vfsName, int maxDepth, int maxEntries, Appendable out){
+		VirtualFileSystem vfs = getVFSByName(vfsName);
+		return vfs.printTree(out, maxDepth, maxEntries);
+	}
+	
 	/**
 	 * finds all files with a given name in a virtual file system
 	 * @param vfsName name of the virtual file system
@@ -422,15 +789,134 @@ public class VFSApp {
 	 * @throws NoSuchFileOrDirectoryException if no file is found
 	 */
 	public String find(String vfsName,String fileName){
+		StringBuilder pathNamesFound = new StringBuilder();
+		find(vfsName, "", fileName, 0, pathNamesFound);
+		return pathNamesFound.toString();
+	}
+	
+	/**
+	 * finds the files whose name matches a pattern in a virtual file system, starting from its current working directory.
+	 * the absolute path names of the files found are written to the output one per line, sorted, as soon as the search is over.
+	 * @param vfsName name of the virtual file system
+	 * @param option type of pattern: "" for an exact name, "-s" for a substring, "-g" for a glob pattern, "-r" for a regular expression
+	 * @param pattern the pattern to match
+	 * @param limit maximum number of files to write, 0 for no limit
+	 * @param out output where the path names are written
+	 * @return the number of files found
+	 * @throws NoSuchVirtualFileSystemException if no virtual file system correspond to the given name argument
+	 * @throws InvalidCommandException if the option or the pattern is not valid
+	 * @throws VFSOperationFailException if the output cannot be written
+	 */
+	public int find(String vfsName, String option, String pattern, int limit, final Appendable out){
 		VirtualFileSystem vfs = getVFSByName(vfsName);
-		String pathNamesFound = "";
-		
-		for(VNode found: vfs.find(fileName)){
-			if(found.isFile())
-				pathNamesFound += found.getAbsolutePathName() + "\n";
+		return vfs.find(getWorkingDirectory(vfs), NamePattern.fromOption(option, pattern), "file", limit, new java.util.function.Consumer<VNode>(){
+			@Override
+			public void accept(VNode found){
+				try {
+					out.append(found.getAbsolutePathName()).append('\n');
+				} catch (java.io.IOException e) {
+					throw new VFSOperationFailException("could not write the results : "+e.getMessage());
+				}
+			}
+		});
+	}
+	
+	/**
+	 * takes a snapshot of a virtual file system
+	 * @param vfsName name of the virtual file system
+	 * @param snapshotName name of the snapshot to create
+	 * @throws NameAlreadyExistsException if a snapshot with the same name already exists
+	 * @throws NoSuchVirtualFileSystemException if no virtual file system correspond to the given name argument
+	 * @see Snapshot
+	 */
+	public void createSnapshot(String vfsName, String snapshotName){
+		VirtualFileSystem vfs = getVFSByName(vfsName);
+		vfs.createSnapshot(snapshotName);
+	}
+	
+	/**
+	 * returns a string listing all the snapshots of a virtual file system
+	 * @param vfsName name of the virtual file system
+	 * @return a string containing a snapshot per line
+	 * @throws NoSuchVirtualFileSystemException if no virtual file system correspond to the given name argument
+	 * @see Snapshot
+	 */
+	public String listSnapshots(String vfsName){
+		VirtualFileSystem vfs = getVFSByName(vfsName);
+		StringBuilder r = new StringBuilder();
+		for(Snapshot snapshot : vfs.getSnapshots()){
+			r.append(snapshot.toString()).append("\n");
 		}
-		
-		return pathNamesFound;
+		return r.toString();
+	}
+	
+	/**
+	 * restores a virtual file system to one of its snapshots
+	 * @param vfsName name of the virtual file system
+	 * @param snapshotName name of the snapshot to restore
+	 * @throws NoSuchSnapshotException if no snapshot found
+	 * @throws NoSuchVirtualFileSystemException if no virtual file system correspond to the given name argument
+	 * @see Snapshot
+	 */
+	public void restoreSnapshot(String vfsName, String snapshotName){
+		VirtualFileSystem vfs = getVFSByName(vfsName);
+		vfs.restoreSnapshot(snapshotName);
+	}
+	
+	/**
+	 * deletes a snapshot of a virtual file system
+	 * @param vfsName name of the virtual file system
+	 * @param snapshotName name of the snapshot to delete
+	 * @throws NoSuchSnapshotException if no snapshot found
+	 * @throws NoSuchVirtualFileSystemException if no virtual file system correspond to the given name argument
+	 * @see Snapshot
+	 */
+	public void deleteSnapshot(String vfsName, String snapshotName){
+		VirtualFileSystem vfs = getVFSByName(vfsName);
+		vfs.deleteSnapshot(snapshotName);
+	}
+	
+	/**
+	 * mounts a virtual disk on a directory of a virtual file system, see {@link VirtualFileSystem#mount(String, VirtualFileSystem)}.
+	 * It is similar to the "mount" command on Unix systems.
+	 * @param vfsName name of the virtual file system where to mount
+	 * @param pathName path name of the directory where to mount
+	 * @param diskName name of the virtual disk to mount
+	 * @throws NoSuchVirtualFileSystemException if a virtual file system name is not valid
+	 * @throws NoSuchDirectoryException if the path name is not a directory
+	 * @throws VFSOperationFailException if the virtual disk cannot be mounted there
+	 */
+	public void mount(String vfsName, String pathName, String diskName){
+		VirtualFileSystem vfs = getVFSByName(vfsName);
+		vfs.mount(resolve(vfs, pathName), getDisk(diskName).get());
+	}
+	
+	/**
+	 * unmounts the virtual disk mounted on a directory.
+	 * It is similar to the "umount" command on Unix systems.
+	 * @param vfsName name of the virtual file system
+	 * @param pathName path name of the mount point
+	 * @throws NoSuchVirtualFileSystemException if no virtual file system correspond to the given name argument
+	 * @throws VFSOperationFailException if no virtual disk is mounted there
+	 */
+	public void unmount(String vfsName, String pathName){
+		VirtualFileSystem vfs = getVFSByName(vfsName);
+		vfs.unmount(resolve(vfs, pathName));
+	}
+	
+	/**
+	 * returns a string listing the virtual disks mounted on other ones, without mounting the virtual disks that are not in memory
+	 * @return a string containing a line "vfsName on mountPoint" per mounted virtual disk
+	 */
+	public String listMounts(){
+		StringBuilder r = new StringBuilder();
+		for(DiskEntry disk : vfsDataBase.getDisks()){
+			VirtualFileSystem vfs = disk.getIfMounted();
+			Directory mountPoint = (vfs!=null)?vfs.getMountPoint():null;
+			if(mountPoint!=null)
+				r.append(vfs.name).append(" on ").append(mountPoint.getAbsolutePathName()).append("\n");
+		}
+		return r.toString();
 	}
 	
 	/**
@@ -444,11 +930,8 @@ public class VFSApp {
 		if(vfsName.equals("-off"))
 			return "";
 		VirtualFileSystem vfs = getVFSByName(vfsName);
-		workingVFS = vfs;
-		Calendar cal = Calendar.getInstance();
-    	cal.getTime();
-    	java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("HH:mm");
-		return sdf.format(cal.getTime())+" "+workingVFS.getWorkingDirectory().getAbsolutePathName()+" ";
+		workingVFS = vfs.name;
+		return PromptTimeFormat.format(java.time.LocalTime.now())+" "+getWorkingDirectory(vfs).getAbsolutePathName()+" ";
 	}
 	
 	/**
@@ -457,16 +940,94 @@ public class VFSApp {
 	 * @return the prompt string
 	 */
 	public String getPrompt(){
-		return getPrompt(workingVFS.name);
+		return getPrompt(workingVFS);
 	}
 
 	
 	/**
-	 * saves all virtual file systems.
+	 * saves all virtual file systems that are mounted. the others have not changed since they were saved.
 	 */
 	public void saveAllVFS() {
-		for(VirtualFileSystem vfs: vfsDataBase){
-			vfs.save();
+		for(DiskEntry disk: vfsDataBase.getDisks()){
+			VirtualFileSystem vfs = disk.getIfMounted();
+			if(vfs!=null)
+				vfs.save();
+		}
+	}
+	
+	/**
+	 * unmounts the virtual disks that are not used for a given time: they are saved, their memory is released and they are 
+	 * mounted again the next time they are used. A virtual disk is not unmounted while an operation holds its locks, but the 
+	 * VirtualFileSystem objects returned by {@link #getVFSByName(String)} must not be kept longer than this time.
+	 * The time applies to all the sessions of the VFSApp. 
+	 * @param milliseconds time after which a virtual disk that is not used is unmounted, 0 to keep the virtual disks mounted
+	 */
+	public void setIdleTimeout(long milliseconds){
+		vfsDataBase.setIdleTimeout(milliseconds);
+	}
+	
+	/**
+	 * adds a listener of the virtual disks mounted and unmounted, it is shared by all the sessions of the VFSApp
+	 * @param listener the listener
+	 */
+	public void addMountListener(MountListener listener){
+		vfsDataBase.addListener(listener);
+	}
+	
+	/**
+	 * removes a listener added with {@link #addMountListener(MountListener)}
+	 * @param listener the listener
+	 */
+	public void removeMountListener(MountListener listener){
+		vfsDataBase.removeListener(listener);
+	}
+	
+	/**
+	 * returns the metrics of all the virtual disks: the sums of the metrics of the virtual disks mounted and of those
+	 * that were unmounted, see {@link VFSAppMetricsMXBean}
+	 * @return a view of the metrics, computed when they are read
+	 */
+	public VFSAppMetricsMXBean getMetrics(){
+		return new MetricsBean.App(vfsDataBase.name, vfsDataBase);
+	}
+	
+	/**
+	 * registers the metrics in the platform MBean server, so that they can be read with JMX tools (jconsole...): 
+	 * the metrics of all the virtual disks as "core:type=VFSApp,name=vfsapp&lt;n&gt;" and the metrics of each virtual disk 
+	 * while it is mounted as "core:type=VirtualFileSystem,app=vfsapp&lt;n&gt;,name=&lt;vfs name&gt;". 
+	 * The MXBeans are shared by all the sessions of the VFSApp.
+	 * @return the object name of the MXBean of all the virtual disks
+	 */
+	public javax.management.ObjectName registerMBeans(){
+		return vfsDataBase.registerMBeans();
+	}
+	
+	/**
+	 * unregisters the MXBeans registered by {@link #registerMBeans()}
+	 */
+	public void unregisterMBeans(){
+		vfsDataBase.unregisterMBeans();
+	}
+	
+	/**
+	 * runs a group of commands as a batch on all the mounted virtual file systems: the statistics of the directories 
+	 * are updated once when the batch ends, see {@link VirtualFileSystem#batch(Runnable)}.
+	 * @param commands the commands to run
+	 */
+	public void batch(Runnable commands){
+		List<VirtualFileSystem> batched = new ArrayList<VirtualFileSystem>();
+		for(DiskEntry disk : vfsDataBase.getDisks()){
+			VirtualFileSystem vfs = disk.getIfMounted();
+			if(vfs!=null)
+				batched.add(vfs);
+		}
+		for(VirtualFileSystem vfs : batched)
+			vfs.beginBatch();
+		try{
+			commands.run();
+		} finally {
+			for(VirtualFileSystem vfs : batched)
+				vfs.endBatch();
 		}
 	}
 	
@@ -0,0 +1,277 @@
+package core;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import exceptions.*;
+
+/**
+ * Asynchronous facade of a {@link VFSApp}: the long operations run on an executor and return a {@link CompletableFuture}.
+ * <p>
+ * The virtual file system and the path names are resolved when an operation is submitted, so that changing the working
+ * directory afterwards does not change its target. An error is reported by completing the future exceptionally with
+ * the exception of the synchronous method.
+ * <p>
+ * Canceling a future stops its operation if it has not started. An import or an export that has started stops at
+ * the next data block: the files already imported are removed, the files already exported are kept.
+ * The other operations run to completion once started.
+ * @author ayoub
+ *
+ */
+public class VFSAppAsync {
+
+	/* ----------------------- attributes ----------------------- */
+
+	/** the VFSApp running the operations */
+	private final VFSApp vfsApp;
+	/** executor running the operations */
+	private final java.util.concurrent.Executor executor;
+	/** executor created by the facade, null if it was given */
+	private final java.util.concurrent.ExecutorService ownExecutor;
+
+
+	/* ----------------------- constructors ----------------------- */
+
+	/**
+	 * creates an asynchronous facade running the operations on a pool of daemon threads
+	 * @param vfsApp the VFSApp running the operations
+	 */
+	public VFSAppAsync(VFSApp vfsApp){
+		this.vfsApp = vfsApp;
+		this.ownExecutor = java.util.concurrent.Executors.newCachedThreadPool(new java.util.concurrent.ThreadFactory(){
+			private final java.util.concurrent.atomic.AtomicInteger count = new java.util.concurrent.atomic.AtomicInteger();
+			@Override
+			public Thread newThread(Runnable task){
+				Thread thread = new Thread(task, "vfs-async-"+count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.executor = ownExecutor;
+	}
+
+	/**
+	 * creates an asynchronous facade running the operations on an executor
+	 * @param vfsApp the VFSApp running the operations
+	 * @param executor executor running the operations
+	 */
+	public VFSAppAsync(VFSApp vfsApp, java.util.concurrent.Executor executor){
+		this.vfsApp = vfsApp;
+		this.executor = executor;
+		this.ownExecutor = null;
+	}
+
+
+	/* ----------------------- operations ----------------------- */
+
+	/**
+	 * imports a file/directory from the host file system to a virtual file system
+	 * @param hostPathName path name of the file/directory to import from the host file system
+	 * @param vfsName virtual file system where to import
+	 * @param pathName path name of the directory where to import on the virtual file system
+	 * @param listener listener of the bytes imported, or null
+	 * @return a future completed when the import is over
+	 * @see VFSApp#importToVFS(String, String, String)
+	 */
+	public CompletableFuture<Void> importToVFS(final String hostPathName, String vfsName, String pathName, ProgressListener listener){
+		try{
+			final VirtualFileSystem vfs = vfsApp.getVFSByName(vfsName);
+			final String target = vfsApp.getAbsolutePathName(vfs, pathName);
+			final Progress progress = new Progress(VirtualFileSystem.getHFSDirectorySize(new java.io.File(hostPathName)), listener);
+			return submit(progress, new java.util.concurrent.Callable<Void>(){
+				@Override
+				public Void call(){
+					vfsApp.importToVFS(hostPathName, vfs.name, target, progress);
+					return null;
+				}
+			});
+		} catch (RuntimeException e){
+			return failed(e);
+		}
+	}
+
+	/**
+	 * exports a virtual file system to the host file system
+	 * @param vfsName the name of the virtual file system to export
+	 * @param pathName path name on the host file system of the directory where to export
+	 * @param listener listener of the bytes exported, or null
+	 * @return a future completed when the export is over
+	 * @see VFSApp#exportVFS(String, String)
+	 */
+	public CompletableFuture<Void> exportVFS(String vfsName, final String pathName, ProgressListener listener){
+		try{
+			final VirtualFileSystem vfs = vfsApp.getVFSByName(vfsName);
+			vfs.flushStats();
+			final Progress progress = new Progress(vfs.rootDirectory.getSize(), listener);
+			return submit(progress, new java.util.concurrent.Callable<Void>(){
+				@Override
+				public Void call(){
+					vfsApp.exportVFS(vfs.name, pathName, progress);
+					return null;
+				}
+			});
+		} catch (RuntimeException e){
+			return failed(e);
+		}
+	}
+
+	/**
+	 * copies a VNode on a virtual file system
+	 * @param vfsName virtual file system name
+	 * @param oldPathName path name of the VNode to copy
+	 * @param newPathName path name of the directory where to copy
+	 * @return a future completed when the copy is over
+	 * @see VFSApp#copy(String, String, String)
+	 */
+	public CompletableFuture<Void> copy(String vfsName, String oldPathName, String newPathName){
+		try{
+			final VirtualFileSystem vfs = vfsApp.getVFSByName(vfsName);
+			final String source = vfsApp.getAbsolutePathName(vfs, oldPathName);
+			final String target = vfsApp.getAbsolutePathName(vfs, newPathName);
+			return submit(null, new java.util.concurrent.Callable<Void>(){
+				@Override
+				public Void call(){
+					vfsApp.copy(vfs.name, source, target);
+					return null;
+				}
+			});
+		} catch (RuntimeException e){
+			return failed(e);
+		}
+	}
+
+	/**
+	 * moves/renames a VNode on a virtual file system
+	 * @param vfsName virtual file system name
+	 * @param oldPathName path name of the VNode to move/rename
+	 * @param newPathName new path name of the VNode
+	 * @return a future completed when the move is over
+	 * @see VFSApp#move(String, String, String)
+	 */
+	public CompletableFuture<Void> move(String vfsName, String oldPathName, String newPathName){
+		try{
+			final VirtualFileSystem vfs = vfsApp.getVFSByName(vfsName);
+			final String source = vfsApp.getAbsolutePathName(vfs, oldPathName);
+			final String target = vfsApp.getAbsolutePathName(vfs, newPathName);
+			return submit(null, new java.util.concurrent.Callable<Void>(){
+				@Override
+				public Void call(){
+					vfsApp.move(vfs.name, source, target);
+					return null;
+				}
+			});
+		} catch (RuntimeException e){
+			return failed(e);
+		}
+	}
+
+	/**
+	 * removes a VNode from a virtual file system
+	 * @param vfsName virtual file system name
+	 * @param pathName path name of the VNode to remove
+	 * @return a future completed when the removal is over
+	 * @see VFSApp#remove(String, String)
+	 */
+	public CompletableFuture<Void> remove(String vfsName, String pathName){
+		try{
+			final VirtualFileSystem vfs = vfsApp.getVFSByName(vfsName);
+			final String target = vfsApp.getAbsolutePathName(vfs, pathName);
+			return submit(null, new java.util.concurrent.Callable<Void>(){
+				@Override
+				public Void call(){
+					vfsApp.remove(vfs.name, target);
+					return null;
+				}
+			});
+		} catch (RuntimeException e){
+			return failed(e);
+		}
+	}
+
+	/**
+	 * finds the files whose name matches a pattern in a virtual file system, starting from its current working directory
+	 * @param vfsName name of the virtual file system
+	 * @param option type of pattern: "" for an exact name, "-s" for a substring, "-g" for a glob pattern, "-r" for a regular expression
+	 * @param pattern the pattern to match
+	 * @param limit maximum number of files, 0 for no limit
+	 * @return a future of the sorted absolute path names of the files found
+	 * @see VFSApp#find(String, String, String, int, Appendable)
+	 */
+	public CompletableFuture<List<String>> find(String vfsName, String option, String pattern, final int limit){
+		try{
+			final VirtualFileSystem vfs = vfsApp.getVFSByName(vfsName);
+			final Directory from = vfsApp.getWorkingDirectory(vfs);
+			final NamePattern namePattern = NamePattern.fromOption(option, pattern);
+			return submit(null, new java.util.concurrent.Callable<List<String>>(){
+				@Override
+				public List<String> call(){
+					final List<String> found = new java.util.ArrayList<String>();
+					vfs.find(from, namePattern, "file", limit, new java.util.function.Consumer<VNode>(){
+						@Override
+						public void accept(VNode file){
+							found.add(file.getAbsolutePathName());
+						}
+					});
+					return found;
+				}
+			});
+		} catch (RuntimeException e){
+			return failed(e);
+		}
+	}
+
+	/**
+	 * stops the threads created by the facade once the operations submitted are over.
+	 * an executor given to the facade is not shut down.
+	 */
+	public void shutdown(){
+		if(ownExecutor!=null)
+			ownExecutor.shutdown();
+	}
+
+
+	/* ----------------------- futures ----------------------- */
+
+	/**
+	 * runs an operation on the executor
+	 * @param progress progress of the operation, canceled with the future, or null
+	 * @param operation the operation
+	 * @return the future of the operation's result
+	 */
+	private <T> CompletableFuture<T> submit(final Progress progress, final java.util.concurrent.Callable<T> operation){
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		if(progress!=null){
+			future.whenComplete(new java.util.function.BiConsumer<T,Throwable>(){
+				@Override
+				public void accept(T result, Throwable error){
+					if(future.isCancelled())
+						progress.cancel();
+				}
+			});
+		}
+		executor.execute(new Runnable(){
+			@Override
+			public void run(){
+				if(future.isDone()) return;		// canceled before it started
+				try{
+					future.complete(operation.call());
+				} catch (Throwable e){
+					future.completeExceptionally(e);
+				}
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * returns a future failed with an error
+	 * @param error the error
+	 * @return a completed future
+	 */
+	private static <T> CompletableFuture<T> failed(Throwable error){
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		future.completeExceptionally(error);
+		return future;
+	}
+
+}
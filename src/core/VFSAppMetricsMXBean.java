@@ -0,0 +1,26 @@
+package core;
+
+/**
+ * The JMX view of the metrics of all the virtual disks of a {@link VFSApp}, see {@link VFSApp#registerMBeans()}.
+ * The spaces and counts are the sums of those of the virtual disks, the largest free extent is the largest of all
+ * and the fragmentation is the mean of their fragmentations weighted by their free blocks.
+ * The space of the virtual disks that are not mounted is not known; the counters of the operations include those
+ * of the virtual disks that were unmounted.
+ * @author ayoub
+ *
+ */
+public interface VFSAppMetricsMXBean extends VFSMetricsMXBean {
+
+	/**
+	 * returns the number of virtual disks known by the application
+	 * @return the number of virtual disks
+	 */
+	int getDiskCount();
+
+	/**
+	 * returns the number of virtual disks in memory
+	 * @return the number of virtual disks mounted
+	 */
+	int getMountedDiskCount();
+
+}
@@ -0,0 +1,218 @@
+package core;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Java Flight Recorder events of the virtual disks, shown in the "Virtual File System" category of a recording
+ * next to the GC and I/O events (ex: java -XX:StartFlightRecording=filename=vfs.jfr -jar vfsmanager.jar).
+ * <ul>
+ * <li>{@link Operation}: an operation on a VNode, from its start to its end, with its path name and its virtual disk</li>
+ * <li>{@link BlockIO}: a data block read or written on a virtual disk file, with its position</li>
+ * <li>{@link AllocatorScan}: a search of free data blocks</li>
+ * <li>{@link SavePhase}: a phase of the saving of a virtual disk</li>
+ * <li>{@link StatsPropagation}: the propagation of the statistics of directories to their parents</li>
+ * </ul>
+ * When no recording is running the events are not enabled: creating and committing them costs a few instructions,
+ * and their fields (path names...) are not computed.
+ *
+ * @author ayoub
+ */
+final class VFSEvents {
+
+	/** category of the events */
+	private static final String Category = "Virtual File System";
+
+	/**
+	 * no instance, see the event classes
+	 */
+	private VFSEvents(){
+	}
+
+	/* ----------------------------events---------------------------- */
+
+	/**
+	 * An operation on a VNode, see {@link Metrics#Operations}. The operations run by another one have their own events.
+	 */
+	@Name("core.Operation")
+	@Label("VFS Operation")
+	@Category(Category)
+	@Description("An operation on a file or a directory of a virtual disk")
+	static class Operation extends Event {
+		@Label("Operation")
+		String operation;
+		@Label("Disk")
+		String disk;
+		@Label("Path")
+		String path;
+	}
+
+	/**
+	 * A data block read or written on a virtual disk file
+	 */
+	@Name("core.BlockIO")
+	@Label("VFS Block I/O")
+	@Category(Category)
+	@Description("A data block read or written on a virtual disk file")
+	@StackTrace(false)
+	static class BlockIO extends Event {
+		@Label("Disk")
+		String disk;
+		@Label("Position")
+		@Description("Position of the block on the virtual disk file")
+		long position;
+		@Label("Size")
+		@DataAmount
+		int bytes;
+		@Label("Write")
+		boolean write;
+	}
+
+	/**
+	 * A search of free data blocks by the allocator of a virtual disk
+	 */
+	@Name("core.AllocatorScan")
+	@Label("VFS Allocator Scan")
+	@Category(Category)
+	@Description("A search of free data blocks on a virtual disk")
+	static class AllocatorScan extends Event {
+		@Label("Disk")
+		String disk;
+		@Label("Blocks Requested")
+		int requested;
+		@Label("First Index")
+		@Description("Index of the first block scanned")
+		int firstIndex;
+		@Label("Blocks Scanned")
+		int scanned;
+	}
+
+	/**
+	 * A phase of the saving of a virtual disk: "statistics" (pending changes of statistics), "serialization" of the
+	 * tree structure or "write" of the header and the tree structure to the virtual disk file
+	 */
+	@Name("core.SavePhase")
+	@Label("VFS Save Phase")
+	@Category(Category)
+	@Description("A phase of the saving of a virtual disk")
+	static class SavePhase extends Event {
+		@Label("Disk")
+		String disk;
+		@Label("Phase")
+		String phase;
+		@Label("Size")
+		@DataAmount
+		long bytes;
+	}
+
+	/**
+	 * The propagation of the statistics (size, counts, depth) of directories to all their parents
+	 */
+	@Name("core.StatsPropagation")
+	@Label("VFS Statistics Propagation")
+	@Category(Category)
+	@Description("The propagation of the statistics of directories to their parents")
+	static class StatsPropagation extends Event {
+		@Label("Disk")
+		String disk;
+		@Label("Directories")
+		@Description("Number of directories whose changes are propagated")
+		int directories;
+	}
+
+	/* ----------------------------useful methods---------------------------- */
+
+	/**
+	 * starts the event of an operation, it must be committed when the operation ends
+	 * @param operation one of the {@link Metrics#Operations}
+	 * @param node the VNode of the operation, or the directory where a VNode is created
+	 * @param name name of the VNode created in the directory, or null
+	 * @return the event
+	 */
+	static Operation begin(String operation, VNode node, String name){
+		Operation event = new Operation();
+		if(event.isEnabled()){
+			event.operation = operation;
+			event.disk = node.getVirtualDisk().name;
+			event.path = (name==null)?node.getAbsolutePathName():node.getAbsolutePathName()+name;
+		}
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * starts the event of a block read or written
+	 * @return the event, to give to {@link #commit(BlockIO, VirtualFileSystem, long, int, boolean)} after the block is read or written
+	 */
+	static BlockIO beginBlock(){
+		BlockIO event = new BlockIO();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * commits the event of a block read or written
+	 * @param event the event started by {@link #beginBlock()}
+	 * @param vd the virtual disk
+	 * @param position position of the block on the virtual disk file
+	 * @param bytes number of bytes read or written
+	 * @param write true if the block was written
+	 */
+	static void commit(BlockIO event, VirtualFileSystem vd, long position, int bytes, boolean write){
+		event.end();
+		if(event.shouldCommit()){
+			event.disk = vd.name;
+			event.position = position;
+			event.bytes = bytes;
+			event.write = write;
+			event.commit();
+		}
+	}
+
+	/**
+	 * starts the event of a phase of a save
+	 * @param vd the virtual disk
+	 * @param phase name of the phase
+	 * @return the event, the number of bytes can be set before it is committed
+	 */
+	static SavePhase beginSavePhase(VirtualFileSystem vd, String phase){
+		SavePhase event = new SavePhase();
+		if(event.isEnabled()){
+			event.disk = vd.name;
+			event.phase = phase;
+		}
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * starts the event of a propagation of statistics
+	 * @return the event, to give to {@link #commit(StatsPropagation, VirtualFileSystem, int)} after the propagation
+	 */
+	static StatsPropagation beginStats(){
+		StatsPropagation event = new StatsPropagation();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * commits the event of a propagation of statistics
+	 * @param event the event started by {@link #beginStats()}
+	 * @param vd the virtual disk
+	 * @param directories number of directories whose changes were propagated
+	 */
+	static void commit(StatsPropagation event, VirtualFileSystem vd, int directories){
+		event.end();
+		if(event.shouldCommit()){
+			event.disk = vd.name;
+			event.directories = directories;
+			event.commit();
+		}
+	}
+
+}
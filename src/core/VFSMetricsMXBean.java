@@ -0,0 +1,126 @@
+package core;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the metrics of a virtual disk, see {@link VirtualFileSystem#registerMBean()} and {@link Metrics}.
+ * The operations are named by {@link Metrics#Operations}.
+ * @author ayoub
+ *
+ */
+public interface VFSMetricsMXBean {
+
+	/**
+	 * returns the name of the virtual file system
+	 * @return the name
+	 */
+	String getName();
+
+	/**
+	 * returns the space of the virtual disk
+	 * @return the space in bytes
+	 */
+	long getTotalSpace();
+
+	/**
+	 * returns the free space of the virtual disk
+	 * @return the space in bytes
+	 */
+	long getFreeSpace();
+
+	/**
+	 * returns the occupied space of the virtual disk
+	 * @return the space in bytes
+	 */
+	long getOccupiedSpace();
+
+	/**
+	 * returns the number of data blocks that can be allocated
+	 * @return the number of blocks
+	 */
+	long getFreeBlockCount();
+
+	/**
+	 * returns the number of runs of contiguous free data blocks
+	 * @return the number of runs
+	 */
+	long getFreeExtentCount();
+
+	/**
+	 * returns the length of the longest run of contiguous free data blocks
+	 * @return the number of blocks
+	 */
+	long getLargestFreeExtent();
+
+	/**
+	 * returns the fragmentation of the free space: 0 if the free blocks are contiguous, near 1 if they are all scattered
+	 * @return 1 - largest free extent / free blocks, 0 if there is no free block
+	 */
+	double getFragmentation();
+
+	/**
+	 * returns the number of times each operation was run
+	 * @return the counts by operation
+	 */
+	Map<String,Long> getOperationCounts();
+
+	/**
+	 * returns the mean latency of each operation
+	 * @return the latencies in microseconds by operation, 0 for an operation that was not run
+	 */
+	Map<String,Double> getMeanLatencies();
+
+	/**
+	 * returns the latency histogram of each operation, see {@link #getLatencyBucketBounds()}
+	 * @return the number of operations in each bucket by operation
+	 */
+	Map<String,long[]> getLatencyHistograms();
+
+	/**
+	 * returns the upper bounds of the buckets of the latency histograms but the last one, which has none
+	 * @return the bounds in microseconds
+	 */
+	long[] getLatencyBucketBounds();
+
+	/**
+	 * returns the number of bytes read from the virtual disk file
+	 * @return the number of bytes
+	 */
+	long getBytesRead();
+
+	/**
+	 * returns the number of bytes written to the virtual disk file, data and saved tree structure
+	 * @return the number of bytes
+	 */
+	long getBytesWritten();
+
+	/**
+	 * returns the number of data blocks read
+	 * @return the number of blocks
+	 */
+	long getBlocksRead();
+
+	/**
+	 * returns the number of data blocks written
+	 * @return the number of blocks
+	 */
+	long getBlocksWritten();
+
+	/**
+	 * returns the ratio of the lookups of the path cache that found the path
+	 * @return the hit rate between 0 and 1, 0 if there was no lookup
+	 */
+	double getPathCacheHitRate();
+
+	/**
+	 * returns the duration of the last save
+	 * @return the duration in milliseconds, -1 if the virtual disk was not saved
+	 */
+	double getLastSaveDuration();
+
+	/**
+	 * sets the counters of the operations to 0
+	 */
+	void resetMetrics();
+
+}
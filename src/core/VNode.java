@@ -1,5 +1,6 @@
 package core;
 
+import exceptions.NameAlreadyExistsException;
 import exceptions.NoFreeSpaceLeftException;
 import exceptions.VFSOperationFailException;
 import tree.SimpleTreeNode;
@@ -15,8 +16,6 @@ public abstract class VNode extends SimpleTreeNode{
 	
 	private static final long serialVersionUID = 1353327752767596463L;
 	
-	/** the absolute path in the virtual file system */
-	protected String absolutePath;
 	/** the name of a node in the virtual file system*/
 	protected String name;
 	/** the type of a node in the virtual file system
@@ -26,6 +25,10 @@ public abstract class VNode extends SimpleTreeNode{
 	protected long size;
 	/** the virtual disk object that contains the node */
 	protected VirtualFileSystem virtualDisk;
+	/** the inode number of the node in its virtual disk, see {@link InodeTable} */
+	protected long inode;
+	/** epoch of its virtual disk when the node was created or last kept by a snapshot, see {@link Snapshot} */
+	int snapshotEpoch;
 	
 	/* ----------------------------constructors---------------------------- */
 	
@@ -35,20 +38,20 @@ public abstract class VNode extends SimpleTreeNode{
 	 */
 	protected VNode(String name){
 		this.name = name;
-		absolutePath = null;
 		size = 0;
+		inode = InodeTable.NoInode;
 	}
 	
 	/* ----------------------------getters---------------------------- */
 	
 	/**
-	 * returns the absolute path string in the virtual file system where it belongs. 
-	 * @return the value of absolutePath
+	 * returns the absolute path string in the virtual file system where it belongs, which is the absolute path name of its parent.
+	 * @return the absolute path of the node
 	 */
 	public String getAbsolutePath() {
 		if(isRoot())
 			return getVirtualDisk().name+":"+VirtualFileSystem.separator;
-		return absolutePath;
+		return getParent().getAbsolutePathName();
 	}
 	
 	/**
@@ -61,12 +64,35 @@ public abstract class VNode extends SimpleTreeNode{
 	
 	/**
 	 * returns the absolute pathname string in the virtual file system where it belongs.
-	 * @return the value of absolutePath name
+	 * It is computed from the parent links, directory paths are kept in the {@link PathCache} of the virtual disk.
+	 * @return the absolute path name of the node
 	 */
 	public String getAbsolutePathName(){
 		if(isRoot())
 			return getVirtualDisk().name+":"+VirtualFileSystem.separator;
-		return absolutePath+name+((isDirectory())?VirtualFileSystem.separator:"");
+		if(isFile())
+			return getParent().getAbsolutePathName()+name;
+		
+		boolean cacheable = virtualDisk!=null && virtualDisk.isRegistered(this);
+		// the generation is read before the path is computed: a rename or a move meanwhile makes it stale
+		long generation = (cacheable)?virtualDisk.getPathCache().getGeneration():0;
+		String path = (cacheable)?virtualDisk.getPathCache().get(inode):null;
+		if(cacheable)
+			virtualDisk.getMetrics().pathCacheLookup(path!=null);
+		if(path==null){
+			path = getParent().getAbsolutePathName()+name+VirtualFileSystem.separator;
+			if(cacheable)
+				virtualDisk.getPathCache().put(inode, path, generation);
+		}
+		return path;
+	}
+	
+	/**
+	 * returns the inode number of the node in its virtual disk.
+	 * @return the value of inode
+	 */
+	public long getInode(){
+		return inode;
 	}
 	
 	/**
@@ -93,6 +119,21 @@ public abstract class VNode extends SimpleTreeNode{
 		return (Directory) parent;
 	}
 	
+	/**
+	 * returns the directory above the VNode when path names are resolved: its parent, or for the root directory of a 
+	 * virtual disk mounted on another one, the parent of its mount point (see {@link VirtualFileSystem#mount(String, VirtualFileSystem)}).
+	 * @return the directory above, or null for a root directory that is not mounted
+	 */
+	Directory up(){
+		Directory parent = getParent();
+		if(parent==null && virtualDisk!=null && virtualDisk.rootDirectory==this){
+			Directory mountPoint = virtualDisk.getMountPoint();
+			if(mountPoint!=null)
+				return mountPoint.getParent();
+		}
+		return parent;
+	}
+	
 	/**
 	 * returns the virtual disk that contains the node.
 	 * @return virtualDisk
@@ -115,25 +156,31 @@ public abstract class VNode extends SimpleTreeNode{
 	/**
 	 * sets the name of the VNode to the new one given as argument
 	 * @param name the new name of the VNode
+	 * @throws NameAlreadyExistsException if the parent directory already contains a VNode with the new name
 	 */
 	public void rename(String name) {
-		this.name = name;
-		refreshAbsolutePathToAllChildren();
+		if(name.equals(this.name)) return;
+		Directory parent = getParent();
+		VirtualFileSystem vd = virtualDisk;
+		if(parent!=null && vd!=null)
+			vd.lockDirectory(parent);
+		try{
+			if(parent!=null)
+				parent.renameInContentIndex(this, name);
+			if(vd!=null)
+				vd.changing(this);
+			String oldName = this.name;
+			this.name = name;
+			if(vd!=null)
+				vd.renamed(this, oldName);
+			if(isDirectory() && vd!=null)
+				vd.getPathCache().invalidate();
+		} finally {
+			if(parent!=null && vd!=null)
+				vd.unlockDirectory(parent);
+		}
 	}
 	
-	/**
-	 * adds the given argument to the VNode's size value as well as to all its parents
-	 * @param size a long value to add
-	 */
-	protected void addSize(long size){
-		if(isRoot()) return;
-		this.size += size;
-		VNode p =  getParent();
-		if(p!=null)
-			p.addSize(size);
-	}
-
-	
 	/* ----------------------------VFS operations---------------------------- */
 	
 	/**
@@ -156,7 +203,18 @@ public abstract class VNode extends SimpleTreeNode{
 	 * @param exportPath the path to where the VNode will be exported on the host file system 
 	 * @throws VFSOperationFailException if operation fails
 	 */
-	abstract public void exportToHostFileSystem(String exportPath);
+	public void exportToHostFileSystem(String exportPath){
+		exportToHostFileSystem(exportPath, null);
+	}
+	
+	/**
+	 * exports the VNode to the host file system and reports each data block exported
+	 * @param exportPath the path to where the VNode will be exported on the host file system 
+	 * @param progress progress of the export, or null
+	 * @throws VFSOperationFailException if operation fails
+	 * @throws OperationCanceledException if the export is canceled
+	 */
+	abstract void exportToHostFileSystem(String exportPath, Progress progress);
 	
 	/**
 	 * removes the VNode from the virtual file system where it belongs.
@@ -183,15 +241,32 @@ public abstract class VNode extends SimpleTreeNode{
 	
 	/* ----------------------------useful methods---------------------------- */
 	
+	@Override
+	protected void cutLinkToTree(){
+		Directory parent = getParent();
+		if(parent!=null){
+			if(parent.virtualDisk!=null)
+				parent.virtualDisk.detaching(parent, this);
+			parent.removeFromContentIndex(this);
+		}
+		super.cutLinkToTree();
+	}
+	
 	/**
-	 * refershes the absolute paths of all children.
+	 * removes the VNode from its parent's content list without releasing its data.
 	 */
-	protected void refreshAbsolutePathToAllChildren(){
+	void detach(){
+		cutLinkToTree();
+	}
+	
+	/**
+	 * sets the virtual disk of the VNode and of all its children.
+	 * @param virtualDisk the virtual disk that contains the VNode
+	 */
+	void setVirtualDisk(VirtualFileSystem virtualDisk){
+		this.virtualDisk = virtualDisk;
 		for(SimpleTreeNode c : getChildrenList()){
-			VNode child = (VNode) c;
-			child.absolutePath = getAbsolutePathName();
-			if(child.isDirectory())
-				((Directory)child).refreshAbsolutePathToAllChildren();
+			((VNode) c).setVirtualDisk(virtualDisk);
 		}
 	}
 	
@@ -200,29 +275,80 @@ public abstract class VNode extends SimpleTreeNode{
 	 * @return a String containing the tree structure starting from the receiver's node in the virtual file system
 	 */
 	public String printAllContent(){
-		String s="";
-		VNode currentParent = this;
-		while(currentParent.getParent()!=null){
-			s+="  ";
-			currentParent = (VNode) currentParent.getParent();
-		}
+		StringBuilder s = new StringBuilder();
+		printAllContent(s, WalkOptions.Unlimited, 0);
+		return s.toString();
+	}
+	
+	/**
+	 * writes all the content of the VNode formatted in a tree structure to an output, one line per VNode indented by its depth.
+	 * the tree is rendered in one depth-first pass: only the iterators of the directories being visited are kept.
+	 * when the number of entries is reached, a last line "..." shows that the tree is truncated.
+	 * @param out output where the tree is written
+	 * @param maxDepth maximum depth of the VNodes written relatively to the receiver, {@link WalkOptions#Unlimited} for no limit
+	 * @param maxEntries maximum number of VNodes written, 0 for no limit
+	 * @return the number of VNodes written
+	 * @throws VFSOperationFailException if the output cannot be written
+	 */
+	public int printAllContent(Appendable out, int maxDepth, int maxEntries){
+		StringBuilder indent = new StringBuilder();
+		for(VNode p = getParent(); p!=null; p = p.getParent())
+			indent.append("  ");
+		int baseIndent = indent.length();
 		
-		s+=this.toString()+"\n";
-
-		for(SimpleTreeNode c : this.getChildrenList()){
-			s+=((VNode) c).printAllContent();
+		java.util.ArrayDeque<java.util.Iterator<VNode>> stack = new java.util.ArrayDeque<java.util.Iterator<VNode>>();
+		int written = 0;
+		try{
+			out.append(indent).append(toString()).append('\n');
+			written++;
+			if(isDirectory() && maxDepth>0)
+				stack.push(((Directory)this).getContent().iterator());
+			
+			while(!stack.isEmpty()){
+				java.util.Iterator<VNode> it = stack.peek();
+				if(!it.hasNext()){
+					stack.pop();
+					continue;
+				}
+				// the depth of the next VNode is the size of the stack
+				int indentLength = baseIndent+2*stack.size();
+				if(indent.length()>indentLength)
+					indent.setLength(indentLength);
+				while(indent.length()<indentLength)
+					indent.append(' ');
+				if(maxEntries>0 && written>=maxEntries){
+					out.append(indent).append("...\n");
+					break;
+				}
+				
+				VNode node = it.next();
+				out.append(indent).append(node.toString()).append('\n');
+				written++;
+				if(node.isDirectory() && stack.size()<maxDepth)
+					stack.push(((Directory)node).getContent().iterator());
+			}
+		} catch (java.io.IOException e){
+			throw new VFSOperationFailException("could not write the tree : "+e.getMessage());
 		}
-		return s;
+		return written;
 	}
 	
-	@Override
 	/**
-	 * two VNodes are equal if they have the same name and the same absolute path
+	 * two VNodes are equal if they have the same inode number in the same virtual disk
 	 */
+	@Override
 	public boolean equals(Object o){
-		if(o instanceof VNode)
-			return getAbsolutePathName().equals(((VNode)o).getAbsolutePathName());
-		return false;
+		if(this==o) return true;
+		if(!(o instanceof VNode)) return false;
+		VNode n = (VNode) o;
+		if(inode==InodeTable.NoInode || virtualDisk==null || n.virtualDisk==null)
+			return false;
+		return inode==n.inode && virtualDisk.name.equals(n.virtualDisk.name);
+	}
+	
+	@Override
+	public int hashCode(){
+		return Long.hashCode(inode);
 	}
 	
 	@Override
@@ -21,11 +21,45 @@ import exceptions.*;
  * 	the number of blocks depends on how much space does a virtual disk have. Which is defined at its construction.
  * 	- the rest of the virtual disk file contains the serialized VirtualFileSystem object data.
  * 
+ * Concurrency: a virtual file system can be used by several threads.
+ * 	- path resolution and lookups do not lock: the content of a directory is indexed in a concurrent map.
+ * 	- operations on the content of a directory (creating, removing, renaming or moving a file, listing) lock the directory. 
+ * 	The directories share a fixed number of locks chosen by inode number, so operations in different directories run in parallel.
+ * 	- operations on a whole sub-tree (moving, copying or removing a directory, rendering the tree, exporting) and on the whole
+ * 	virtual disk (saving, formatting, snapshots) take the structural lock exclusively. Operations on directories hold it shared.
+ * 	- a copy between two virtual disks takes both structural locks in the order of the virtual disk ids.
+ * 	- the data blocks allocator and the indexes are synchronized. the statistics are propagated from a directory to the root
+ * 	locking one directory at a time, so only the changes of directories with common parents wait for each other.
+ * 	- batches are run by thread: the statistics changes of a batch are applied when it ends in its thread.
+ * 	- a transaction holds the structural lock exclusively until it is committed or rolled back.
+ * 	- the current working directory is shared by all the threads, relative paths should not be used concurrently.
+ * 
  * @author ayoub
  */
 public class VirtualFileSystem implements java.io.Serializable{
 
 	private static final long serialVersionUID = 5311338851615641725L;
+	
+	/** order of a listing by name, see {@link #list(Directory, String, int, int)} */
+	public static final String ByName = "name";
+	/** order of a listing by size, greatest first */
+	public static final String BySize = "size";
+	
+	/** comparator of VNodes by name */
+	static final java.util.Comparator<VNode> NameOrder = new java.util.Comparator<VNode>(){
+		@Override
+		public int compare(VNode a, VNode b){
+			return a.name.compareTo(b.name);
+		}
+	};
+	/** comparator of VNodes by size, greatest first, then by name */
+	static final java.util.Comparator<VNode> SizeOrder = new java.util.Comparator<VNode>(){
+		@Override
+		public int compare(VNode a, VNode b){
+			int c = Long.compare(b.size, a.size);
+			return (c!=0)?c:a.name.compareTo(b.name);
+		}
+	};
 
 	/* ----------------------------constants of the virtual file system---------------------------- */
 	
@@ -67,31 +101,79 @@ public class VirtualFileSystem implements java.io.Serializable{
 	 **/
 	public final static long firstBlockPosition = intSize + longSize;
 	
+	/** system property giving the inline threshold of the new virtual disks, see {@link #setInlineThreshold(int)} */
+	public static final String InlineThresholdProperty = "vfs.inlineThreshold";
+	/** inline threshold of the new virtual disks when the {@link #InlineThresholdProperty} system property is not set */
+	public static final int DefaultInlineThreshold = 256;
+	
 	/* ----------------------------attributes---------------------------- */
 	
 	/** name of the virtual file system */
 	public final String name;
 	/** free space on the virtual disk */
-	private long freeSpace;
+	private volatile long freeSpace;
 	/** occupied space on the virtual disk */
-	private long occupiedSpace;
+	private volatile long occupiedSpace;
 	/** total space on the virtual disk */
 	public final long totalSpace;
 	/** array of boolean to keep track of the status (free/occupied) of a data block */
 	private boolean[] freeBlocks; 
+	/** number of snapshots refering to each free data block. A block refered by a snapshot cannot be reused even if it is free */
+	private int[] snapshotReferences;
+	/** epoch of the virtual disk when each data block was allocated, see {@link Snapshot} */
+	private int[] allocationEpochs;
+	/** epoch of the virtual disk when each free data block was released */
+	private int[] releaseEpochs;
+	/** number of snapshots taken on the virtual disk, the epoch of the next one is the following number */
+	private int snapshotEpoch;
+	/** snapshots taken on the virtual disk */
+	private java.util.ArrayList<Snapshot> snapshots;
+	/** inode table of the virtual disk */
+	private InodeTable inodes;
+	/** index of the names of the virtual disk */
+	private NameIndex names;
 	/** path to the file where the virtual disk will be serialized on the host file system */
 	public final String VDFileName;
 	/** id of the virutal disk */
 	public final int id;
 	/** position of the first byte that will contain object serialized data on the virtual disk file */
 	private final long objectDataPosition;
-	/** virtual disks ids*/
-	public static int VirtualDiskIDs = 0;			
+	/** the next virtual disk id, virtual disks can be created or loaded by several threads */
+	private static final java.util.concurrent.atomic.AtomicInteger VirtualDiskIDs = new java.util.concurrent.atomic.AtomicInteger();
 	
 	/** root directory */
 	public final Directory rootDirectory;
-	/** current working directory */
-	private Directory workingDirectory;
+	/** current working directory, it can be on a virtual disk mounted on this one */
+	private transient volatile Directory workingDirectory;
+	/** cache of the absolute path names of the directories */
+	private transient PathCache pathCache = new PathCache(PathCache.DefaultCapacity);
+	/** batch running in each thread, see {@link #batch(Runnable)} */
+	private transient ThreadLocal<Batch> batches = new ThreadLocal<Batch>(){
+		@Override
+		protected Batch initialValue(){
+			return new Batch();
+		}
+	};
+	/** structural lock: read by the operations on directories, written by the operations on the whole tree */
+	private transient java.util.concurrent.locks.ReentrantReadWriteLock treeLock = new java.util.concurrent.locks.ReentrantReadWriteLock();
+	/** locks of the directories, a directory uses the lock of its inode number modulo the number of locks */
+	private transient java.util.concurrent.locks.ReentrantLock[] directoryLocks = newDirectoryLocks();
+	/** index of a data block before which no block can be allocated */
+	private transient int freeBlockHint = 0;
+	/** true if the statistics of the directories are maintained, false for virtual disks saved before they were */
+	private boolean statsMaintained;
+	/** maximum size of the files stored inline, 0 for virtual disks saved before files could be stored inline */
+	private volatile int inlineThreshold;
+	/** the directory of another virtual disk where this one is mounted, null if it is not mounted */
+	private transient volatile Directory mountPoint;
+	/** the directories of this virtual disk where other virtual disks are mounted, by name of the mounted virtual disk */
+	private transient java.util.concurrent.ConcurrentHashMap<String,Directory> mountPoints = new java.util.concurrent.ConcurrentHashMap<String,Directory>();
+	/** lock of the mount operations of all the virtual disks */
+	private static final Object MountLock = new Object();
+	/** counters of the operations run on the virtual disk */
+	private transient Metrics metrics = new Metrics();
+	/** name of the MXBean of the metrics in the platform MBean server, null if it is not registered */
+	private transient javax.management.ObjectName mbeanName;
 	
 	/* ----------------------------constructors/formatting method---------------------------- */
 	
@@ -107,15 +189,20 @@ public class VirtualFileSystem implements java.io.Serializable{
 			throw new SizeNotAllowedException();
 		}
 		this.name = name;
-		id = VirtualDiskIDs;
-		VirtualDiskIDs++;
+		id = VirtualDiskIDs.getAndIncrement();
 		freeBlocks = new boolean[((int)(space/DataSizeInBlock)) +1];
+		snapshotReferences = new int[freeBlocks.length];
+		allocationEpochs = new int[freeBlocks.length];
+		releaseEpochs = new int[freeBlocks.length];
+		snapshots = new java.util.ArrayList<Snapshot>();
+		inodes = new InodeTable();
+		names = new NameIndex();
 		totalSpace = ((long)freeBlocks.length)*DataSizeInBlock;
 		objectDataPosition = firstBlockPosition + freeBlocks.length*BlockSize;
 		VDFileName = name+VDFileExtension;
 		rootDirectory = new Directory("");
 		rootDirectory.virtualDisk = this;
-		rootDirectory.absolutePath = rootPath;
+		setInlineThreshold(Integer.getInteger(InlineThresholdProperty, DefaultInlineThreshold));
 		format();
 	}
 	
@@ -129,16 +216,21 @@ public class VirtualFileSystem implements java.io.Serializable{
 		if(space > MaxSizeAllowed){
 			throw new SizeNotAllowedException();
 		}
-		id = VirtualFileSystem.VirtualDiskIDs;
-		VirtualFileSystem.VirtualDiskIDs++;
+		id = VirtualDiskIDs.getAndIncrement();
 		name = "VD"+id;
 		freeBlocks = new boolean[((int)(space/DataSizeInBlock)) +1];
+		snapshotReferences = new int[freeBlocks.length];
+		allocationEpochs = new int[freeBlocks.length];
+		releaseEpochs = new int[freeBlocks.length];
+		snapshots = new java.util.ArrayList<Snapshot>();
+		inodes = new InodeTable();
+		names = new NameIndex();
 		totalSpace = ((long)freeBlocks.length)*DataSizeInBlock;
 		objectDataPosition = firstBlockPosition + freeBlocks.length*BlockSize;
 		VDFileName = name+VDFileExtension;
 		rootDirectory = new Directory("");
 		rootDirectory.virtualDisk = this;
-		rootDirectory.absolutePath = rootPath;
+		setInlineThreshold(Integer.getInteger(InlineThresholdProperty, DefaultInlineThreshold));
 		format();
 	}
 	
@@ -166,11 +258,7 @@ public class VirtualFileSystem implements java.io.Serializable{
 			
 			vdFile.seek(startingPosition);
 			
-			int bytesRead = 0;
-			while(bytesRead < objectData.length){
-				objectData[bytesRead]=(byte) vdFile.read();
-				bytesRead++;
-			}
+			vdFile.readFully(objectData);
 			
 			java.io.ByteArrayInputStream bytesStream = new java.io.ByteArrayInputStream(objectData);
 			
@@ -181,17 +269,48 @@ public class VirtualFileSystem implements java.io.Serializable{
 			
 			// -----3. constructing object :
 			
-			id = VirtualFileSystem.VirtualDiskIDs;
-			VirtualFileSystem.VirtualDiskIDs++;
+			id = VirtualDiskIDs.getAndIncrement();
 			this.name = vd.name;
 			this.totalSpace = vd.totalSpace;
 			this.freeSpace = vd.freeSpace;
 			this.occupiedSpace = vd.occupiedSpace;
 			this.rootDirectory = vd.rootDirectory;
 			this.freeBlocks = vd.freeBlocks;
+			this.snapshotReferences = (vd.snapshotReferences!=null)?vd.snapshotReferences:new int[freeBlocks.length];
+			this.allocationEpochs = (vd.allocationEpochs!=null)?vd.allocationEpochs:new int[freeBlocks.length];
+			this.releaseEpochs = (vd.releaseEpochs!=null)?vd.releaseEpochs:new int[freeBlocks.length];
+			this.snapshotEpoch = vd.snapshotEpoch;
+			this.snapshots = (vd.snapshots!=null)?vd.snapshots:new java.util.ArrayList<Snapshot>();
+			this.inodes = vd.inodes;
+			this.names = vd.names;
 			this.objectDataPosition = vd.objectDataPosition;
 			this.workingDirectory = rootDirectory;
 			this.VDFileName = vd.VDFileName;
+			this.statsMaintained = vd.statsMaintained;
+			this.inlineThreshold = vd.inlineThreshold;
+			
+			// the loaded tree structure still refers to the deserialized object
+			rootDirectory.setVirtualDisk(this);
+			for(Snapshot snapshot : snapshots){
+				for(VNode node : snapshot.states.keySet())
+					node.virtualDisk = this;
+			}
+			
+			// virtual disks saved without inode table get new inode numbers
+			if(inodes==null){
+				inodes = new InodeTable();
+				names = new NameIndex();
+				register(rootDirectory);
+			}
+			else inodes.rebuild(rootDirectory);
+			if(names==null){
+				names = new NameIndex();
+				names.rebuild(rootDirectory);
+			}
+			if(!statsMaintained){
+				rootDirectory.computeStats();
+				statsMaintained = true;
+			}
 			vd.finalize();
 
 		} catch(java.io.FileNotFoundException e){
@@ -215,36 +334,55 @@ public class VirtualFileSystem implements java.io.Serializable{
 	}
 	
 	/**
-	 * formats the virtual disk file. It makes all the data blocks empty and free.  
+	 * formats the virtual disk file. It makes all the data blocks empty and free. All snapshots are deleted.
 	 * @throws VFSOperationFailException if operation fails.
 	 */
 	public void format(){
-		java.io.RandomAccessFile vdFile = null;
-		try {
-			vdFile = new java.io.RandomAccessFile(VDFileName, "rw");
-			vdFile.seek(VirtualFileSystem.firstBlockPosition);
+		checkNoTransaction("format \""+name+"\"");
+		checkNoMountPointIn(rootDirectory);
+		// removing the content and saving are part of the formatting, they are not counted
+		long start = Metrics.begin();
+		lockTree();
+		try{
+			java.io.RandomAccessFile vdFile = null;
+			try {
+				vdFile = new java.io.RandomAccessFile(VDFileName, "rw");
+				vdFile.seek(VirtualFileSystem.firstBlockPosition);
 			
-			//filling all data blocks with zeros and assigning next block positions to -1
-			for(int i=0;i<freeBlocks.length;i++){
-				byte[] zeros = new byte[VirtualFileSystem.DataSizeInBlock];
-				vdFile.write(zeros);
-				vdFile.writeLong(-1L);
-				freeBlocks[i] = true;	//setting block free
-			}
-			rootDirectory.remove();
-			workingDirectory = rootDirectory;
-			freeSpace = totalSpace;
-			occupiedSpace = 0L;
-		} catch (java.io.IOException e) {
-			throw new VFSOperationFailException("Cannot format virtual disk file \""+VDFileName+"\"");
-		} finally{
-			try{
-				if(vdFile!=null) vdFile.close();
-			} catch (java.io.IOException io){
-				throw new VFSOperationFailException(io.getMessage());
+				//filling all data blocks with zeros and assigning next block positions to -1
+				for(int i=0;i<freeBlocks.length;i++){
+					byte[] zeros = new byte[VirtualFileSystem.DataSizeInBlock];
+					vdFile.write(zeros);
+					vdFile.writeLong(-1L);
+					freeBlocks[i] = true;	//setting block free
+					snapshotReferences[i] = 0;
+				}
+				snapshots.clear();
+				rootDirectory.remove();
+				pathCache.invalidate();
+				inodes = new InodeTable();
+				names = new NameIndex();
+				register(rootDirectory);
+				rootDirectory.computeStats();
+				statsMaintained = true;
+				workingDirectory = rootDirectory;
+				freeSpace = totalSpace;
+				occupiedSpace = 0L;
+				freeBlockHint = 0;
+			} catch (java.io.IOException e) {
+				throw new VFSOperationFailException("Cannot format virtual disk file \""+VDFileName+"\"");
+			} finally{
+				try{
+					if(vdFile!=null) vdFile.close();
+				} catch (java.io.IOException io){
+					throw new VFSOperationFailException(io.getMessage());
+				}
 			}
+			save();
+		} finally {
+			unlockTree();
+			metrics.end(null, start);
 		}
-		save();
 	}
 	
 	
@@ -259,6 +397,64 @@ public class VirtualFileSystem implements java.io.Serializable{
 		return workingDirectory;
 	}
 	
+	/**
+	 * returns the VNode with the given inode number
+	 * @param inode inode number of the VNode
+	 * @throws NoSuchFileOrDirectoryException if no VNode found
+	 * @return the VNode that has the given inode number
+	 */
+	public VNode getNode(long inode){
+		VNode node = inodes.get(inode);
+		if(node==null)
+			throw new NoSuchFileOrDirectoryException("inode "+inode+" does not exist on \""+name+"\"");
+		return node;
+	}
+	
+	/**
+	 * returns the number of files/directories of the virtual disk including the root directory
+	 * @return the size of the inode table
+	 */
+	public int getNodeCount(){
+		return inodes.size();
+	}
+	
+	/**
+	 * returns the cache of the absolute path names of the directories
+	 * @return pathCache object
+	 */
+	public PathCache getPathCache(){
+		return pathCache;
+	}
+	
+	/**
+	 * sets the maximum number of directory paths kept in the cache. 0 disables the cache.
+	 * @param capacity maximum number of paths kept in the cache
+	 */
+	public void setPathCacheCapacity(int capacity){
+		pathCache = new PathCache(capacity);
+	}
+	
+	/**
+	 * returns the maximum size of the files stored inline: their data is kept in their VNode, saved with the tree structure,
+	 * instead of a data block.
+	 * @return the size in bytes, 0 if no file is stored inline
+	 */
+	public int getInlineThreshold(){
+		return inlineThreshold;
+	}
+	
+	/**
+	 * sets the maximum size of the files stored inline, see {@link #getInlineThreshold()}. It applies to the files created afterwards
+	 * and to the files that grow: a file stored inline is moved to data blocks when it becomes bigger.
+	 * @param threshold size in bytes, 0 to store all the files in data blocks
+	 * @throws SizeNotAllowedException if the threshold is negative or bigger than the data of a block
+	 */
+	public void setInlineThreshold(int threshold){
+		if(threshold<0 || threshold>DataSizeInBlock)
+			throw new SizeNotAllowedException("the inline threshold must be between 0 and "+DataSizeInBlock+" bytes");
+		inlineThreshold = threshold;
+	}
+	
 	/**
 	 * returns the number of bytes that are free on the virtual disk
 	 * @return freeSpace value
@@ -279,21 +475,191 @@ public class VirtualFileSystem implements java.io.Serializable{
 	 * returns the next free block position on the virtual disk file
 	 * @return a long value containing the next free block position (-1 if all blocks are occupied)
 	 */
-	public long getNextFreeBlockPosition(){
-		for(int i=0;i<freeBlocks.length;i++){
-			if(freeBlocks[i]==true)
+	public synchronized long getNextFreeBlockPosition(){
+		for(int i=freeBlockHint;i<freeBlocks.length;i++){
+			if(freeBlocks[i]==true && snapshotReferences[i]==0)
 				return getBlockPositionOnFile(i);
 		}
 		return -1L;
 	}
 	
 	/**
-	 * checks if a data block is free
+	 * allocates data blocks on the virtual disk. the blocks are chosen first-fit and are set as occupied at once,
+	 * so that two threads cannot get the same block. A transaction that runs out of free blocks reuses the blocks
+	 * it released: their content is kept in the undo log and written back if the transaction is rolled back.
+	 * @param count number of blocks to allocate
+	 * @throws NoFreeSpaceLeftException if the virtual disk does not have enough free blocks, no block is allocated then
+	 * @return the positions of the blocks allocated
+	 */
+	synchronized long[] allocateBlocks(int count){
+		final Transaction transaction = batches.get().transaction;
+		final int reusedCount = (int) Math.max(0, count-freeSpace/DataSizeInBlock);
+		final long[] reused = findFreedBlocks(transaction, reusedCount);
+		final byte[][] contents = readBlocks(reused);
+		for(long position : reused)
+			transaction.freedBlocks.remove(Long.valueOf(position));
+		
+		final int allocatedCount = count-reusedCount;
+		final long[] positions = new long[count];
+		VFSEvents.AllocatorScan scan = new VFSEvents.AllocatorScan();
+		scan.begin();
+		int i = freeBlockHint;
+		final int firstIndex = i;
+		for(int n=0;n<allocatedCount;n++){
+			while(!(freeBlocks[i] && snapshotReferences[i]==0))
+				i++;
+			positions[n] = getBlockPositionOnFile(i);
+			setOccupiedBlock(positions[n]);
+			i++;
+		}
+		scan.end();
+		if(scan.shouldCommit()){
+			scan.disk = name;
+			scan.requested = allocatedCount;
+			scan.firstIndex = firstIndex;
+			scan.scanned = i-firstIndex;
+			scan.commit();
+		}
+		System.arraycopy(reused, 0, positions, allocatedCount, reusedCount);
+		if(transaction!=null && count>0){
+			transaction.undoLog.add(new Runnable(){
+				@Override
+				public void run(){
+					for(int n=0;n<allocatedCount;n++)
+						setFreeBlock(positions[n]);
+					writeBlocks(reused, contents);
+				}
+			});
+		}
+		return positions;
+	}
+	
+	/**
+	 * finds data blocks released by a transaction that can be reused by it. A block refered by a snapshot is not reused.
+	 * @param transaction the transaction running, or null
+	 * @param count number of blocks needed
+	 * @throws NoFreeSpaceLeftException if the transaction did not release enough blocks
+	 * @return the positions of the blocks
+	 */
+	private long[] findFreedBlocks(Transaction transaction, int count){
+		long[] positions = new long[count];
+		if(count==0) return positions;
+		if(transaction==null) throw new NoFreeSpaceLeftException();
+		int n = 0;
+		for(int i=transaction.freedBlocks.size()-1; i>=0 && n<count; i--){
+			long position = transaction.freedBlocks.get(i);
+			if(!isSnapshotBlock(position))
+				positions[n++] = position;
+		}
+		if(n<count) throw new NoFreeSpaceLeftException();
+		return positions;
+	}
+	
+	/**
+	 * reads whole data blocks, with the position of the next block
+	 * @param positions positions of the blocks on the virtual disk file
+	 * @throws VFSOperationFailException if the virtual disk file cannot be read
+	 * @return the content of each block
+	 */
+	private byte[][] readBlocks(long[] positions){
+		byte[][] contents = new byte[positions.length][BlockSize];
+		if(positions.length==0) return contents;
+		java.io.RandomAccessFile vdFile = null;
+		try{
+			vdFile = new java.io.RandomAccessFile(VDFileName, "r");
+			for(int i=0;i<positions.length;i++){
+				vdFile.seek(positions[i]);
+				vdFile.readFully(contents[i]);
+			}
+		} catch(java.io.IOException e){
+			throw new VFSOperationFailException("cannot read data blocks of virtual disk : \""+this.name+"\"");
+		} finally{
+			try {
+				if(vdFile!=null) vdFile.close();
+			} catch (java.io.IOException e) {
+				throw new VFSOperationFailException(e.getMessage());
+			}
+		}
+		return contents;
+	}
+	
+	/**
+	 * writes back whole data blocks read by {@link #readBlocks(long[])}
+	 * @param positions positions of the blocks on the virtual disk file
+	 * @param contents the content of each block
+	 * @throws VFSOperationFailException if the virtual disk file cannot be written
+	 */
+	private void writeBlocks(long[] positions, byte[][] contents){
+		if(positions.length==0) return;
+		java.io.RandomAccessFile vdFile = null;
+		try{
+			vdFile = new java.io.RandomAccessFile(VDFileName, "rw");
+			for(int i=0;i<positions.length;i++){
+				vdFile.seek(positions[i]);
+				vdFile.write(contents[i]);
+			}
+		} catch(java.io.IOException e){
+			throw new VFSOperationFailException("cannot write data blocks of virtual disk : \""+this.name+"\"");
+		} finally{
+			try {
+				if(vdFile!=null) vdFile.close();
+			} catch (java.io.IOException e) {
+				throw new VFSOperationFailException(e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * counts the free data blocks and the runs of contiguous free data blocks, a block refered by a snapshot is not free
+	 * @return the number of free blocks, the number of runs and the length of the longest run
+	 */
+	synchronized long[] getFreeExtents(){
+		long free = 0, extents = 0, largest = 0, run = 0;
+		for(int i=0;i<freeBlocks.length;i++){
+			if(freeBlocks[i] && snapshotReferences[i]==0){
+				free++;
+				if(run++==0)
+					extents++;
+				largest = Math.max(largest, run);
+			}
+			else run = 0;
+		}
+		return new long[]{free, extents, largest};
+	}
+	
+	/**
+	 * checks if a data block is free. A block that is still refered by a snapshot is not free.
 	 * @param position the position of the block on the virtual disk file
 	 * @return a boolean to check if the block is free
 	 */
-	public boolean isFreeBlock(long position){
-		return freeBlocks[getBlockIdx(position)];
+	public synchronized boolean isFreeBlock(long position){
+		int idx = getBlockIdx(position);
+		return freeBlocks[idx] && snapshotReferences[idx]==0;
+	}
+	
+	/**
+	 * checks if a data block is refered by a snapshot, it must not be changed then.
+	 * An occupied block is shared with the snapshots taken after it was allocated.
+	 * @param position the position of the block on the virtual disk file
+	 * @return true if at least one snapshot refers to the block
+	 */
+	synchronized boolean isSnapshotBlock(long position){
+		int idx = getBlockIdx(position);
+		if(freeBlocks[idx])
+			return snapshotReferences[idx]>0;
+		return !snapshots.isEmpty() && allocationEpochs[idx]<snapshots.get(snapshots.size()-1).epoch;
+	}
+	
+	/**
+	 * counts the snapshots refering to an occupied data block: the ones taken since the block was allocated
+	 * @param idx index of the data block
+	 * @return number of snapshots
+	 */
+	private int countSnapshotReferences(int idx){
+		int count = 0;
+		for(int i=snapshots.size()-1; i>=0 && snapshots.get(i).epoch>allocationEpochs[idx]; i--)
+			count++;
+		return count;
 	}
 	
 	/**
@@ -321,20 +687,198 @@ public class VirtualFileSystem implements java.io.Serializable{
 	 * sets the data block, which position is given in the argument, as occupied and changes the occupied/free space of the virtual disk.
 	 * @param position position of the data block on the virtual disk file
 	 */
-	public void setOccupiedBlock(long position){
-		freeBlocks[getBlockIdx(position)] = false;
-		this.occupiedSpace = this.occupiedSpace + ((long)DataSizeInBlock);
-		this.freeSpace = this.freeSpace - ((long)DataSizeInBlock);
+	public synchronized void setOccupiedBlock(long position){
+		int idx = getBlockIdx(position);
+		freeBlocks[idx] = false;
+		allocationEpochs[idx] = snapshotEpoch;
+		if(idx==freeBlockHint)
+			freeBlockHint++;
+		if(snapshotReferences[idx]==0){
+			this.occupiedSpace = this.occupiedSpace + ((long)DataSizeInBlock);
+			this.freeSpace = this.freeSpace - ((long)DataSizeInBlock);
+		}
 	}
 	
 	/**
 	 * sets the data block, which position is given in the argument, as free and changes the occupied/free space of the virtual disk.
+	 * if the block is still refered by a snapshot, its space is only released when the snapshot is deleted.
+	 * during a transaction, the block is only released when the transaction is committed.
 	 * @param position position of the data block on the virtual disk file
 	 */
-	public void setFreeBlock(long position){
-		freeBlocks[getBlockIdx(position)] = true;
-		this.occupiedSpace = this.occupiedSpace - ((long)DataSizeInBlock);
-		this.freeSpace = this.freeSpace + ((long)DataSizeInBlock);
+	public synchronized void setFreeBlock(long position){
+		Transaction transaction = batches.get().transaction;
+		if(transaction!=null){
+			transaction.freedBlocks.add(position);
+			return;
+		}
+		releaseBlock(getBlockIdx(position));
+	}
+	
+	/**
+	 * sets an occupied data block as free. the snapshots taken since it was allocated keep refering to it.
+	 * @param idx index of the data block
+	 */
+	private void releaseBlock(int idx){
+		freeBlocks[idx] = true;
+		releaseEpochs[idx] = snapshotEpoch;
+		snapshotReferences[idx] = countSnapshotReferences(idx);
+		if(idx<freeBlockHint)
+			freeBlockHint = idx;
+		if(snapshotReferences[idx]==0){
+			this.occupiedSpace = this.occupiedSpace - ((long)DataSizeInBlock);
+			this.freeSpace = this.freeSpace + ((long)DataSizeInBlock);
+		}
+	}
+	
+	
+	/**
+	 * checks if a VNode is registered in the inode table of the virtual disk
+	 * @param node VNode to check
+	 * @return true if the VNode belongs to the virtual disk
+	 */
+	boolean isRegistered(VNode node){
+		return inodes.contains(node);
+	}
+	
+	/**
+	 * gives inode numbers to a VNode, and all its children, added to the virtual disk and adds them to the name index
+	 * @param node VNode to register
+	 */
+	void register(VNode node){
+		java.util.Iterator<VNode> it = walk(node).iterator();
+		while(it.hasNext()){
+			VNode n = it.next();
+			n.snapshotEpoch = snapshotEpoch;
+			inodes.register(n);
+			names.add(n.name, n.inode);
+		}
+	}
+	
+	/**
+	 * removes a VNode, and all its children, from the inode table and the name index of the virtual disk
+	 * @param node VNode to unregister
+	 */
+	void unregister(VNode node){
+		if(!inodes.contains(node)) return;
+		Transaction transaction = batches.get().transaction;
+		java.util.Iterator<VNode> it = walk(node).iterator();
+		while(it.hasNext()){
+			final VNode n = it.next();
+			final long inode = n.inode;
+			changing(n);
+			names.remove(n.name, n.inode);
+			inodes.unregister(n);
+			if(transaction!=null){
+				transaction.undoLog.add(new Runnable(){
+					@Override
+					public void run(){
+						n.inode = inode;
+					}
+				});
+			}
+		}
+	}
+	
+	/**
+	 * keeps the state of a VNode of the virtual disk before it is changed for the first time since the last snapshot was taken,
+	 * see {@link Snapshot}. It takes O(1) time when the VNode was already kept or no snapshot exists.
+	 * @param node VNode about to be renamed, resized, removed, or whose content is about to change
+	 */
+	void changing(VNode node){
+		if(snapshots.isEmpty()) return;
+		Snapshot last = snapshots.get(snapshots.size()-1);
+		if(node.snapshotEpoch>=last.epoch) return;
+		synchronized(last.states){
+			if(node.snapshotEpoch<last.epoch){
+				last.states.put(node, new Snapshot.State(node));
+				node.snapshotEpoch = snapshotEpoch;
+			}
+		}
+	}
+	
+	/**
+	 * updates the name index when a VNode of the virtual disk is renamed
+	 * @param node VNode renamed
+	 * @param oldName the previous name of the VNode
+	 */
+	void renamed(final VNode node, final String oldName){
+		Transaction transaction = batches.get().transaction;
+		if(transaction!=null){
+			transaction.undoLog.add(new Runnable(){
+				@Override
+				public void run(){
+					node.rename(oldName);
+				}
+			});
+		}
+		if(!inodes.contains(node)) return;
+		names.remove(oldName, node.inode);
+		names.add(node.name, node.inode);
+	}
+	
+	/**
+	 * records the data of a file of the virtual disk before it grows, so that a transaction can undo it
+	 * @param file the file
+	 */
+	void resizing(final File file){
+		changing(file);
+		Transaction transaction = batches.get().transaction;
+		if(transaction==null) return;
+		final long size = file.size;
+		final long firstBlock = file.getFirstBlockPosition();
+		final byte[] inlineData = file.getInlineData();
+		transaction.undoLog.add(new Runnable(){
+			@Override
+			public void run(){
+				file.setSize(size);
+				file.setFirstBlockPosition(firstBlock);
+				file.setInlineData(inlineData);
+			}
+		});
+	}
+	
+	/**
+	 * records that a VNode was added to the content of a directory of the virtual disk, so that a transaction can undo it
+	 * @param directory the directory
+	 * @param child the VNode added
+	 */
+	void attached(Directory directory, final VNode child){
+		Transaction transaction = batches.get().transaction;
+		if(transaction==null) return;
+		transaction.undoLog.add(new Runnable(){
+			@Override
+			public void run(){
+				child.cutLinkToTree();
+			}
+		});
+	}
+	
+	/**
+	 * records that a VNode is about to be removed from the content of a directory of the virtual disk, 
+	 * so that a transaction can put it back at the same position
+	 * @param directory the directory
+	 * @param child the VNode removed
+	 */
+	void detaching(final Directory directory, final VNode child){
+		changing(directory);
+		changing(child);
+		Transaction transaction = batches.get().transaction;
+		if(transaction==null) return;
+		final int index = directory.getContent().indexOf(child);
+		transaction.undoLog.add(new Runnable(){
+			@Override
+			public void run(){
+				directory.insertChild(child, index);
+			}
+		});
+	}
+	
+	/**
+	 * returns the index of the names of the virtual disk
+	 * @return names index
+	 */
+	public NameIndex getNameIndex(){
+		return names;
 	}
 	
 	
@@ -347,45 +891,63 @@ public class VirtualFileSystem implements java.io.Serializable{
 	 * @throws VFSOperationFailException if the operation fails.
 	 * */
 	public void save(){
-		java.io.RandomAccessFile vdFile = null;
-		java.io.ByteArrayOutputStream byteArrayOut = null;
-		java.io.ObjectOutputStream objectDataOut = null;
-		
+		checkNoTransaction("save \""+name+"\"");
+		long start = Metrics.begin();
+		VFSEvents.Operation event = VFSEvents.begin(Metrics.Save, rootDirectory, null);
+		lockTree();
 		try{
-			vdFile = new java.io.RandomAccessFile(VDFileName, "rw");
+			java.io.RandomAccessFile vdFile = null;
+			java.io.ByteArrayOutputStream byteArrayOut = null;
+			java.io.ObjectOutputStream objectDataOut = null;
+		
+			VFSEvents.SavePhase phase = VFSEvents.beginSavePhase(this, "statistics");
+			flushStats();
+			phase.commit();
+			try{
+				vdFile = new java.io.RandomAccessFile(VDFileName, "rw");
 		
-			byteArrayOut = new java.io.ByteArrayOutputStream();
-			objectDataOut = new java.io.ObjectOutputStream(byteArrayOut);
+				phase = VFSEvents.beginSavePhase(this, "serialization");
+				byteArrayOut = new java.io.ByteArrayOutputStream();
+				objectDataOut = new java.io.ObjectOutputStream(byteArrayOut);
 			
-			objectDataOut.writeObject(this);
+				objectDataOut.writeObject(this);
 			
-			byte[] objectData = byteArrayOut.toByteArray();
+				byte[] objectData = byteArrayOut.toByteArray();
+				phase.bytes = objectData.length;
+				phase.commit();
 			
-			vdFile.seek(0);
+				phase = VFSEvents.beginSavePhase(this, "write");
+				vdFile.seek(0);
 			
-			// writing virtual disk file header
-			vdFile.writeInt(objectData.length);
-			vdFile.writeLong(objectDataPosition);
+				// writing virtual disk file header
+				vdFile.writeInt(objectData.length);
+				vdFile.writeLong(objectDataPosition);
 			
-			// writing virtual file system data at the end of the virtual disk file
-			vdFile.seek(objectDataPosition);
+				// writing virtual file system data at the end of the virtual disk file
+				vdFile.seek(objectDataPosition);
 			
-			for(int i=0;i<objectData.length;i++){
-				vdFile.write(objectData[i]);
-			}
+				vdFile.write(objectData);
+				metrics.written(objectData.length, 0);
+				phase.bytes = objectData.length;
+				phase.commit();
 		
-		} catch(java.io.IOException e){
-			throw new VFSOperationFailException("cannot save virtual file system on "+VDFileName);
-		} finally{
-			try {
-				if(vdFile!=null) vdFile.close();
-				if(byteArrayOut!=null) byteArrayOut.close();
-				if(objectDataOut!=null) objectDataOut.close();
-			} catch (java.io.IOException e) {
-				throw new VFSOperationFailException(e.getMessage());
+			} catch(java.io.IOException e){
+				throw new VFSOperationFailException("cannot save virtual file system on "+VDFileName);
+			} finally{
+				try {
+					if(vdFile!=null) vdFile.close();
+					if(byteArrayOut!=null) byteArrayOut.close();
+					if(objectDataOut!=null) objectDataOut.close();
+				} catch (java.io.IOException e) {
+					throw new VFSOperationFailException(e.getMessage());
+				}
 			}
-		}
 		
+		} finally {
+			unlockTree();
+			metrics.end(Metrics.Save, start);
+			event.commit();
+		}
 	}
 	
 	/**
@@ -402,6 +964,68 @@ public class VirtualFileSystem implements java.io.Serializable{
 		}
 	}
 	
+	/**
+	 * returns a page of the content of a directory.
+	 * the content can be sorted by name or by size. a page that is not the last one is taken from a bounded heap 
+	 * of the first offset+count VNodes, so that the whole content is not sorted. The directory is locked while the page is computed.
+	 * @param directory the directory to list
+	 * @param order {@link #ByName}, {@link #BySize} (greatest first) or null to keep the order of the directory
+	 * @param offset position of the first VNode of the page
+	 * @param count number of VNodes in the page, 0 for all the VNodes after the offset
+	 * @return the VNodes of the page
+	 * @throws IllegalArgumentException if the offset or the count is negative
+	 */
+	public static List<VNode> list(Directory directory, String order, int offset, int count){
+		if(offset<0 || count<0)
+			throw new IllegalArgumentException("the offset and the count must be positive");
+		VirtualFileSystem vd = directory.getVirtualDisk();
+		if(vd==null)
+			return list(directory.getContent(), order, offset, count);
+		vd.lockDirectory(directory);
+		try{
+			return list(directory.getContent(), order, offset, count);
+		} finally {
+			vd.unlockDirectory(directory);
+		}
+	}
+	
+	/**
+	 * returns a page of a content list, see {@link #list(Directory, String, int, int)}
+	 * @param content content of a directory, it must not change while the page is computed
+	 * @param order {@link #ByName}, {@link #BySize} or null
+	 * @param offset index of the first VNode of the page
+	 * @param count maximum number of VNodes of the page, 0 for all the remaining VNodes
+	 * @return the VNodes of the page
+	 */
+	private static List<VNode> list(List<VNode> content, String order, int offset, int count){
+		int end = (count==0)?content.size():(int) Math.min(content.size(), (long) offset+count);
+		if(offset>=end)
+			return new java.util.ArrayList<VNode>();
+		if(order==null)
+			return new java.util.ArrayList<VNode>(content.subList(offset, end));
+		
+		java.util.Comparator<VNode> comparator;
+		if(order.equals(ByName)) comparator = NameOrder;
+		else if(order.equals(BySize)) comparator = SizeOrder;
+		else throw new IllegalArgumentException("\""+order+"\" is not a valid order");
+		
+		List<VNode> sorted;
+		if(end==content.size())
+			sorted = new java.util.ArrayList<VNode>(content);
+		else{
+			// keeping the first end VNodes, the greatest one on top
+			java.util.PriorityQueue<VNode> heap = new java.util.PriorityQueue<VNode>(end+1, java.util.Collections.reverseOrder(comparator));
+			for(VNode node : content){
+				heap.add(node);
+				if(heap.size()>end)
+					heap.poll();
+			}
+			sorted = new java.util.ArrayList<VNode>(heap);
+		}
+		java.util.Collections.sort(sorted, comparator);
+		return sorted.subList(offset, end);
+	}
+	
 	/**
 	 * returns the VNode corresponding to the path name given as arguement
 	 * @param pathName path name of the VNode in the virtual file system. It can be absolute or relative to working directory.
@@ -412,15 +1036,20 @@ public class VirtualFileSystem implements java.io.Serializable{
 		if(pathName.equals(".") || pathName.equals("."+separator))
 			return workingDirectory;
 		if(pathName.equals("..") || pathName.equals(".."+separator))
-			return ((workingDirectory.getParent()!=null)?workingDirectory.getParent():workingDirectory);
+			return ((workingDirectory.up()!=null)?workingDirectory.up():workingDirectory);
 			
 		
 		if(pathName.equals(separator) || pathName.equals(name+":"+separator))
 			return rootDirectory;
 		
 		if(Path.isAbsolutePath(pathName)){
-			if(!Path.getVfsName(pathName).equals(name))
-				throw new NoSuchFileOrDirectoryException("\""+pathName+"\" is not reachable from this virtual disk \""+name+"\"");
+			String vfsName = Path.getVfsName(pathName);
+			if(!vfsName.equals(name)){
+				VirtualFileSystem mounted = getMountedDisk(vfsName);
+				if(mounted==null)
+					throw new NoSuchFileOrDirectoryException("\""+pathName+"\" is not reachable from this virtual disk \""+name+"\"");
+				return mounted.get(pathName);
+			}
 			return rootDirectory.get(pathName.substring(name.length()+1+separator.length()));
 		}
 		if(pathName.startsWith(separator))
@@ -451,6 +1080,144 @@ public class VirtualFileSystem implements java.io.Serializable{
 		return workingDirectory.find(name);
 	}
 	
+	/**
+	 * search for files/directories linked to a directory of the virtual file system using the name index.
+	 * the cost of the search depends on the number of VNodes with the given name, not on the size of the tree.
+	 * @param from the directory where to search
+	 * @param name of the file/directory to search for
+	 * @return a list of found files/directories sorted by absolute path name
+	 */
+	List<VNode> find(Directory from, String name){
+		long start = Metrics.begin();
+		VFSEvents.Operation event = VFSEvents.begin(Metrics.Find, from, null);
+		try{
+			List<VNode> results = new java.util.ArrayList<VNode>();
+			for(long inode : names.get(name)){
+				VNode node = inodes.get(inode);
+				if(node!=null && node!=from && (from.isRoot() || from.isAncestorOf(node)))
+					results.add(node);
+			}
+			sortByAbsolutePathName(results);
+			return results;
+		} finally {
+			metrics.end(Metrics.Find, start);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * search for files/directories linked to the current working directory whose name matches a pattern.
+	 * the results are sorted by absolute path name and given one by one to the consumer.
+	 * @param pattern name pattern to match, see {@link NamePattern}
+	 * @param type type of VNodes to keep ("file" or "directory"), null to keep both
+	 * @param limit maximum number of results, 0 for no limit
+	 * @param results consumer of the results
+	 * @return the number of results given to the consumer
+	 */
+	public int find(NamePattern pattern, String type, int limit, java.util.function.Consumer<VNode> results){
+		return find(workingDirectory, pattern, type, limit, results);
+	}
+	
+	/**
+	 * search for files/directories linked to a directory whose name matches a pattern.
+	 * the candidate names are taken from the name index, pruned with the trigram index when the pattern has literal parts.
+	 * when a limit is given, only the first results by absolute path name are kept in a bounded heap.
+	 * @param from the directory where to search
+	 * @param pattern name pattern to match
+	 * @param type type of VNodes to keep, null to keep both
+	 * @param limit maximum number of results, 0 for no limit
+	 * @param results consumer of the results
+	 * @return the number of results given to the consumer
+	 */
+	int find(Directory from, NamePattern pattern, String type, int limit, java.util.function.Consumer<VNode> results){
+		long start = Metrics.begin();
+		VFSEvents.Operation event = VFSEvents.begin(Metrics.Find, from, null);
+		try{
+			return findMatching(from, pattern, type, limit, results);
+		} finally {
+			metrics.end(Metrics.Find, start);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * search for files/directories linked to a directory whose name matches a pattern, see {@link #find(Directory, NamePattern, String, int, java.util.function.Consumer)}
+	 * @param from the directory where to search
+	 * @param pattern name pattern to match
+	 * @param type type of VNodes to keep, null to keep both
+	 * @param limit maximum number of results, 0 for no limit
+	 * @param results consumer of the results
+	 * @return the number of results given to the consumer
+	 */
+	private int findMatching(Directory from, NamePattern pattern, String type, int limit, java.util.function.Consumer<VNode> results){
+		final java.util.IdentityHashMap<VNode,String> paths = new java.util.IdentityHashMap<VNode,String>();
+		java.util.Comparator<VNode> byPath = new java.util.Comparator<VNode>(){
+			@Override
+			public int compare(VNode a, VNode b){
+				return paths.get(a).compareTo(paths.get(b));
+			}
+		};
+		// with a limit, the heap keeps the smallest paths with the greatest one on top
+		java.util.PriorityQueue<VNode> heap = new java.util.PriorityQueue<VNode>(11, java.util.Collections.reverseOrder(byPath));
+		for(String name : names.getMatchingNames(pattern)){
+			for(long inode : names.get(name)){
+				VNode node = inodes.get(inode);
+				if(node==null || node==from || (type!=null && !node.getType().equals(type)) || !(from.isRoot() || from.isAncestorOf(node)))
+					continue;
+				paths.put(node, node.getAbsolutePathName());
+				heap.add(node);
+				if(limit>0 && heap.size()>limit)
+					paths.remove(heap.poll());
+			}
+		}
+		
+		List<VNode> found = new java.util.ArrayList<VNode>(heap);
+		java.util.Collections.sort(found, byPath);
+		for(VNode node : found)
+			results.accept(node);
+		return found.size();
+	}
+	
+	/**
+	 * returns a lazy stream of the VNodes of a sub-tree, in depth-first pre-order.
+	 * the stream can be made parallel: its Spliterator splits the pending sub-trees so that they are visited by different threads.
+	 * short-circuiting operations (findFirst, anyMatch, limit...) stop the traversal early.
+	 * the tree structure must not be modified while the stream is used.
+	 * @param root the starting directory, a file gives a stream of itself
+	 * @param options options of the traversal (maximum depth, starting directory included or not)
+	 * @return a stream of VNodes
+	 */
+	public static java.util.stream.Stream<VNode> walk(VNode root, WalkOptions options){
+		return java.util.stream.StreamSupport.stream(new TreeSpliterator(root, options), false);
+	}
+	
+	/**
+	 * returns a lazy stream of all the VNodes of a sub-tree, starting directory included, in depth-first pre-order.
+	 * @param root the starting directory
+	 * @return a stream of VNodes
+	 * @see #walk(VNode, WalkOptions)
+	 */
+	public static java.util.stream.Stream<VNode> walk(VNode root){
+		return walk(root, new WalkOptions());
+	}
+	
+	/**
+	 * sorts a list of VNodes by absolute path name. Each path is computed once.
+	 * @param nodes list of VNodes to sort
+	 */
+	static void sortByAbsolutePathName(List<VNode> nodes){
+		if(nodes.size()<2) return;
+		final java.util.IdentityHashMap<VNode,String> paths = new java.util.IdentityHashMap<VNode,String>();
+		for(VNode node : nodes)
+			paths.put(node, node.getAbsolutePathName());
+		java.util.Collections.sort(nodes, new java.util.Comparator<VNode>(){
+			@Override
+			public int compare(VNode a, VNode b){
+				return paths.get(a).compareTo(paths.get(b));
+			}
+		});
+	}
+	
 	/**
 	 * creates a new directory at the specified pathName
 	 * @param pathName path + name of the new directory
@@ -465,18 +1232,36 @@ public class VirtualFileSystem implements java.io.Serializable{
 		if(whereToCreate.isFile())
 			throw new NoSuchDirectoryException("\""+whereToCreate.getAbsolutePathName()+"\" is not a directory");
 		
-		Directory newDirectory = new Directory(name);
-
-		((Directory)whereToCreate).addVNode(newDirectory);
-		
-		return newDirectory;
+		// the path name can lead to a virtual disk mounted on this one
+		return whereToCreate.getVirtualDisk().createDirectory((Directory) whereToCreate, name);
 	}
 	
 	/**
-	 * creates a new file at the specified pathName
-	 * @param pathName path + name of the new file
-	 * @param size size in bytes of the new file
-	 * @throws NoSuchFileOrDirectoryException if path name is not valid
+	 * creates a new directory in the given directory
+	 * @param whereToCreate directory of the virtual file system where to create the new directory
+	 * @param name name of the new directory
+	 * @return a reference to the Directory object created
+	 */
+	Directory createDirectory(Directory whereToCreate, String name){
+		long start = Metrics.begin();
+		VFSEvents.Operation event = VFSEvents.begin(Metrics.Create, whereToCreate, name);
+		try{
+			Directory newDirectory = new Directory(name);
+
+			whereToCreate.addVNode(newDirectory);
+		
+			return newDirectory;
+		} finally {
+			metrics.end(Metrics.Create, start);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * creates a new file at the specified pathName
+	 * @param pathName path + name of the new file
+	 * @param size size in bytes of the new file
+	 * @throws NoSuchFileOrDirectoryException if path name is not valid
 	 * @throws NoFreeSpaceLeftException if virtual disk does not have enough space
 	 * @throws VFSOperationFailException if operation fails
 	 * @return a reference to the File object created
@@ -488,33 +1273,66 @@ public class VirtualFileSystem implements java.io.Serializable{
 		if(whereToCreate.isFile())
 			throw new NoSuchDirectoryException("\""+whereToCreate.getAbsolutePathName()+"\" is not a directory");
 		
+		// the data blocks are allocated on the virtual disk of the directory, it can be mounted on this one
+		return whereToCreate.getVirtualDisk().createFile((Directory) whereToCreate, name, size);
+	}
+	
+	/**
+	 * creates a new file in the given directory
+	 * @param whereToCreate directory of the virtual file system where to create the new file
+	 * @param name name of the new file
+	 * @param size size in bytes of the new file
+	 * @return a reference to the File object created
+	 */
+	File createFile(Directory whereToCreate, String name, long size){
+		long start = Metrics.begin();
+		VFSEvents.Operation event = VFSEvents.begin(Metrics.Create, whereToCreate, name);
+		try{
+			return createFileBlocks(whereToCreate, name, size);
+		} finally {
+			metrics.end(Metrics.Create, start);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * creates a new file in the given directory and chains its data blocks, see {@link #createFile(Directory, String, long)}
+	 * @param whereToCreate directory of the virtual file system where to create the new file
+	 * @param name name of the new file
+	 * @param size size in bytes of the new file
+	 * @return a reference to the File object created
+	 */
+	private File createFileBlocks(Directory whereToCreate, String name, long size){
 		java.io.RandomAccessFile vdFile = null;
 		File newFile = new File(name,size);
-		((Directory)whereToCreate).addVNode(newFile);
 		
+		// a tiny file has no data block, the virtual disk file is not opened
+		if(size>0 && size<=inlineThreshold){
+			newFile.setInlineData(new byte[(int) size]);
+			whereToCreate.addVNode(newFile, 0);
+			return newFile;
+		}
+		
+		// allocating data blocks for the new file before linking it, an empty file has no block
+		long[] blocks = allocateBlocks((int) ((size + DataSizeInBlock - 1)/DataSizeInBlock));
+		try{
+			whereToCreate.addVNode(newFile, 0);
+		} catch(RuntimeException e){
+			for(long position : blocks)
+				setFreeBlock(position);
+			throw e;
+		}
+		if(blocks.length==0)
+			return newFile;
+		newFile.setFirstBlockPosition(blocks[0]);
 		
-		// allocating data blocks for the new file
+		// chaining the data blocks
 		try{
 			vdFile = new java.io.RandomAccessFile(VDFileName, "rw");
-			long occupiedBytes = 0;
-			
-			long currentBlockPosition = getNextFreeBlockPosition();
-			newFile.setFirstBlockPosition(currentBlockPosition);
-			
-			while(occupiedBytes < size){
-				setOccupiedBlock(currentBlockPosition);
-				occupiedBytes += VirtualFileSystem.DataSizeInBlock;
-				
-				long nextPosition;
-				if(occupiedBytes < size)
-					nextPosition = getNextFreeBlockPosition();
-				else
-					nextPosition = -1L;
-				
-				vdFile.seek(currentBlockPosition + VirtualFileSystem.DataSizeInBlock);
+			for(int i=0;i<blocks.length;i++){
+				long nextPosition = (i+1<blocks.length)? blocks[i+1] : -1L;
+				vdFile.seek(blocks[i] + VirtualFileSystem.DataSizeInBlock);
 				vdFile.writeLong(nextPosition);
-
-				currentBlockPosition = nextPosition;
 			}
 			
 		} catch(java.io.IOException e){
@@ -540,34 +1358,90 @@ public class VirtualFileSystem implements java.io.Serializable{
 	 * @return a reference to the VNode object imported
 	 */
 	public VNode importFromHostFileSystem(String importPathName, String pathName){
-		if(get(pathName).isFile())
-			throw new NoSuchDirectoryException("\""+get(pathName).getAbsolutePathName()+"\" is not a directory");
-		Directory whereToCreate = (Directory) get(pathName);
-		VNode created = null;
-		
+		return importFromHostFileSystem(importPathName, pathName, null);
+	}
 	
+	/**
+	 * imports a file/directory from the host file system to the virtual file system and reports each data block imported.
+	 * if the import is canceled, what has already been imported is removed.
+	 * @param importPathName path + name of the file/directory to import
+	 * @param pathName path name of the directory where to import on the virtual file system
+	 * @param progress progress of the import, or null
+	 * @throws NoSuchFileOrDirectoryException if path name is not valid
+	 * @throws NoFreeSpaceLeftException if virtual disk does not have enough space
+	 * @throws VFSOperationFailException if operation fails
+	 * @throws OperationCanceledException if the import is canceled
+	 * @return a reference to the VNode object imported
+	 */
+	VNode importFromHostFileSystem(String importPathName, String pathName, Progress progress){
+		VNode target = get(pathName);
+		if(target.isFile())
+			throw new NoSuchDirectoryException("\""+target.getAbsolutePathName()+"\" is not a directory");
+		if(target.getVirtualDisk()!=this)
+			return target.getVirtualDisk().importFromHostFileSystem(importPathName, target.getAbsolutePathName(), progress);
+		
 		java.io.File toImport = new java.io.File(importPathName);
 		if(!toImport.exists()) throw new NoSuchFileOrDirectoryException(importPathName+" does not exist on the host file system");
 		if(VirtualFileSystem.getHFSDirectorySize(toImport)>getFreeSpace()) throw new NoFreeSpaceLeftException();
 		
+		// the statistics of the parent directories are updated once at the end of the import
+		boolean existed = ((Directory) target).contains(toImport.getName());
+		long start = Metrics.begin();
+		VFSEvents.Operation event = VFSEvents.begin(Metrics.Import, target, toImport.getName());
+		beginBatch();
+		try{
+			return importFromHostFileSystem(toImport, (Directory) target, progress);
+		} catch (OperationCanceledException e){
+			if(!existed && ((Directory) target).contains(toImport.getName()))
+				((Directory) target).get(toImport.getName()).remove();
+			throw e;
+		} finally {
+			endBatch();
+			metrics.end(Metrics.Import, start);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * imports a file/directory from the host file system to a directory of the virtual file system
+	 * @param toImport file/directory to import
+	 * @param whereToCreate directory of the virtual file system where to import
+	 * @param progress progress of the import, or null
+	 * @return a reference to the VNode object imported
+	 */
+	private VNode importFromHostFileSystem(java.io.File toImport, Directory whereToCreate, Progress progress){
+		VNode created = null;
+		String importPathName = toImport.getPath();
+		
 		if(toImport.isDirectory()) {
 			// creating new directory
-			created = createDirectory(whereToCreate.getAbsolutePathName()+toImport.getName());
+			created = createDirectory(whereToCreate, toImport.getName());
 			
 			//importing all directory's content to the new one created
 			for(java.io.File f : toImport.listFiles()){
-				importFromHostFileSystem(f.getAbsolutePath(),created.getAbsolutePathName());
+				if(progress!=null)
+					progress.check();
+				importFromHostFileSystem(f, (Directory) created, progress);
 			}
 		} else{
 			// creating new file
-			created = createFile(whereToCreate.getAbsolutePathName()+toImport.getName(),toImport.length()); 
+			created = createFile(whereToCreate, toImport.getName(), toImport.length()); 
 			java.io.RandomAccessFile vdFile = null;
 			java.io.BufferedInputStream inStream = null;
 		
 			//importing data and storing it in file's blocks
 			try{
-				vdFile = new java.io.RandomAccessFile(VDFileName, "rw");
 				inStream = new java.io.BufferedInputStream(new java.io.FileInputStream(toImport));
+				if(((File) created).isInline()){
+					// the data of a tiny file is kept in its VNode
+					byte[] data = new byte[(int) created.size];
+					new java.io.DataInputStream(inStream).readFully(data);
+					((File) created).setInlineData(data);
+					if(progress!=null)
+						progress.advance(data.length);
+					return created;
+				}
+				vdFile = new java.io.RandomAccessFile(VDFileName, "rw");
 				
 				long currentBlockPosition = ((File) created).getFirstBlockPosition();
 				
@@ -589,7 +1463,12 @@ public class VirtualFileSystem implements java.io.Serializable{
 					inStream.read(bytesToImport);
 					
 					// writing data block
+					VFSEvents.BlockIO write = VFSEvents.beginBlock();
 					vdFile.write(bytesToImport);
+					VFSEvents.commit(write, this, currentBlockPosition, bytesToImport.length, true);
+					metrics.written(bytesToImport.length, 1);
+					if(progress!=null)
+						progress.advance(bytesToImport.length);
 					
 					bytesLeft -= VirtualFileSystem.DataSizeInBlock;
 					
@@ -625,6 +1504,777 @@ public class VirtualFileSystem implements java.io.Serializable{
 		return importFromHostFileSystem(importPathName,workingDirectory.getAbsolutePathName());
 	}
 	
+	/* ----------------------------batches---------------------------- */
+	
+	/**
+	 * runs a group of operations on the virtual file system as a batch.
+	 * During a batch, the changes of the sizes and statistics of the directories are not propagated to their parents at each operation:
+	 * they are accumulated by directory and applied to all the parents once, when the batch ends. Free space checks
+	 * are not affected since they rely on the data blocks of the virtual disk. The sizes and statistics of the directories read during
+	 * the batch may not include the changes made by the batch yet.
+	 * Batches can be nested, the statistics are updated when the outermost batch ends.
+	 * @param operations the operations to run
+	 */
+	public void batch(Runnable operations){
+		beginBatch();
+		try{
+			operations.run();
+		} finally {
+			endBatch();
+		}
+	}
+	
+	/**
+	 * checks if a batch is running on the virtual file system
+	 * @return true if the statistics of the directories are not propagated immediately
+	 */
+	public boolean isBatching(){
+		return batches.get().depth>0;
+	}
+	
+	/**
+	 * starts a batch. see {@link #batch(Runnable)}
+	 */
+	void beginBatch(){
+		batches.get().depth++;
+	}
+	
+	/**
+	 * ends a batch and applies the pending statistics changes if it is the outermost one. see {@link #batch(Runnable)}
+	 */
+	void endBatch(){
+		Batch batch = batches.get();
+		batch.depth--;
+		if(batch.depth==0)
+			flushStats();
+	}
+	
+	/**
+	 * defers a change of the statistics of a directory and all its parents until the end of the batch
+	 * @param directory the directory whose statistics change
+	 * @param delta the change
+	 */
+	void deferStats(Directory directory, StatsDelta delta){
+		java.util.IdentityHashMap<Directory,StatsDelta> pendingStats = batches.get().pendingStats;
+		StatsDelta pending = pendingStats.get(directory);
+		if(pending==null)
+			pendingStats.put(directory, delta);
+		else
+			pending.add(delta);
+	}
+	
+	/**
+	 * applies the pending statistics changes of the current thread to the directories and their parents.
+	 * The directories are processed from the deepest to the shallowest so that each parent is updated only once
+	 * with the sum of the changes of its children. Each directory is locked only while its change is applied,
+	 * see {@link Directory#applyStats(StatsDelta)}.
+	 */
+	void flushStats(){
+		java.util.IdentityHashMap<Directory,StatsDelta> pendingStats = batches.get().pendingStats;
+		if(pendingStats.isEmpty()) return;
+		VFSEvents.StatsPropagation event = VFSEvents.beginStats();
+		int directories = pendingStats.size();
+		flushStats(pendingStats);
+		VFSEvents.commit(event, this, directories);
+	}
+	
+	/**
+	 * applies statistics changes to the directories and their parents, see {@link #flushStats()}
+	 * @param pendingStats changes by directory, cleared at the end
+	 */
+	private void flushStats(java.util.IdentityHashMap<Directory,StatsDelta> pendingStats){
+		
+		// grouping pending changes by depth
+		java.util.TreeMap<Integer, java.util.IdentityHashMap<Directory,StatsDelta>> levels = new java.util.TreeMap<Integer, java.util.IdentityHashMap<Directory,StatsDelta>>();
+		for(java.util.Map.Entry<Directory,StatsDelta> e : pendingStats.entrySet()){
+			int depth = 0;
+			VNode p = e.getKey();
+			for(; !p.isRoot(); p = p.getParent())
+				depth++;
+			if(p!=rootDirectory) continue;		// the directory was detached from the tree
+			java.util.IdentityHashMap<Directory,StatsDelta> level = levels.get(depth);
+			if(level==null){
+				level = new java.util.IdentityHashMap<Directory,StatsDelta>();
+				levels.put(depth, level);
+			}
+			level.put(e.getKey(), e.getValue());
+		}
+		pendingStats.clear();
+		
+		// propagating from the deepest level to the root
+		while(!levels.isEmpty()){
+			java.util.Map.Entry<Integer, java.util.IdentityHashMap<Directory,StatsDelta>> deepest = levels.pollLastEntry();
+			java.util.IdentityHashMap<Directory,StatsDelta> parents = null;
+			if(deepest.getKey()>0){
+				parents = levels.get(deepest.getKey()-1);
+				if(parents==null){
+					parents = new java.util.IdentityHashMap<Directory,StatsDelta>();
+					levels.put(deepest.getKey()-1, parents);
+				}
+			}
+			for(java.util.Map.Entry<Directory,StatsDelta> e : deepest.getValue().entrySet()){
+				Directory d = e.getKey();
+				StatsDelta parentDelta = d.applyStats(e.getValue());
+				if(parents==null) continue;
+				StatsDelta pending = parents.get(d.getParent());
+				if(pending==null)
+					parents.put(d.getParent(), parentDelta);
+				else
+					pending.add(parentDelta);
+			}
+		}
+	}
+	
+	/**
+	 * the batch state of a thread
+	 */
+	private static class Batch {
+		/** number of nested batches running */
+		int depth = 0;
+		/** statistics changes not applied yet, by directory */
+		final java.util.IdentityHashMap<Directory,StatsDelta> pendingStats = new java.util.IdentityHashMap<Directory,StatsDelta>();
+		/** the transaction running, null if there is none */
+		Transaction transaction;
+	}
+	
+	/* ----------------------------transactions---------------------------- */
+	
+	/**
+	 * runs a group of operations on the virtual file system as a transaction: either all of them take effect or none of them does.
+	 * Each change of the tree structure and each data block allocated is recorded in an undo log. The data blocks released are kept
+	 * until the transaction is committed, so the content of the files removed cannot be overwritten by other threads. When the
+	 * transaction runs out of free blocks it reuses the blocks it released, their content is recorded in the undo log.
+	 * If an operation throws an exception, the log is replayed backwards, the indexes and statistics are rebuilt from the tree structure
+	 * and the exception is rethrown. Otherwise the released blocks are freed and the virtual disk is saved once.
+	 * The transaction runs as a batch (see {@link #batch(Runnable)}) and holds the structural lock: the other threads wait
+	 * until it ends to change the virtual disk. Transactions can be nested, the outermost one commits or rolls back everything.
+	 * Moving a file/directory to another virtual disk, saving, formatting and the snapshot operations are not allowed during a transaction.
+	 * @param operations the operations to run
+	 * @throws VFSOperationFailException if the virtual disk cannot be saved when the transaction is committed
+	 */
+	public void transaction(Runnable operations){
+		transaction(operations, true);
+	}
+	
+	/**
+	 * runs a group of operations as a transaction, see {@link #transaction(Runnable)}
+	 * @param operations the operations to run
+	 * @param save true to save the virtual disk when the transaction is committed
+	 */
+	void transaction(Runnable operations, boolean save){
+		Batch batch = batches.get();
+		if(batch.transaction!=null){
+			operations.run();
+			return;
+		}
+		lockTree();
+		try{
+			Transaction transaction = new Transaction(workingDirectory);
+			boolean committed = false;
+			beginBatch();
+			batch.transaction = transaction;
+			try{
+				operations.run();
+				committed = true;
+			} finally {
+				batch.transaction = null;
+				if(committed){
+					for(long position : transaction.freedBlocks)
+						setFreeBlock(position);
+				}
+				else rollback(transaction);
+				endBatch();
+			}
+			if(save)
+				save();
+		} finally {
+			unlockTree();
+		}
+	}
+	
+	/**
+	 * checks if a transaction is running on the virtual file system in the current thread
+	 * @return true if the changes are recorded in an undo log
+	 */
+	public boolean isInTransaction(){
+		return batches.get().transaction!=null;
+	}
+	
+	/**
+	 * checks that an operation that cannot be undone is not run during a transaction
+	 * @param operation description of the operation
+	 * @throws VFSOperationFailException if a transaction is running in the current thread
+	 */
+	void checkNoTransaction(String operation){
+		if(isInTransaction())
+			throw new VFSOperationFailException("cannot "+operation+" during a transaction");
+	}
+	
+	/**
+	 * undoes the changes of a transaction. the structural lock must be held and the transaction must not be running anymore.
+	 * @param transaction the transaction to roll back
+	 */
+	private void rollback(Transaction transaction){
+		java.util.List<Runnable> undoLog = transaction.undoLog;
+		for(int i=undoLog.size()-1;i>=0;i--)
+			undoLog.get(i).run();
+		
+		// the statistics changes pending are included in the recomputed ones
+		batches.get().pendingStats.clear();
+		inodes.rebuild(rootDirectory);
+		names.rebuild(rootDirectory);
+		rootDirectory.computeStats();
+		pathCache.invalidate();
+		workingDirectory = transaction.workingDirectory;
+	}
+	
+	/**
+	 * the state of a transaction, see {@link VirtualFileSystem#transaction(Runnable)}
+	 */
+	private static class Transaction {
+		/** operations undoing the changes, in the order of the changes */
+		final java.util.ArrayList<Runnable> undoLog = new java.util.ArrayList<Runnable>();
+		/** data blocks to release when the transaction is committed */
+		final java.util.ArrayList<Long> freedBlocks = new java.util.ArrayList<Long>();
+		/** working directory when the transaction started */
+		final Directory workingDirectory;
+		
+		/**
+		 * creates the state of a new transaction
+		 * @param workingDirectory the current working directory
+		 */
+		Transaction(Directory workingDirectory){
+			this.workingDirectory = workingDirectory;
+		}
+	}
+	
+	/* ----------------------------mount points---------------------------- */
+	
+	/**
+	 * mounts the root directory of another virtual disk on a directory of the virtual file system.
+	 * the path names going through the directory are resolved on the mounted virtual disk, and ".." from its root goes back
+	 * to the parent of the directory. The content of the directory is hidden until the virtual disk is unmounted.
+	 * The VNodes of the mounted virtual disk keep their own absolute path names ("disk:/path"), which can be used on this 
+	 * virtual disk too. The traversals (find, tree, export) and the statistics of the directories stay on one virtual disk.
+	 * A virtual disk can be mounted on one directory at a time, the mount points cannot make a cycle.
+	 * @param pathName path name of the directory where to mount, it can be on a virtual disk already mounted on this one
+	 * @param disk the virtual disk to mount
+	 * @throws NoSuchDirectoryException if the path name is not a directory
+	 * @throws VFSOperationFailException if the directory is a root directory, if the virtual disk is already mounted or 
+	 * if the mount would make a cycle
+	 */
+	public void mount(String pathName, VirtualFileSystem disk){
+		checkNoTransaction("mount \""+disk.name+"\"");
+		VNode node = get(pathName);
+		if(!node.isDirectory())
+			throw new NoSuchDirectoryException("\""+node.getAbsolutePathName()+"\" is not a directory");
+		if(node.isRoot())
+			throw new VFSOperationFailException("cannot mount \""+disk.name+"\" on the root directory \""+node.getAbsolutePathName()+"\"");
+		Directory directory = (Directory) node;
+		VirtualFileSystem owner = directory.getVirtualDisk();
+		synchronized(MountLock){
+			if(disk.mountPoint!=null)
+				throw new VFSOperationFailException("\""+disk.name+"\" is already mounted on \""+disk.mountPoint.getAbsolutePathName()+"\"");
+			for(VirtualFileSystem d = owner; d!=null; d = (d.mountPoint!=null)?d.mountPoint.getVirtualDisk():null){
+				if(d==disk || d.name.equals(disk.name))
+					throw new VFSOperationFailException("cannot mount \""+disk.name+"\" inside itself");
+			}
+			if(owner.mountPoints.containsKey(disk.name))
+				throw new VFSOperationFailException("a virtual disk named \""+disk.name+"\" is already mounted on \""+owner.name+"\"");
+			owner.lockTree();
+			try{
+				if(!owner.isRegistered(directory))
+					throw new NoSuchDirectoryException("\""+pathName+"\" was removed");
+				disk.mountPoint = directory;
+				owner.mountPoints.put(disk.name, directory);
+				directory.mountedDisk = disk;
+			} finally {
+				owner.unlockTree();
+			}
+		}
+	}
+	
+	/**
+	 * unmounts a virtual disk mounted with {@link #mount(String, VirtualFileSystem)}.
+	 * the working directories that were on the unmounted virtual disk go back to its mount point.
+	 * @param pathName path name of the mount point, which leads to the root directory of the mounted virtual disk
+	 * @return the virtual disk unmounted
+	 * @throws VFSOperationFailException if no virtual disk is mounted there
+	 */
+	public VirtualFileSystem unmount(String pathName){
+		checkNoTransaction("unmount \""+pathName+"\"");
+		VNode node = get(pathName);
+		VirtualFileSystem disk = node.getVirtualDisk();
+		synchronized(MountLock){
+			Directory directory = disk.mountPoint;
+			if(node!=disk.rootDirectory || directory==null)
+				throw new VFSOperationFailException("\""+pathName+"\" is not a mount point");
+			VirtualFileSystem owner = directory.getVirtualDisk();
+			owner.lockTree();
+			try{
+				directory.mountedDisk = null;
+				owner.mountPoints.remove(disk.name, directory);
+				disk.mountPoint = null;
+			} finally {
+				owner.unlockTree();
+			}
+			// the working directories of the virtual disks above the mount point
+			for(VirtualFileSystem d = owner; d!=null; d = (d.mountPoint!=null)?d.mountPoint.getVirtualDisk():null){
+				VirtualFileSystem current = d.workingDirectory.getVirtualDisk();
+				if(current!=d && d.getMountedDisk(current.name)!=current)
+					d.workingDirectory = directory;
+			}
+		}
+		return disk;
+	}
+	
+	/**
+	 * returns the directory where the virtual disk is mounted
+	 * @return the mount point, or null if the virtual disk is not mounted on another one
+	 */
+	public Directory getMountPoint(){
+		return mountPoint;
+	}
+	
+	/**
+	 * returns the directories of the virtual disk where other virtual disks are mounted
+	 * @return the mount points sorted by absolute path name
+	 */
+	public List<Directory> getMountPoints(){
+		List<VNode> sorted = new java.util.ArrayList<VNode>(mountPoints.values());
+		sortByAbsolutePathName(sorted);
+		List<Directory> directories = new java.util.ArrayList<Directory>();
+		for(VNode directory : sorted)
+			directories.add((Directory) directory);
+		return directories;
+	}
+	
+	/**
+	 * returns a virtual disk mounted on this one, directly or on another mounted virtual disk.
+	 * the virtual disks mounted directly are found by name in O(1).
+	 * @param vfsName name of the mounted virtual disk
+	 * @return the virtual disk, or null if no virtual disk with this name is mounted below this one
+	 */
+	VirtualFileSystem getMountedDisk(String vfsName){
+		Directory directory = mountPoints.get(vfsName);
+		if(directory!=null)
+			return directory.mountedDisk;
+		for(Directory d : mountPoints.values()){
+			VirtualFileSystem mounted = d.mountedDisk;
+			VirtualFileSystem found = (mounted!=null)?mounted.getMountedDisk(vfsName):null;
+			if(found!=null)
+				return found;
+		}
+		return null;
+	}
+	
+	/**
+	 * checks if the virtual disk is mounted on another one or if other virtual disks are mounted on it
+	 * @return true if the virtual disk is part of a mount
+	 */
+	boolean hasMounts(){
+		return mountPoint!=null || !mountPoints.isEmpty();
+	}
+	
+	/**
+	 * checks that an operation does not remove a mount point
+	 * @param directory the directory removed or replaced with its content
+	 * @throws VFSOperationFailException if a virtual disk is mounted on the directory or one of its sub-directories
+	 */
+	void checkNoMountPointIn(Directory directory){
+		for(Directory d : mountPoints.values()){
+			if(d==directory || directory.isAncestorOf(d))
+				throw new VFSOperationFailException("\""+d.getAbsolutePathName()+"\" is a mount point");
+		}
+	}
+	
+	/**
+	 * checks that the virtual disk is not part of a mount
+	 * @param operation description of the operation
+	 * @throws VFSOperationFailException if the virtual disk is mounted or has virtual disks mounted on it
+	 */
+	void checkNotMounted(String operation){
+		if(hasMounts())
+			throw new VFSOperationFailException("cannot "+operation+" while it is mounted or has virtual disks mounted on it");
+	}
+	
+	/* ----------------------------locks---------------------------- */
+	
+	/** number of locks shared by the directories */
+	public static final int DirectoryLocks = 64;
+	
+	/**
+	 * creates the locks of the directories
+	 * @return an array of locks
+	 */
+	private static java.util.concurrent.locks.ReentrantLock[] newDirectoryLocks(){
+		java.util.concurrent.locks.ReentrantLock[] locks = new java.util.concurrent.locks.ReentrantLock[DirectoryLocks];
+		for(int i=0;i<locks.length;i++)
+			locks[i] = new java.util.concurrent.locks.ReentrantLock();
+		return locks;
+	}
+	
+	/**
+	 * returns the lock used by a directory
+	 * @param directory a directory of the virtual disk
+	 * @return its lock
+	 */
+	private java.util.concurrent.locks.ReentrantLock getLock(Directory directory){
+		return directoryLocks[(int) Math.floorMod(directory.inode, (long) DirectoryLocks)];
+	}
+	
+	/**
+	 * locks a directory to change or read its content: the structural lock is taken shared, then the directory's lock.
+	 * @param directory a directory of the virtual disk
+	 */
+	void lockDirectory(Directory directory){
+		treeLock.readLock().lock();
+		getLock(directory).lock();
+	}
+	
+	/**
+	 * unlocks a directory locked with {@link #lockDirectory(Directory)}
+	 * @param directory a directory of the virtual disk
+	 */
+	void unlockDirectory(Directory directory){
+		getLock(directory).unlock();
+		treeLock.readLock().unlock();
+	}
+	
+	/**
+	 * locks two directories, of the same virtual disk or not. the locks are always taken in the same order (virtual disk id, then lock index)
+	 * so that two threads locking the same directories cannot wait for each other.
+	 * @param a a directory, or null
+	 * @param b another directory
+	 */
+	static void lockDirectories(Directory a, Directory b){
+		if(a==null){
+			b.virtualDisk.lockDirectory(b);
+			return;
+		}
+		if(lockOrder(a, b)>0){
+			Directory tmp = a;
+			a = b;
+			b = tmp;
+		}
+		a.virtualDisk.lockDirectory(a);
+		b.virtualDisk.lockDirectory(b);
+	}
+	
+	/**
+	 * unlocks two directories locked with {@link #lockDirectories(Directory, Directory)}
+	 * @param a a directory, or null
+	 * @param b another directory
+	 */
+	static void unlockDirectories(Directory a, Directory b){
+		b.virtualDisk.unlockDirectory(b);
+		if(a!=null)
+			a.virtualDisk.unlockDirectory(a);
+	}
+	
+	/**
+	 * compares the locks of two directories
+	 * @param a a directory
+	 * @param b another directory
+	 * @return a negative value if the lock of a must be taken first
+	 */
+	private static int lockOrder(Directory a, Directory b){
+		if(a.virtualDisk.id!=b.virtualDisk.id)
+			return Integer.compare(a.virtualDisk.id, b.virtualDisk.id);
+		return Long.compare(Math.floorMod(a.inode, (long) DirectoryLocks), Math.floorMod(b.inode, (long) DirectoryLocks));
+	}
+	
+	/**
+	 * locks the whole tree structure of the virtual disk exclusively. The operations on directories wait until it is unlocked.
+	 */
+	void lockTree(){
+		treeLock.writeLock().lock();
+	}
+	
+	/**
+	 * unlocks the tree structure locked with {@link #lockTree()}
+	 */
+	void unlockTree(){
+		treeLock.writeLock().unlock();
+	}
+	
+	/**
+	 * locks the tree structures of two virtual disks exclusively, always in the same order (virtual disk id), so that two threads
+	 * copying between the same virtual disks in opposite directions cannot wait for each other.
+	 * An operation that changes two virtual disks must take this lock before any other lock of the virtual disks.
+	 * @param a a virtual disk
+	 * @param b another virtual disk, or the same one
+	 */
+	static void lockTrees(VirtualFileSystem a, VirtualFileSystem b){
+		if(a.id>b.id){
+			VirtualFileSystem tmp = a;
+			a = b;
+			b = tmp;
+		}
+		a.lockTree();
+		if(b!=a)
+			b.lockTree();
+	}
+	
+	/**
+	 * unlocks the tree structures locked with {@link #lockTrees(VirtualFileSystem, VirtualFileSystem)}
+	 * @param a a virtual disk
+	 * @param b another virtual disk, or the same one
+	 */
+	static void unlockTrees(VirtualFileSystem a, VirtualFileSystem b){
+		if(b!=a)
+			b.unlockTree();
+		a.unlockTree();
+	}
+	
+	/**
+	 * checks if an operation holds the structural lock, shared or exclusively
+	 * @return true if the tree structure is being read or changed
+	 */
+	boolean isBusy(){
+		return treeLock.isWriteLocked() || treeLock.getReadLockCount()>0;
+	}
+	
+	/* ----------------------------metrics---------------------------- */
+	
+	/**
+	 * returns the counters of the operations run on the virtual disk since it was created or loaded
+	 * @return the metrics of the virtual disk
+	 */
+	public Metrics getMetrics(){
+		return metrics;
+	}
+	
+	/**
+	 * registers the metrics of the virtual disk in the platform MBean server, with the object name
+	 * "core:type=VirtualFileSystem,name=&lt;name&gt;". see {@link VFSMetricsMXBean}
+	 * @return the object name of the MXBean
+	 * @throws VFSOperationFailException if another virtual disk with the same name is registered
+	 */
+	public synchronized javax.management.ObjectName registerMBean(){
+		if(mbeanName==null){
+			javax.management.ObjectName objectName = MetricsBean.getObjectName("type=VirtualFileSystem,name="+javax.management.ObjectName.quote(name));
+			MetricsBean.register(new MetricsBean.Disk(this), objectName);
+			mbeanName = objectName;
+		}
+		return mbeanName;
+	}
+	
+	/**
+	 * unregisters the metrics registered by {@link #registerMBean()}, nothing is done if they are not registered
+	 */
+	public synchronized void unregisterMBean(){
+		if(mbeanName==null) return;
+		MetricsBean.unregister(mbeanName);
+		mbeanName = null;
+	}
+	
+	/* ----------------------------snapshots---------------------------- */
+	
+	/**
+	 * takes a snapshot of the virtual file system in O(1) time: nothing is copied, the virtual disk starts a new epoch.
+	 * The VNodes are kept by the snapshot the first time they are changed, and the data blocks allocated before the snapshot
+	 * are shared with it: they are never rewritten and stay reserved when they are released, until the snapshot is deleted.
+	 * @param snapshotName name of the snapshot
+	 * @throws NameAlreadyExistsException if a snapshot with the same name already exists
+	 * @return a reference to the Snapshot object created
+	 */
+	public Snapshot createSnapshot(String snapshotName){
+		checkNoTransaction("take a snapshot of \""+name+"\"");
+		lockTree();
+		try{
+			for(Snapshot s : snapshots){
+				if(s.name.equals(snapshotName))
+					throw new NameAlreadyExistsException("snapshot \""+snapshotName+"\" already exists on \""+name+"\"");
+			}
+			synchronized(this){
+				snapshotEpoch++;
+				Snapshot snapshot = new Snapshot(snapshotName, snapshotEpoch, occupiedSpace);
+				snapshots.add(snapshot);
+				return snapshot;
+			}
+		} finally {
+			unlockTree();
+		}
+	}
+	
+	/**
+	 * returns the list of snapshots taken on the virtual file system
+	 * @return snapshots list
+	 */
+	public List<Snapshot> getSnapshots(){
+		return java.util.Collections.unmodifiableList(snapshots);
+	}
+	
+	/**
+	 * returns the snapshot with the given name
+	 * @param snapshotName name of the snapshot
+	 * @throws NoSuchSnapshotException if no snapshot found
+	 * @return a reference to the Snapshot object
+	 */
+	public Snapshot getSnapshot(String snapshotName){
+		for(Snapshot s : snapshots){
+			if(s.name.equals(snapshotName))
+				return s;
+		}
+		throw new NoSuchSnapshotException("snapshot \""+snapshotName+"\" does not exist on \""+name+"\"");
+	}
+	
+	/**
+	 * restores the virtual file system to the state it had when the snapshot was taken.
+	 * the current content of the virtual file system is lost, the snapshot is kept. The tree of the snapshot is rebuilt
+	 * from the states kept by the snapshots and the block chains of its files are walked: it takes O(nodes + blocks) time.
+	 * @param snapshotName name of the snapshot to restore
+	 * @throws NoSuchSnapshotException if no snapshot found
+	 * @throws VFSOperationFailException if the virtual disk file cannot be read
+	 */
+	public void restoreSnapshot(String snapshotName){
+		checkNoTransaction("restore a snapshot of \""+name+"\"");
+		checkNoMountPointIn(rootDirectory);
+		lockTree();
+		try{
+			Snapshot snapshot = getSnapshot(snapshotName);
+			flushStats();
+		
+			// replacing the tree structure with the one seen by the snapshot
+			Directory restored = (Directory) getSnapshotState(rootDirectory, snapshots.indexOf(snapshot));
+			for(VNode child : rootDirectory.getContentList()){
+				child.detach();
+			}
+			for(VNode child : restored.getContentList()){
+				child.detach();
+				rootDirectory.addChild(child);
+			}
+			inodes.rebuild(rootDirectory);
+			names.rebuild(rootDirectory);
+			rootDirectory.computeStats();
+			pathCache.invalidate();
+			workingDirectory = rootDirectory;
+		
+			// the blocks of the restored files are occupied again, the other ones are released
+			boolean[] used = getUsedBlocks(rootDirectory);
+			synchronized(this){
+				for(int i=0;i<freeBlocks.length;i++){
+					if(used[i] && freeBlocks[i]){
+						freeBlocks[i] = false;
+						snapshotReferences[i] = 0;
+					}
+					else if(!used[i] && !freeBlocks[i])
+						releaseBlock(i);
+				}
+				long free = 0;
+				for(int i=0;i<freeBlocks.length;i++){
+					if(freeBlocks[i] && snapshotReferences[i]==0)
+						free += DataSizeInBlock;
+				}
+				freeSpace = free;
+				occupiedSpace = totalSpace - free;
+				freeBlockHint = 0;
+			}
+		} finally {
+			unlockTree();
+		}
+	}
+	
+	/**
+	 * returns a detached copy of a VNode, and of its content, as seen by a snapshot.
+	 * the state of each VNode is the one kept by the snapshot or by the first next snapshot keeping one, or its live state.
+	 * @param node the VNode
+	 * @param index index of the snapshot in the list of snapshots
+	 * @return the copy, its files refer to the same data blocks
+	 */
+	private VNode getSnapshotState(VNode node, int index){
+		Snapshot.State state = null;
+		for(int i=index; i<snapshots.size() && state==null; i++)
+			state = snapshots.get(i).states.get(node);
+		if(state==null)
+			state = new Snapshot.State(node);
+		VNode copy = state.create();
+		copy.virtualDisk = this;
+		copy.snapshotEpoch = snapshotEpoch;
+		if(state.content!=null){
+			for(VNode child : state.content)
+				((Directory) copy).addChild(getSnapshotState(child, index));
+		}
+		return copy;
+	}
+	
+	/**
+	 * walks the block chains of the files of a directory
+	 * @param directory the directory
+	 * @throws VFSOperationFailException if the virtual disk file cannot be read
+	 * @return an occupation map of the data blocks: true if the block stores the data of a file
+	 */
+	private boolean[] getUsedBlocks(Directory directory){
+		boolean[] used = new boolean[freeBlocks.length];
+		java.io.RandomAccessFile vdFile = null;
+		try{
+			vdFile = new java.io.RandomAccessFile(VDFileName, "r");
+			java.util.Iterator<VNode> it = walk(directory).iterator();
+			while(it.hasNext()){
+				VNode node = it.next();
+				if(!node.isFile()) continue;
+				// the chain is walked by block count, like when data is appended to the file
+				long position = ((File) node).getFirstBlockPosition();
+				for(long n=((File) node).getBlockCount(); n>0; n--){
+					used[getBlockIdx(position)] = true;
+					if(n>1){
+						vdFile.seek(position + DataSizeInBlock);
+						position = vdFile.readLong();
+					}
+				}
+			}
+		} catch(java.io.IOException e){
+			throw new VFSOperationFailException("cannot read data blocks of virtual disk : \""+this.name+"\"");
+		} finally{
+			try {
+				if(vdFile!=null) vdFile.close();
+			} catch (java.io.IOException e) {
+				throw new VFSOperationFailException(e.getMessage());
+			}
+		}
+		return used;
+	}
+	
+	/**
+	 * deletes a snapshot. data blocks that are only refered by the snapshot are released. It takes O(blocks) time.
+	 * The states it kept are handed to the previous snapshot, which saw the same VNodes unless it kept states of its own.
+	 * @param snapshotName name of the snapshot to delete
+	 * @throws NoSuchSnapshotException if no snapshot found
+	 */
+	public void deleteSnapshot(String snapshotName){
+		checkNoTransaction("delete a snapshot of \""+name+"\"");
+		lockTree();
+		try{
+			Snapshot snapshot = getSnapshot(snapshotName);
+			int index = snapshots.indexOf(snapshot);
+			if(index>0){
+				java.util.Map<VNode,Snapshot.State> previous = snapshots.get(index-1).states;
+				for(java.util.Map.Entry<VNode,Snapshot.State> entry : snapshot.states.entrySet()){
+					if(!previous.containsKey(entry.getKey()))
+						previous.put(entry.getKey(), entry.getValue());
+				}
+			}
+			synchronized(this){
+				// a free block is refered by the snapshots taken between its allocation and its release
+				for(int i=0;i<freeBlocks.length;i++){
+					if(freeBlocks[i] && snapshotReferences[i]>0 
+							&& allocationEpochs[i]<snapshot.epoch && snapshot.epoch<=releaseEpochs[i]){
+						snapshotReferences[i]--;
+						if(snapshotReferences[i]==0){
+							occupiedSpace -= DataSizeInBlock;
+							freeSpace += DataSizeInBlock;
+						}
+					}
+				}
+				snapshots.remove(index);
+				freeBlockHint = 0;
+			}
+		} finally {
+			unlockTree();
+		}
+	}
+	
 	/* ----------------------------useful methods---------------------------- */
 	
 	/**
@@ -667,7 +2317,30 @@ public class VirtualFileSystem implements java.io.Serializable{
 	 * @return a String containing the tree structure starting from root directory of the virtual file system
 	 **/
 	public String getTree(){
-		return rootDirectory.printAllContent();
+		lockTree();
+		try{
+			return rootDirectory.printAllContent();
+		} finally {
+			unlockTree();
+		}
+	}
+	
+	/**
+	 * writes all the content of the virtual disk formatted in a tree structure to an output.
+	 * @param out output where the tree is written
+	 * @param maxDepth maximum depth of the VNodes written, {@link WalkOptions#Unlimited} for no limit
+	 * @param maxEntries maximum number of VNodes written, 0 for no limit
+	 * @return the number of VNodes written
+	 * @throws VFSOperationFailException if the output cannot be written
+	 * @see VNode#printAllContent(Appendable, int, int)
+	 */
+	public int printTree(Appendable out, int maxDepth, int maxEntries){
+		lockTree();
+		try{
+			return rootDirectory.printAllContent(out, maxDepth, maxEntries);
+		} finally {
+			unlockTree();
+		}
 	}
 	
 	public static String getSimplifiedSize(long value){
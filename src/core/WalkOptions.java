@@ -0,0 +1,62 @@
+package core;
+
+/**
+ * Options of a traversal of the tree structure of a virtual file system, see {@link VirtualFileSystem#walk(VNode, WalkOptions)}.
+ * The setters return the receiver so that options can be chained:
+ * <pre>new WalkOptions().maxDepth(2).includeRoot(false)</pre>
+ * 
+ * @author ayoub
+ */
+public class WalkOptions {
+	
+	/* ----------------------------attributes---------------------------- */
+	
+	/** value of the maximum depth when the traversal is not limited */
+	public static final int Unlimited = Integer.MAX_VALUE;
+	
+	/** maximum depth of the VNodes visited, the starting directory being at depth 0 */
+	private int maxDepth = Unlimited;
+	/** true if the starting directory is part of the traversal */
+	private boolean includeRoot = true;
+	
+	/* ----------------------------getters---------------------------- */
+	
+	/**
+	 * @return the maximum depth of the VNodes visited
+	 */
+	public int getMaxDepth(){
+		return maxDepth;
+	}
+	
+	/**
+	 * @return true if the starting directory is part of the traversal
+	 */
+	public boolean isRootIncluded(){
+		return includeRoot;
+	}
+	
+	/* ----------------------------setters---------------------------- */
+	
+	/**
+	 * limits the depth of the traversal. the children of the starting directory are at depth 1.
+	 * @param maxDepth maximum depth of the VNodes visited
+	 * @return the receiver
+	 * @throws IllegalArgumentException if maxDepth is negative
+	 */
+	public WalkOptions maxDepth(int maxDepth){
+		if(maxDepth<0)
+			throw new IllegalArgumentException("the maximum depth must be positive");
+		this.maxDepth = maxDepth;
+		return this;
+	}
+	
+	/**
+	 * sets whether the starting directory is part of the traversal
+	 * @param includeRoot true to visit the starting directory
+	 * @return the receiver
+	 */
+	public WalkOptions includeRoot(boolean includeRoot){
+		this.includeRoot = includeRoot;
+		return this;
+	}
+}
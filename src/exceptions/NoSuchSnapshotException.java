@@ -0,0 +1,8 @@
+package exceptions;
+
+public class NoSuchSnapshotException extends RuntimeException{
+	private static final long serialVersionUID = 3811974025136508217L;
+	
+	public NoSuchSnapshotException() {super();}
+	public NoSuchSnapshotException(String message) {super(message);}
+}
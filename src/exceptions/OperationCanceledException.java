@@ -0,0 +1,8 @@
+package exceptions;
+
+public class OperationCanceledException extends RuntimeException{
+	private static final long serialVersionUID = 6170433265906125834L;
+	
+	public OperationCanceledException() {super();}
+	public OperationCanceledException(String message) {super(message);}
+}
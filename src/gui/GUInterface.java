@@ -55,6 +55,10 @@ public class GUInterface extends JFrame implements TreeSelectionListener,ActionL
 	private JTextField searchTextField;
 	private JLabel lblPropreties;
 	private Directory workingDirectory = null;
+	private JButton moreButton = null;
+	private int explorerOffset = 0;
+	
+	private static final int EXPLORER_PAGE_SIZE = 300;
 	
 	private static final ImageIcon VFS_ICON = new ImageIcon("gui\\Devices-drive-harddisk-icon.png");
 	private static final ImageIcon VFS_ICON_SELECTED = new ImageIcon("gui\\Devices-drive-harddisk-icon-selected.png");
@@ -84,7 +88,7 @@ public class GUInterface extends JFrame implements TreeSelectionListener,ActionL
 		}
 			
 		if(node.isDirectory()){
-			for(VNode c : ((Directory)node).getContentList()){
+			for(VNode c : ((Directory)node).getContent()){
 				DefaultMutableTreeNode a = buildTree((VNode) c);
 			
 				root.add(a);
@@ -318,6 +322,8 @@ public class GUInterface extends JFrame implements TreeSelectionListener,ActionL
 	public void actionPerformed(ActionEvent arg0) {
 		if(arg0.getActionCommand().equals("GO"))
 			search();
+		else if(arg0.getActionCommand().equals("MORE"))
+			showExplorerPage(explorerOffset);
 		else if(arg0.getActionCommand().equals("PREVIOUS")){
 			if(workingDirectory.isRoot()) return;
 			updateExplorer(workingDirectory.getParent());
@@ -369,10 +375,24 @@ public class GUInterface extends JFrame implements TreeSelectionListener,ActionL
 		contents = new HashMap<VNode,JLabel>();
 		explorerPanel.removeAll();
 		
+		workingDirectory = dir;
+		showExplorerPage(0);
+		
+		searchTextField.setText(workingDirectory.getAbsolutePathName());
+		vfsApp.getPrompt(workingDirectory.getVirtualDisk().name);
+		vfsApp.changeDir("", workingDirectory.getAbsolutePathName());
+	}
+	
+	// Adds a page of the working directory's content to the explorer, with a button to show the next page
+	private void showExplorerPage(int offset){
+		if(moreButton!=null)
+			explorerPanel.remove(moreButton);
+		List<VNode> page = VirtualFileSystem.list(workingDirectory, null, offset, EXPLORER_PAGE_SIZE);
+		
 		int i=0;
 		JPanel flow = new JPanel(new FlowLayout(FlowLayout.LEFT));
 		flow.setOpaque(false);
-		for(VNode vn : dir.getContentList()){
+		for(VNode vn : page){
 			
 			JLabel label;
 			if(vn.isFile())
@@ -403,13 +423,17 @@ public class GUInterface extends JFrame implements TreeSelectionListener,ActionL
 			explorerPanel.add(flow);
 		}
 		
+		explorerOffset = offset+page.size();
+		if(explorerOffset<workingDirectory.getContent().size()){
+			moreButton = new JButton("show more");
+			moreButton.setActionCommand("MORE");
+			moreButton.addActionListener(this);
+			explorerPanel.add(moreButton);
+		}
+		else moreButton = null;
+		
 		explorerPanel.revalidate();
 		explorerPanel.repaint();
-		
-		workingDirectory = dir;
-		searchTextField.setText(workingDirectory.getAbsolutePathName());
-		vfsApp.getPrompt(workingDirectory.getVirtualDisk().name);
-		vfsApp.changeDir("", workingDirectory.getAbsolutePathName());
 	}
 	
 	private void updatePropreties(VNode node){
@@ -438,7 +462,7 @@ public class GUInterface extends JFrame implements TreeSelectionListener,ActionL
 		
 		if(vnode.isDirectory()){
 			text += "<br> <b>files/directories included: </b><br> \t";
-			for(VNode c : ((Directory) vnode).getContentList()){
+			for(VNode c : ((Directory) vnode).getContent()){
 				text += "&nbsp;&nbsp;&nbsp;"+c.getName()+"  :  "+c.getType()+"<br>";
 			}
 			text += "</html>";
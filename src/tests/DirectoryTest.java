@@ -100,7 +100,7 @@ public class DirectoryTest {
 		
 		// creating file
 		
-		vd.createFile("A/created.f", 10);
+		vd.createFile("A/created.f", 1000);	// above the inline threshold
 		
 		assertFalse(vd.isFreeBlock(12));
 		
@@ -218,4 +218,73 @@ public class DirectoryTest {
 		vd.delete();
 	}
 
+	@Test
+	public void testRename() {
+		// creating a virtual disk of 1 MB
+		VirtualFileSystem vd = new VirtualFileSystem(1024*1024);
+		
+		// creating directory and files
+		
+		Directory A = vd.createDirectory("A");
+		File f = vd.createFile("A/file",12);
+		vd.createFile("A/other",12);
+		
+		// renaming file
+		
+		f.rename("renamed");
+		
+		assertEquals(f,A.getFile("renamed"));
+		assertTrue(A.contains("renamed") && !A.contains("file"));
+		
+		// renaming to an existing name
+		
+		try{
+			f.rename("other");
+			fail();
+		} catch (exceptions.NameAlreadyExistsException e){
+			assertEquals(f,A.get("renamed"));
+		}
+		
+		// removing file
+		
+		f.remove();
+		
+		assertFalse(A.contains("renamed"));
+		assertEquals(1,A.getContent().size());
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
+	@Test
+	public void testRenameDirectory() {
+		// creating a virtual disk of 1 MB
+		VirtualFileSystem vd = new VirtualFileSystem(1024*1024);
+		
+		// creating directories and file
+		
+		Directory A = vd.createDirectory("A");
+		vd.createDirectory("A/B");
+		File f = vd.createFile("A/B/file",12);
+		
+		assertEquals(vd.name+":/A/B/file",f.getAbsolutePathName());
+		
+		// renaming the top directory changes all paths below it
+		
+		A.rename("C");
+		
+		assertEquals(vd.name+":/C/B/file",f.getAbsolutePathName());
+		assertEquals(vd.name+":/C/B/",f.getAbsolutePath());
+		
+		// paths are also right without cache
+		
+		vd.setPathCacheCapacity(0);
+		A.rename("D");
+		
+		assertEquals(vd.name+":/D/B/file",f.getAbsolutePathName());
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
 }
@@ -81,7 +81,7 @@ public class FileTest {
 		
 		// creating file
 		
-		File f = vd.createFile("created.f", 10);
+		File f = vd.createFile("created.f", 1000);	// above the inline threshold
 		
 		assertFalse(vd.isFreeBlock(12));
 		
@@ -102,7 +102,7 @@ public class FileTest {
 		
 		// creating file
 		
-		File f = vd.createFile("created.f", 10);
+		File f = vd.createFile("created.f", 1000);	// above the inline threshold
 		
 		assertEquals(12L,f.getFirstBlockPosition());
 		
@@ -126,4 +126,115 @@ public class FileTest {
 		vd.delete();
 	}
 
+	@Test
+	public void testInline() throws Exception {
+		// creating a virtual disk of 64 KB
+		VirtualFileSystem vd = new VirtualFileSystem(64*1024);
+		long freeSpace = vd.getFreeSpace();
+		Directory A = vd.createDirectory("A");
+		
+		// a tiny file has no data block
+		File f = vd.createFile("tiny.f", 10);
+		assertTrue(f.isInline());
+		assertEquals(-1L,f.getFirstBlockPosition());
+		assertEquals(0,f.getBlockCount());
+		assertEquals(freeSpace,vd.getFreeSpace());
+		f.append("hello".getBytes("UTF-8"));
+		assertTrue(f.isInline());
+		assertEquals(15,f.getSize());
+		
+		// it is moved to data blocks when it grows
+		f.append(new byte[VirtualFileSystem.DataSizeInBlock]);
+		assertFalse(f.isInline());
+		assertEquals(2,f.getBlockCount());
+		assertEquals(2,vd.rootDirectory.getBlockCount());
+		assertEquals(freeSpace-2*VirtualFileSystem.DataSizeInBlock,vd.getFreeSpace());
+		f.append("world".getBytes("UTF-8"));
+		assertEquals(2,f.getBlockCount());
+		
+		byte[] expected = new byte[(int) f.getSize()];
+		System.arraycopy("hello".getBytes("UTF-8"), 0, expected, 10, 5);
+		System.arraycopy("world".getBytes("UTF-8"), 0, expected, expected.length-5, 5);
+		java.io.File exported = new java.io.File("test"+VirtualFileSystem.HFSSeparator+"tiny.f");
+		f.exportToHostFileSystem("test");
+		assertArrayEquals(expected,java.nio.file.Files.readAllBytes(exported.toPath()));
+		exported.delete();
+		
+		// the copies of a tiny file are tiny, its data is saved with the tree structure
+		File g = vd.createFile("small.f", 3);
+		g.append("abc".getBytes("UTF-8"));
+		g.copy(A);
+		assertTrue(((File) A.get("small.f")).isInline());
+		vd.save();
+		VirtualFileSystem loaded = new VirtualFileSystem(vd.name);
+		File h = (File) loaded.get("A/small.f");
+		assertTrue(h.isInline());
+		assertEquals(vd.getInlineThreshold(),loaded.getInlineThreshold());
+		h.exportToHostFileSystem("test");
+		exported = new java.io.File("test"+VirtualFileSystem.HFSSeparator+"small.f");
+		assertArrayEquals(new byte[]{0,0,0,'a','b','c'},java.nio.file.Files.readAllBytes(exported.toPath()));
+		exported.delete();
+		
+		// a transaction rolled back restores the data
+		final File i = g;
+		try{
+			vd.transaction(new Runnable(){
+				@Override
+				public void run(){
+					i.append(new byte[2*VirtualFileSystem.DataSizeInBlock]);
+					throw new IllegalStateException();
+				}
+			});
+			fail();
+		} catch (IllegalStateException e){
+			// rolled back
+		}
+		assertTrue(g.isInline());
+		assertEquals(6,g.getSize());
+		
+		// the threshold applies to the new files
+		vd.setInlineThreshold(0);
+		assertFalse(vd.createFile("A/other.f", 10).isInline());
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
+	@Test
+	public void testInlineOnFullDisk() throws Exception {
+		// creating two virtual disks of 64 KB, the second one is full
+		VirtualFileSystem vd1 = new VirtualFileSystem(64*1024);
+		VirtualFileSystem vd2 = new VirtualFileSystem(64*1024);
+		Directory A = vd1.createDirectory("A");
+		File f = vd1.createFile("tiny.f", 10);
+		f.append("hello".getBytes("UTF-8"));
+		vd2.createFile("full.f", vd2.getFreeSpace());
+		assertEquals(0,vd2.getFreeSpace());
+		
+		// a tiny file needs no free space
+		assertTrue(vd2.createFile("other.f", 10).isInline());
+		f.copy(vd2.rootDirectory);
+		assertEquals(15,vd2.get("tiny.f").getSize());
+		
+		// nor on the full disk where it is copied and moved
+		vd1.createFile("full.f", vd1.getFreeSpace());
+		assertEquals(0,vd1.getFreeSpace());
+		f.copy(A);
+		assertTrue(((File) A.get("tiny.f")).isInline());
+		vd1.rootDirectory.get("tiny.f").remove();
+		((File) A.get("tiny.f")).move(vd2.createDirectory("B"));
+		assertEquals(15,vd2.get("B/tiny.f").getSize());
+		assertEquals(0,vd2.getFreeSpace());
+		
+		// a file of data blocks still needs them
+		try{
+			vd2.createFile("B/big.f", 2*vd2.getInlineThreshold());
+			fail("there's no space left");
+		} catch (exceptions.NoFreeSpaceLeftException e){}
+		
+		// deleting virtual disks
+		vd1.delete();
+		vd2.delete();
+	}
+
 }
@@ -0,0 +1,112 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import core.*;
+
+public class OverlayFileSystemTest {
+
+	@Test
+	public void testCopyUpAndWhiteouts() {
+		// creating a lower virtual disk of 1 MB and an empty upper one
+		VirtualFileSystem lower = new VirtualFileSystem(1024*1024);
+		lower.createDirectory("A");
+		lower.createDirectory("A/B");
+		File f = lower.createFile("A/1.a",3*1024);	// 3 KB
+		lower.createFile("A/B/2.a",10);
+		VirtualFileSystem upper = new VirtualFileSystem(1024*1024);
+		String lowerTree = lower.getTree();
+		OverlayFileSystem overlay = new OverlayFileSystem(lower, upper);
+
+		// the lower content is visible without being copied
+		assertSame(f,overlay.get("/A/1.a"));
+		assertTrue(overlay.isLower("A/B"));
+		assertEquals(0,upper.getOccupiedSpace());
+
+		// new VNodes are created in the upper virtual disk with their parents
+		overlay.createFile("A/B/3.a",10);
+		assertFalse(overlay.isLower("A/B"));
+		assertTrue(overlay.isLower("A/B/2.a"));
+		assertEquals("[2.a, 3.a]",names(overlay.list("A/B")));
+
+		// a lower file is copied up with its data
+		VNode copy = overlay.copyUp("A/1.a");
+		assertSame(upper,copy.getVirtualDisk());
+		assertEquals(3*1024,copy.getSize());
+		assertSame(copy,overlay.get("A/1.a"));
+
+		// removing lower VNodes leaves whiteouts
+		overlay.remove("A/B/2.a");
+		overlay.remove("A/1.a");
+		assertFalse(overlay.exists("A/1.a"));
+		assertEquals("[3.a]",names(overlay.list("A/B")));
+		assertEquals("[B]",names(overlay.list("A")));
+
+		// a directory created over a removed one hides its lower content
+		overlay.remove("A");
+		assertFalse(overlay.exists("A/B"));
+		overlay.createDirectory("A");
+		assertTrue(overlay.list("A").isEmpty());
+
+		// moving a lower directory copies its content up
+		overlay.createDirectory("C");
+		overlay.move("C", "D");
+		assertEquals("[A, D]",names(overlay.list("/")));
+
+		// the lower virtual disk is unchanged and the view is kept when the upper one is loaded again
+		assertEquals(lowerTree,lower.getTree());
+		overlay.save();
+		OverlayFileSystem loaded = new OverlayFileSystem(lower, new VirtualFileSystem(upper.name));
+		assertEquals("[A, D]",names(loaded.list("/")));
+		assertTrue(loaded.list("A").isEmpty());
+
+		// deleting virtual disks
+		lower.delete();
+		upper.delete();
+	}
+
+	@Test
+	public void testMoveLowerTree() {
+		// creating a lower virtual disk of 1 MB and an empty upper one
+		VirtualFileSystem lower = new VirtualFileSystem(1024*1024);
+		lower.createDirectory("A");
+		lower.createDirectory("A/B");
+		lower.createFile("A/B/1.a",2000);
+		VirtualFileSystem upper = new VirtualFileSystem(1024*1024);
+		OverlayFileSystem overlay = new OverlayFileSystem(lower, upper);
+
+		// the whole sub-tree is copied up and the old path is hidden
+		overlay.move("A", "C");
+		assertFalse(overlay.exists("A"));
+		assertFalse(overlay.isLower("C/B/1.a"));
+		assertEquals(2000,overlay.get("C/B/1.a").getSize());
+		assertTrue(lower.rootDirectory.contains("A"));
+		try{
+			overlay.move("C", "C/B/D");
+			fail("a directory cannot be moved inside itself");
+		} catch (exceptions.VFSOperationFailException e){}
+		try{
+			overlay.createFile(".wh.A", 10);
+			fail("the whiteout names are reserved");
+		} catch (exceptions.VFSOperationFailException e){}
+
+		// deleting virtual disks
+		lower.delete();
+		upper.delete();
+	}
+
+	/**
+	 * returns the names of VNodes
+	 * @param nodes list of VNodes
+	 * @return the names as a string
+	 */
+	private static String names(java.util.List<VNode> nodes){
+		java.util.List<String> names = new java.util.ArrayList<String>();
+		for(VNode node : nodes)
+			names.add(node.getName());
+		return names.toString();
+	}
+
+}
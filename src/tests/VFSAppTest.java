@@ -49,6 +49,38 @@ public class VFSAppTest {
 		vd1.delete();
 	}
 
+	@Test
+	public void testListPages() {
+		// creating a virtual disk of 1 MB
+		VirtualFileSystem vd1 = new VirtualFileSystem("testListPages",1024*1024);
+		
+		// adding files
+		vd1.createFile("b", 30);
+		vd1.createFile("c", 5);
+		vd1.createFile("a", 200);
+		
+		vd1.save();
+
+		// creating the VFSApp
+		VFSApp vfsApp = new VFSApp();
+		
+		// sorting
+		assertEquals("a   f\nb   f\nc   f\n",vfsApp.list("testListPages", "-n", "/"));
+		assertEquals("a   200   f\nb   30    f\nc   5     f\n",vfsApp.list("testListPages", "-lS", "/"));
+		
+		// pages keep the columns widths of the whole directory
+		StringBuilder out = new StringBuilder();
+		int next = vfsApp.list("testListPages", "-lS", "/", 0, 2, out);
+		assertEquals(2,next);
+		assertEquals("a   200   f\nb   30    f\n",out.toString());
+		out = new StringBuilder();
+		assertEquals(-1,vfsApp.list("testListPages", "-lS", "/", next, 2, out));
+		assertEquals("c   5     f\n",out.toString());
+
+		// deleting virtual disks
+		vd1.delete();
+	}
+
 	@Test
 	public void testChangeDir() {
 		// creating a virtual disk of 1 MB
@@ -227,6 +259,75 @@ public class VFSAppTest {
 		vd1.delete();
 	}
 
+	@Test
+	public void testOverwriteOnFullDisk() {
+		// creating a virtual disk of 64 KB
+		VFSApp vfsApp = new VFSApp();
+		vfsApp.createVFS("testOverwriteOnFullDisk", 64*1024L);
+		VirtualFileSystem vd1 = vfsApp.getVFSByName("testOverwriteOnFullDisk");
+		vfsApp.makeDir("testOverwriteOnFullDisk", "A");
+		
+		// the two files fill more than half of the disk: there's no space for a third one
+		long size = vd1.getFreeSpace()/VirtualFileSystem.DataSizeInBlock*4/10*VirtualFileSystem.DataSizeInBlock;
+		vfsApp.makeFile("testOverwriteOnFullDisk", "file", ""+size);
+		vfsApp.makeFile("testOverwriteOnFullDisk", "A/file", ""+(size-1));
+		long freeSpace = vd1.getFreeSpace();
+		assertTrue(size>freeSpace);
+		
+		// the overwritten file releases its space for the copy
+		vfsApp.copyAndOverwrite("testOverwriteOnFullDisk", "file", "A");
+		assertEquals(size,vd1.get("/A/file").getSize());
+		assertEquals(freeSpace,vd1.getFreeSpace());
+		
+		// the space of the overwritten file and the free space are not enough: nothing is removed
+		vfsApp.makeDir("testOverwriteOnFullDisk", "B");
+		vfsApp.makeFile("testOverwriteOnFullDisk", "B/file", "1000");
+		try{
+			vfsApp.copyAndOverwrite("testOverwriteOnFullDisk", "file", "B");
+			fail("there's no space left");
+		} catch (exceptions.NoFreeSpaceLeftException e){}
+		assertEquals(1000,vd1.get("/B/file").getSize());
+		
+		// the move only relinks the file
+		vfsApp.moveAndOverwrite("testOverwriteOnFullDisk", "file", "A");
+		assertEquals("A   d\nB   d\n",vfsApp.list("testOverwriteOnFullDisk", "", ""));
+		assertEquals(size,vd1.get("/A/file").getSize());
+		
+		// removing vfs
+		vfsApp.removeVFS("testOverwriteOnFullDisk");
+	}
+
+	@Test
+	public void testOverwriteOnOtherDisk() {
+		// creating virtual disks of 64 KB, the second one is mounted on the first one
+		VFSApp vfsApp = new VFSApp();
+		vfsApp.createVFS("testOverwriteOnOtherDisk1", 64*1024L);
+		vfsApp.createVFS("testOverwriteOnOtherDisk2", 64*1024L);
+		vfsApp.makeDir("testOverwriteOnOtherDisk1", "mnt");
+		vfsApp.mount("testOverwriteOnOtherDisk1", "mnt", "testOverwriteOnOtherDisk2");
+		vfsApp.makeFile("testOverwriteOnOtherDisk1", "file", "2000");
+		vfsApp.makeFile("testOverwriteOnOtherDisk1", "mnt/file", "3000");
+		
+		// copying and overwriting to the mounted virtual disk
+		vfsApp.copyAndOverwrite("testOverwriteOnOtherDisk1", "file", "mnt");
+		assertEquals("file   2000   f\n",vfsApp.list("testOverwriteOnOtherDisk2", "-l", "/"));
+		
+		// moving and overwriting to the mounted virtual disk
+		vfsApp.makeFile("testOverwriteOnOtherDisk1", "mnt/dir", "0");
+		vfsApp.makeDir("testOverwriteOnOtherDisk1", "dir");
+		vfsApp.makeFile("testOverwriteOnOtherDisk1", "dir/a", "1500");
+		vfsApp.moveAndOverwrite("testOverwriteOnOtherDisk1", "dir", "mnt");
+		vfsApp.moveAndOverwrite("testOverwriteOnOtherDisk1", "file", "mnt");
+		assertEquals("mnt   d\n",vfsApp.list("testOverwriteOnOtherDisk1", "", "/"));
+		assertEquals("dir    1500   d\nfile   2000   f\n",vfsApp.list("testOverwriteOnOtherDisk2", "-l", "/"));
+		assertEquals("a   1500   f\n",vfsApp.list("testOverwriteOnOtherDisk1", "-l", "mnt/dir"));
+		
+		// removing vfs
+		vfsApp.unmount("testOverwriteOnOtherDisk1", "mnt");
+		vfsApp.removeVFS("testOverwriteOnOtherDisk1");
+		vfsApp.removeVFS("testOverwriteOnOtherDisk2");
+	}
+
 	@Test
 	public void testRemove() {
 		// creating a virtual disk of 1 MB
@@ -324,8 +425,13 @@ public class VFSAppTest {
 		// exporting virtualdisk
 		
 		VFSApp vfsApp = new VFSApp();
+		VirtualFileSystem exported = vfsApp.getVFSByName("testExportVFS");
+		long generation = exported.getPathCache().getGeneration();
 		vfsApp.exportVFS("testExportVFS", System.getProperty("user.dir"));
 		
+		// the root directory is not renamed
+		assertEquals(generation,exported.getPathCache().getGeneration());
+		assertEquals("",exported.rootDirectory.getName());
 		assertTrue((new java.io.File("testExportVFS"+VirtualFileSystem.HFSSeparator+"C")).exists() && (new java.io.File("testExportVFS"+VirtualFileSystem.HFSSeparator+"C")).isDirectory());
 		
 		// deleting virtual disk
@@ -390,4 +496,295 @@ public class VFSAppTest {
 		vfsApp.removeVFS("testGetPrompt");	
 	}
 
+	@Test
+	public void testSessions() {
+		// creating a virtual disk of 1 MB
+		VirtualFileSystem vd1 = new VirtualFileSystem("testSessions",1024*1024L);
+		vd1.createDirectory("A");
+		vd1.createDirectory("B");
+		vd1.save();
+		
+		// creating the VFSApp and two sessions
+		VFSApp vfsApp = new VFSApp();
+		VFSApp session1 = vfsApp.openSession();
+		VFSApp session2 = vfsApp.openSession();
+		VirtualFileSystem vfs = vfsApp.getVFSByName("testSessions");
+		assertSame(vfs, session1.getVFSByName("testSessions"));
+		
+		// each session has its own working directory
+		session1.changeDir("testSessions", "A");
+		session2.changeDir("testSessions", "B");
+		session1.makeFile("testSessions", "f", "10");
+		session2.makeDir("testSessions", "C");
+		assertEquals("testSessions:/A/f", session1.find("testSessions", "f").trim());
+		assertEquals("testSessions:/B/C/", session2.getWorkingDirectory(vfs).get("C").getAbsolutePathName());
+		assertEquals(vfs.rootDirectory, vfs.getWorkingDirectory());
+		assertEquals("", session2.list("testSessions", "", "").replace("C   d\n", ""));
+		
+		// a removed working directory falls back to the root directory
+		session2.remove("testSessions", "testSessions:/A");
+		assertEquals(vfs.rootDirectory, session1.getWorkingDirectory(vfs));
+		
+		// virtual file systems created by a session are shared
+		session1.createVFS("testSessions2", 1024*1024L);
+		assertNotNull(session2.getVFSByName("testSessions2"));
+		
+		// deleting virtual disks
+		vfsApp.removeVFS("testSessions2");
+		vd1.delete();
+	}
+
+	@Test
+	public void testBatch() {
+		// creating a virtual disk of 1 MB
+		VirtualFileSystem vd1 = new VirtualFileSystem("testBatch",1024*1024L);
+		vd1.save();
+		
+		// the statistics are updated when the batch ends
+		final VFSApp vfsApp = new VFSApp();
+		final VirtualFileSystem vfs = vfsApp.getVFSByName("testBatch");
+		vfsApp.batch(new Runnable(){
+			public void run(){
+				vfsApp.makeDir("testBatch", "A");
+				vfsApp.makeFile("testBatch", "A/f", "10");
+				assertTrue(vfs.isBatching());
+				assertEquals(0, vfs.rootDirectory.getSize());
+			}
+		});
+		assertFalse(vfs.isBatching());
+		assertEquals(10, vfs.rootDirectory.getSize());
+		assertEquals(1, vfs.rootDirectory.getFileCount());
+		
+		// deleting virtual disks
+		vd1.delete();
+	}
+
+	@Test
+	public void testAsync() throws Exception {
+		// creating the VFSApp
+		VFSApp vfsApp = new VFSApp();
+		
+		// creating new virtual file system of 2 MB
+		vfsApp.createVFS("testAsync", 2*1024*1024L);
+		
+		// the operations run when the test runs the tasks submitted
+		final java.util.List<Runnable> tasks = new java.util.ArrayList<Runnable>();
+		VFSAppAsync async = new VFSAppAsync(vfsApp, new java.util.concurrent.Executor(){
+			public void execute(Runnable task){
+				tasks.add(task);
+			}
+		});
+		
+		// importing test folder with a progress listener
+		final java.util.concurrent.atomic.AtomicLong imported = new java.util.concurrent.atomic.AtomicLong();
+		java.util.concurrent.CompletableFuture<Void> importing = async.importToVFS("test", "testAsync", "/", new ProgressListener(){
+			public void progress(long done, long total){
+				imported.set(done);
+				assertEquals(792994, total);
+			}
+		});
+		assertFalse(importing.isDone());
+		tasks.remove(0).run();
+		importing.get();
+		assertEquals(792994, imported.get());
+		
+		// finding the imported files
+		java.util.concurrent.CompletableFuture<java.util.List<String>> finding = async.find("testAsync", "", "test.txt", 0);
+		tasks.remove(0).run();
+		assertEquals(java.util.Arrays.asList("testAsync:/test/A/A2/test.txt", "testAsync:/test/B/B3/test.txt"), finding.get());
+		
+		// an operation canceled before it starts is not run
+		java.util.concurrent.CompletableFuture<Void> removing = async.remove("testAsync", "test");
+		removing.cancel(false);
+		tasks.remove(0).run();
+		assertEquals("test   792994   d\n",vfsApp.list("testAsync","-l",""));
+		
+		// an import canceled while it runs is rolled back
+		vfsApp.makeDir("testAsync", "B");
+		final java.util.List<java.util.concurrent.CompletableFuture<Void>> canceling = new java.util.ArrayList<java.util.concurrent.CompletableFuture<Void>>();
+		canceling.add(async.importToVFS("test", "testAsync", "B", new ProgressListener(){
+			public void progress(long done, long total){
+				canceling.get(0).cancel(false);
+			}
+		}));
+		tasks.remove(0).run();
+		assertTrue(canceling.get(0).isCancelled());
+		assertEquals("",vfsApp.list("testAsync","","B"));
+		
+		// an unknown virtual file system fails the future without submitting the operation
+		assertTrue(async.copy("testAsyncNothing", "test", "/").isCompletedExceptionally());
+		assertTrue(tasks.isEmpty());
+		
+		// removing vfs
+		vfsApp.removeVFS("testAsync");
+	}
+
+	@Test
+	public void testMounting() throws InterruptedException {
+		// creating a virtual disk of 1 MB
+		VirtualFileSystem vd1 = new VirtualFileSystem("testMounting",1024*1024L);
+		vd1.createDirectory("A");
+		vd1.save();
+		
+		// the virtual disk is mounted when it is used
+		VFSApp vfsApp = new VFSApp();
+		assertTrue(vfsApp.getVFSNames().contains("testMounting"));
+		assertFalse(vfsApp.isMounted("testMounting"));
+		vfsApp.makeDir("testMounting", "B");
+		vfsApp.changeDir("testMounting", "A");
+		assertTrue(vfsApp.isMounted("testMounting"));
+		
+		// a virtual disk that is not used is saved and unmounted
+		vfsApp.setIdleTimeout(20);
+		for(int i=0;i<100 && vfsApp.isMounted("testMounting");i++)
+			Thread.sleep(20);
+		vfsApp.setIdleTimeout(0);
+		assertFalse(vfsApp.isMounted("testMounting"));
+		assertEquals("A   d\nB   d\n",vfsApp.list("testMounting", "", "/"));
+		assertEquals("testMounting:/A/",vfsApp.getWorkingDirectory(vfsApp.getVFSByName("testMounting")).getAbsolutePathName());
+		
+		// deleting virtual disks
+		vd1.delete();
+	}
+
+	@Test
+	public void testParallelMounting() {
+		// creating virtual disks of 64 KB
+		VirtualFileSystem[] disks = new VirtualFileSystem[4];
+		for(int i=0;i<disks.length;i++)
+			disks[i] = new VirtualFileSystem("testParallelMounting"+i,64*1024L);
+		
+		// the virtual disks are loaded in parallel, in the order of their names
+		VFSApp vfsApp = new VFSApp();
+		java.util.List<VirtualFileSystem> all = vfsApp.getVFSDataBase();
+		java.util.List<String> names = vfsApp.getVFSNames();
+		assertEquals(names.size(),all.size());
+		assertTrue(names.indexOf("testParallelMounting0")<names.indexOf("testParallelMounting3"));
+		java.util.Set<Integer> ids = new java.util.HashSet<Integer>();
+		for(int i=0;i<all.size();i++){
+			assertEquals(names.get(i),all.get(i).name);
+			assertSame(all.get(i),vfsApp.getVFSByName(names.get(i)));
+			assertTrue(ids.add(all.get(i).id));
+		}
+		
+		// deleting virtual disks
+		for(VirtualFileSystem vd : disks)
+			vd.delete();
+	}
+
+	@Test
+	public void testDiskRegistry() {
+		// creating a virtual disk of 64 KB
+		VirtualFileSystem vd1 = new VirtualFileSystem("testDiskRegistry1",64*1024L);
+		vd1.createDirectory("A");
+		vd1.save();
+		
+		// listening to the virtual disks mounted and unmounted
+		VFSApp vfsApp = new VFSApp();
+		final java.util.List<String> events = new java.util.ArrayList<String>();
+		vfsApp.addMountListener(new MountListener(){
+			@Override
+			public void mounted(VirtualFileSystem vfs){
+				events.add("+"+vfs.name);
+			}
+			@Override
+			public void unmounted(String vfsName){
+				events.add("-"+vfsName);
+			}
+		});
+		
+		// an absolute path name is resolved on its own virtual disk
+		vfsApp.createVFS("testDiskRegistry2", 64*1024L);
+		assertEquals("[+testDiskRegistry2]",events.toString());
+		VNode a = vfsApp.get("testDiskRegistry1:/A");
+		assertEquals("testDiskRegistry1:/A/",a.getAbsolutePathName());
+		assertEquals("[+testDiskRegistry2, +testDiskRegistry1]",events.toString());
+		assertEquals("A   d\n",vfsApp.list("testDiskRegistry2", "", "testDiskRegistry1:/"));
+		try{
+			vfsApp.get("testDiskRegistryNothing:/A");
+			fail("the virtual disk does not exist");
+		} catch (exceptions.NoSuchVirtualFileSystemException e){}
+		
+		// a name is registered once
+		try{
+			vfsApp.createVFS("testDiskRegistry2", 64*1024L);
+			fail("the virtual disk already exists");
+		} catch (exceptions.NameAlreadyExistsException e){}
+		
+		// removing vfs
+		vfsApp.removeVFS("testDiskRegistry2");
+		assertEquals("[+testDiskRegistry2, +testDiskRegistry1, -testDiskRegistry2]",events.toString());
+		assertFalse(vfsApp.getVFSNames().contains("testDiskRegistry2"));
+		
+		// deleting virtual disks
+		vd1.delete();
+	}
+
+	@Test
+	public void testMountPoints() {
+		// creating virtual disks of 64 KB
+		VFSApp vfsApp = new VFSApp();
+		vfsApp.createVFS("testMountPoints1", 64*1024L);
+		vfsApp.createVFS("testMountPoints2", 64*1024L);
+		vfsApp.makeDir("testMountPoints1", "mnt");
+		vfsApp.makeFile("testMountPoints1", "f", "10");
+		
+		// the directory leads to the mounted virtual disk
+		vfsApp.mount("testMountPoints1", "mnt", "testMountPoints2");
+		assertEquals("testMountPoints2 on testMountPoints1:/mnt/\n",vfsApp.listMounts());
+		vfsApp.makeDir("testMountPoints1", "mnt/A");
+		assertEquals("A   d\n",vfsApp.list("testMountPoints2", "", "/"));
+		vfsApp.move("testMountPoints1", "f", "mnt/A/g");
+		assertEquals("g   f\n",vfsApp.list("testMountPoints1", "", "testMountPoints1:/mnt/A"));
+		
+		// a session can work on the mounted virtual disk
+		VFSApp session = vfsApp.openSession();
+		session.changeDir("testMountPoints1", "mnt/A");
+		assertEquals("testMountPoints2:/A/",session.getWorkingDirectory(session.getVFSByName("testMountPoints1")).getAbsolutePathName());
+		session.makeFile("testMountPoints1", "h", "10");
+		session.changeDir("testMountPoints1", "../..");
+		assertEquals("testMountPoints1:/",session.getWorkingDirectory(session.getVFSByName("testMountPoints1")).getAbsolutePathName());
+		assertEquals(20,vfsApp.getVFSByName("testMountPoints2").rootDirectory.getSize());
+		
+		// a mounted virtual disk cannot be removed
+		try{
+			vfsApp.removeVFS("testMountPoints2");
+			fail("the virtual disk is mounted");
+		} catch (exceptions.VFSOperationFailException e){}
+		
+		// removing vfs
+		vfsApp.unmount("testMountPoints1", "mnt");
+		assertEquals("",vfsApp.listMounts());
+		vfsApp.removeVFS("testMountPoints1");
+		vfsApp.removeVFS("testMountPoints2");
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		// creating a virtual disk of 64 KB
+		VFSApp vfsApp = new VFSApp();
+		javax.management.ObjectName appName = vfsApp.registerMBeans();
+		vfsApp.createVFS("testMetrics", 64*1024L);
+		javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+		javax.management.ObjectName diskName = new javax.management.ObjectName("core:type=VirtualFileSystem,app="
+				+appName.getKeyProperty("name")+",name="+javax.management.ObjectName.quote("testMetrics"));
+		assertTrue(server.isRegistered(diskName));
+		
+		// the application counts the operations of all the virtual disks
+		VFSAppMetricsMXBean metrics = vfsApp.getMetrics();
+		long created = metrics.getOperationCounts().get(Metrics.Create);
+		vfsApp.makeDir("testMetrics", "A");
+		vfsApp.makeFile("testMetrics", "A/f", "1000");
+		assertEquals(created+2,(long) metrics.getOperationCounts().get(Metrics.Create));
+		assertEquals((long) VirtualFileSystem.DataSizeInBlock,server.getAttribute(diskName, "OccupiedSpace"));
+		assertEquals(metrics.getDiskCount(),server.getAttribute(appName, "DiskCount"));
+		
+		// the counters of a removed virtual disk are kept
+		vfsApp.removeVFS("testMetrics");
+		assertFalse(server.isRegistered(diskName));
+		assertEquals(created+2,(long) metrics.getOperationCounts().get(Metrics.Create));
+		vfsApp.unregisterMBeans();
+		assertFalse(server.isRegistered(appName));
+	}
+
 }
@@ -119,6 +119,11 @@ public class VirtualFileSystemTest {
 		assertEquals(vd.name+":/A/1.a",vd.get("A/1.a").getAbsolutePathName());
 		assertEquals(vd.name+":/A/A1/",vd.get("A/A1/").getAbsolutePathName());
 		
+		// a file can take all the free space left
+		long freeSpace = vd.getFreeSpace()/VirtualFileSystem.DataSizeInBlock*VirtualFileSystem.DataSizeInBlock;
+		vd.createFile("/3.r",freeSpace);
+		assertEquals(freeSpace,vd.get("/3.r").getSize());
+		
 		// deleting virtual disk
 		vd.delete();
 	}
@@ -178,4 +183,798 @@ public class VirtualFileSystemTest {
 		vd.delete();
 	}
 
+	@Test
+	public void testSnapshot(){
+		// creating a virtual disk of 1 MB
+		VirtualFileSystem vd = new VirtualFileSystem(1024*1024);
+		
+		// creating content
+		vd.createDirectory("A");
+		File f = vd.createFile("A/1.a",3*1024);	// 3 KB
+		long occupied = vd.getOccupiedSpace();
+		
+		// taking a snapshot
+		vd.createSnapshot("s1");
+		assertEquals(occupied,vd.getOccupiedSpace());
+		
+		// removing the file: its blocks are still refered by the snapshot
+		f.remove();
+		assertFalse(vd.isFreeBlock(f.getFirstBlockPosition()));
+		assertEquals(occupied,vd.getOccupiedSpace());
+		
+		// new files do not overwrite the snapshot's blocks
+		File g = vd.createFile("A/2.a",1000);
+		assertTrue(g.getFirstBlockPosition()!=f.getFirstBlockPosition());
+		
+		// restoring the snapshot
+		vd.restoreSnapshot("s1");
+		assertEquals(vd.name+":/A/1.a",vd.get("A/1.a").getAbsolutePathName());
+		assertEquals(3*1024,vd.get("A").getSize());
+		assertEquals(occupied,vd.getOccupiedSpace());
+		
+		// deleting the snapshot keeps the restored blocks occupied
+		vd.deleteSnapshot("s1");
+		assertFalse(vd.isFreeBlock(f.getFirstBlockPosition()));
+		assertTrue(vd.isFreeBlock(g.getFirstBlockPosition()));
+		assertEquals(occupied,vd.getOccupiedSpace());
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
+	@Test
+	public void testSnapshotAppend() throws Exception {
+		// creating a virtual disk of 1 MB, the files are stored in data blocks
+		VirtualFileSystem vd = new VirtualFileSystem(1024*1024);
+		vd.setInlineThreshold(0);
+		File f = vd.createFile("f",0);
+		f.append(repeat('A',100));
+		vd.createSnapshot("s1");
+		f.append(repeat('B',50));
+		vd.createSnapshot("s2");
+		
+		// appending to the restored file does not change the blocks of the other snapshot
+		vd.restoreSnapshot("s1");
+		((File) vd.get("f")).append(repeat('Z',50));
+		vd.restoreSnapshot("s2");
+		File restored = (File) vd.get("f");
+		assertEquals(150,restored.getSize());
+		restored.exportToHostFileSystem("test");
+		java.io.File exported = new java.io.File("test"+VirtualFileSystem.HFSSeparator+"f");
+		byte[] data = java.nio.file.Files.readAllBytes(exported.toPath());
+		exported.delete();
+		byte[] expected = new byte[150];
+		System.arraycopy(repeat('A',100), 0, expected, 0, 100);
+		System.arraycopy(repeat('B',50), 0, expected, 100, 50);
+		assertArrayEquals(expected,data);
+		
+		// the blocks of a file spanning several blocks are copied too
+		restored.append(repeat('C',2*VirtualFileSystem.DataSizeInBlock));
+		vd.createSnapshot("s3");
+		long firstBlock = restored.getFirstBlockPosition();
+		restored.append(repeat('D',10));
+		assertTrue(restored.getFirstBlockPosition()!=firstBlock);
+		vd.restoreSnapshot("s3");
+		assertEquals(150+2*VirtualFileSystem.DataSizeInBlock,vd.get("f").getSize());
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
+	@Test
+	public void testSnapshotChanges(){
+		// creating a virtual disk of 1 MB with a tree of 100 files
+		VirtualFileSystem vd = new VirtualFileSystem(1024*1024);
+		for(int i=0;i<10;i++){
+			vd.createDirectory("D"+i);
+			for(int j=0;j<10;j++)
+				vd.createFile("D"+i+"/"+j+".f",2000);
+		}
+		long occupied = vd.getOccupiedSpace();
+		
+		// taking a snapshot keeps nothing until the tree is changed
+		Snapshot s1 = vd.createSnapshot("s1");
+		assertEquals(0,s1.getKeptStates());
+		vd.get("D0/0.f").rename("renamed.f");
+		vd.get("D1").remove();
+		vd.createFile("D2/new.f",2000);
+		assertEquals(14,s1.getKeptStates());
+		assertEquals(occupied+2*VirtualFileSystem.DataSizeInBlock,vd.getOccupiedSpace());
+		
+		// the changes after the second snapshot are kept by it only
+		Snapshot s2 = vd.createSnapshot("s2");
+		vd.get("D0/renamed.f").remove();
+		vd.get("D2").rename("E2");
+		assertEquals(14,s1.getKeptStates());
+		assertEquals(3,s2.getKeptStates());
+		
+		// the first snapshot sees the state kept by the second one for the VNodes changed after it
+		vd.deleteSnapshot("s2");
+		assertEquals(15,s1.getKeptStates());
+		vd.restoreSnapshot("s1");
+		assertEquals(vd.name+":/D0/0.f",vd.get("D0/0.f").getAbsolutePathName());
+		assertEquals(10,((Directory) vd.get("D1")).getContent().size());
+		assertEquals(10,((Directory) vd.get("D2")).getContent().size());
+		assertEquals(100,((Directory) vd.get("/")).getFileCount());
+		assertEquals(occupied,vd.getOccupiedSpace());
+		
+		// the snapshot is saved with the virtual disk
+		vd.get("D3").remove();
+		vd.save();
+		VirtualFileSystem loaded = new VirtualFileSystem(vd.name);
+		loaded.restoreSnapshot("s1");
+		assertEquals(10,((Directory) loaded.get("D3")).getContent().size());
+		assertEquals(occupied,loaded.getOccupiedSpace());
+		
+		// deleting the snapshot releases the blocks of the files removed
+		loaded.get("D4").remove();
+		loaded.deleteSnapshot("s1");
+		assertEquals(occupied-10*2*VirtualFileSystem.DataSizeInBlock,loaded.getOccupiedSpace());
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+	
+	/**
+	 * returns an array of bytes all equal
+	 * @param b the byte
+	 * @param count the length of the array
+	 * @return the array
+	 */
+	private static byte[] repeat(char b, int count){
+		byte[] bytes = new byte[count];
+		java.util.Arrays.fill(bytes, (byte) b);
+		return bytes;
+	}
+
+	@Test
+	public void testInodes(){
+		// creating a virtual disk of 1 MB
+		VirtualFileSystem vd = new VirtualFileSystem(1024*1024);
+		String name = vd.name;
+		
+		// creating content
+		Directory A = vd.createDirectory("A");
+		Directory B = vd.createDirectory("B");
+		File f = vd.createFile("A/1.a",10);
+		
+		assertEquals(4,vd.getNodeCount());
+		assertEquals(f,vd.getNode(f.getInode()));
+		
+		// inode numbers are kept when moving and renaming
+		long inode = f.getInode();
+		f.move(B);
+		f.rename("1.b");
+		assertEquals(inode,f.getInode());
+		assertEquals(f,vd.getNode(inode));
+		
+		// and when saving and loading the virtual disk
+		vd.save();
+		VirtualFileSystem loaded = new VirtualFileSystem(name);
+		assertEquals(f,loaded.get("B/1.b"));
+		assertEquals(loaded.get("B/1.b"),loaded.getNode(inode));
+		
+		// removed VNodes leave the table
+		A.remove();
+		assertEquals(3,vd.getNodeCount());
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
+	@Test
+	public void testBatch(){
+		// creating a virtual disk of 1 MB
+		final VirtualFileSystem vd = new VirtualFileSystem(1024*1024);
+		
+		// creating directories
+		final Directory A = vd.createDirectory("A");
+		vd.createDirectory("A/B");
+		vd.createDirectory("A/B/C");
+		
+		// creating files in a batch
+		vd.batch(new Runnable(){
+			public void run(){
+				for(int i=0;i<10;i++){
+					vd.createFile("A/B/C/"+i, 100);
+					vd.createFile("A/"+i, 10);
+				}
+				assertTrue(vd.isBatching());
+			}
+		});
+		
+		assertFalse(vd.isBatching());
+		assertEquals(1100,A.getSize());
+		assertEquals(1000,vd.get("A/B").getSize());
+		assertEquals(1000,vd.get("A/B/C").getSize());
+		
+		// removing a directory updates its parents
+		vd.get("A/B").remove();
+		assertEquals(100,A.getSize());
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
+	@Test
+	public void testFind(){
+		// creating a virtual disk of 1 MB
+		VirtualFileSystem vd = new VirtualFileSystem(1024*1024);
+		String name = vd.name;
+		
+		// creating content
+		Directory A = vd.createDirectory("A");
+		vd.createDirectory("B");
+		File f1 = vd.createFile("B/file",10);
+		File f2 = vd.createFile("A/file",10);
+		File f3 = vd.createFile("A/other",10);
+		
+		// results are sorted by absolute path name
+		assertEquals(2,vd.find("file").size());
+		assertEquals(f2,vd.find("file").get(0));
+		assertEquals(f1,vd.find("file").get(1));
+		
+		// searching from a directory
+		assertEquals(1,A.find("file").size());
+		
+		// the index follows renames, moves and removals
+		f3.rename("file2");
+		f1.rename("file2");
+		assertEquals(0,vd.find("other").size());
+		assertEquals(2,vd.find("file2").size());
+		f2.move((Directory) vd.get("B"));
+		assertEquals(0,A.find("file").size());
+		assertEquals(1,vd.find("file").size());
+		f2.remove();
+		assertEquals(0,vd.find("file").size());
+		
+		// the index is saved with the virtual disk
+		vd.save();
+		VirtualFileSystem loaded = new VirtualFileSystem(name);
+		assertEquals(2,loaded.find("file2").size());
+		assertEquals(loaded.get("A/file2"),loaded.find("file2").get(0));
+		assertEquals(loaded.get("B/file2"),loaded.find("file2").get(1));
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
+	@Test
+	public void testFindPattern(){
+		// creating a virtual disk of 1 MB
+		VirtualFileSystem vd = new VirtualFileSystem(1024*1024);
+		
+		// creating content
+		vd.createDirectory("docs");
+		vd.createFile("docs/report.txt",10);
+		vd.createFile("docs/notes.txt",10);
+		vd.createFile("docs/report.pdf",10);
+		vd.createFile("readme",10);
+		
+		final java.util.List<String> found = new java.util.ArrayList<String>();
+		java.util.function.Consumer<VNode> collect = new java.util.function.Consumer<VNode>(){
+			@Override
+			public void accept(VNode node){
+				found.add(node.getName());
+			}
+		};
+		
+		// substring, glob and regex patterns
+		assertEquals(2,vd.find(new NamePattern("report", NamePattern.Substring), null, 0, collect));
+		assertEquals(2,vd.find(new NamePattern("*.txt", NamePattern.Glob), "file", 0, collect));
+		assertEquals(1,vd.find(new NamePattern("re?dme", NamePattern.Glob), null, 0, collect));
+		assertEquals(3,vd.find(new NamePattern("[a-z]+\\.(txt|pdf)", NamePattern.Regex), null, 0, collect));
+		assertEquals(1,vd.find(new NamePattern("do.s", NamePattern.Regex), null, 0, collect));
+		assertEquals(0,vd.find(new NamePattern("*.doc", NamePattern.Glob), null, 0, collect));
+		
+		// results are sorted and limited
+		found.clear();
+		assertEquals(2,vd.find(new NamePattern("*", NamePattern.Glob), "file", 2, collect));
+		assertEquals("notes.txt",found.get(0));
+		assertEquals("report.pdf",found.get(1));
+		
+		// the trigram index follows renames
+		vd.get("readme").rename("changelog");
+		assertEquals(0,vd.find(new NamePattern("read", NamePattern.Substring), null, 0, collect));
+		assertEquals(1,vd.find(new NamePattern("log", NamePattern.Substring), null, 0, collect));
+		
+		// literals of patterns
+		assertEquals("[ab, d]",new NamePattern("ab+c?d", NamePattern.Regex).getLiterals().toString());
+		assertEquals("[]",new NamePattern("a|b", NamePattern.Regex).getLiterals().toString());
+		assertEquals("[report, .txt]",new NamePattern("report*.txt", NamePattern.Glob).getLiterals().toString());
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
+	@Test
+	public void testWalk(){
+		// creating a virtual disk of 1 MB
+		VirtualFileSystem vd = new VirtualFileSystem(1024*1024);
+		
+		// creating content
+		vd.createDirectory("A");
+		vd.createDirectory("A/B");
+		vd.createDirectory("A/B/C");
+		vd.createFile("A/f1",10);
+		vd.createFile("A/B/f2",10);
+		vd.createDirectory("D");
+		
+		// depth-first pre-order
+		java.util.Iterator<VNode> it = VirtualFileSystem.walk(vd.rootDirectory).iterator();
+		assertSame(vd.rootDirectory,it.next());
+		assertSame(vd.get("A"),it.next());
+		assertSame(vd.get("A/B"),it.next());
+		assertSame(vd.get("A/B/C"),it.next());
+		assertSame(vd.get("A/B/f2"),it.next());
+		assertSame(vd.get("A/f1"),it.next());
+		assertSame(vd.get("D"),it.next());
+		assertFalse(it.hasNext());
+		
+		// options
+		assertEquals(3,VirtualFileSystem.walk(vd.rootDirectory, new WalkOptions().maxDepth(1)).count());
+		assertEquals(2,VirtualFileSystem.walk(vd.rootDirectory, new WalkOptions().maxDepth(1).includeRoot(false)).count());
+		assertEquals(5,VirtualFileSystem.walk(vd.get("A")).count());
+		
+		// parallel traversal visits every VNode once
+		for(int i=0;i<20;i++)
+			vd.createFile("D/f"+i,1);
+		assertEquals((long) vd.getNodeCount(),VirtualFileSystem.walk(vd.rootDirectory).parallel().count());
+		assertEquals((long) vd.getNodeCount(),VirtualFileSystem.walk(vd.rootDirectory).parallel().distinct().count());
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
+	@Test
+	public void testPrintTree(){
+		// creating a virtual disk of 1 MB
+		VirtualFileSystem vd = new VirtualFileSystem(1024*1024);
+		
+		// creating content
+		vd.createDirectory("A");
+		vd.createDirectory("A/B");
+		vd.createFile("A/B/f1",10);
+		vd.createFile("f2",10);
+		
+		String name = vd.name;
+		assertEquals(name+":\n  A/\n    B/\n      f1\n  f2\n",vd.getTree());
+		assertEquals("    B/\n      f1\n",vd.get("A/B").printAllContent());
+		
+		// limits
+		StringBuilder out = new StringBuilder();
+		assertEquals(3,vd.printTree(out, 1, 0));
+		assertEquals(name+":\n  A/\n  f2\n",out.toString());
+		out = new StringBuilder();
+		assertEquals(2,vd.printTree(out, WalkOptions.Unlimited, 2));
+		assertEquals(name+":\n  A/\n    ...\n",out.toString());
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
+	@Test
+	public void testStats(){
+		// creating a virtual disk of 1 MB
+		final VirtualFileSystem vd = new VirtualFileSystem(1024*1024);
+		
+		// creating content
+		Directory A = vd.createDirectory("A");
+		vd.createDirectory("A/B");
+		vd.createDirectory("A/B/C");
+		vd.createFile("A/B/C/f1",2000);
+		vd.createFile("A/f2",1000);
+		
+		assertEquals(2,A.getFileCount());
+		assertEquals(2,A.getDirectoryCount());
+		assertEquals(3,A.getBlockCount());
+		assertEquals(3,A.getMaxDepth());
+		assertEquals(3000,vd.rootDirectory.getSize());
+		assertEquals(4,vd.rootDirectory.getMaxDepth());
+		
+		// moving and removing update the depth
+		vd.get("A/B/C").move(vd.rootDirectory);
+		assertEquals(1,A.getMaxDepth());
+		assertEquals(1,A.getDirectoryCount());
+		assertEquals(2,vd.rootDirectory.getMaxDepth());
+		vd.get("C/f1").remove();
+		assertEquals(2,vd.rootDirectory.getMaxDepth());
+		assertEquals(1,vd.rootDirectory.getFileCount());
+		assertEquals(1,vd.rootDirectory.getBlockCount());
+		
+		// statistics are updated at the end of a batch
+		vd.batch(new Runnable(){
+			public void run(){
+				vd.createDirectory("A/B/D");
+				for(int i=0;i<5;i++)
+					vd.createFile("A/B/D/"+i, 1500);
+			}
+		});
+		assertEquals(6,A.getFileCount());
+		assertEquals(11,A.getBlockCount());
+		assertEquals(3,A.getMaxDepth());
+		assertEquals(4,vd.rootDirectory.getMaxDepth());
+		
+		// du on the saved virtual disk
+		vd.save();
+		VFSApp vfsApp = new VFSApp();
+		StringBuilder out = new StringBuilder();
+		vfsApp.du(vd.name, "A", 1, out);
+		assertTrue(out.toString().contains("files: 6\n"));
+		assertTrue(out.toString().contains("largest:\n    B/"));
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
+	@Test
+	public void testConcurrentOperations() throws InterruptedException{
+		// creating a virtual disk of 1 MB
+		final VirtualFileSystem vd = new VirtualFileSystem(1024*1024);
+		final long freeSpace = vd.getFreeSpace();
+		final int threads = 4;
+		final java.util.List<Throwable> errors = java.util.Collections.synchronizedList(new java.util.ArrayList<Throwable>());
+		
+		// each thread creates and removes files in its own directory, and in a shared one
+		vd.createDirectory("shared");
+		Thread[] workers = new Thread[threads];
+		for(int t=0;t<threads;t++){
+			final int n = t;
+			vd.createDirectory("D"+n);
+			workers[t] = new Thread(new Runnable(){
+				public void run(){
+					try{
+						for(int i=0;i<100;i++){
+							vd.createFile("D"+n+"/"+i, 1500);
+							vd.createFile("shared/"+n+"_"+i, 1000);
+							if(i%2==0){
+								vd.get("D"+n+"/"+i).remove();
+								vd.get("shared/"+n+"_"+i).remove();
+							}
+						}
+					} catch(Throwable e){
+						errors.add(e);
+					}
+				}
+			});
+			workers[t].start();
+		}
+		for(Thread worker : workers)
+			worker.join();
+		
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertEquals(threads*100, vd.rootDirectory.getFileCount());
+		assertEquals(threads*50, ((Directory) vd.get("shared")).getFileCount());
+		assertEquals(threads*(50*2+50), vd.rootDirectory.getBlockCount());
+		assertEquals(freeSpace-vd.rootDirectory.getBlockCount()*VirtualFileSystem.DataSizeInBlock, vd.getFreeSpace());
+		assertEquals(1, vd.find("1_1").size());
+		assertEquals(0, vd.find("1_2").size());
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
+	@Test
+	public void testConcurrentCopies() throws InterruptedException{
+		// creating virtual disks of 1 MB
+		final VirtualFileSystem[] disks = {new VirtualFileSystem(1024*1024), new VirtualFileSystem(1024*1024)};
+		final java.util.List<Throwable> errors = java.util.Collections.synchronizedList(new java.util.ArrayList<Throwable>());
+		for(VirtualFileSystem vd : disks){
+			vd.createDirectory("copies");
+			vd.createDirectory("D");
+			for(int i=0;i<8;i++)
+				vd.createFile("D/"+i, 1500);
+		}
+		
+		// two threads copy and move directories between the virtual disks in opposite directions
+		Thread[] workers = new Thread[2];
+		for(int t=0;t<2;t++){
+			final VirtualFileSystem from = disks[t];
+			final VirtualFileSystem to = disks[1-t];
+			workers[t] = new Thread(new Runnable(){
+				public void run(){
+					try{
+						Directory copies = (Directory) to.get("copies");
+						for(int i=0;i<200;i++){
+							from.get("D").copy(copies);
+							copies.get("D").remove();
+						}
+						from.get("D").move(copies);
+					} catch(Throwable e){
+						errors.add(e);
+					}
+				}
+			});
+			// a deadlock must not block the other tests
+			workers[t].setDaemon(true);
+			workers[t].start();
+		}
+		for(Thread worker : workers){
+			worker.join(20000);
+			assertFalse("the copies wait for each other", worker.isAlive());
+		}
+		
+		assertTrue(errors.toString(), errors.isEmpty());
+		for(VirtualFileSystem vd : disks){
+			assertFalse(vd.rootDirectory.contains("D"));
+			assertEquals(8, ((Directory) vd.get("copies/D")).getFileCount());
+			assertEquals(8, vd.rootDirectory.getFileCount());
+		}
+		
+		// deleting virtual disks
+		disks[0].delete();
+		disks[1].delete();
+	}
+
+	@Test
+	public void testTransaction(){
+		// creating a virtual disk of 1 MB
+		final VirtualFileSystem vd = new VirtualFileSystem(1024*1024);
+		String name = vd.name;
+		
+		// creating content
+		vd.createDirectory("A");
+		final File f = vd.createFile("A/1.a",3*1024);	// 3 KB
+		vd.createFile("A/2.a",10);
+		long occupied = vd.getOccupiedSpace();
+		String tree = vd.getTree();
+		
+		// a failed transaction leaves the virtual disk unchanged
+		try{
+			vd.transaction(new Runnable(){
+				public void run(){
+					vd.get("A").remove();
+					vd.createDirectory("B");
+					vd.createFile("B/3.a",5*1024);
+					vd.get("B").rename("C");
+					assertTrue(vd.isInTransaction());
+					// the blocks of the removed file cannot be reused before the transaction ends
+					assertFalse(vd.isFreeBlock(f.getFirstBlockPosition()));
+					throw new IllegalStateException("failure");
+				}
+			});
+			fail();
+		} catch(IllegalStateException e){
+			assertEquals("failure",e.getMessage());
+		}
+		assertFalse(vd.isInTransaction());
+		assertEquals(tree,vd.getTree());
+		assertSame(f,vd.get("A/1.a"));
+		assertSame(f,vd.getNode(f.getInode()));
+		assertEquals(occupied,vd.getOccupiedSpace());
+		assertEquals(3*1024+10,vd.rootDirectory.getSize());
+		assertEquals(2,vd.rootDirectory.getFileCount());
+		assertEquals(1,vd.find("1.a").size());
+		assertTrue(vd.find("3.a").isEmpty());
+		
+		// a committed transaction releases the blocks and is saved
+		vd.transaction(new Runnable(){
+			public void run(){
+				vd.get("A/1.a").remove();
+				vd.createFile("A/3.a",10);
+			}
+		});
+		assertTrue(vd.isFreeBlock(f.getFirstBlockPosition()));
+		VirtualFileSystem loaded = new VirtualFileSystem(name);
+		assertEquals(name+":/A/3.a",loaded.get("A/3.a").getAbsolutePathName());
+		assertEquals(20,loaded.rootDirectory.getSize());
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
+	@Test
+	public void testTransactionOnFullDisk() throws Exception {
+		// creating a full virtual disk of 64 KB
+		final VirtualFileSystem vd = new VirtualFileSystem(64*1024);
+		final File f = vd.createFile("f",0);
+		f.append(repeat('A',3*VirtualFileSystem.DataSizeInBlock));
+		vd.createFile("full",vd.getFreeSpace());
+		
+		// a transaction reuses the blocks it released, their content is written back if it fails
+		try{
+			vd.transaction(new Runnable(){
+				public void run(){
+					f.remove();
+					vd.createFile("g",0).append(repeat('B',3*VirtualFileSystem.DataSizeInBlock));
+					throw new IllegalStateException("failure");
+				}
+			});
+			fail();
+		} catch(IllegalStateException e){}
+		assertEquals(0,vd.getFreeSpace());
+		f.exportToHostFileSystem("test");
+		java.io.File exported = new java.io.File("test"+VirtualFileSystem.HFSSeparator+"f");
+		byte[] data = java.nio.file.Files.readAllBytes(exported.toPath());
+		exported.delete();
+		assertArrayEquals(repeat('A',3*VirtualFileSystem.DataSizeInBlock),data);
+		
+		// only the released blocks can be reused
+		try{
+			vd.transaction(new Runnable(){
+				public void run(){
+					f.remove();
+					vd.createFile("g",4*VirtualFileSystem.DataSizeInBlock);
+				}
+			});
+			fail();
+		} catch(exceptions.NoFreeSpaceLeftException e){}
+		assertSame(f,vd.get("f"));
+		vd.transaction(new Runnable(){
+			public void run(){
+				f.remove();
+				vd.createFile("g",3*VirtualFileSystem.DataSizeInBlock);
+			}
+		});
+		assertEquals(0,vd.getFreeSpace());
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
+	@Test
+	public void testMount(){
+		// creating virtual disks of 1 MB
+		VirtualFileSystem vd = new VirtualFileSystem(1024*1024);
+		VirtualFileSystem vd2 = new VirtualFileSystem(1024*1024);
+		vd.createDirectory("mnt");
+		vd.createFile("mnt/hidden",10);
+		File f = vd.createFile("f",3*1024);	// 3 KB
+		vd2.createDirectory("A");
+		long occupied = vd.getOccupiedSpace();
+		
+		// the path names cross the mount point
+		vd.mount("/mnt", vd2);
+		Directory mnt = vd.rootDirectory.getDirectory("mnt");
+		assertSame(mnt,vd2.getMountPoint());
+		assertSame(vd2,mnt.getMountedDisk());
+		assertSame(vd2.rootDirectory,vd.get("/mnt"));
+		assertSame(vd2.get("A"),vd.get("mnt/A"));
+		assertSame(vd2.get("A"),vd.get(vd2.name+":/A"));
+		assertSame(vd.rootDirectory,vd.get("mnt/A/../.."));
+		assertEquals(1,vd.getMountPoints().size());
+		try{
+			vd.get("mnt/hidden");
+			fail("the content of the mount point is hidden");
+		} catch(exceptions.NoSuchFileOrDirectoryException e){}
+		
+		// the new files are on the mounted virtual disk
+		vd.createFile("mnt/A/1.a",2000);	// 2 blocks
+		assertEquals(occupied,vd.getOccupiedSpace());
+		assertEquals(2*VirtualFileSystem.DataSizeInBlock,vd2.getOccupiedSpace());
+		vd.navigate("mnt/A");
+		assertSame(vd2.get("A"),vd.getWorkingDirectory());
+		vd.createDirectory("B");
+		assertTrue(((Directory) vd2.get("A")).contains("B"));
+		
+		// copying and moving a file to the mounted virtual disk
+		long blocks = f.getBlockCount();
+		f.copy((Directory) vd.get("/mnt/A/B"));
+		assertEquals(3*1024,vd2.get("A/B/f").getSize());
+		assertEquals(occupied,vd.getOccupiedSpace());
+		f.move((Directory) vd.get("/mnt"));
+		assertFalse(vd.rootDirectory.contains("f"));
+		assertEquals(3*1024,vd2.get("f").getSize());
+		assertEquals(occupied-blocks*VirtualFileSystem.DataSizeInBlock,vd.getOccupiedSpace());
+		assertEquals((2+2*blocks)*VirtualFileSystem.DataSizeInBlock,vd2.getOccupiedSpace());
+		assertEquals(vd2.totalSpace,vd2.getFreeSpace()+vd2.getOccupiedSpace());
+		
+		// the mount points cannot be removed or make a cycle
+		try{
+			mnt.remove();
+			fail("a mount point cannot be removed");
+		} catch(exceptions.VFSOperationFailException e){}
+		try{
+			vd2.mount("A", vd);
+			fail("a virtual disk cannot be mounted inside itself");
+		} catch(exceptions.VFSOperationFailException e){}
+		
+		// unmounting
+		assertSame(vd2,vd.unmount("/mnt"));
+		assertNull(vd2.getMountPoint());
+		assertSame(mnt,vd.getWorkingDirectory());
+		assertEquals(10,vd.get("/mnt/hidden").getSize());
+		try{
+			vd.get(vd2.name+":/A");
+			fail("the virtual disk is not mounted anymore");
+		} catch(exceptions.NoSuchFileOrDirectoryException e){}
+		
+		// deleting virtual disks
+		vd.delete();
+		vd2.delete();
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		// creating a virtual disk of 64 KB
+		VirtualFileSystem vd = new VirtualFileSystem(64*1024);
+		Metrics metrics = vd.getMetrics();
+		assertEquals(0,metrics.getCount(Metrics.Save));
+		metrics.reset();	// the new virtual disk was written when it was formatted
+		vd.createDirectory("A");
+		vd.createFile("A/1.a",2000);	// 2 blocks
+		
+		// the operations run by another one are not counted
+		vd.get("A/1.a").copy(vd.rootDirectory);
+		vd.get("A").remove();
+		assertEquals(2,metrics.getCount(Metrics.Create));
+		assertEquals(1,metrics.getCount(Metrics.Copy));
+		assertEquals(1,metrics.getCount(Metrics.Remove));
+		assertEquals(2,metrics.getBlocksRead());
+		assertEquals(2,metrics.getBlocksWritten());
+		assertEquals(2*VirtualFileSystem.DataSizeInBlock,metrics.getBytesWritten());
+		long[] histogram = metrics.getLatencyHistogram(Metrics.Create);
+		long sum = 0;
+		for(long count : histogram) sum += count;
+		assertEquals(2,sum);
+		assertEquals(1,vd.find("1.a").size());
+		assertEquals(1,metrics.getCount(Metrics.Find));
+		vd.save();
+		assertTrue(metrics.getLastSaveDuration()>=0);
+		
+		// the blocks of the removed file are a hole before the copy
+		javax.management.ObjectName name = vd.registerMBean();
+		javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+		long free = (Long) server.getAttribute(name, "FreeBlockCount");
+		assertEquals(2L,server.getAttribute(name, "FreeExtentCount"));
+		assertEquals(free-2,server.getAttribute(name, "LargestFreeExtent"));
+		assertEquals(2.0/free,(Double) server.getAttribute(name, "Fragmentation"),1e-9);
+		assertEquals(2L,server.getAttribute(name, "BlocksWritten"));
+		assertTrue(server.getAttribute(name, "OperationCounts") instanceof javax.management.openmbean.TabularData);
+		server.invoke(name, "resetMetrics", null, null);
+		assertEquals(0,metrics.getBlocksWritten());
+		vd.unregisterMBean();
+		assertFalse(server.isRegistered(name));
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
+	@Test
+	public void testEvents() throws Exception {
+		// creating a virtual disk of 64 KB
+		VirtualFileSystem vd = new VirtualFileSystem(64*1024);
+		
+		// recording the events of the operations
+		jdk.jfr.Recording recording = new jdk.jfr.Recording();
+		for(String event : new String[]{"core.Operation", "core.BlockIO", "core.AllocatorScan", "core.SavePhase", "core.StatsPropagation"})
+			recording.enable(event);
+		recording.start();
+		vd.createDirectory("A");
+		vd.createFile("A/1.a",2000);	// 2 blocks
+		vd.get("A/1.a").copy(vd.rootDirectory);
+		vd.save();
+		recording.stop();
+		java.nio.file.Path file = java.nio.file.Files.createTempFile("vfs", ".jfr");
+		recording.dump(file);
+		recording.close();
+		
+		java.util.Map<String,Integer> counts = new java.util.HashMap<String,Integer>();
+		java.util.Set<String> paths = new java.util.HashSet<String>();
+		java.util.List<String> phases = new java.util.ArrayList<String>();
+		for(jdk.jfr.consumer.RecordedEvent event : jdk.jfr.consumer.RecordingFile.readAllEvents(file)){
+			String type = event.getEventType().getName();
+			Integer count = counts.get(type);
+			counts.put(type, (count==null)?1:count+1);
+			assertEquals(vd.name,event.getString("disk"));
+			if(type.equals("core.Operation"))
+				paths.add(event.getString("operation")+" "+event.getString("path"));
+			else if(type.equals("core.SavePhase"))
+				phases.add(event.getString("phase"));
+			else if(type.equals("core.BlockIO"))
+				assertFalse(vd.isFreeBlock(event.getLong("position")));
+		}
+		java.nio.file.Files.delete(file);
+		assertTrue(paths.contains("create "+vd.name+":/A/1.a"));
+		assertTrue(paths.contains("copy "+vd.name+":/A/1.a"));
+		assertTrue(paths.contains("save "+vd.name+":/"));
+		assertEquals(java.util.Arrays.asList("statistics", "serialization", "write"),phases);
+		assertEquals(4,(int) counts.get("core.BlockIO"));	// 2 blocks read, 2 blocks written
+		assertEquals(2,(int) counts.get("core.AllocatorScan"));
+		assertTrue(counts.get("core.StatsPropagation")>0);
+		
+		// deleting virtual disk
+		vd.delete();
+	}
+
 }
@@ -47,6 +47,8 @@ public abstract class SimpleTreeNode implements java.io.Serializable{
 	protected void cutLinkToTree(){
 		if(parent!=null){
 			parent.children.remove(this);
+			parent = null;
+			root = this;
 		}
 	}
 	